@@ -78,6 +78,11 @@ class ElasticAttributeProvider extends GeoServerDataProvider<ElasticAttribute> {
      */
     static final Property<ElasticAttribute> STORED = new BeanProperty<>("stored", "stored");
 
+    /**
+     * If field is read from doc values
+     */
+    static final Property<ElasticAttribute> DOC_VALUES = new BeanProperty<>("docValues", "useDocValues");
+
     /**
      * Order of the field
      */
@@ -99,7 +104,7 @@ class ElasticAttributeProvider extends GeoServerDataProvider<ElasticAttribute> {
 
     @Override
     protected List<org.geoserver.web.wicket.GeoServerDataProvider.Property<ElasticAttribute>> getProperties() {
-        return Arrays.asList(USE, NAME, TYPE, ORDER, CUSTOM_NAME, DEFAULT_GEOMETRY, STORED, ANALYZED, SRID, DATE_FORMAT);
+        return Arrays.asList(USE, NAME, TYPE, ORDER, CUSTOM_NAME, DEFAULT_GEOMETRY, STORED, DOC_VALUES, ANALYZED, SRID, DATE_FORMAT);
     }
 
     @Override
@@ -95,12 +95,12 @@ abstract class ElasticConfigurationPage extends Panel {
         final Form<?> elastic_form = new Form("es_form", new CompoundPropertyModel(this));
         add(elastic_form);
 
-        List<ElasticAttribute> attributes;
-        attributes = fillElasticAttributes(ri).getAttributes();
+        final ElasticLayerConfiguration layerConfig = fillElasticAttributes(ri);
+        final List<ElasticAttribute> attributes = layerConfig.getAttributes();
         final ElasticAttributeProvider attProvider = new ElasticAttributeProvider(attributes);
 
         final GeoServerTablePanel<ElasticAttribute> elasticAttributePanel;
-        elasticAttributePanel = getElasticAttributePanel(attProvider);
+        elasticAttributePanel = getElasticAttributePanel(attProvider, layerConfig);
         elastic_form.add(elasticAttributePanel);
 
         // select all check box
@@ -144,6 +144,29 @@ abstract class ElasticConfigurationPage extends Panel {
         checkBox.setOutputMarkupId(true);
         elastic_form.add(checkBox);
 
+        // use doc values check box
+        AjaxCheckBox docValuesCheckBox = new AjaxCheckBox("useDocValues", Model.of(layerConfig.isUseDocValues())) {
+            @Override
+            protected void onUpdate(AjaxRequestTarget target) {
+                layerConfig.setUseDocValues((Boolean) this.getDefaultModelObject());
+                for (final ElasticAttribute attribute : attProvider.getItems()) {
+                    attribute.setUseDocValues(null);
+                }
+                target.add(elasticAttributePanel);
+            }
+        };
+        docValuesCheckBox.setOutputMarkupId(true);
+        elastic_form.add(docValuesCheckBox);
+
+        // point decimation check box
+        AjaxCheckBox pointDecimationCheckBox = new AjaxCheckBox("pointDecimation", Model.of(layerConfig.isPointDecimation())) {
+            @Override
+            protected void onUpdate(AjaxRequestTarget target) {
+                layerConfig.setPointDecimation((Boolean) this.getDefaultModelObject());
+            }
+        };
+        elastic_form.add(pointDecimationCheckBox);
+
         elastic_form.add(new AjaxButton("es_save") {
             protected void onSubmit(AjaxRequestTarget target, Form<?> form) {
                 onSave(target);
@@ -255,7 +278,7 @@ abstract class ElasticConfigurationPage extends Panel {
      * Builds attribute table
      */
     private GeoServerTablePanel<ElasticAttribute> getElasticAttributePanel(
-            ElasticAttributeProvider attProvider) {
+            ElasticAttributeProvider attProvider, ElasticLayerConfiguration layerConfig) {
         GeoServerTablePanel<ElasticAttribute> atts = new GeoServerTablePanel<ElasticAttribute>(
                 "esAttributes", attProvider) {
             @Override
@@ -323,6 +346,14 @@ abstract class ElasticConfigurationPage extends Panel {
                     } else {
                         return new Fragment(id, "empty", ElasticConfigurationPage.this);
                     } 
+                } else if (property == ElasticAttributeProvider.DOC_VALUES) {
+                    if (att.isDocValues()) {
+                        Fragment f = new Fragment(id, "checkboxDocValues", ElasticConfigurationPage.this);
+                        f.add(new CheckBox("docValues", new DocValuesModel(itemModel, layerConfig)));
+                        return f;
+                    } else {
+                        return new Fragment(id, "empty", ElasticConfigurationPage.this);
+                    }
                 } else if (property == ElasticAttributeProvider.ORDER) {
                     TextField<Integer> order = new TextField<>("order", new PropertyModel<>(itemModel, "order"));
                     Fragment f = new Fragment(id, "textOrderValue", ElasticConfigurationPage.this);
@@ -343,6 +374,8 @@ abstract class ElasticConfigurationPage extends Panel {
                     item.add(new AttributeModifier("style",Model.of("text-align:center")));
                 } else if (property == ElasticAttributeProvider.ANALYZED) {
                     item.add(new AttributeModifier("style",Model.of("text-align:center")));
+                } else if (property == ElasticAttributeProvider.DOC_VALUES) {
+                    item.add(new AttributeModifier("style",Model.of("text-align:center")));
                 }
             }
         };
@@ -354,6 +387,43 @@ abstract class ElasticConfigurationPage extends Panel {
         return atts;
     }
 
+    /*
+     * Shows whether the attribute is read from doc values, including the layer
+     * default, and stores changes as an attribute override
+     */
+    private static class DocValuesModel implements IModel<Boolean> {
+
+        private static final long serialVersionUID = 6091417542311374522L;
+
+        private final IModel<ElasticAttribute> itemModel;
+
+        private final ElasticLayerConfiguration layerConfig;
+
+        DocValuesModel(IModel<ElasticAttribute> itemModel, ElasticLayerConfiguration layerConfig) {
+            this.itemModel = itemModel;
+            this.layerConfig = layerConfig;
+        }
+
+        @Override
+        public Boolean getObject() {
+            return itemModel.getObject().isDocValuesRetrieval(layerConfig.isUseDocValues());
+        }
+
+        @Override
+        public void setObject(Boolean object) {
+            if (object != null && object != layerConfig.isUseDocValues()) {
+                itemModel.getObject().setUseDocValues(object);
+            } else {
+                itemModel.getObject().setUseDocValues(null);
+            }
+        }
+
+        @Override
+        public void detach() {
+            itemModel.detach();
+        }
+    }
+
     /*
      * Render geometry type select
      */
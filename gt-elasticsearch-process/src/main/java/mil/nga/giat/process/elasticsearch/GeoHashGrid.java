@@ -4,25 +4,34 @@
  */
 package mil.nga.giat.process.elasticsearch;
 
+import java.awt.image.DataBufferFloat;
+import java.awt.image.WritableRaster;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
+import javax.media.jai.RasterFactory;
+
 import org.geotools.coverage.CoverageFactoryFinder;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridCoverageFactory;
+import org.geotools.coverage.grid.GridEnvelope2D;
+import org.geotools.coverage.grid.GridGeometry2D;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.CRS;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.geotools.util.factory.GeoTools;
 import org.geotools.util.logging.Logging;
 import org.locationtech.jts.geom.Envelope;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.datum.PixelInCell;
+import org.opengis.referencing.operation.MathTransform;
 import org.opengis.referencing.operation.TransformException;
 
 import com.fasterxml.jackson.core.type.TypeReference;
@@ -44,10 +53,45 @@ abstract class GeoHashGrid {
 
     public static final String VALUE_KEY = "value";
 
+    /**
+     * Aggregation attribute name and feature user data key of parsed buckets
+     */
+    public static final String AGGREGATION_KEY = "_aggregation";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final int MAX_TILE_ZOOM = 29;
+
+    /**
+     * Half the width of the Web Mercator world in meters
+     */
+    private static final double MERCATOR_EXTENT = 20037508.342789244;
+
+    private static final double MAX_TILE_LATITUDE = 85.0511287798066;
+
+    private static final int MAX_GEOHASH_PRECISION = 12;
+
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    private static final byte[] BASE32_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(BASE32_VALUES, (byte) -1);
+        for (int i = 0; i < BASE32.length(); i++) {
+            BASE32_VALUES[BASE32.charAt(i)] = (byte) i;
+        }
+    }
+
     private double cellWidth;
 
     private double cellHeight;
 
+    /**
+     * Width of the world in grid CRS units, used to repeat cells across the
+     * dateline when rendering
+     */
+    private double worldWidth;
+
     private double lonOffset;
 
     private Envelope envelope;
@@ -56,7 +100,14 @@ abstract class GeoHashGrid {
 
     private float emptyCellValue;
 
-    private float[][] grid;
+    /**
+     * Cell values in row major order, starting with the top row
+     */
+    private float[] grid;
+
+    private int numCol;
+
+    private int numRow;
 
     private RasterScale scale;
 
@@ -66,19 +117,26 @@ abstract class GeoHashGrid {
     }
 
     public void initalize(ReferencedEnvelope srcEnvelope, SimpleFeatureCollection features) throws TransformException, FactoryException {
-        final List<Map<String, Object>> buckets = readFeatures(features);
+        final GridBuckets buckets = readFeatures(features);
+
+        final String firstGeohash = buckets.isEmpty() ? null : buckets.getKey(0);
+        final int[] firstTile = decodeTileKey(firstGeohash);
+        if (firstTile != null) {
+            initalizeTiles(srcEnvelope, buckets, firstTile[0]);
+            return;
+        }
 
-        final String firstGeohash = buckets.isEmpty() ? null : (String) buckets.get(0).get("key");
         final int precision;
         if (!isValid(firstGeohash)) {
             LOGGER.fine("No aggregations found or missing/invalid geohash key");
             precision = DEFAULT_PRECISION;
         } else {
-            precision = ((String) buckets.get(0).get("key")).length();
+            precision = firstGeohash.length();
         }
 
         cellWidth = GeoHash.widthDegrees(precision);
         cellHeight = GeoHash.heightDegrees(precision);
+        worldWidth = 360;
 
         if (srcEnvelope.getCoordinateReferenceSystem() != null) {
             srcEnvelope = srcEnvelope.transform(DefaultGeographicCRS.WGS84,false);
@@ -89,63 +147,311 @@ abstract class GeoHashGrid {
         boundingBox = new ReferencedEnvelope(envelope.getMinX()-cellWidth/2.0, envelope.getMaxX()+cellWidth/2.0,
                 envelope.getMinY()-cellHeight/2.0, envelope.getMaxY()+cellHeight/2.0, DefaultGeographicCRS.WGS84);
 
-        final int numCol = (int) Math.round((envelope.getMaxX()-envelope.getMinX())/cellWidth+1);
-        final int numRow = (int) Math.round((envelope.getMaxY()-envelope.getMinY())/cellHeight+1);
-        grid = new float[numRow][numCol];
+        numCol = (int) Math.round((envelope.getMaxX()-envelope.getMinX())/cellWidth+1);
+        numRow = (int) Math.round((envelope.getMaxY()-envelope.getMinY())/cellHeight+1);
+        grid = new float[numRow*numCol];
         LOGGER.fine("Created grid with size (" + numCol + ", " + numRow + ")");
 
+        // geohash cell indices of the first column and row, columns outside
+        // of the world repeat cells across the dateline
+        final long lonCells = 1L << lonBits(precision);
+        final long firstCol = Math.round((envelope.getMinX()+180)/cellWidth-0.5);
+        final long firstRow = Math.round((envelope.getMinY()+90)/cellHeight-0.5);
+
+        prepareCells(buckets);
+        for (int i = 0; i < buckets.size(); i++) {
+            final float value = buckets.getValue(i);
+            final long cell = decodeGeohash(buckets.getKey(i), precision);
+            if (cell < 0 || Float.isNaN(value)) {
+                continue;
+            }
+            final long rowFromBottom = (cell & 0xFFFFFFFFL) - firstRow;
+            if (rowFromBottom < 0 || rowFromBottom >= numRow) {
+                continue;
+            }
+            final int offset = (int) (numRow-1-rowFromBottom)*numCol;
+            final float scaled = scale.scaleValue(value);
+            for (long col = Math.floorMod((cell >>> 32) - firstCol, lonCells); col < numCol; col += lonCells) {
+                grid[offset + (int) col] = scaled;
+            }
+        }
+        LOGGER.fine("Read " + buckets.size() + " aggregation buckets");
+    }
+
+    /**
+     * Initialize a Web Mercator grid from geotile_grid aggregation buckets.
+     * Grid cells are the tiles at the zoom level of the aggregation so cell
+     * boundaries line up with tile boundaries.
+     */
+    private void initalizeTiles(ReferencedEnvelope srcEnvelope, GridBuckets buckets, int zoom) throws TransformException, FactoryException {
+        final int numTiles = 1 << zoom;
+        cellWidth = 2*MERCATOR_EXTENT/numTiles;
+        cellHeight = cellWidth;
+        worldWidth = 2*MERCATOR_EXTENT;
+
+        if (srcEnvelope.getCoordinateReferenceSystem() != null) {
+            srcEnvelope = srcEnvelope.transform(DefaultGeographicCRS.WGS84,false);
+        }
+        // columns outside of the world repeat tiles across the dateline
+        final long minCol = (long) Math.floor((srcEnvelope.getMinX()+180)/360*numTiles);
+        final long maxCol = Math.max(minCol, (long) Math.ceil((srcEnvelope.getMaxX()+180)/360*numTiles)-1);
+        final int minRow = tileRow(srcEnvelope.getMaxY(), numTiles);
+        final int maxRow = tileRow(srcEnvelope.getMinY(), numTiles);
+
+        final double minX = -MERCATOR_EXTENT + minCol*cellWidth;
+        final double maxX = -MERCATOR_EXTENT + (maxCol+1)*cellWidth;
+        final double minY = MERCATOR_EXTENT - (maxRow+1)*cellHeight;
+        final double maxY = MERCATOR_EXTENT - minRow*cellHeight;
+        envelope = new Envelope(minX+cellWidth/2.0, maxX-cellWidth/2.0, minY+cellHeight/2.0, maxY-cellHeight/2.0);
+        boundingBox = new ReferencedEnvelope(minX, maxX, minY, maxY, CRS.decode("EPSG:3857"));
+
+        numCol = (int) (maxCol-minCol+1);
+        numRow = maxRow-minRow+1;
+        grid = new float[numRow*numCol];
+        LOGGER.fine("Created tile grid with size (" + numCol + ", " + numRow + ") at zoom " + zoom);
+
+        prepareCells(buckets);
+        for (int i = 0; i < buckets.size(); i++) {
+            final float value = buckets.getValue(i);
+            final long tile = parseTileKey(buckets.getKey(i));
+            if (tile < 0 || tileZoom(tile) != zoom || Float.isNaN(value)) {
+                continue;
+            }
+            final int row = tileY(tile);
+            if (row < minRow || row > maxRow) {
+                continue;
+            }
+            final int offset = (row-minRow)*numCol;
+            final float scaled = scale.scaleValue(value);
+            for (long col = Math.floorMod(tileX(tile)-minCol, numTiles); col < numCol; col += numTiles) {
+                grid[offset + (int) col] = scaled;
+            }
+        }
+        LOGGER.fine("Read " + buckets.size() + " aggregation buckets");
+    }
+
+    private void prepareCells(GridBuckets buckets) {
         if (emptyCellValue != 0) {
-            for (float[] row: grid)
-                Arrays.fill(row, emptyCellValue);
+            Arrays.fill(grid, emptyCellValue);
+        }
+        for (int i = 0; i < buckets.size(); i++) {
+            if (!Float.isNaN(buckets.getValue(i))) {
+                scale.prepareScale(buckets.getValue(i));
+            }
         }
-        List<GridCell> cells = new ArrayList<>();
-        buckets.forEach(bucket -> {
-            Number rasterValue =  computeCellValue(bucket);
-            cells.add(new GridCell((String) bucket.get("key"), rasterValue));
-            scale.prepareScale(rasterValue.floatValue());
-        });
-        cells.forEach(cell -> updateGrid(cell.getGeohash(), cell.getValue()));
-        LOGGER.fine("Read " + cells.size() + " aggregation buckets");
     }
 
-    protected abstract Number computeCellValue(Map<String, Object> bucket);
+    private static int lonBits(int precision) {
+        return (5*precision+1)/2;
+    }
+
+    private static int latBits(int precision) {
+        return 5*precision/2;
+    }
+
+    /**
+     * Decode the cell containing a geohash at a grid precision
+     *
+     * @param geohash Geohash
+     * @param precision Grid precision
+     * @return Longitude cell index in the upper and latitude cell index in the
+     * lower 32 bits, or -1 if the geohash is not valid
+     */
+    static long decodeGeohash(String geohash, int precision) {
+        if (geohash == null || geohash.isEmpty() || geohash.length() > MAX_GEOHASH_PRECISION) {
+            return -1;
+        }
+        long lon = 0;
+        long lat = 0;
+        boolean even = true;
+        for (int i = 0; i < geohash.length(); i++) {
+            final char c = geohash.charAt(i);
+            final int value = c < BASE32_VALUES.length ? BASE32_VALUES[c] : -1;
+            if (value < 0) {
+                return -1;
+            }
+            for (int bit = 4; bit >= 0; bit--) {
+                if (even) {
+                    lon = (lon << 1) | ((value >> bit) & 1);
+                } else {
+                    lat = (lat << 1) | ((value >> bit) & 1);
+                }
+                even = !even;
+            }
+        }
+        final int length = geohash.length();
+        if (length != precision) {
+            // index of the cell containing the geohash center
+            lon = (long) Math.floor((lon + 0.5) / (1L << lonBits(length)) * (1L << lonBits(precision)));
+            lat = (long) Math.floor((lat + 0.5) / (1L << latBits(length)) * (1L << latBits(precision)));
+        }
+        return lon << 32 | lat;
+    }
+
+    /**
+     * Tile row containing a latitude, clamped to the Web Mercator bounds
+     */
+    private static int tileRow(double lat, int numTiles) {
+        final double latRad = Math.toRadians(Math.max(-MAX_TILE_LATITUDE, Math.min(MAX_TILE_LATITUDE, lat)));
+        final double y = (1 - Math.log(Math.tan(latRad) + 1/Math.cos(latRad))/Math.PI)/2;
+        return Math.max(0, Math.min(numTiles-1, (int) Math.floor(y*numTiles)));
+    }
 
-    private void updateGrid(String geohash, Number value) {
-        if (geohash != null && value != null) {
-            final LatLong latLon = GeoHash.decodeHash(geohash);
-            final double lat = latLon.getLat();
-            double lon = latLon.getLon() + lonOffset;
-            if (isValid(lat, lon-360)) updateGrid(lat, lon-360, value);
-            if (isValid(lat, lon)) updateGrid(lat, lon, value);
-            while (isValid(lat, lon+=360)) {
-                updateGrid(lat, lon, value);
+    /**
+     * Decode a geotile_grid bucket key
+     *
+     * @param key Key in zoom/x/y form
+     * @return Zoom, x and y or null if the key is not a valid tile key
+     */
+    static int[] decodeTileKey(String key) {
+        final long tile = parseTileKey(key);
+        return tile < 0 ? null : new int[] {tileZoom(tile), tileX(tile), tileY(tile)};
+    }
+
+    /**
+     * Parse a geotile_grid bucket key without allocation
+     *
+     * @param key Key in zoom/x/y form
+     * @return Zoom, x and y packed in 5, 29 and 29 bits or -1 if the key is
+     * not a valid tile key
+     */
+    private static long parseTileKey(String key) {
+        if (key == null) {
+            return -1;
+        }
+        long zoom = 0;
+        long x = 0;
+        long value = 0;
+        int part = 0;
+        boolean digits = false;
+        for (int i = 0; i < key.length(); i++) {
+            final char c = key.charAt(i);
+            if (c >= '0' && c <= '9' && value <= 1 << MAX_TILE_ZOOM) {
+                value = value*10 + (c - '0');
+                digits = true;
+            } else if (c == '/' && digits && part < 2) {
+                if (part++ == 0) {
+                    zoom = value;
+                } else {
+                    x = value;
+                }
+                value = 0;
+                digits = false;
+            } else {
+                return -1;
             }
         }
+        if (!digits || part != 2) {
+            return -1;
+        }
+        final long y = value;
+        if (zoom > MAX_TILE_ZOOM || x >= 1L << zoom || y >= 1L << zoom) {
+            return -1;
+        }
+        return zoom << 58 | x << 29 | y;
+    }
+
+    private static int tileZoom(long tile) {
+        return (int) (tile >>> 58);
     }
 
-    private void updateGrid(double lat, double lon, Number value) {
-        final int row = grid.length-(int) Math.round((lat-envelope.getMinY())/cellHeight)-1;
-        final int col = (int) Math.round((lon-envelope.getMinX())/cellWidth);
-        grid[Math.min(row,grid.length-1)][Math.min(col,grid[0].length-1)] = scale.scaleValue(value.floatValue());
+    private static int tileX(long tile) {
+        return (int) ((tile >>> 29) & ((1 << 29) - 1));
     }
 
+    private static int tileY(long tile) {
+        return (int) (tile & ((1 << 29) - 1));
+    }
+
+    protected abstract Number computeCellValue(Map<String, Object> bucket);
+
     public GridCoverage2D toGridCoverage2D() {
         final GridCoverageFactory coverageFactory = CoverageFactoryFinder.getGridCoverageFactory(GeoTools.getDefaultHints());
-        return coverageFactory.create("geohashGridAgg", grid, boundingBox);
+        final WritableRaster raster = RasterFactory.createBandedRaster(new DataBufferFloat(grid, grid.length),
+                numCol, numRow, numCol, new int[] {0}, new int[] {0}, null);
+        return coverageFactory.create("geohashGridAgg", raster, boundingBox);
     }
 
-    private List<Map<String, Object>> readFeatures(SimpleFeatureCollection features) {
-        final ObjectMapper mapper = new ObjectMapper();
+    /**
+     * Render the grid onto an output raster in a single pass. The center of
+     * each output pixel is transformed to the grid CRS and takes the value of
+     * the cell containing it, so no intermediate coverages are created.
+     *
+     * @param outputEnvelope Output envelope, WGS84 if no CRS is set
+     * @param width Output width in pixels
+     * @param height Output height in pixels
+     */
+    public GridCoverage2D toGridCoverage2D(ReferencedEnvelope outputEnvelope, int width, int height) throws TransformException, FactoryException {
+        final CoordinateReferenceSystem outputCrs = outputEnvelope.getCoordinateReferenceSystem() != null
+                ? outputEnvelope.getCoordinateReferenceSystem() : DefaultGeographicCRS.WGS84;
+        final ReferencedEnvelope envelope = new ReferencedEnvelope(outputEnvelope, outputCrs);
+        final GridGeometry2D gridGeometry = new GridGeometry2D(new GridEnvelope2D(0, 0, width, height), envelope);
+        final MathTransform pixelToCrs = gridGeometry.getGridToCRS(PixelInCell.CELL_CENTER);
+        final MathTransform crsToGrid = CRS.findMathTransform(outputCrs, boundingBox.getCoordinateReferenceSystem(), true);
+        final long cellsPerWorld = Math.round(worldWidth/cellWidth);
+
+        final float[] pixels = new float[width*height];
+        final double[] points = new double[2*width];
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                points[2*col] = col;
+                points[2*col+1] = row;
+            }
+            pixelToCrs.transform(points, 0, points, 0, width);
+            if (!crsToGrid.isIdentity()) {
+                crsToGrid.transform(points, 0, points, 0, width);
+            }
+            for (int col = 0; col < width; col++) {
+                pixels[row*width+col] = getCellValue(points[2*col], points[2*col+1], cellsPerWorld);
+            }
+        }
 
-        final List<Map<String, Object>> buckets = new ArrayList<>();
+        final GridCoverageFactory coverageFactory = CoverageFactoryFinder.getGridCoverageFactory(GeoTools.getDefaultHints());
+        final WritableRaster raster = RasterFactory.createBandedRaster(new DataBufferFloat(pixels, pixels.length),
+                width, height, width, new int[] {0}, new int[] {0}, null);
+        return coverageFactory.create("geohashGridAgg", raster, envelope);
+    }
+
+    /**
+     * Value of the cell containing a point in the grid CRS. Columns outside of
+     * the grid are wrapped across the dateline.
+     */
+    private float getCellValue(double x, double y, long cellsPerWorld) {
+        if (!Double.isFinite(x) || !Double.isFinite(y)) {
+            return emptyCellValue;
+        }
+        final long row = (long) Math.floor((boundingBox.getMaxY()-y)/cellHeight);
+        if (row < 0 || row >= numRow) {
+            return emptyCellValue;
+        }
+        long col = (long) Math.floor((x-boundingBox.getMinX())/cellWidth);
+        if (col < 0 || col >= numCol) {
+            col = Math.floorMod(col, cellsPerWorld);
+            if (col >= numCol) {
+                return emptyCellValue;
+            }
+        }
+        return grid[(int) row*numCol + (int) col];
+    }
+
+    /**
+     * Read the key and cell value of each aggregation bucket. Buckets are
+     * reduced as features are read so parsed bucket maps are not retained.
+     */
+    @SuppressWarnings("unchecked")
+    private GridBuckets readFeatures(SimpleFeatureCollection features) {
+        final GridBuckets buckets = new GridBuckets();
         try (SimpleFeatureIterator iterator = features.features()) {
             while (iterator.hasNext()) {
                 final SimpleFeature feature = iterator.next();
-                if (feature.getAttribute("_aggregation") != null) {
-                    final byte[] data = (byte[]) feature.getAttribute("_aggregation");
+                final Object bucket = feature.getUserData().get(AGGREGATION_KEY);
+                if (bucket instanceof Map) {
+                    addBucket(buckets, (Map<String, Object>) bucket);
+                } else if (feature.getAttribute(AGGREGATION_KEY) != null) {
+                    final byte[] data = (byte[]) feature.getAttribute(AGGREGATION_KEY);
                     try {
-                        final Map<String,Object> aggregation = mapper.readValue(data, new TypeReference<Map<String,Object>>() {});
-                        buckets.add(aggregation);
+                        final Map<String,Object> aggregation = MAPPER.readValue(data, new TypeReference<Map<String,Object>>() {});
+                        addBucket(buckets, aggregation);
                     } catch (IOException e) {
                         LOGGER.fine("Failed to parse aggregation value: " + e);
                     }
@@ -155,6 +461,11 @@ abstract class GeoHashGrid {
         return buckets;
     }
 
+    private void addBucket(GridBuckets buckets, Map<String, Object> bucket) {
+        final Object key = bucket.get(BUCKET_NAME_KEY);
+        buckets.add(key != null ? key.toString() : null, computeCellValue(bucket));
+    }
+
     private Envelope computeEnvelope(ReferencedEnvelope outEnvelope, int precision) {
         final String minHash = GeoHash.encodeHash(Math.max(-90,outEnvelope.getMinY()), outEnvelope.getMinX(), precision);
         final LatLong minLatLon = GeoHash.decodeHash(minHash);
@@ -183,12 +494,8 @@ abstract class GeoHashGrid {
         lonOffset = env.getMinX() - minLon;
     }
 
-    private boolean isValid(final double lat, final double lon) {
-        return lon>=envelope.getMinX() && lon<=envelope.getMaxX() && lat>=envelope.getMinY() && lat<=envelope.getMaxY();
-    }
-
     private boolean isValid(String geohash) {
-        return geohash != null && GeoHash.encodeHash(GeoHash.decodeHash(geohash), geohash.length()).equals(geohash);
+        return geohash != null && decodeGeohash(geohash, geohash.length()) >= 0;
     }
 
     String pluckBucketName(Map<String, Object> bucket) {
@@ -267,10 +574,32 @@ abstract class GeoHashGrid {
         return boundingBox;
     }
 
+    /**
+     * @return Copy of the grid as rows, starting with the top row
+     */
     public float[][] getGrid() {
+        final float[][] rows = new float[numRow][];
+        for (int row = 0; row < numRow; row++) {
+            rows[row] = Arrays.copyOfRange(grid, row*numCol, (row+1)*numCol);
+        }
+        return rows;
+    }
+
+    /**
+     * @return Cell values in row major order, starting with the top row
+     */
+    float[] getValues() {
         return grid;
     }
 
+    int getNumCol() {
+        return numCol;
+    }
+
+    int getNumRow() {
+        return numRow;
+    }
+
     public void setScale(RasterScale scale) {
         this.scale = scale;
     }
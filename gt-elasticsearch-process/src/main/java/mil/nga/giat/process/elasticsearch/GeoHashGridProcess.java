@@ -6,9 +6,10 @@ package mil.nga.giat.process.elasticsearch;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
 
 import org.geotools.coverage.grid.GridCoverage2D;
-import org.geotools.coverage.processing.Operations;
 import org.geotools.data.Query;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.factory.CommonFactoryFinder;
@@ -20,6 +21,8 @@ import org.geotools.process.factory.DescribeProcess;
 import org.geotools.process.factory.DescribeResult;
 import org.geotools.process.vector.VectorProcess;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.util.factory.Hints;
+import org.geotools.util.logging.Logging;
 import org.opengis.coverage.grid.GridGeometry;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory;
@@ -28,11 +31,16 @@ import org.opengis.filter.spatial.BBOX;
 import org.opengis.util.ProgressListener;
 
 @SuppressWarnings("unused")
-@DescribeProcess(title = "geoHashGridAgg", description = "Computes a grid from GeoHash grid aggregation buckets with values corresponding to doc_count values.")
+@DescribeProcess(title = "geoHashGridAgg", description = "Computes a grid from GeoHash or geotile grid aggregation buckets with values corresponding to doc_count values.")
 public class GeoHashGridProcess implements VectorProcess {
 
+    private final static Logger LOGGER = Logging.getLogger(GeoHashGridProcess.class);
+
     private final static FilterFactory FILTER_FACTORY = CommonFactoryFinder.getFilterFactory(null);
 
+    /** Set once the deprecated pixelsPerCell parameter has been reported */
+    private final static AtomicBoolean PIXELS_PER_CELL_REPORTED = new AtomicBoolean();
+
     public enum Strategy {
 
         BASIC(BasicGeoHashGrid.class),  
@@ -58,7 +66,7 @@ public class GeoHashGridProcess implements VectorProcess {
             @DescribeParameter(name = "data", description = "Input features") SimpleFeatureCollection obsFeatures,
 
             // process parameters
-            @DescribeParameter(name = "pixelsPerCell", description = "Resolution used for upsampling (in pixels)", defaultValue="1", min = 1) Integer argPixelsPerCell,
+            @DescribeParameter(name = "pixelsPerCell", description = "Deprecated and ignored, output pixels are sampled directly from grid cells", min = 0) Integer argPixelsPerCell,
             @DescribeParameter(name = "gridStrategy", description = "GeoHash grid strategy", defaultValue="Basic", min = 1) String gridStrategy,
             @DescribeParameter(name = "gridStrategyArgs", description = "Grid strategy arguments", min = 0) List<String> gridStrategyArgs,
             @DescribeParameter(name = "emptyCellValue", description = "Default cell value", min = 0) Float emptyCellValue,
@@ -73,6 +81,11 @@ public class GeoHashGridProcess implements VectorProcess {
 
             ProgressListener monitor) throws ProcessException {
 
+        if (argPixelsPerCell != null && PIXELS_PER_CELL_REPORTED.compareAndSet(false, true)) {
+            LOGGER.warning("The pixelsPerCell parameter is deprecated and ignored. Output pixels are sampled directly "
+                    + "from grid cells at the output resolution.");
+        }
+
         try {
             // construct and populate grid
             final GeoHashGrid geoHashGrid = Strategy.valueOf(gridStrategy.toUpperCase()).createNewInstance();
@@ -80,16 +93,8 @@ public class GeoHashGridProcess implements VectorProcess {
             geoHashGrid.setEmptyCellValue(emptyCellValue);
             geoHashGrid.setScale(new RasterScale(scaleMin, scaleMax, useLog));
             geoHashGrid.initalize(argOutputEnv, obsFeatures);
-            // convert to grid coverage
-            final GridCoverage2D nativeCoverage = geoHashGrid.toGridCoverage2D();
-
-            // reproject
-            final GridCoverage2D transformedCoverage = (GridCoverage2D) Operations.DEFAULT.resample(nativeCoverage, argOutputEnv.getCoordinateReferenceSystem()); 
-            // upscale to approximate output resolution
-            final GridCoverage2D scaledCoverage = GridCoverageUtil.scale(transformedCoverage, argOutputWidth*argPixelsPerCell, argOutputHeight*argPixelsPerCell);
-            // crop (geohash grid envelope will always contain output bbox)
-            final GridCoverage2D croppedCoverage = GridCoverageUtil.crop(scaledCoverage, argOutputEnv);
-            return GridCoverageUtil.scale(croppedCoverage, argOutputWidth, argOutputHeight);
+            // render output pixels directly from grid cells in the output CRS
+            return geoHashGrid.toGridCoverage2D(argOutputEnv, argOutputWidth, argOutputHeight);
         } catch (Exception e) {
             throw new ProcessException("Error executing GeoHashGridProcess", e);
         }
@@ -117,6 +122,22 @@ public class GeoHashGridProcess implements VectorProcess {
             targetQuery.setFilter(filter);
         }
 
+        if (targetGridGeometry != null && targetQuery.getHints().get(Hints.GEOMETRY_DISTANCE) == null) {
+            // output pixel size bounds the geotile_grid aggregation precision
+            try {
+                final ReferencedEnvelope geographicEnvelope = envelope.getCoordinateReferenceSystem() != null
+                        ? envelope.transform(DefaultGeographicCRS.WGS84, false) : envelope;
+                final int width = targetGridGeometry.getGridRange().getSpan(0);
+                if (width > 0) {
+                    final Hints hints = new Hints(targetQuery.getHints());
+                    hints.put(Hints.GEOMETRY_DISTANCE, geographicEnvelope.getWidth()/width);
+                    targetQuery.setHints(hints);
+                }
+            } catch (Exception e) {
+                throw new ProcessException("Unable to compute pixel size of the output", e);
+            }
+        }
+
         final List<PropertyName> properties = new ArrayList<>();
         properties.add(FILTER_FACTORY.property("_aggregation"));
         targetQuery.setProperties(properties);
@@ -0,0 +1,55 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.process.elasticsearch;
+
+import java.util.Arrays;
+
+/**
+ * Grid aggregation buckets reduced to their key and cell value. Values are
+ * stored unboxed and buckets without a value are stored as NaN.
+ */
+class GridBuckets {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private String[] keys;
+
+    private float[] values;
+
+    private int size;
+
+    GridBuckets() {
+        keys = new String[INITIAL_CAPACITY];
+        values = new float[INITIAL_CAPACITY];
+    }
+
+    void add(String key, Number value) {
+        if (size == keys.length) {
+            final int capacity = keys.length + (keys.length >> 1);
+            keys = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        keys[size] = key;
+        values[size] = value != null ? value.floatValue() : Float.NaN;
+        size++;
+    }
+
+    String getKey(int index) {
+        return keys[index];
+    }
+
+    float getValue(int index) {
+        return values[index];
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+}
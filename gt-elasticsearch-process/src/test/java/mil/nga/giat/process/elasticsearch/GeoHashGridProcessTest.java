@@ -9,12 +9,15 @@ import static org.junit.Assert.*;
 import java.awt.geom.Point2D;
 
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridEnvelope2D;
+import org.geotools.coverage.grid.GridGeometry2D;
 import org.geotools.data.Query;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.util.factory.Hints;
 import org.junit.Before;
 import org.junit.Test;
 import org.locationtech.jts.geom.Envelope;
@@ -91,10 +94,41 @@ public class GeoHashGridProcessTest {
         Float scaleMin = 0f;
 
         GridCoverage2D coverage = process.execute(features, pixelsPerCell, strategy, null, null, scaleMin, null, false, envelope, width, height, null);
-        checkInternal(coverage, fineDelta);
+        assertEquals(width, coverage.getGridGeometry().getGridRange2D().getSpan(0));
+        assertEquals(height, coverage.getGridGeometry().getGridRange2D().getSpan(1));
+        assertEquals(new Envelope(envelope), new Envelope(new ReferencedEnvelope(coverage.getEnvelope())));
+        // output pixels are about 21 by 20 degrees and straddle cell edges, so
+        // sample far enough from the edges to fall in pixels centered on each side
+        checkInternal(coverage, 10);
         checkEdge(coverage, envelope, fineDelta);
     }
 
+    @Test
+    public void testWebMercatorOutput() throws Exception {
+        double extent = 20037508.342789244;
+        ReferencedEnvelope envelope = new ReferencedEnvelope(-extent,extent,-extent,extent,CRS.decode("EPSG:3857"));
+
+        GridCoverage2D coverage = process.execute(features, 1, "Basic", null, null, 0f, null, false, envelope, 64, 64, null);
+        assertEquals(64, coverage.getGridGeometry().getGridRange2D().getSpan(0));
+        assertEquals(64, coverage.getGridGeometry().getGridRange2D().getSpan(1));
+        assertEquals(10, coverage.evaluate(webMercator(22.5, 22.5), new float[1])[0],1e-10);
+        assertEquals(0, coverage.evaluate(webMercator(-22.5, 22.5), new float[1])[0],1e-10);
+        assertEquals(10, coverage.evaluate(webMercator(-157.5, -67.5), new float[1])[0],1e-10);
+        assertEquals(10, coverage.evaluate(webMercator(157.5, 67.5), new float[1])[0],1e-10);
+        assertEquals(0, coverage.evaluate(webMercator(157.5, -67.5), new float[1])[0],1e-10);
+    }
+
+    @Test
+    public void testOutputAcrossDateline() {
+        ReferencedEnvelope envelope = new ReferencedEnvelope(90,270,-90,90,DefaultGeographicCRS.WGS84);
+
+        GridCoverage2D coverage = process.execute(features, 1, "Basic", null, null, 0f, null, false, envelope, 8, 8, null);
+        assertEquals(10, coverage.evaluate(new Point2D.Double(160, 60), new float[1])[0],1e-10);
+        assertEquals(10, coverage.evaluate(new Point2D.Double(200, -60), new float[1])[0],1e-10);
+        assertEquals(0, coverage.evaluate(new Point2D.Double(200, 60), new float[1])[0],1e-10);
+        assertEquals(0, coverage.evaluate(new Point2D.Double(160, -60), new float[1])[0],1e-10);
+    }
+
     @Test
     public void testSubCellCropWithSheer() {
         ReferencedEnvelope envelope = new ReferencedEnvelope(-168.75,168.75,-78.75,78.75,DefaultGeographicCRS.WGS84);
@@ -108,6 +142,22 @@ public class GeoHashGridProcessTest {
         checkInternal(coverage, fineDelta);
     }
 
+    @Test
+    public void testGeoTileGrid() throws JsonProcessingException {
+        ObjectMapper mapper = new ObjectMapper();
+        SimpleFeatureCollection tileFeatures = TestUtil.createAggregationFeatures(ImmutableList.of(
+                ImmutableMap.of("_aggregation", mapper.writeValueAsBytes(ImmutableMap.of("key","1/0/0","doc_count",10))),
+                ImmutableMap.of("_aggregation", mapper.writeValueAsBytes(ImmutableMap.of("key","1/1/1","doc_count",10)))
+                ));
+        ReferencedEnvelope envelope = new ReferencedEnvelope(-180,180,-80,80,DefaultGeographicCRS.WGS84);
+
+        GridCoverage2D coverage = process.execute(tileFeatures, 1, "Basic", null, null, 0f, null, false, envelope, 36, 16, null);
+        assertEquals(10, coverage.evaluate(new Point2D.Double(-90, 45), new float[1])[0],1e-10);
+        assertEquals(0, coverage.evaluate(new Point2D.Double(90, 45), new float[1])[0],1e-10);
+        assertEquals(10, coverage.evaluate(new Point2D.Double(90, -45), new float[1])[0],1e-10);
+        assertEquals(0, coverage.evaluate(new Point2D.Double(-90, -45), new float[1])[0],1e-10);
+    }
+
     @Test
     public void testInvertQuery() {
         Filter filter = ff.bbox("geom", 0, 0, 0, 0, "EPSG:4326");
@@ -140,6 +190,17 @@ public class GeoHashGridProcessTest {
         assertEquals(ff.bbox("geom", 0, 2, 1, 3, "EPSG:4326"), queryOut.getFilter());
     }
 
+    @Test
+    public void testInvertQueryPixelSize() {
+        Filter filter = ff.bbox("geom", 0, 0, 0, 0, "EPSG:4326");
+        ReferencedEnvelope env = new ReferencedEnvelope(0,10,2,3,DefaultGeographicCRS.WGS84);
+        Query query = new Query();
+        query.setFilter(filter);
+        Query queryOut = process.invertQuery(env, query, new GridGeometry2D(new GridEnvelope2D(0,0,100,10), env));
+        assertEquals(0.1, (Double) queryOut.getHints().get(Hints.GEOMETRY_DISTANCE), 1e-9);
+        assertEquals(ff.bbox("geom", 0, 2, 10, 3, "EPSG:4326"), queryOut.getFilter());
+    }
+
     @Test
     public void testInvertQueryWithOtherFilterElement() {
         Filter filter = ff.and(ff.equals(ff.property("key"), ff.literal("value")), ff.bbox("geom", 0, 0, 0, 0, "EPSG:4326"));
@@ -163,6 +224,11 @@ public class GeoHashGridProcessTest {
         assertEquals(0, coverage.evaluate(new Point2D.Double(135-delta, 45-delta), new float[1])[0],1e-10);
     }
 
+    private Point2D webMercator(double lon, double lat) {
+        double radius = 6378137;
+        return new Point2D.Double(Math.toRadians(lon)*radius, Math.log(Math.tan(Math.PI/4 + Math.toRadians(lat)/2))*radius);
+    }
+
     private void checkEdge(GridCoverage2D coverage, Envelope env, double delta) {
         assertEquals(10, coverage.evaluate(new Point2D.Double(env.getMinX()+delta, env.getMinY()+delta), new float[1])[0],1e-10);
         assertEquals(10, coverage.evaluate(new Point2D.Double(env.getMaxX()-delta, env.getMaxY()-delta), new float[1])[0],1e-10);
@@ -6,12 +6,17 @@ package mil.nga.giat.process.elasticsearch;
 
 import static org.junit.Assert.*;
 
+import java.awt.geom.Point2D;
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.stream.IntStream;
 
+import org.geotools.coverage.grid.GridCoordinates2D;
+import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.geometry.jts.ReferencedEnvelope;
@@ -103,6 +108,20 @@ public class GeoHashGridTest {
         IntStream.range(0, ny).forEach(i-> assertArrayEquals(expected[i], geohashGrid.getGrid()[i], 0.0f));
     }
 
+    @Test
+    public void testGeoHashGridFromUserData() throws Exception {
+        features = TestUtil.createUserDataAggregationFeatures(ImmutableList.of(
+                ImmutableMap.of("key",GeoHash.encodeHash(new LatLong(-89.9,-179.9),1),"doc_count",10)
+                ));
+        ReferencedEnvelope envelope = new ReferencedEnvelope(-180,180,-90,90,DefaultGeographicCRS.WGS84);
+        geohashGrid.initalize(envelope, features);
+        int ny = (int) Math.round(180/geohashGrid.getCellHeight());
+        int nx = (int) Math.round(360/GeoHash.widthDegrees(1));
+        float[][] expected = new float[ny][nx];
+        expected[ny-1][0] = 10;
+        IntStream.range(0, ny).forEach(i-> assertArrayEquals(expected[i], geohashGrid.getGrid()[i], 0.0f));
+    }
+
     @Test
     public void testGeoHashGrid_scaled() throws Exception {
         features = TestUtil.createAggregationFeatures(ImmutableList.of(
@@ -193,6 +212,195 @@ public class GeoHashGridTest {
         IntStream.range(0, geohashGrid.getGrid().length).forEach(i-> assertArrayEquals(new float[geohashGrid.getGrid()[i].length], geohashGrid.getGrid()[i], 0.0f));
     }
 
+    @Test
+    public void testGeoTileGrid() throws Exception {
+        features = TestUtil.createAggregationFeatures(ImmutableList.of(
+                ImmutableMap.of("_aggregation", mapper.writeValueAsBytes(ImmutableMap.of("key","2/0/1","doc_count",10))),
+                ImmutableMap.of("_aggregation", mapper.writeValueAsBytes(ImmutableMap.of("key","2/3/2","doc_count",20)))
+                ));
+        ReferencedEnvelope envelope = new ReferencedEnvelope(-180,180,-90,90,DefaultGeographicCRS.WGS84);
+        geohashGrid.initalize(envelope, features);
+        double extent = 20037508.342789244;
+        assertEquals(extent/2, geohashGrid.getCellWidth(), 1e-6);
+        assertEquals(extent/2, geohashGrid.getCellHeight(), 1e-6);
+        assertEquals(new Envelope(-extent*3/4,extent*3/4,-extent*3/4,extent*3/4), geohashGrid.getEnvelope());
+        ReferencedEnvelope boundingBox = geohashGrid.getBoundingBox();
+        assertTrue(CRS.equalsIgnoreMetadata(CRS.decode("EPSG:3857"), boundingBox.getCoordinateReferenceSystem()));
+        assertEquals(new Envelope(-extent,extent,-extent,extent), new Envelope(boundingBox));
+        float[][] expected = {{0,0,0,0},{10,0,0,0},{0,0,0,20},{0,0,0,0}};
+        assertEquals(expected.length, geohashGrid.getGrid().length);
+        IntStream.range(0, expected.length).forEach(i-> assertArrayEquals(expected[i], geohashGrid.getGrid()[i], 0.0f));
+    }
+
+    @Test
+    public void testGeoTileGridAcrossDateline() throws Exception {
+        features = TestUtil.createAggregationFeatures(ImmutableList.of(
+                ImmutableMap.of("_aggregation", mapper.writeValueAsBytes(ImmutableMap.of("key","1/1/0","doc_count",10))),
+                ImmutableMap.of("_aggregation", mapper.writeValueAsBytes(ImmutableMap.of("key","1/0/1","doc_count",20)))
+                ));
+        ReferencedEnvelope envelope = new ReferencedEnvelope(-360,180,-90,90,DefaultGeographicCRS.WGS84);
+        geohashGrid.initalize(envelope, features);
+        float[][] expected = {{10,0,10},{0,20,0}};
+        assertEquals(expected.length, geohashGrid.getGrid().length);
+        IntStream.range(0, expected.length).forEach(i-> assertArrayEquals(expected[i], geohashGrid.getGrid()[i], 0.0f));
+    }
+
+    @Test
+    public void testGeoTileGridSubset() throws Exception {
+        features = TestUtil.createAggregationFeatures(ImmutableList.of(
+                ImmutableMap.of("_aggregation", mapper.writeValueAsBytes(ImmutableMap.of("key","8/135/93","doc_count",10))),
+                ImmutableMap.of("_aggregation", mapper.writeValueAsBytes(ImmutableMap.of("key","8/0/0","doc_count",20)))
+                ));
+        ReferencedEnvelope envelope = new ReferencedEnvelope(10,20,40,50,DefaultGeographicCRS.WGS84);
+        geohashGrid.initalize(envelope, features);
+        assertEquals(11, geohashGrid.getGrid().length);
+        assertEquals(8, geohashGrid.getGrid()[0].length);
+        float[][] expected = new float[11][8];
+        expected[7][0] = 10;
+        IntStream.range(0, expected.length).forEach(i-> assertArrayEquals(expected[i], geohashGrid.getGrid()[i], 0.0f));
+    }
+
+    @Test
+    public void testGeoHashGridManyBuckets() throws Exception {
+        final int precision = 4;
+        final int numBuckets = 100000;
+        final int lonCells = (int) Math.round(360/GeoHash.widthDegrees(precision));
+        final List<Map<String,Object>> buckets = new ArrayList<>();
+        for (int i = 0; i < numBuckets; i++) {
+            final double lon = -180 + (i % lonCells + 0.5)*GeoHash.widthDegrees(precision);
+            final double lat = -90 + (i / lonCells + 0.5)*GeoHash.heightDegrees(precision);
+            buckets.add(ImmutableMap.of("key", GeoHash.encodeHash(lat, lon, precision), "doc_count", i % 100 + 1));
+        }
+        features = TestUtil.createUserDataAggregationFeatures(buckets);
+        ReferencedEnvelope envelope = new ReferencedEnvelope(-180,180,-90,90,DefaultGeographicCRS.WGS84);
+        geohashGrid.initalize(envelope, features);
+        assertEquals(lonCells, geohashGrid.getNumCol());
+        final float[] values = geohashGrid.getValues();
+        final int numRow = geohashGrid.getNumRow();
+        for (int i = 0; i < numBuckets; i++) {
+            final int row = numRow - 1 - i / lonCells;
+            assertEquals(i % 100 + 1, values[row*lonCells + i % lonCells], 0);
+        }
+        assertEquals(0, values[0], 0);
+    }
+
+    @Test
+    public void testToGridCoverageUpScale() throws Exception {
+        initalizeQuadrants(1);
+        final ReferencedEnvelope envelope = new ReferencedEnvelope(0,90,0,90,DefaultGeographicCRS.WGS84);
+        final GridCoverage2D coverage = geohashGrid.toGridCoverage2D(envelope, 4, 4);
+        assertEquals(new Envelope(envelope), new Envelope(new ReferencedEnvelope(coverage.getEnvelope())));
+        checkQuadrants(coverage, 4, 4);
+    }
+
+    @Test
+    public void testToGridCoverageDownScale() throws Exception {
+        initalizeQuadrants(2);
+        assertEquals(8, geohashGrid.getNumCol());
+        assertEquals(16, geohashGrid.getNumRow());
+        final ReferencedEnvelope envelope = new ReferencedEnvelope(0,90,0,90,DefaultGeographicCRS.WGS84);
+        checkQuadrants(geohashGrid.toGridCoverage2D(envelope, 2, 2), 2, 2);
+    }
+
+    @Test
+    public void testToGridCoverageInexactScale() throws Exception {
+        initalizeQuadrants(1);
+        final ReferencedEnvelope envelope = new ReferencedEnvelope(0,90,0,90,DefaultGeographicCRS.WGS84);
+        checkQuadrants(geohashGrid.toGridCoverage2D(envelope, 7, 3), 7, 3);
+    }
+
+    @Test
+    public void testToGridCoverageLargeScale() throws Exception {
+        initalizeQuadrants(1);
+        final ReferencedEnvelope envelope = new ReferencedEnvelope(0,90,0,90,DefaultGeographicCRS.WGS84);
+        final GridCoverage2D coverage = geohashGrid.toGridCoverage2D(envelope, 1499, 1501);
+        final RenderedImage renderedImage = coverage.getRenderedImage();
+        assertEquals(1499, renderedImage.getWidth());
+        assertEquals(1501, renderedImage.getHeight());
+        assertEquals(1, coverage.evaluate(new GridCoordinates2D(0,0), new float[1])[0], 1e-10);
+        assertEquals(2, coverage.evaluate(new GridCoordinates2D(1498,0), new float[1])[0], 1e-10);
+        assertEquals(3, coverage.evaluate(new GridCoordinates2D(0,1500), new float[1])[0], 1e-10);
+        assertEquals(4, coverage.evaluate(new GridCoordinates2D(1498,1500), new float[1])[0], 1e-10);
+    }
+
+    @Test
+    public void testToGridCoverageCrop() throws Exception {
+        initalizeQuadrants(1);
+        final ReferencedEnvelope envelope = new ReferencedEnvelope(45,90,45,90,DefaultGeographicCRS.WGS84);
+        final GridCoverage2D coverage = geohashGrid.toGridCoverage2D(envelope, 1, 1);
+        final RenderedImage renderedImage = coverage.getRenderedImage();
+        assertEquals(1, renderedImage.getWidth());
+        assertEquals(1, renderedImage.getHeight());
+        assertEquals(2, coverage.evaluate(new Point2D.Double(67.5,67.5), new float[1])[0], 1e-10);
+    }
+
+    /**
+     * Initialize a grid over (0,90,0,90) with values 1 and 2 in the top left
+     * and right quadrants and 3 and 4 in the bottom left and right quadrants
+     */
+    private void initalizeQuadrants(int precision) throws Exception {
+        final double cellWidth = GeoHash.widthDegrees(precision);
+        final double cellHeight = GeoHash.heightDegrees(precision);
+        final List<Map<String,Object>> buckets = new ArrayList<>();
+        for (double lon = cellWidth/2; lon < 90; lon += cellWidth) {
+            for (double lat = cellHeight/2; lat < 90; lat += cellHeight) {
+                final int value = (lat > 45 ? 1 : 3) + (lon > 45 ? 1 : 0);
+                buckets.add(ImmutableMap.of("key", GeoHash.encodeHash(lat, lon, precision), "doc_count", value));
+            }
+        }
+        features = TestUtil.createUserDataAggregationFeatures(buckets);
+        geohashGrid.initalize(new ReferencedEnvelope(0,90,0,90,DefaultGeographicCRS.WGS84), features);
+    }
+
+    /**
+     * Check each output pixel has the value of the quadrant containing its
+     * center, skipping pixels centered on a quadrant edge
+     */
+    private void checkQuadrants(GridCoverage2D coverage, int width, int height) {
+        final RenderedImage renderedImage = coverage.getRenderedImage();
+        assertEquals(width, renderedImage.getWidth());
+        assertEquals(height, renderedImage.getHeight());
+        for (int row = 0; row < height; row++) {
+            final double lat = 90 - (row+0.5)*90/height;
+            for (int col = 0; col < width; col++) {
+                final double lon = (col+0.5)*90/width;
+                if (Math.abs(lat-45) < 1e-6 || Math.abs(lon-45) < 1e-6) {
+                    continue;
+                }
+                final int expected = (lat > 45 ? 1 : 3) + (lon > 45 ? 1 : 0);
+                assertEquals(expected, coverage.evaluate(new GridCoordinates2D(col,row), new float[1])[0], 1e-10);
+            }
+        }
+    }
+
+    @Test
+    public void testDecodeGeohash() {
+        final String geohash = GeoHash.encodeHash(new LatLong(45.1,-93.2), 5);
+        final LatLong center = GeoHash.decodeHash(geohash);
+        long cell = GeoHashGrid.decodeGeohash(geohash, 5);
+        assertEquals((long) ((center.getLon()+180)/GeoHash.widthDegrees(5)), cell >>> 32);
+        assertEquals((long) ((center.getLat()+90)/GeoHash.heightDegrees(5)), cell & 0xFFFFFFFFL);
+        cell = GeoHashGrid.decodeGeohash(geohash, 2);
+        assertEquals((long) ((center.getLon()+180)/GeoHash.widthDegrees(2)), cell >>> 32);
+        assertEquals((long) ((center.getLat()+90)/GeoHash.heightDegrees(2)), cell & 0xFFFFFFFFL);
+        assertEquals(-1, GeoHashGrid.decodeGeohash(null, 1));
+        assertEquals(-1, GeoHashGrid.decodeGeohash("", 1));
+        assertEquals(-1, GeoHashGrid.decodeGeohash("invalid", 7));
+        assertEquals(-1, GeoHashGrid.decodeGeohash("DR5", 3));
+    }
+
+    @Test
+    public void testDecodeTileKey() {
+        assertArrayEquals(new int[] {0,0,0}, GeoHashGrid.decodeTileKey("0/0/0"));
+        assertArrayEquals(new int[] {8,135,93}, GeoHashGrid.decodeTileKey("8/135/93"));
+        assertNull(GeoHashGrid.decodeTileKey(null));
+        assertNull(GeoHashGrid.decodeTileKey("xv"));
+        assertNull(GeoHashGrid.decodeTileKey("1/2/0"));
+        assertNull(GeoHashGrid.decodeTileKey("30/0/0"));
+        assertNull(GeoHashGrid.decodeTileKey("1/a/0"));
+        assertNull(GeoHashGrid.decodeTileKey("1/0/0/0"));
+    }
+
     @Test
     public void testPluckBucketName() {
         String plucked = this.geohashGrid.pluckBucketName(SIMPLE_BUCKET);
@@ -32,6 +32,20 @@ class TestUtil {
         return collection;
     }
 
+    public static SimpleFeatureCollection createUserDataAggregationFeatures(List<Map<String,Object>> buckets) {
+        final SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
+        builder.setName( "testType" );
+        builder.add("_aggregation", HashMap.class );
+        final SimpleFeatureType featureType = builder.buildFeatureType();
+        final DefaultFeatureCollection collection = new DefaultFeatureCollection();
+        final SimpleFeatureBuilder featureBuilder = new SimpleFeatureBuilder(featureType);
+        buckets.forEach(bucket -> {
+            featureBuilder.featureUserData(GeoHashGrid.AGGREGATION_KEY, bucket);
+            collection.add(featureBuilder.buildFeature(null));
+        });
+        return collection;
+    }
+
     public static Map<String,Object> createDocCountBucket(String bucketName, int docCount) {
         Map<String,Object> bucket = new HashMap<>();
         bucket.put(GeoHashGrid.BUCKET_NAME_KEY, bucketName);
@@ -5,6 +5,8 @@
 package mil.nga.giat.data.elasticsearch;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 import java.util.List;
 import java.util.Map;
@@ -12,8 +14,16 @@ import java.util.Map;
 @JsonIgnoreProperties(ignoreUnknown = true)
 class ElasticAggregation {
 
+    @JsonDeserialize(using = ElasticBucketsDeserializer.class)
     private List<Map<String,Object>> buckets;
 
+    private Map<String,Map<String,Double>> bounds;
+
+    private Object value;
+
+    @JsonProperty("after_key")
+    private Map<String,Object> afterKey;
+
     public List<Map<String, Object>> getBuckets() {
         return buckets;
     }
@@ -22,6 +32,41 @@ class ElasticAggregation {
         this.buckets = buckets;
     }
 
+    /**
+     * @return geo_bounds aggregation result with top_left and bottom_right
+     * points or null if no documents matched
+     */
+    public Map<String, Map<String, Double>> getBounds() {
+        return bounds;
+    }
+
+    public void setBounds(Map<String, Map<String, Double>> bounds) {
+        this.bounds = bounds;
+    }
+
+    /**
+     * @return Metric aggregation value
+     */
+    public Object getValue() {
+        return value;
+    }
+
+    public void setValue(Object value) {
+        this.value = value;
+    }
+
+    /**
+     * @return Composite aggregation key of the last bucket, used to request the
+     * next page
+     */
+    public Map<String, Object> getAfterKey() {
+        return afterKey;
+    }
+
+    public void setAfterKey(Map<String, Object> afterKey) {
+        this.afterKey = afterKey;
+    }
+
     @Override
     public String toString() {
         return "ElasticAggregation[numBuckets=" +
@@ -50,6 +50,10 @@ public class ElasticAttribute implements Serializable, Comparable<ElasticAttribu
 
     private boolean nested;
 
+    private boolean docValues;
+
+    private Boolean useDocValues;
+
     private Integer order;
 
     private String customName;
@@ -62,6 +66,7 @@ public class ElasticAttribute implements Serializable, Comparable<ElasticAttribu
         this.useShortName = false;
         this.stored = false;
         this.nested = false;
+        this.docValues = false;
     }
 
     public ElasticAttribute(ElasticAttribute other) {
@@ -77,6 +82,8 @@ public class ElasticAttribute implements Serializable, Comparable<ElasticAttribu
         this.analyzed = other.analyzed;
         this.stored = other.stored;
         this.nested = other.nested;
+        this.docValues = other.docValues;
+        this.useDocValues = other.useDocValues;
         this.order = other.order;
         this.customName = other.customName;
     }
@@ -173,6 +180,37 @@ public class ElasticAttribute implements Serializable, Comparable<ElasticAttribu
         this.nested = nested;
     }
 
+    public boolean isDocValues() {
+        return docValues;
+    }
+
+    public void setDocValues(boolean docValues) {
+        this.docValues = docValues;
+    }
+
+    public Boolean getUseDocValues() {
+        return useDocValues;
+    }
+
+    /**
+     * Read the attribute from doc values, overriding the layer default. Use
+     * null to apply the layer default.
+     */
+    public void setUseDocValues(Boolean useDocValues) {
+        this.useDocValues = useDocValues;
+    }
+
+    /**
+     * Whether the attribute is read from doc values rather than the source or
+     * stored fields. Only attributes with doc values are eligible.
+     *
+     * @param layerDefault Layer default, used when the attribute does not
+     * override it
+     */
+    public boolean isDocValuesRetrieval(boolean layerDefault) {
+        return docValues && (useDocValues != null ? useDocValues : layerDefault);
+    }
+
     public void setOrder(Integer order) {
         this.order = order;
     }
@@ -202,7 +240,7 @@ public class ElasticAttribute implements Serializable, Comparable<ElasticAttribu
     @Override
     public int hashCode() {
         return Objects.hash(name, type, use, defaultGeometry, srid, dateFormat,
-                useShortName, geometryType, analyzed, stored, nested, order, customName);
+                useShortName, geometryType, analyzed, stored, nested, docValues, useDocValues, order, customName);
     }
 
     @Override
@@ -223,6 +261,8 @@ public class ElasticAttribute implements Serializable, Comparable<ElasticAttribu
             equal &= Objects.equals(analyzed, other.analyzed);
             equal &= Objects.equals(stored, other.stored);
             equal &= Objects.equals(nested, other.nested);
+            equal &= Objects.equals(docValues, other.docValues);
+            equal &= Objects.equals(useDocValues, other.useDocValues);
             equal &= Objects.equals(order, other.order);
             equal &= Objects.equals(customName, other.customName);
         }
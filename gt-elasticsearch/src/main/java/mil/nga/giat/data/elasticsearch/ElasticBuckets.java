@@ -0,0 +1,228 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Aggregation buckets stored in columns. Bucket keys and document counts are
+ * kept in arrays and single value metric sub-aggregations (e.g.
+ * <code>{"value": 12.5}</code>) in one double array per aggregation name.
+ * Any other bucket entries are kept as parsed JSON values. Bucket maps are
+ * only created when an element of the list is accessed, so large geohash or
+ * terms aggregations are not held in memory as one map per bucket.
+ */
+class ElasticBuckets extends AbstractList<Map<String,Object>> {
+
+    static final String KEY = "key";
+
+    static final String DOC_COUNT = "doc_count";
+
+    static final String VALUE = "value";
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Object[] keys;
+
+    private long[] docCounts;
+
+    /**
+     * Set bits mark buckets with a doc_count entry
+     */
+    private long[] hasDocCount;
+
+    private final Map<String,double[]> metrics;
+
+    /**
+     * Set bits mark buckets with the metric, null metric values are stored as
+     * NaN
+     */
+    private final Map<String,long[]> hasMetric;
+
+    /**
+     * Metrics with at least one floating point value. Values of other metrics
+     * are returned as integers, as they were in the response.
+     */
+    private final Set<String> floatMetrics;
+
+    private Map<String,Object>[] others;
+
+    private int size;
+
+    ElasticBuckets() {
+        this(INITIAL_CAPACITY);
+    }
+
+    @SuppressWarnings("unchecked")
+    ElasticBuckets(int capacity) {
+        keys = new Object[capacity];
+        docCounts = new long[capacity];
+        hasDocCount = new long[words(capacity)];
+        metrics = new LinkedHashMap<>();
+        hasMetric = new LinkedHashMap<>();
+        floatMetrics = new HashSet<>();
+        others = new Map[capacity];
+    }
+
+    /**
+     * Append an empty bucket
+     *
+     * @return Index of the new bucket
+     */
+    int add() {
+        ensureCapacity(size + 1);
+        return size++;
+    }
+
+    void setKey(int index, Object key) {
+        keys[index] = key;
+    }
+
+    void setDocCount(int index, long docCount) {
+        docCounts[index] = docCount;
+        hasDocCount[index >>> 6] |= 1L << index;
+    }
+
+    void setMetricValue(int index, String name, Number value) {
+        double[] column = metrics.get(name);
+        if (column == null) {
+            column = new double[keys.length];
+            Arrays.fill(column, Double.NaN);
+            metrics.put(name, column);
+            hasMetric.put(name, new long[words(keys.length)]);
+        }
+        column[index] = value != null ? value.doubleValue() : Double.NaN;
+        if (value != null && !(value instanceof Integer || value instanceof Long)) {
+            floatMetrics.add(name);
+        }
+        hasMetric.get(name)[index >>> 6] |= 1L << index;
+    }
+
+    void setOther(int index, String name, Object value) {
+        if (others[index] == null) {
+            others[index] = new LinkedHashMap<>();
+        }
+        others[index].put(name, value);
+    }
+
+    /**
+     * Release unused capacity once all buckets have been added
+     */
+    void trim() {
+        if (keys.length > size) {
+            keys = Arrays.copyOf(keys, size);
+            docCounts = Arrays.copyOf(docCounts, size);
+            hasDocCount = Arrays.copyOf(hasDocCount, words(size));
+            metrics.replaceAll((name, column) -> Arrays.copyOf(column, size));
+            hasMetric.replaceAll((name, present) -> Arrays.copyOf(present, words(size)));
+            others = Arrays.copyOf(others, size);
+        }
+    }
+
+    Object getKey(int index) {
+        checkIndex(index);
+        return keys[index];
+    }
+
+    long getDocCount(int index) {
+        checkIndex(index);
+        return docCounts[index];
+    }
+
+    /**
+     * @return Names of the single value metric columns
+     */
+    Set<String> getMetricNames() {
+        return Collections.unmodifiableSet(metrics.keySet());
+    }
+
+    /**
+     * @return Metric value or NaN if the bucket has no value for the metric
+     */
+    double getMetricValue(int index, String name) {
+        checkIndex(index);
+        final double[] column = metrics.get(name);
+        return column != null ? column[index] : Double.NaN;
+    }
+
+    @Override
+    public Map<String,Object> get(int index) {
+        checkIndex(index);
+        final Map<String,Object> bucket = new LinkedHashMap<>();
+        if (keys[index] != null) {
+            bucket.put(KEY, keys[index]);
+        }
+        if (isSet(hasDocCount, index)) {
+            bucket.put(DOC_COUNT, toInteger(docCounts[index]));
+        }
+        metrics.forEach((name, column) -> {
+            if (isSet(hasMetric.get(name), index)) {
+                final double value = column[index];
+                final Number number;
+                if (Double.isNaN(value)) {
+                    number = null;
+                } else if (floatMetrics.contains(name)) {
+                    number = value;
+                } else {
+                    number = toInteger((long) value);
+                }
+                bucket.put(name, Collections.singletonMap(VALUE, number));
+            }
+        });
+        if (others[index] != null) {
+            bucket.putAll(others[index]);
+        }
+        return bucket;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > keys.length) {
+            final int length = Math.max(capacity, keys.length + (keys.length >> 1) + 1);
+            keys = Arrays.copyOf(keys, length);
+            docCounts = Arrays.copyOf(docCounts, length);
+            hasDocCount = Arrays.copyOf(hasDocCount, words(length));
+            metrics.replaceAll((name, column) -> {
+                final double[] grown = Arrays.copyOf(column, length);
+                Arrays.fill(grown, column.length, length, Double.NaN);
+                return grown;
+            });
+            hasMetric.replaceAll((name, present) -> Arrays.copyOf(present, words(length)));
+            others = Arrays.copyOf(others, length);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    private static Number toInteger(long value) {
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            return (int) value;
+        }
+        return value;
+    }
+
+    private static boolean isSet(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private static int words(int capacity) {
+        return (capacity + 63) >>> 6;
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+/**
+ * Streaming deserializer of aggregation <code>buckets</code> arrays into
+ * {@link ElasticBuckets}. Keys, document counts and single value metrics are
+ * read straight into columns and <code>buckets</code> arrays of
+ * sub-aggregations are decoded recursively, in one pass over the response.
+ */
+class ElasticBucketsDeserializer extends StdDeserializer<List<Map<String,Object>>> {
+
+    private static final String BUCKETS = "buckets";
+
+    public ElasticBucketsDeserializer() {
+        super(List.class);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Map<String,Object>> deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        if (!parser.isExpectedStartArrayToken()) {
+            return (List<Map<String,Object>>) context.handleUnexpectedToken(List.class, parser);
+        }
+        return readBuckets(parser, context);
+    }
+
+    static ElasticBuckets readBuckets(JsonParser parser, DeserializationContext context) throws IOException {
+        final ElasticBuckets buckets = new ElasticBuckets();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == JsonToken.START_OBJECT) {
+                readBucket(parser, context, buckets, buckets.add());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        buckets.trim();
+        return buckets;
+    }
+
+    private static void readBucket(JsonParser parser, DeserializationContext context, ElasticBuckets buckets, int index) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+            if (name.equals(ElasticBuckets.KEY)) {
+                buckets.setKey(index, readValue(parser, context));
+            } else if (name.equals(ElasticBuckets.DOC_COUNT) && token == JsonToken.VALUE_NUMBER_INT) {
+                buckets.setDocCount(index, parser.getLongValue());
+            } else if (token == JsonToken.START_OBJECT) {
+                final Map<String,Object> aggregation = readAggregation(parser, context);
+                if (aggregation.size() == 1 && aggregation.containsKey(ElasticBuckets.VALUE)
+                        && (aggregation.get(ElasticBuckets.VALUE) == null || aggregation.get(ElasticBuckets.VALUE) instanceof Number)) {
+                    buckets.setMetricValue(index, name, (Number) aggregation.get(ElasticBuckets.VALUE));
+                } else {
+                    buckets.setOther(index, name, aggregation);
+                }
+            } else {
+                buckets.setOther(index, name, readValue(parser, context));
+            }
+        }
+    }
+
+    /**
+     * Read a sub-aggregation object, decoding nested bucket arrays
+     */
+    private static Map<String,Object> readAggregation(JsonParser parser, DeserializationContext context) throws IOException {
+        final Map<String,Object> aggregation = new LinkedHashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+            if (name.equals(BUCKETS) && token == JsonToken.START_ARRAY) {
+                aggregation.put(name, readBuckets(parser, context));
+            } else {
+                aggregation.put(name, readValue(parser, context));
+            }
+        }
+        return aggregation;
+    }
+
+    private static Object readValue(JsonParser parser, DeserializationContext context) throws IOException {
+        switch (parser.getCurrentToken()) {
+        case VALUE_STRING:
+            return parser.getText();
+        case VALUE_NULL:
+            return null;
+        default:
+            return context.readValue(parser, Object.class);
+        }
+    }
+
+}
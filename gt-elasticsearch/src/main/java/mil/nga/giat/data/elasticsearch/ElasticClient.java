@@ -6,27 +6,107 @@ package mil.nga.giat.data.elasticsearch;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.ResponseFormat;
+
 interface ElasticClient extends Closeable {
 
     String RUN_AS = "es-security-runas-user";
 
     double getVersion();
 
+    /**
+     * Whether the server version is at least the given major and minor
+     * version. Unlike comparisons against {@link #getVersion()} this is
+     * correct for minor versions with more than one digit (e.g. 7.10).
+     */
+    boolean isVersionAtLeast(int major, int minor);
+
     List<String> getTypes(String indexName) throws IOException;
 
     Map<String,Object> getMapping(String indexName, String type) throws IOException;
 
+    /**
+     * Maximum number of primary shards across the indices matching the given
+     * index name or alias.
+     */
+    int getNumberOfShards(String indexName) throws IOException;
+
     ElasticResponse search(String searchIndices, String type, ElasticRequest request) throws IOException;
 
+    /**
+     * Exact number of documents matching the query using the count API.
+     */
+    long count(String searchIndices, String type, Map<String,Object> query) throws IOException;
+
+    ElasticHitStream searchStream(String searchIndices, String type, ElasticRequest request, Collection<String> fieldNames,
+            ElasticGeometryReader geometryReader) throws IOException;
+
     ElasticResponse scroll(String scrollId, Integer scrollTime) throws IOException;
 
+    String openPointInTime(String indexName, Integer keepAlive) throws IOException;
+
+    void closePointInTime(String pointInTimeId) throws IOException;
+
     @Override
     void close() throws IOException;
 
     void clearScroll(Set<String> scrollIds) throws IOException;
 
+    /**
+     * Enable sharing of a single in-flight request and its response between
+     * concurrent identical searches. Scroll and point in time searches are
+     * never coalesced.
+     */
+    void setRequestCoalescingEnabled(boolean enabled);
+
+    /**
+     * @param responseCompressionEnabled Whether to request gzip compressed
+     * responses
+     * @param requestCompressionEnabled Whether to gzip compress request bodies
+     * larger than the request compression threshold
+     */
+    void setCompression(boolean responseCompressionEnabled, boolean requestCompressionEnabled);
+
+    /**
+     * Set the content type requested for search, scroll and point in time
+     * responses. Admin requests always use JSON.
+     */
+    void setResponseFormat(ResponseFormat responseFormat);
+
+    /**
+     * @return Request coalescer or null if coalescing is disabled
+     */
+    ElasticRequestCoalescer<ElasticResponse> getRequestCoalescer();
+
+    /**
+     * Set the cache used for search responses. Scroll and point in time
+     * searches are never cached.
+     *
+     * @param resultCache Result cache or null to disable caching
+     */
+    void setResultCache(ElasticResultCache resultCache);
+
+    ElasticResultCache getResultCache();
+
+    /**
+     * Enable batching of concurrent searches into _msearch requests. Searches
+     * are only batched with searches for the same user. Scroll and point in
+     * time searches are never batched.
+     *
+     * @param batchWindow Maximum time in milliseconds to wait for searches to
+     * batch. Zero disables batching.
+     * @param maxBatchSize Maximum number of searches per request
+     */
+    void setSearchBatching(int batchWindow, int maxBatchSize);
+
+    /**
+     * @return Search batcher with batch counts or null if batching is disabled
+     */
+    ElasticMultiSearchBatcher<?, ?> getSearchBatcher();
+
 }
@@ -0,0 +1,112 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator over all buckets of a composite aggregation. Pages of buckets are
+ * requested with the previous page's {@code after_key} as the iterator
+ * advances, so only a single page is held in memory at a time. Request
+ * failures are thrown as {@link UncheckedIOException}.
+ */
+class ElasticCompositeAggregationIterator implements Iterator<Map<String,Object>> {
+
+    static final String AGGREGATION_NAME = "composite";
+
+    private final ElasticClient client;
+
+    private final String indexName;
+
+    private final String docType;
+
+    private final ElasticRequest request;
+
+    private final List<Map<String,Object>> sources;
+
+    private final Map<String,Object> subAggregations;
+
+    private final int pageSize;
+
+    private Iterator<Map<String,Object>> buckets;
+
+    private Map<String,Object> afterKey;
+
+    private boolean lastPage;
+
+    /**
+     * @param request Search request defining the query. Size and aggregations
+     * are replaced on each page request.
+     * @param sources Composite aggregation value sources
+     * @param subAggregations Aggregations computed for each bucket or null
+     * @param pageSize Number of buckets per page
+     */
+    ElasticCompositeAggregationIterator(ElasticClient client, String indexName, String docType, ElasticRequest request,
+            List<Map<String,Object>> sources, Map<String,Object> subAggregations, int pageSize) {
+        this.client = client;
+        this.indexName = indexName;
+        this.docType = docType;
+        this.request = request;
+        this.sources = sources;
+        this.subAggregations = subAggregations;
+        this.pageSize = pageSize;
+        this.buckets = Collections.emptyIterator();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!buckets.hasNext() && !lastPage) {
+            try {
+                nextPage();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return buckets.hasNext();
+    }
+
+    @Override
+    public Map<String,Object> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return buckets.next();
+    }
+
+    private void nextPage() throws IOException {
+        final Map<String,Object> composite = new HashMap<>();
+        composite.put("size", pageSize);
+        composite.put("sources", sources);
+        if (afterKey != null) {
+            composite.put("after", afterKey);
+        }
+        final Map<String,Map<String,Object>> aggregation = new HashMap<>();
+        aggregation.put("composite", composite);
+        if (subAggregations != null) {
+            aggregation.put("aggregations", subAggregations);
+        }
+        request.setSize(0);
+        request.setAggregations(Collections.singletonMap(AGGREGATION_NAME, aggregation));
+
+        final ElasticResponse response = client.search(indexName, docType, request);
+        final ElasticAggregation result = response.getAggregations() != null
+                ? response.getAggregations().get(AGGREGATION_NAME) : null;
+        if (result == null || result.getBuckets() == null) {
+            throw new IOException("Missing composite aggregation in response");
+        }
+        final List<Map<String,Object>> page = result.getBuckets();
+        afterKey = result.getAfterKey();
+        lastPage = afterKey == null || page.size() < pageSize;
+        buckets = page.iterator();
+    }
+
+}
@@ -42,4 +42,16 @@ final class ElasticConstants {
      */
     public static final String NESTED = "nested";
 
+    /**
+     * Key used in the feature type user data to indicate whether the field is
+     * read from doc values.
+     */
+    public static final String DOC_VALUES = "doc_values";
+
+    /**
+     * Key used in the feature user data to store the parsed bucket of
+     * aggregation features.
+     */
+    public static final String AGGREGATION = "_aggregation";
+
 }
@@ -11,6 +11,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -25,9 +28,13 @@ import org.geotools.data.store.ContentEntry;
 import org.geotools.data.store.ContentFeatureSource;
 import org.geotools.feature.NameImpl;
 import org.geotools.util.logging.Logging;
+import org.locationtech.jts.geom.CoordinateSequenceFactory;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.impl.CoordinateArraySequenceFactory;
+import org.locationtech.jts.geom.impl.PackedCoordinateSequenceFactory;
 import org.opengis.feature.type.Name;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutorService;
 
 import mil.nga.giat.data.elasticsearch.ElasticAttribute.ElasticGeometryType;
 import mil.nga.giat.shaded.es.common.joda.Joda;
@@ -41,6 +48,9 @@ public class ElasticDataStore extends ContentDataStore {
 
     private final static Logger LOGGER = Logging.getLogger(ElasticDataStore.class);
 
+    /** Counter of background threads we generate */
+    private static final AtomicInteger workerThreads = new AtomicInteger(1);
+
     private ElasticClient client;
 
     private final String indexName;
@@ -63,10 +73,28 @@ public class ElasticDataStore extends ContentDataStore {
 
     private ArrayEncoding arrayEncoding;
 
+    private AggregationEncoding aggregationEncoding;
+
     private Long gridSize;
 
     private Double gridThreshold;
 
+    private boolean streamingEnabled;
+
+    private Integer scrollPrefetch;
+
+    private Integer scrollSlices;
+
+    private PaginationMode paginationMode;
+
+    private CountMode countMode;
+
+    private CoordinateSequenceType coordinateSequenceType;
+
+    private ExecutorService executorService;
+
+    private ElasticMetadataCache metadataCache;
+
     public enum ArrayEncoding {
 
         /**
@@ -80,6 +108,128 @@ public class ElasticDataStore extends ContentDataStore {
         CSV
     }
 
+    public enum AggregationEncoding {
+
+        /**
+         * Set aggregation buckets as JSON bytes in the _aggregation attribute
+         * and as parsed maps in the feature user data.
+         */
+        JSON,
+
+        /**
+         * Only set parsed aggregation buckets in the feature user data,
+         * avoiding serialization of each bucket.
+         */
+        OBJECT
+    }
+
+    public enum CompressionMode {
+
+        /**
+         * Send and receive uncompressed content.
+         */
+        NONE,
+
+        /**
+         * Request gzip compressed responses.
+         */
+        RESPONSE,
+
+        /**
+         * Request gzip compressed responses and compress large request bodies.
+         */
+        ALL
+    }
+
+    public enum ResponseFormat {
+
+        /**
+         * JSON text responses.
+         */
+        JSON("application/json"),
+
+        /**
+         * Binary Smile encoded responses.
+         */
+        SMILE("application/smile"),
+
+        /**
+         * Binary CBOR encoded responses.
+         */
+        CBOR("application/cbor");
+
+        private final String contentType;
+
+        ResponseFormat(String contentType) {
+            this.contentType = contentType;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+    }
+
+    public enum CoordinateSequenceType {
+
+        /**
+         * Geometries hold an array of coordinate objects.
+         */
+        ARRAY(CoordinateArraySequenceFactory.instance()),
+
+        /**
+         * Geometries hold packed double ordinate arrays.
+         */
+        PACKED_DOUBLE(PackedCoordinateSequenceFactory.DOUBLE_FACTORY),
+
+        /**
+         * Geometries hold packed float ordinate arrays, halving memory
+         * at reduced precision.
+         */
+        PACKED_FLOAT(PackedCoordinateSequenceFactory.FLOAT_FACTORY);
+
+        private final CoordinateSequenceFactory factory;
+
+        CoordinateSequenceType(CoordinateSequenceFactory factory) {
+            this.factory = factory;
+        }
+
+        public CoordinateSequenceFactory getFactory() {
+            return factory;
+        }
+    }
+
+    public enum CountMode {
+
+        /**
+         * Count all matching documents with the count API.
+         */
+        EXACT,
+
+        /**
+         * Count matching documents up to the start index plus max features.
+         */
+        CAPPED,
+
+        /**
+         * Use the default total hit count of the search, which is a lower
+         * bound above 10,000 hits in Elasticsearch 7+.
+         */
+        APPROXIMATE
+    }
+
+    public enum PaginationMode {
+
+        /**
+         * Page sorted results with from and size.
+         */
+        FROM_SIZE,
+
+        /**
+         * Page sorted results with search_after and a point in time.
+         */
+        SEARCH_AFTER
+    }
+
     public ElasticDataStore(String searchHost, Integer hostPort, String indexName) throws IOException {
         this(RestClient.builder(new HttpHost(searchHost, hostPort, "http")).build(), indexName);
     }
@@ -89,16 +239,26 @@ public class ElasticDataStore extends ContentDataStore {
     }
 
     public ElasticDataStore(RestClient restClient, RestClient proxyRestClient, String indexName, boolean enableRunAs) throws IOException {
+        this(restClient, proxyRestClient, indexName, enableRunAs, null);
+    }
+
+    /**
+     * @param metadataCache Cache for mapping, alias and version responses or
+     * null to disable caching. Shared caches are released on dispose.
+     */
+    public ElasticDataStore(RestClient restClient, RestClient proxyRestClient, String indexName, boolean enableRunAs,
+            ElasticMetadataCache metadataCache) throws IOException {
         LOGGER.fine("Initializing data store for " + indexName);
 
         this.indexName = indexName;
+        this.metadataCache = metadataCache;
 
         try {
             checkRestClient(restClient);
             if (proxyRestClient != null) {
                 checkRestClient(proxyRestClient);
             }
-            client = new RestElasticClient(restClient, proxyRestClient, enableRunAs);
+            client = new RestElasticClient(restClient, proxyRestClient, enableRunAs, metadataCache);
         } catch (Exception e) {
             throw new IOException("Unable to create REST client", e);
         }
@@ -115,6 +275,8 @@ public class ElasticDataStore extends ContentDataStore {
         docTypes = new HashMap<>();
 
         arrayEncoding = ArrayEncoding.JSON;
+        aggregationEncoding = AggregationEncoding.JSON;
+        paginationMode = PaginationMode.FROM_SIZE;
     }
 
     @Override
@@ -241,6 +403,22 @@ public class ElasticDataStore extends ContentDataStore {
         this.scrollTime = scrollTime;
     }
 
+    public Integer getScrollPrefetch() {
+        return scrollPrefetch;
+    }
+
+    public void setScrollPrefetch(Integer scrollPrefetch) {
+        this.scrollPrefetch = scrollPrefetch;
+    }
+
+    public Integer getScrollSlices() {
+        return scrollSlices;
+    }
+
+    public void setScrollSlices(Integer scrollSlices) {
+        this.scrollSlices = scrollSlices;
+    }
+
     public ArrayEncoding getArrayEncoding() {
         return arrayEncoding;
     }
@@ -249,6 +427,38 @@ public class ElasticDataStore extends ContentDataStore {
         this.arrayEncoding = arrayEncoding;
     }
 
+    public AggregationEncoding getAggregationEncoding() {
+        return aggregationEncoding;
+    }
+
+    public void setAggregationEncoding(AggregationEncoding aggregationEncoding) {
+        this.aggregationEncoding = aggregationEncoding;
+    }
+
+    public PaginationMode getPaginationMode() {
+        return paginationMode;
+    }
+
+    public void setPaginationMode(PaginationMode paginationMode) {
+        this.paginationMode = paginationMode;
+    }
+
+    public CountMode getCountMode() {
+        return countMode;
+    }
+
+    public void setCountMode(CountMode countMode) {
+        this.countMode = countMode;
+    }
+
+    public CoordinateSequenceType getCoordinateSequenceType() {
+        return coordinateSequenceType;
+    }
+
+    public void setCoordinateSequenceType(CoordinateSequenceType coordinateSequenceType) {
+        this.coordinateSequenceType = coordinateSequenceType;
+    }
+
     public Long getGridSize() {
         return gridSize;
     }
@@ -265,6 +475,14 @@ public class ElasticDataStore extends ContentDataStore {
         this.gridThreshold = gridThreshold;
     }
 
+    boolean isStreamingEnabled() {
+        return streamingEnabled;
+    }
+
+    public void setStreamingEnabled(boolean streamingEnabled) {
+        this.streamingEnabled = streamingEnabled;
+    }
+
     public Map<String, ElasticLayerConfiguration> getLayerConfigurations() {
         return layerConfigurations;
     }
@@ -288,6 +506,102 @@ public class ElasticDataStore extends ContentDataStore {
         return docType;
     }    
 
+    /**
+     * Executor for background requests. Tasks run with the security context of
+     * the submitting thread so that run-as requests are made on behalf of the
+     * same user.
+     */
+    synchronized ExecutorService getExecutorService() {
+        if (executorService == null) {
+            final ExecutorService delegate = Executors.newCachedThreadPool((run) -> {
+                final Thread thread = new Thread(run);
+                thread.setDaemon(true);
+                thread.setName(String.format("elasticsearch-worker-%d", workerThreads.getAndIncrement()));
+                return thread;
+            });
+            executorService = new DelegatingSecurityContextExecutorService(delegate);
+        }
+        return executorService;
+    }
+
+    public void setRequestCoalescingEnabled(boolean requestCoalescingEnabled) {
+        client.setRequestCoalescingEnabled(requestCoalescingEnabled);
+    }
+
+    /**
+     * @return Request coalescer with saved request counts or null if
+     * coalescing is disabled
+     */
+    public ElasticRequestCoalescer<ElasticResponse> getRequestCoalescer() {
+        return client.getRequestCoalescer();
+    }
+
+    public void setCompressionMode(CompressionMode compressionMode) {
+        client.setCompression(compressionMode != CompressionMode.NONE, compressionMode == CompressionMode.ALL);
+    }
+
+    public void setResponseFormat(ResponseFormat responseFormat) {
+        client.setResponseFormat(responseFormat);
+    }
+
+    /**
+     * @param resultCache Search result cache or null to disable caching
+     */
+    public void setResultCache(ElasticResultCache resultCache) {
+        client.setResultCache(resultCache);
+    }
+
+    /**
+     * @return Search result cache with hit, miss and eviction counts or null
+     * if caching is disabled
+     */
+    public ElasticResultCache getResultCache() {
+        return client.getResultCache();
+    }
+
+    /**
+     * @param batchWindow Maximum time in milliseconds to wait for concurrent
+     * searches to send in one _msearch request. Zero disables batching.
+     * @param maxBatchSize Maximum number of searches per request
+     */
+    public void setSearchBatching(int batchWindow, int maxBatchSize) {
+        client.setSearchBatching(batchWindow, maxBatchSize);
+    }
+
+    /**
+     * @return Search batcher with batch counts or null if batching is disabled
+     */
+    public ElasticMultiSearchBatcher<?, ?> getSearchBatcher() {
+        return client.getSearchBatcher();
+    }
+
+    /**
+     * Discard cached mappings and aliases for this index so they are reloaded
+     * on next use.
+     */
+    public synchronized void clearMetadataCache() {
+        if (metadataCache != null) {
+            metadataCache.invalidate(indexName);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        synchronized (this) {
+            if (executorService != null) {
+                executorService.shutdownNow();
+                executorService = null;
+            }
+            // a reloaded store must not see mappings cached by this one
+            if (metadataCache != null) {
+                metadataCache.invalidate(indexName);
+                metadataCache.release();
+                metadataCache = null;
+            }
+        }
+        super.dispose();
+    }
+
     @SuppressWarnings({ "rawtypes", "unchecked" })
     private void walk(List<ElasticAttribute> elasticAttributes, Map<String,Object> map, 
             String propertyKey, boolean startType, boolean nested) {
@@ -390,6 +704,7 @@ public class ElasticDataStore extends ContentDataStore {
                     stored = false;
                 }
                 elasticAttribute.setStored(stored);
+                elasticAttribute.setDocValues(hasDocValues(propertyKey, propertyType, map, nested));
                 elasticAttribute.setType(binding);
                 elasticAttribute.setNested(nested);
                 elasticAttributes.add(elasticAttribute);
@@ -406,6 +721,30 @@ public class ElasticDataStore extends ContentDataStore {
         }
     }
 
+    /**
+     * Whether the field can be read from doc values. Analyzed, binary and
+     * nested fields, metadata fields and fields with doc values disabled in
+     * the mapping are excluded.
+     */
+    static boolean hasDocValues(String propertyKey, String propertyType, Map<String, Object> map, boolean nested) {
+        if (nested || propertyKey.startsWith("_") || Boolean.FALSE.equals(map.get("doc_values"))) {
+            return false;
+        }
+        switch (propertyType) {
+        case "geo_point":
+        case "keyword":
+        case "integer":
+        case "long":
+        case "float":
+        case "double":
+        case "boolean":
+        case "date":
+            return true;
+        default:
+            return false;
+        }
+    }
+
     static boolean isAnalyzed(Map<String, Object> map) {
         boolean analyzed = false;
         Object value = map.get("type");
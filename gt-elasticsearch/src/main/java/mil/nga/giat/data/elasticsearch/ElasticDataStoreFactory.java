@@ -15,7 +15,13 @@ import org.elasticsearch.client.RestClientBuilder;
 import org.geotools.data.DataStore;
 import org.geotools.data.DataStoreFactorySpi;
 
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.AggregationEncoding;
 import mil.nga.giat.data.elasticsearch.ElasticDataStore.ArrayEncoding;
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.CompressionMode;
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.CoordinateSequenceType;
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.CountMode;
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.PaginationMode;
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.ResponseFormat;
 import org.geotools.data.Parameter;
 import org.geotools.util.logging.Logging;
 
@@ -103,6 +109,12 @@ public class ElasticDataStoreFactory implements DataStoreFactorySpi {
     public static final Param SCROLL_TIME_SECONDS = new Param("scroll_time", Integer.class,
             "Time to keep the scroll open in seconds (ignored if scroll_enabled=false)", false, 120);
 
+    public static final Param SCROLL_PREFETCH = new Param("scroll_prefetch", Integer.class,
+            "Maximum number of scroll pages to fetch ahead in the background. Zero disables prefetch (ignored if scroll_enabled=false)", false, 0);
+
+    public static final Param SCROLL_SLICES = new Param("scroll_slices", Integer.class,
+            "Number of scroll slices read in parallel. Zero uses the number of index shards (ignored if scroll_enabled=false)", false, 1);
+
     public static final Param DEFAULT_MAX_FEATURES = new Param("default_max_features", Integer.class,
             "Default max features", false, 100);
 
@@ -110,12 +122,66 @@ public class ElasticDataStoreFactory implements DataStoreFactorySpi {
             "Array encoding strategy. Allowed values are \"JSON\" (keep arrays) "
             + " and \"CSV\" (URL encode and join array elements).", false, "JSON");
 
+    public static final Param PAGINATION_MODE = new Param("pagination_mode", String.class,
+            "Pagination strategy for sorted or offset queries. Allowed values are \"FROM_SIZE\" (from/size) "
+            + "and \"SEARCH_AFTER\" (search_after with a point in time, pages of scroll_size kept alive for scroll_time).",
+            false, "FROM_SIZE");
+
     public static final Param GRID_SIZE = new Param("grid_size", Long.class,
             "Hint for Geohash grid size (nrow*ncol)", false, 10000L);
 
     public static final Param GRID_THRESHOLD = new Param("grid_threshold",  Double.class, 
             "Geohash grid aggregation precision will be the minimum necessary to satisfy actual_grid_size/grid_size>grid_threshold", false, 0.05);
 
+    public static final Param STREAMING_ENABLED = new Param("streaming_enabled", Boolean.class,
+            "Decode search hits directly from the response stream, reading only the fields used by the layer", false, false);
+
+    public static final Param METADATA_CACHE_TTL = new Param("metadata_cache_ttl", Integer.class,
+            "Time to keep mapping, alias and version responses in seconds. Zero disables caching", false, 0);
+
+    public static final Param METADATA_CACHE_SIZE = new Param("metadata_cache_size", Integer.class,
+            "Maximum number of cached mapping, alias and version responses (ignored if metadata_cache_ttl=0)", false, 1000);
+
+    public static final Param REQUEST_COALESCING_ENABLED = new Param("request_coalescing_enabled", Boolean.class,
+            "Share one in-flight request and response between concurrent identical searches", false, false);
+
+    public static final Param RESULT_CACHE_SIZE = new Param("result_cache_size", Integer.class,
+            "Maximum estimated size of cached search responses in megabytes. Zero disables caching", false, 0);
+
+    public static final Param RESULT_CACHE_TTL = new Param("result_cache_ttl", Integer.class,
+            "Time to keep cached search responses in seconds (ignored if result_cache_size=0)", false, 300);
+
+    public static final Param RESULT_CACHE_CHECK_INTERVAL = new Param("result_cache_check_interval", Integer.class,
+            "Minimum time in seconds between index refresh checks used to discard out of date search responses. "
+            + "Zero disables checks (ignored if result_cache_size=0)", false, 5);
+
+    public static final Param SEARCH_BATCH_WINDOW = new Param("search_batch_window", Integer.class,
+            "Maximum time in milliseconds to wait for concurrent searches to send together in one _msearch request. "
+            + "Zero disables batching", false, 0);
+
+    public static final Param SEARCH_BATCH_SIZE = new Param("search_batch_size", Integer.class,
+            "Maximum number of searches per _msearch request (ignored if search_batch_window=0)", false, 10);
+
+    public static final Param COMPRESSION_MODE = new Param("compression_mode", String.class,
+            "HTTP compression. Allowed values are \"NONE\", \"RESPONSE\" (gzip compressed responses) "
+            + "and \"ALL\" (gzip compressed responses and large request bodies).", false, "NONE");
+
+    public static final Param RESPONSE_FORMAT = new Param("response_format", String.class,
+            "Content type requested for search responses. Allowed values are \"JSON\", \"SMILE\" and \"CBOR\".",
+            false, "JSON");
+
+    public static final Param COUNT_MODE = new Param("count_mode", String.class,
+            "Feature count strategy. Allowed values are \"EXACT\" (count API), \"CAPPED\" (exact up to "
+            + "the start index plus max features) and \"APPROXIMATE\" (default search total hits).", false, "CAPPED");
+
+    public static final Param COORDINATE_SEQUENCE = new Param("coordinate_sequence", String.class,
+            "Storage for geometry coordinates. Allowed values are \"ARRAY\" (coordinate objects), \"PACKED_DOUBLE\" "
+            + "(packed double arrays) and \"PACKED_FLOAT\" (packed float arrays).", false, "ARRAY");
+
+    public static final Param AGGREGATION_ENCODING = new Param("aggregation_encoding", String.class,
+            "Aggregation bucket encoding. Allowed values are \"JSON\" (JSON bytes in the _aggregation attribute "
+            + "and parsed buckets in the feature user data) and \"OBJECT\" (parsed buckets only).", false, "JSON");
+
     public static final Param[] PARAMS = {
             HOSTNAME,
             HOSTPORT,
@@ -130,10 +196,27 @@ public class ElasticDataStoreFactory implements DataStoreFactorySpi {
             SCROLL_ENABLED,
             SCROLL_SIZE,
             SCROLL_TIME_SECONDS,
+            SCROLL_PREFETCH,
+            SCROLL_SLICES,
             DEFAULT_MAX_FEATURES,
             ARRAY_ENCODING,
+            PAGINATION_MODE,
             GRID_SIZE,
-            GRID_THRESHOLD
+            GRID_THRESHOLD,
+            STREAMING_ENABLED,
+            METADATA_CACHE_TTL,
+            METADATA_CACHE_SIZE,
+            REQUEST_COALESCING_ENABLED,
+            RESULT_CACHE_SIZE,
+            RESULT_CACHE_TTL,
+            RESULT_CACHE_CHECK_INTERVAL,
+            SEARCH_BATCH_WINDOW,
+            SEARCH_BATCH_SIZE,
+            COMPRESSION_MODE,
+            RESPONSE_FORMAT,
+            COUNT_MODE,
+            COORDINATE_SEQUENCE,
+            AGGREGATION_ENCODING
     };
 
     @Override
@@ -193,21 +276,61 @@ public class ElasticDataStoreFactory implements DataStoreFactorySpi {
     public DataStore createDataStore(RestClient client, RestClient proxyClient, Map<String, Serializable> params) throws IOException {
         final String indexName = (String) INDEX_NAME.lookUp(params);
         final String arrayEncoding = getValue(ARRAY_ENCODING, params);
+        final String paginationMode = getValue(PAGINATION_MODE, params);
+        final String compressionMode = getValue(COMPRESSION_MODE, params);
+        final String responseFormat = getValue(RESPONSE_FORMAT, params);
+        final String countMode = getValue(COUNT_MODE, params);
+        final String coordinateSequence = getValue(COORDINATE_SEQUENCE, params);
+        final String aggregationEncoding = getValue(AGGREGATION_ENCODING, params);
         final boolean runAsGeoServerUser = getValue(RUNAS_GEOSERVER_USER, params);
         if (isForceRunas() && !runAsGeoServerUser) {
             throw new IllegalArgumentException(RUNAS_GEOSERVER_USER.key + " is disabled but " + FORCE_RUNAS_PROPERTY + " is set. "
                     + "Enable " + RUNAS_GEOSERVER_USER.key + " or unset " + FORCE_RUNAS_PROPERTY + " in the system environment.");
         }
 
-        final ElasticDataStore dataStore = new ElasticDataStore(client, proxyClient, indexName, runAsGeoServerUser);
+        final Integer metadataCacheTtl = getValue(METADATA_CACHE_TTL, params);
+        final ElasticMetadataCache metadataCache;
+        if (metadataCacheTtl > 0) {
+            final Integer metadataCacheSize = getValue(METADATA_CACHE_SIZE, params);
+            final String cacheKey = getValue(HOSTNAME, params) + "|" + getValue(HOSTPORT, params) + "|" + getValue(USER, params);
+            metadataCache = ElasticMetadataCache.getSharedCache(cacheKey, metadataCacheTtl, metadataCacheSize);
+        } else {
+            metadataCache = null;
+        }
+
+        final ElasticDataStore dataStore;
+        try {
+            dataStore = new ElasticDataStore(client, proxyClient, indexName, runAsGeoServerUser, metadataCache);
+        } catch (IOException e) {
+            if (metadataCache != null) {
+                metadataCache.release();
+            }
+            throw e;
+        }
         dataStore.setDefaultMaxFeatures(getValue(DEFAULT_MAX_FEATURES, params));
         dataStore.setSourceFilteringEnabled(getValue(SOURCE_FILTERING_ENABLED, params));
         dataStore.setScrollEnabled(getValue(SCROLL_ENABLED, params));
         dataStore.setScrollSize(((Number)getValue(SCROLL_SIZE, params)).longValue());
         dataStore.setScrollTime(getValue(SCROLL_TIME_SECONDS, params));
+        dataStore.setScrollPrefetch(getValue(SCROLL_PREFETCH, params));
+        dataStore.setScrollSlices(getValue(SCROLL_SLICES, params));
         dataStore.setArrayEncoding(ArrayEncoding.valueOf(arrayEncoding.toUpperCase()));
+        dataStore.setPaginationMode(PaginationMode.valueOf(paginationMode.toUpperCase()));
+        dataStore.setCountMode(CountMode.valueOf(countMode.toUpperCase()));
+        dataStore.setCoordinateSequenceType(CoordinateSequenceType.valueOf(coordinateSequence.toUpperCase()));
+        dataStore.setAggregationEncoding(AggregationEncoding.valueOf(aggregationEncoding.toUpperCase()));
         dataStore.setGridSize((Long) GRID_SIZE.lookUp(params));
         dataStore.setGridThreshold((Double) GRID_THRESHOLD.lookUp(params));
+        dataStore.setStreamingEnabled(getValue(STREAMING_ENABLED, params));
+        dataStore.setRequestCoalescingEnabled(getValue(REQUEST_COALESCING_ENABLED, params));
+        dataStore.setCompressionMode(CompressionMode.valueOf(compressionMode.toUpperCase()));
+        dataStore.setResponseFormat(ResponseFormat.valueOf(responseFormat.toUpperCase()));
+        dataStore.setSearchBatching(getValue(SEARCH_BATCH_WINDOW, params), getValue(SEARCH_BATCH_SIZE, params));
+        final Integer resultCacheSize = getValue(RESULT_CACHE_SIZE, params);
+        if (resultCacheSize > 0) {
+            dataStore.setResultCache(new ElasticResultCache(resultCacheSize * 1024L * 1024L,
+                    getValue(RESULT_CACHE_TTL, params), getValue(RESULT_CACHE_CHECK_INTERVAL, params)));
+        }
         return dataStore;
     }
 
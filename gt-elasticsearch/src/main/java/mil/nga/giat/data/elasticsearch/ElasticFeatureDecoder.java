@@ -0,0 +1,260 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.DATE_FORMAT;
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.DOC_VALUES;
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.FULL_NAME;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.util.logging.Logging;
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.ArrayEncoding;
+import mil.nga.giat.shaded.es.common.joda.Joda;
+import mil.nga.giat.shaded.joda.time.format.DateTimeFormatter;
+
+/**
+ * Decoding plan for search hits of a feature type. Attribute indexes, source
+ * paths, value kinds and date parsers are resolved once per feature type so
+ * decoding a hit only requires array indexed access.
+ */
+class ElasticFeatureDecoder {
+
+    private final static Logger LOGGER = Logging.getLogger(ElasticFeatureDecoder.class);
+
+    private static final String DEFAULT_DATE_FORMAT = "date_optional_time";
+
+    /**
+     * Decoders by feature type identity. Feature types are held weakly so
+     * decoders are released with retyped query schemas.
+     */
+    private static final LoadingCache<SimpleFeatureType, ElasticFeatureDecoder> DECODERS = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(CacheLoader.from(ElasticFeatureDecoder::new));
+
+    enum Kind {
+        ID,
+        INDEX,
+        TYPE,
+        SCORE,
+        RELATIVE_SCORE,
+        GEOMETRY,
+        DATE,
+        AGGREGATION,
+        VALUE
+    }
+
+    static final class AttributeDecoder {
+
+        final int index;
+
+        final String sourceName;
+
+        final String[] path;
+
+        /**
+         * Metadata value used when the hit does not include the field or null
+         */
+        final Kind metadata;
+
+        final Kind kind;
+
+        final boolean docValues;
+
+        final String dateFormat;
+
+        final DateTimeFormatter dateParser;
+
+        AttributeDecoder(int index, AttributeDescriptor descriptor) {
+            this.index = index;
+            this.sourceName = (String) descriptor.getUserData().get(FULL_NAME);
+            this.path = sourceName != null ? sourceName.split("\\.") : null;
+            this.metadata = getMetadataKind(sourceName);
+            this.docValues = Boolean.TRUE.equals(descriptor.getUserData().get(DOC_VALUES));
+
+            final Class<?> binding = descriptor.getType().getBinding();
+            if (Geometry.class.isAssignableFrom(binding)) {
+                this.kind = Kind.GEOMETRY;
+            } else if (Date.class.isAssignableFrom(binding)) {
+                this.kind = Kind.DATE;
+            } else if (descriptor.getLocalName().equals("_aggregation")) {
+                this.kind = Kind.AGGREGATION;
+            } else {
+                this.kind = Kind.VALUE;
+            }
+
+            if (kind == Kind.DATE) {
+                final String format = (String) descriptor.getUserData().get(DATE_FORMAT);
+                this.dateFormat = format != null ? format : DEFAULT_DATE_FORMAT;
+                this.dateParser = createDateParser(dateFormat);
+            } else {
+                this.dateFormat = null;
+                this.dateParser = null;
+            }
+        }
+
+    }
+
+    private final AttributeDecoder[] attributes;
+
+    private ElasticFeatureDecoder(SimpleFeatureType featureType) {
+        final List<AttributeDescriptor> descriptors = featureType.getAttributeDescriptors();
+        this.attributes = new AttributeDecoder[descriptors.size()];
+        for (int i = 0; i < attributes.length; i++) {
+            attributes[i] = new AttributeDecoder(i, descriptors.get(i));
+        }
+    }
+
+    static ElasticFeatureDecoder getDecoder(SimpleFeatureType featureType) {
+        return DECODERS.getUnchecked(featureType);
+    }
+
+    AttributeDecoder[] getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * Set feature builder values from a search hit.
+     *
+     * @param hit Search hit
+     * @param score Hit score or null
+     * @param relativeScore Hit score relative to the maximum score or null
+     * @param arrayEncoding Encoding for multi-valued fields
+     * @param parserUtil Parser used to create geometries
+     * @param builder Feature builder
+     */
+    void decode(ElasticHit hit, Float score, Float relativeScore, ArrayEncoding arrayEncoding,
+            ElasticParserUtil parserUtil, SimpleFeatureBuilder builder) {
+        final Map<String, Object> source = hit.getSource();
+
+        for (final AttributeDecoder attribute : attributes) {
+            List<Object> values = hit.field(attribute.sourceName);
+            final boolean fromFields = values != null;
+            if (values == null && source != null && attribute.path != null) {
+                // read field from source
+                values = parserUtil.readField(source, attribute.sourceName, attribute.path);
+            }
+
+            if (values == null) {
+                if (attribute.metadata != null) {
+                    builder.set(attribute.index, getMetadata(attribute.metadata, hit, score, relativeScore));
+                }
+                continue;
+            }
+
+            switch (attribute.kind) {
+            case GEOMETRY:
+                if (values.get(0) instanceof Geometry) {
+                    // decoded while streaming the response
+                    builder.set(attribute.index, createGeometry(values, parserUtil));
+                } else if (values.size() == 1) {
+                    builder.set(attribute.index, parserUtil.createGeometry(values.get(0)));
+                } else {
+                    builder.set(attribute.index, parserUtil.createGeometry(values));
+                }
+                break;
+            case DATE:
+                builder.set(attribute.index, parseDate(attribute, values.get(0), fromFields));
+                break;
+            default:
+                if (values.size() == 1) {
+                    builder.set(attribute.index, values.get(0));
+                } else if (attribute.kind != Kind.AGGREGATION) {
+                    if (arrayEncoding == ArrayEncoding.CSV) {
+                        // only include first array element when using CSV array encoding
+                        builder.set(attribute.index, values.get(0));
+                    } else {
+                        builder.set(attribute.index, values);
+                    }
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Geometry createGeometry(List<Object> values, ElasticParserUtil parserUtil) {
+        if (values.size() == 1) {
+            return (Geometry) values.get(0);
+        }
+        return parserUtil.getGeometryFactory().buildGeometry((List<Geometry>) (List<?>) values);
+    }
+
+    private static Object getMetadata(Kind kind, ElasticHit hit, Float score, Float relativeScore) {
+        switch (kind) {
+        case ID:
+            return hit.getId();
+        case INDEX:
+            return hit.getIndex();
+        case TYPE:
+            return hit.getType();
+        case SCORE:
+            return score;
+        default:
+            return relativeScore;
+        }
+    }
+
+    private static Date parseDate(AttributeDecoder attribute, Object value, boolean fromFields) {
+        final Date date;
+        if (value instanceof Double) {
+            date = new Date(Math.round((Double) value));
+        } else if (value instanceof Integer) {
+            date = new Date((Integer) value);
+        } else if (value instanceof Long) {
+            date = new Date((long) value);
+        } else if (attribute.docValues && fromFields) {
+            // doc values are requested in epoch_millis format
+            date = new Date(Long.parseLong((String) value));
+        } else if (attribute.dateParser != null) {
+            date = attribute.dateParser.parseDateTime((String) value).toDate();
+        } else {
+            throw new IllegalArgumentException("Invalid date format for " + attribute.sourceName
+                    + ": " + attribute.dateFormat);
+        }
+        return date;
+    }
+
+    private static Kind getMetadataKind(String sourceName) {
+        if (sourceName == null) {
+            return null;
+        }
+        switch (sourceName) {
+        case "_id":
+            return Kind.ID;
+        case "_index":
+            return Kind.INDEX;
+        case "_type":
+            return Kind.TYPE;
+        case "_score":
+            return Kind.SCORE;
+        case "_relative_score":
+            return Kind.RELATIVE_SCORE;
+        default:
+            return null;
+        }
+    }
+
+    private static DateTimeFormatter createDateParser(String format) {
+        try {
+            return Joda.forPattern(format).parser();
+        } catch (Exception e) {
+            LOGGER.fine("Unable to parse date format ('" + format + "'): " + e);
+            return null;
+        }
+    }
+
+}
@@ -6,25 +6,19 @@ package mil.nga.giat.data.elasticsearch;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.AggregationEncoding;
 import mil.nga.giat.data.elasticsearch.ElasticDataStore.ArrayEncoding;
-import mil.nga.giat.shaded.es.common.joda.Joda;
-import mil.nga.giat.shaded.joda.time.format.DateTimeFormatter;
-
-import static mil.nga.giat.data.elasticsearch.ElasticConstants.DATE_FORMAT;
-import static mil.nga.giat.data.elasticsearch.ElasticConstants.FULL_NAME;
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.CoordinateSequenceType;
 
 import org.geotools.data.FeatureReader;
 import org.geotools.data.store.ContentState;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.util.logging.Logging;
-import org.locationtech.jts.geom.Geometry;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
-import org.opengis.feature.type.AttributeDescriptor;
 
 import java.io.IOException;
 import java.util.Collections;
-import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -47,6 +41,8 @@ class ElasticFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFea
 
     private final ArrayEncoding arrayEncoding;
 
+    private final AggregationEncoding aggregationEncoding;
+
     private SimpleFeatureBuilder builder;
 
     private Iterator<ElasticHit> searchHitIterator;
@@ -55,16 +51,42 @@ class ElasticFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFea
 
     private final ElasticParserUtil parserUtil;
 
+    private final ElasticFeatureDecoder decoder;
+
+    private ElasticHitStream hitStream;
+
     public ElasticFeatureReader(ContentState contentState, ElasticResponse response) {
-        this(contentState, response.getHits(), response.getAggregations(), response.getMaxScore());
+        this(contentState, response, null);
+    }
+
+    /**
+     * @param simplifier Simplifier for decoded geometries or null
+     */
+    public ElasticFeatureReader(ContentState contentState, ElasticResponse response, ElasticGeometrySimplifier simplifier) {
+        this(contentState, response.getHits().iterator(), response.getAggregations(), response.getMaxScore(), simplifier);
+    }
+
+    public ElasticFeatureReader(ContentState contentState, ElasticHitStream hitStream) {
+        this(contentState, hitStream, null, hitStream.getMaxScore(), null);
+        this.hitStream = hitStream;
     }
 
     public ElasticFeatureReader(ContentState contentState, List<ElasticHit> hits, Map<String,ElasticAggregation> aggregations, float maxScore) {
+        this(contentState, hits, aggregations, maxScore, null);
+    }
+
+    public ElasticFeatureReader(ContentState contentState, List<ElasticHit> hits, Map<String,ElasticAggregation> aggregations,
+            float maxScore, ElasticGeometrySimplifier simplifier) {
+        this(contentState, hits.iterator(), aggregations, maxScore, simplifier);
+    }
+
+    private ElasticFeatureReader(ContentState contentState, Iterator<ElasticHit> hits, Map<String,ElasticAggregation> aggregations,
+            float maxScore, ElasticGeometrySimplifier simplifier) {
         this.state = contentState;
         this.featureType = state.getFeatureType();
-        this.searchHitIterator = hits.iterator();
+        this.searchHitIterator = hits;
         this.builder = new SimpleFeatureBuilder(featureType);
-        this.parserUtil = new ElasticParserUtil();
+        this.decoder = ElasticFeatureDecoder.getDecoder(featureType);
         this.maxScore = maxScore;
 
         this.aggregationIterator = Collections.emptyIterator();
@@ -82,8 +104,17 @@ class ElasticFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFea
             final ElasticDataStore dataStore;
             dataStore = (ElasticDataStore) contentState.getEntry().getDataStore();
             this.arrayEncoding = dataStore.getArrayEncoding();
+            this.aggregationEncoding = dataStore.getAggregationEncoding() != null
+                    ? dataStore.getAggregationEncoding() : AggregationEncoding.JSON;
+            if (dataStore.getCoordinateSequenceType() != null) {
+                this.parserUtil = new ElasticParserUtil(dataStore.getCoordinateSequenceType().getFactory(), simplifier);
+            } else {
+                this.parserUtil = new ElasticParserUtil(CoordinateSequenceType.ARRAY.getFactory(), simplifier);
+            }
         } else {
             this.arrayEncoding = ArrayEncoding.valueOf((String) ElasticDataStoreFactory.ARRAY_ENCODING.getDefaultValue());
+            this.aggregationEncoding = AggregationEncoding.JSON;
+            this.parserUtil = new ElasticParserUtil(CoordinateSequenceType.ARRAY.getFactory(), simplifier);
         }
 
         this.mapper = new ObjectMapper();
@@ -108,8 +139,6 @@ class ElasticFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFea
 
     private String nextHit() {
         final ElasticHit hit = searchHitIterator.next();
-        final SimpleFeatureType type = getFeatureType();
-        final Map<String, Object> source = hit.getSource();
 
         final Float score;
         final Float relativeScore;
@@ -121,66 +150,17 @@ class ElasticFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFea
             relativeScore = null;
         }
 
-        for (final AttributeDescriptor descriptor : type.getAttributeDescriptors()) {
-            final String name = descriptor.getType().getName().getLocalPart();
-            final String sourceName = (String) descriptor.getUserData().get(FULL_NAME);
-
-            List<Object> values = hit.field(sourceName);
-            if (values == null && source != null) {
-                // read field from source
-                values = parserUtil.readField(source, sourceName);
-            }
-
-            if (values == null && sourceName.equals("_id")) {
-                builder.set(name, hit.getId());
-            } else if (values == null && sourceName.equals("_index")) {
-                builder.set(name, hit.getIndex());
-            } else if (values == null && sourceName.equals("_type")) {
-                builder.set(name, hit.getType());
-            } else if (values == null && sourceName.equals("_score")) {
-                builder.set(name, score);
-            } else if (values == null && sourceName.equals("_relative_score")) {
-                builder.set(name, relativeScore);
-            } else if (values != null && Geometry.class.isAssignableFrom(descriptor.getType().getBinding())) {
-                if (values.size() == 1) {
-                    builder.set(name, parserUtil.createGeometry(values.get(0)));
-                } else {
-                    builder.set(name, parserUtil.createGeometry(values));
-                }
-            } else if (values != null && Date.class.isAssignableFrom(descriptor.getType().getBinding())) {
-                Object dataVal = values.get(0);
-                if (dataVal instanceof Double) {
-                    builder.set(name, new Date(Math.round((Double) dataVal)));
-                } else if (dataVal instanceof Integer) {
-                    builder.set(name, new Date((Integer) dataVal));
-                } else if (dataVal instanceof Long) {
-                    builder.set(name, new Date((long) dataVal));
-                } else {
-                    final String format = (String) descriptor.getUserData().get(DATE_FORMAT);
-                    final DateTimeFormatter dateFormatter = Joda.forPattern(format).parser();
-
-                    Date date = dateFormatter.parseDateTime((String) dataVal).toDate();
-                    builder.set(name, date);
-                }
-            } else if (values != null && values.size() == 1) {
-                builder.set(name, values.get(0));
-            } else if (values != null && !name.equals("_aggregation")) {
-                final Object value;
-                if (arrayEncoding == ArrayEncoding.CSV) {
-                    // only include first array element when using CSV array encoding
-                    value = values.get(0);
-                } else {
-                    value = values;
-                }
-                builder.set(name, value);
-            }
-        }
+        decoder.decode(hit, score, relativeScore, arrayEncoding, parserUtil, builder);
 
         return state.getEntry().getTypeName() + "." + hit.getId();
     }
 
     private void nextAggregation() {
         final Map<String, Object> aggregation = aggregationIterator.next();
+        builder.featureUserData(ElasticConstants.AGGREGATION, aggregation);
+        if (aggregationEncoding == AggregationEncoding.OBJECT) {
+            return;
+        }
         try {
             final byte[] data = mapper.writeValueAsBytes(aggregation);
             builder.set("_aggregation", data);
@@ -195,9 +175,13 @@ class ElasticFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFea
     }
 
     @Override
-    public void close() {
+    public void close() throws IOException {
         builder = null;
         searchHitIterator = null;
+        if (hitStream != null) {
+            hitStream.close();
+            hitStream = null;
+        }
     }
 
 }
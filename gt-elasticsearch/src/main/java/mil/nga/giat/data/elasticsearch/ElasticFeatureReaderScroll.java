@@ -5,10 +5,15 @@
 package mil.nga.giat.data.elasticsearch;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.geotools.data.FeatureReader;
@@ -21,10 +26,15 @@ class ElasticFeatureReaderScroll implements FeatureReader<SimpleFeatureType, Sim
 
     private final static Logger LOGGER = Logging.getLogger(ElasticFeatureReaderScroll.class);
 
+    /** Marker queued by the prefetch task when a scroll request fails */
+    private final static ElasticResponse PREFETCH_FAILED = new ElasticResponse();
+
     private final ContentState contentState;
 
     private final int maxFeatures;
 
+    private final ElasticGeometrySimplifier simplifier;
+
     private String nextScrollId;
 
     private ElasticFeatureReader delegate;
@@ -33,20 +43,100 @@ class ElasticFeatureReaderScroll implements FeatureReader<SimpleFeatureType, Sim
 
     private boolean lastScroll;
 
+    /** Scroll ids to clear on close, guarded by itself */
     private final Set<String> scrollIds;
 
+    /** Set on close, guarded by scrollIds */
+    private boolean closed;
+
+    private BlockingQueue<ElasticResponse> prefetchedPages;
+
+    private Future<?> prefetchTask;
+
+    private volatile Exception prefetchError;
+
     public ElasticFeatureReaderScroll(ContentState contentState, ElasticResponse searchResponse, int maxFeatures) {
+        this(contentState, searchResponse, maxFeatures, 0);
+    }
+
+    /**
+     * @param prefetchPages Maximum number of scroll pages to fetch ahead on a
+     * background thread while the current page is consumed. Prefetch is
+     * disabled when zero.
+     */
+    public ElasticFeatureReaderScroll(ContentState contentState, ElasticResponse searchResponse, int maxFeatures, int prefetchPages) {
+        this(contentState, searchResponse, maxFeatures, prefetchPages, null);
+    }
+
+    /**
+     * @param simplifier Simplifier for decoded geometries or null
+     */
+    public ElasticFeatureReaderScroll(ContentState contentState, ElasticResponse searchResponse, int maxFeatures,
+            int prefetchPages, ElasticGeometrySimplifier simplifier) {
         this.contentState = contentState;
+        this.simplifier = simplifier;
         this.maxFeatures = maxFeatures;
         this.numFeatures = 0;
         this.scrollIds = new HashSet<>();
         processResponse(searchResponse);
+        if (prefetchPages > 0 && !lastScroll) {
+            startPrefetch(prefetchPages, searchResponse.getNumHits());
+        }
     }
 
     private void advanceScroll() throws IOException {
+        if (prefetchedPages != null) {
+            final ElasticResponse searchResponse;
+            try {
+                searchResponse = prefetchedPages.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for next scroll page", e);
+            }
+            if (searchResponse == PREFETCH_FAILED) {
+                // prefetch has stopped so requeue the marker for later calls
+                prefetchedPages.offer(PREFETCH_FAILED);
+                throw new IOException("Error prefetching next scroll page", prefetchError);
+            }
+            processResponse(searchResponse);
+        } else {
+            final ElasticDataStore dataStore;
+            dataStore = (ElasticDataStore) contentState.getEntry().getDataStore();
+            processResponse(dataStore.getClient().scroll(nextScrollId, dataStore.getScrollTime()));
+        }
+    }
+
+    /**
+     * Submits a task that requests scroll pages sequentially ahead of the
+     * reader. The task blocks once the queue is full and ends after the page
+     * that completes the scroll (no hits or maxFeatures reached).
+     */
+    private void startPrefetch(int prefetchPages, int firstNumHits) {
         final ElasticDataStore dataStore;
         dataStore = (ElasticDataStore) contentState.getEntry().getDataStore();
-        processResponse(dataStore.getClient().scroll(nextScrollId, dataStore.getScrollTime()));
+        final String firstScrollId = nextScrollId;
+        prefetchedPages = new ArrayBlockingQueue<>(prefetchPages);
+        prefetchTask = dataStore.getExecutorService().submit(() -> {
+            String scrollId = firstScrollId;
+            int numHits = firstNumHits;
+            try {
+                ElasticResponse searchResponse;
+                do {
+                    searchResponse = dataStore.getClient().scroll(scrollId, dataStore.getScrollTime());
+                    scrollId = searchResponse.getScrollId();
+                    addScrollId(scrollId);
+                    numHits += searchResponse.getNumHits();
+                    prefetchedPages.put(searchResponse);
+                } while (searchResponse.getNumHits() > 0 && numHits < maxFeatures && !Thread.currentThread().isInterrupted());
+            } catch (InterruptedException e) {
+                LOGGER.fine("Scroll prefetch cancelled");
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, "Scroll prefetch failed", e);
+                prefetchError = e;
+                prefetchedPages.clear();
+                prefetchedPages.offer(PREFETCH_FAILED);
+            }
+        });
     }
 
     private void processResponse(ElasticResponse searchResponse) {
@@ -58,11 +148,35 @@ class ElasticFeatureReaderScroll implements FeatureReader<SimpleFeatureType, Sim
             final int n = maxFeatures-numFeatures;
             hits = searchResponse.getResults().getHits().subList(0,n);
         }
-        delegate = new ElasticFeatureReader(contentState, hits, searchResponse.getAggregations(), 0);
+        delegate = new ElasticFeatureReader(contentState, hits, searchResponse.getAggregations(), 0, simplifier);
         nextScrollId = searchResponse.getScrollId();
         lastScroll = numHits == 0 || numFeatures+hits.size()>=maxFeatures;
         LOGGER.fine("Scoll numHits=" + hits.size() + " (total=" + numFeatures+hits.size());
-        scrollIds.add(nextScrollId);
+        addScrollId(nextScrollId);
+    }
+
+    /**
+     * Records a scroll id to clear on close. The prefetch task may still be
+     * waiting on a request when the reader is closed, so ids received after
+     * close are cleared immediately.
+     */
+    private void addScrollId(String scrollId) {
+        if (scrollId == null) {
+            return;
+        }
+        synchronized (scrollIds) {
+            if (!closed || scrollIds.contains(scrollId)) {
+                scrollIds.add(scrollId);
+                return;
+            }
+        }
+        try {
+            final ElasticDataStore dataStore;
+            dataStore = (ElasticDataStore) contentState.getEntry().getDataStore();
+            dataStore.getClient().clearScroll(Collections.singleton(scrollId));
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to clear scroll after close", e);
+        }
     }
 
     @Override
@@ -92,10 +206,19 @@ class ElasticFeatureReaderScroll implements FeatureReader<SimpleFeatureType, Sim
 
     @Override
     public void close() throws IOException {
-        if (!scrollIds.isEmpty()) {
+        if (prefetchTask != null) {
+            prefetchTask.cancel(true);
+            prefetchedPages.clear();
+        }
+        final Set<String> ids;
+        synchronized (scrollIds) {
+            closed = true;
+            ids = new HashSet<>(scrollIds);
+        }
+        if (!ids.isEmpty()) {
             final ElasticDataStore dataStore;
             dataStore = (ElasticDataStore) contentState.getEntry().getDataStore();
-            dataStore.getClient().clearScroll(scrollIds);
+            dataStore.getClient().clearScroll(ids);
         }
         delegate.close();
     }
@@ -0,0 +1,199 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.data.store.ContentState;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * FeatureReader that pages through sorted results using {@code search_after}.
+ * A point in time is opened when supported (Elasticsearch 7.10+) so that pages
+ * are consistent with each other. Unlike {@code from}/{@code size} pagination
+ * the cost of each page does not grow with the offset and results are not
+ * limited by the index {@code max_result_window}.
+ */
+class ElasticFeatureReaderSearchAfter implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+
+    private final static Logger LOGGER = Logging.getLogger(ElasticFeatureReaderSearchAfter.class);
+
+    private final ContentState contentState;
+
+    private final ElasticClient client;
+
+    private final String indexName;
+
+    private final String docType;
+
+    private final ElasticRequest request;
+
+    private final int pageSize;
+
+    private final int maxFeatures;
+
+    private final ElasticGeometrySimplifier simplifier;
+
+    private String pointInTimeId;
+
+    private ElasticFeatureReader delegate;
+
+    private int numFeatures;
+
+    private int numFetched;
+
+    private boolean lastPage;
+
+    /**
+     * @param request Search request with sorting. The request size is used as
+     * the page size.
+     * @param startIndex Number of leading results to skip
+     * @param keepAlive Point in time keep alive in seconds
+     */
+    public ElasticFeatureReaderSearchAfter(ContentState contentState, String docType, ElasticRequest request,
+            int startIndex, int maxFeatures, Integer keepAlive) throws IOException {
+        this(contentState, docType, request, startIndex, maxFeatures, keepAlive, null);
+    }
+
+    /**
+     * @param simplifier Simplifier for decoded geometries or null
+     */
+    public ElasticFeatureReaderSearchAfter(ContentState contentState, String docType, ElasticRequest request,
+            int startIndex, int maxFeatures, Integer keepAlive, ElasticGeometrySimplifier simplifier) throws IOException {
+        this.simplifier = simplifier;
+        final ElasticDataStore dataStore = (ElasticDataStore) contentState.getEntry().getDataStore();
+        this.contentState = contentState;
+        this.client = dataStore.getClient();
+        this.indexName = dataStore.getIndexName();
+        this.docType = docType;
+        this.request = request;
+        this.pageSize = request.getSize();
+        this.maxFeatures = maxFeatures;
+
+        final boolean pointInTime = client.isVersionAtLeast(7, 10);
+        if (pointInTime) {
+            pointInTimeId = client.openPointInTime(indexName, keepAlive);
+            request.setPointInTime(pointInTimeId, keepAlive);
+        }
+
+        // search_after requires a unique sort value
+        final String tiebreaker;
+        if (pointInTime && client.isVersionAtLeast(7, 12)) {
+            tiebreaker = "_shard_doc";
+        } else if (client.getVersion() < 7) {
+            tiebreaker = "_uid";
+        } else {
+            tiebreaker = "_id";
+        }
+        if (!request.hasSort(tiebreaker)) {
+            request.addSort(tiebreaker, "asc");
+        }
+
+        try {
+            skip(startIndex);
+            nextPage();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Advances the search position past the first results without fetching
+     * document sources.
+     */
+    private void skip(int numSkip) throws IOException {
+        final boolean sourceEnabled = request.isSourceEnabled();
+        request.setSourceEnabled(false);
+        try {
+            while (numSkip > 0 && !lastPage) {
+                final int size = Math.min(pageSize, numSkip);
+                final List<ElasticHit> hits = search(size).getHits();
+                numSkip -= hits.size();
+                lastPage = hits.size() < size;
+            }
+        } finally {
+            request.setSourceEnabled(sourceEnabled);
+        }
+    }
+
+    private void nextPage() throws IOException {
+        final List<ElasticHit> hits;
+        if (!lastPage && numFetched < maxFeatures) {
+            final int size = Math.min(pageSize, maxFeatures - numFetched);
+            hits = search(size).getHits();
+            numFetched += hits.size();
+            lastPage = hits.size() < size || numFetched >= maxFeatures;
+        } else {
+            hits = Collections.emptyList();
+            lastPage = true;
+        }
+        delegate = new ElasticFeatureReader(contentState, hits, null, 0, simplifier);
+        LOGGER.fine("Search after numHits=" + hits.size() + " (total=" + numFetched + ")");
+    }
+
+    private ElasticResponse search(int size) throws IOException {
+        request.setSize(size);
+        final ElasticResponse response = client.search(indexName, docType, request);
+        if (response.getPointInTimeId() != null) {
+            pointInTimeId = response.getPointInTimeId();
+            request.setPointInTime(pointInTimeId, request.getPointInTimeKeepAlive());
+        }
+        final List<ElasticHit> hits = response.getHits();
+        if (!hits.isEmpty()) {
+            request.setSearchAfter(hits.get(hits.size() - 1).getSort());
+        }
+        return response;
+    }
+
+    @Override
+    public SimpleFeatureType getFeatureType() {
+        return contentState.getFeatureType();
+    }
+
+    @Override
+    public SimpleFeature next() throws IOException {
+        final SimpleFeature feature;
+        if (hasNext()) {
+            numFeatures++;
+            feature = delegate.next();
+        } else {
+            throw new NoSuchElementException();
+        }
+        return feature;
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        if (!delegate.hasNext() && !lastPage) {
+            nextPage();
+        }
+        return delegate.hasNext() && numFeatures < maxFeatures;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (pointInTimeId != null) {
+            try {
+                client.closePointInTime(pointInTimeId);
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Unable to close point in time", e);
+            }
+            pointInTimeId = null;
+        }
+        if (delegate != null) {
+            delegate.close();
+        }
+    }
+
+}
@@ -0,0 +1,229 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.data.store.ContentState;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * FeatureReader that reads a sliced scroll in parallel. Each slice is scrolled
+ * and decoded on its own worker and the resulting pages of features are merged
+ * in arrival order, so feature order is not defined.
+ */
+class ElasticFeatureReaderSliced implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+
+    private final static Logger LOGGER = Logging.getLogger(ElasticFeatureReaderSliced.class);
+
+    /** Marker queued by each worker when its slice is complete */
+    private final static List<SimpleFeature> SLICE_DONE = Collections.emptyList();
+
+    private final ContentState contentState;
+
+    private final ElasticClient client;
+
+    private final int maxFeatures;
+
+    private final ElasticGeometrySimplifier simplifier;
+
+    private final BlockingQueue<List<SimpleFeature>> pages;
+
+    private final List<Future<?>> workers;
+
+    /** Scroll ids to clear on close, guarded by itself */
+    private final Set<String> scrollIds;
+
+    /** Set on close, guarded by scrollIds */
+    private boolean closed;
+
+    private final AtomicInteger numClaimed;
+
+    private volatile Exception workerError;
+
+    private int numActive;
+
+    private Iterator<SimpleFeature> page;
+
+    /**
+     * @param request Scroll search request used for each slice
+     * @param numSlices Number of slices to read in parallel
+     */
+    public ElasticFeatureReaderSliced(ContentState contentState, String docType, ElasticRequest request,
+            int numSlices, int maxFeatures) {
+        this(contentState, docType, request, numSlices, maxFeatures, null);
+    }
+
+    /**
+     * @param simplifier Simplifier for decoded geometries or null
+     */
+    public ElasticFeatureReaderSliced(ContentState contentState, String docType, ElasticRequest request,
+            int numSlices, int maxFeatures, ElasticGeometrySimplifier simplifier) {
+        this.simplifier = simplifier;
+        final ElasticDataStore dataStore = (ElasticDataStore) contentState.getEntry().getDataStore();
+        this.contentState = contentState;
+        this.client = dataStore.getClient();
+        this.maxFeatures = maxFeatures;
+        this.pages = new ArrayBlockingQueue<>(2 * numSlices);
+        this.workers = new ArrayList<>();
+        this.scrollIds = new HashSet<>();
+        this.numClaimed = new AtomicInteger();
+        this.page = Collections.emptyIterator();
+
+        for (int id = 0; id < numSlices; id++) {
+            final ElasticRequest sliceRequest = new ElasticRequest(request);
+            sliceRequest.setSlice(id, numSlices);
+            workers.add(dataStore.getExecutorService().submit(() -> {
+                readSlice(dataStore, docType, sliceRequest);
+            }));
+        }
+        numActive = numSlices;
+    }
+
+    private void readSlice(ElasticDataStore dataStore, String docType, ElasticRequest request) {
+        try {
+            ElasticResponse response = client.search(dataStore.getIndexName(), docType, request);
+            addScrollId(response.getScrollId());
+            while (!Thread.currentThread().isInterrupted()) {
+                final List<ElasticHit> hits = response.getHits();
+                final int numHits = claim(hits.size());
+                if (numHits > 0) {
+                    final List<SimpleFeature> features = new ArrayList<>(numHits);
+                    final ElasticFeatureReader reader;
+                    reader = new ElasticFeatureReader(contentState, hits.subList(0, numHits), null, 0, simplifier);
+                    while (reader.hasNext()) {
+                        features.add(reader.next());
+                    }
+                    reader.close();
+                    pages.put(features);
+                }
+                if (numHits == 0 || numHits < hits.size()) {
+                    break;
+                }
+                response = client.scroll(response.getScrollId(), dataStore.getScrollTime());
+                addScrollId(response.getScrollId());
+            }
+            pages.put(SLICE_DONE);
+        } catch (InterruptedException e) {
+            LOGGER.fine("Slice read cancelled");
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Slice read failed", e);
+            workerError = e;
+            pages.clear();
+            pages.offer(SLICE_DONE);
+        }
+    }
+
+    /**
+     * Records a scroll id to clear on close. Workers may still be waiting on a
+     * request when the reader is closed, so ids received after close are
+     * cleared immediately.
+     */
+    private void addScrollId(String scrollId) {
+        if (scrollId == null) {
+            return;
+        }
+        synchronized (scrollIds) {
+            if (!closed || scrollIds.contains(scrollId)) {
+                scrollIds.add(scrollId);
+                return;
+            }
+        }
+        try {
+            client.clearScroll(Collections.singleton(scrollId));
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to clear scroll after close", e);
+        }
+    }
+
+    /**
+     * Reserves up to the given number of features against maxFeatures.
+     *
+     * @return Number of features reserved
+     */
+    private int claim(int numHits) {
+        while (true) {
+            final int current = numClaimed.get();
+            final int n = Math.max(0, Math.min(numHits, maxFeatures - current));
+            if (n == 0 || numClaimed.compareAndSet(current, current + n)) {
+                return n;
+            }
+        }
+    }
+
+    @Override
+    public SimpleFeatureType getFeatureType() {
+        return contentState.getFeatureType();
+    }
+
+    @Override
+    public SimpleFeature next() throws IOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.next();
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        while (!page.hasNext() && numActive > 0) {
+            // the failed worker's marker is consumed by the first call
+            if (workerError != null) {
+                throw new IOException("Error reading slice", workerError);
+            }
+            final List<SimpleFeature> features;
+            try {
+                features = pages.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for slice results", e);
+            }
+            if (workerError != null) {
+                throw new IOException("Error reading slice", workerError);
+            }
+            if (features == SLICE_DONE) {
+                numActive--;
+            } else {
+                page = features.iterator();
+            }
+        }
+        return page.hasNext();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (final Future<?> worker : workers) {
+            worker.cancel(true);
+        }
+        pages.clear();
+        page = Collections.emptyIterator();
+        numActive = 0;
+        final Set<String> ids;
+        synchronized (scrollIds) {
+            closed = true;
+            ids = new HashSet<>(scrollIds);
+        }
+        if (!ids.isEmpty()) {
+            client.clearScroll(ids);
+        }
+    }
+
+}
@@ -4,28 +4,53 @@
  */
 package mil.nga.giat.data.elasticsearch;
 
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.DOC_VALUES;
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.FULL_NAME;
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.GEOMETRY_TYPE;
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.NESTED;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import mil.nga.giat.data.elasticsearch.ElasticAttribute.ElasticGeometryType;
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.CoordinateSequenceType;
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.CountMode;
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.PaginationMode;
+
+import org.geotools.data.DataUtilities;
 import org.geotools.data.FeatureReader;
 import org.geotools.data.FilteringFeatureReader;
 import org.geotools.data.Query;
 import org.geotools.data.store.ContentEntry;
 import org.geotools.data.store.ContentFeatureSource;
+import org.geotools.data.store.ContentState;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.filter.visitor.ExtractBoundsFilterVisitor;
 import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.util.factory.Hints;
 import org.geotools.util.logging.Logging;
 import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.feature.FeatureVisitor;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
 import org.opengis.filter.sort.SortBy;
 import org.opengis.filter.sort.SortOrder;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+
 /**
  * Provides access to a specific type within the Elasticsearch index described
  * by the associated data store.
@@ -35,6 +60,16 @@ class ElasticFeatureSource extends ContentFeatureSource {
 
     private final static Logger LOGGER = Logging.getLogger(ElasticFeatureSource.class);
 
+    /**
+     * Names of the point decimation grid aggregation and its top hit
+     * sub-aggregation
+     */
+    private static final String PIXELS = "pixels";
+
+    private static final String PIXEL_HIT = "hit";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
     private Boolean filterFullySupported;
 
     public ElasticFeatureSource(ContentEntry entry, Query query) throws IOException {
@@ -57,7 +92,9 @@ class ElasticFeatureSource extends ContentFeatureSource {
     }
 
     /**
-     * Implementation that generates the total bounds
+     * Implementation that generates the total bounds. Bounds are computed with
+     * a geo_bounds aggregation when the filter is fully supported and the
+     * query is not paged, otherwise matching features are scanned.
      */
     @Override
     protected ReferencedEnvelope getBoundsInternal(Query query) throws IOException {
@@ -65,6 +102,29 @@ class ElasticFeatureSource extends ContentFeatureSource {
         final CoordinateReferenceSystem crs = getSchema().getCoordinateReferenceSystem();
         final ReferencedEnvelope bounds = new ReferencedEnvelope(crs);
 
+        final GeometryDescriptor geometryDescriptor = getSchema().getGeometryDescriptor();
+        if (canAggregateBounds(query, geometryDescriptor)) {
+            final ElasticRequest searchRequest = prepareSearchRequest(query, false);
+            if (filterFullySupported && searchRequest.getAggregations() == null) {
+                final String fieldName = (String) geometryDescriptor.getUserData().get(FULL_NAME);
+                searchRequest.setSize(0);
+                searchRequest.setAggregations(ImmutableMap.of("bounds",
+                        ImmutableMap.of("geo_bounds", ImmutableMap.of("field", fieldName))));
+                try {
+                    final ElasticDataStore dataStore = getDataStore();
+                    final String docType = dataStore.getDocType(entry.getName());
+                    final ElasticResponse sr = dataStore.getClient().search(dataStore.getIndexName(), docType, searchRequest);
+                    final ElasticAggregation aggregation = sr.getAggregations() != null ? sr.getAggregations().get("bounds") : null;
+                    if (aggregation != null) {
+                        includeBounds(bounds, aggregation.getBounds());
+                        return bounds;
+                    }
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Bounds aggregation failed, computing bounds from features", e);
+                }
+            }
+        }
+
         try (FeatureReader<SimpleFeatureType, SimpleFeature> featureReader = getReaderInternal(query)) {
             while (featureReader.hasNext()) {
                 final SimpleFeature feature = featureReader.next();
@@ -74,28 +134,61 @@ class ElasticFeatureSource extends ContentFeatureSource {
         return bounds;
     }
 
+    private boolean canAggregateBounds(Query query, GeometryDescriptor geometryDescriptor) {
+        if (geometryDescriptor == null || query.getStartIndex() != null || !query.isMaxFeaturesUnlimited()
+                || geometryDescriptor.getUserData().get(FULL_NAME) == null
+                || Boolean.TRUE.equals(geometryDescriptor.getUserData().get(NESTED))) {
+            return false;
+        }
+        final ElasticGeometryType geometryType = (ElasticGeometryType) geometryDescriptor.getUserData().get(GEOMETRY_TYPE);
+        return geometryType == ElasticGeometryType.GEO_POINT
+                || (geometryType == ElasticGeometryType.GEO_SHAPE && getDataStore().getClient().isVersionAtLeast(7, 8));
+    }
+
+    /**
+     * Add geo_bounds aggregation result to the bounds. Bounds crossing the
+     * dateline are expanded to all longitudes.
+     */
+    static void includeBounds(ReferencedEnvelope bounds, Map<String, Map<String, Double>> result) {
+        if (result == null || result.get("top_left") == null || result.get("bottom_right") == null) {
+            return;
+        }
+        final Map<String,Double> topLeft = result.get("top_left");
+        final Map<String,Double> bottomRight = result.get("bottom_right");
+        double minX = topLeft.get("lon");
+        double maxX = bottomRight.get("lon");
+        if (minX > maxX) {
+            minX = -180;
+            maxX = 180;
+        }
+        bounds.expandToInclude(new Envelope(minX, maxX, bottomRight.get("lat"), topLeft.get("lat")));
+    }
+
     @Override
     protected int getCountInternal(Query query) throws IOException {
         LOGGER.fine("getCountInternal");
         int hits = 0;
         final ElasticRequest searchRequest = prepareSearchRequest(query, false);
         try {
+            final ElasticDataStore dataStore = getDataStore();
+            final String docType = dataStore.getDocType(entry.getName());
+            final int from = getStartIndex(query);
             if (!filterFullySupported) {
-                try (FeatureReader<SimpleFeatureType, SimpleFeature> reader = getReaderInternal(query)) {
-                    while (reader.hasNext()) {
-                        reader.next();
-                        hits++;
-                    }
-                }
+                hits = countFiltered(query, searchRequest);
+            } else if (getCountMode() == CountMode.EXACT && searchRequest.getAggregations() == null) {
+                final long count = dataStore.getClient().count(dataStore.getIndexName(), docType, searchRequest.getQuery());
+                final long size = query.isMaxFeaturesUnlimited() ? Integer.MAX_VALUE : query.getMaxFeatures();
+                hits = (int) Math.max(0, Math.min(count - from, size));
             } else {
+                final int size = getCountMode() == CountMode.CAPPED ? getSize(query)
+                        : query.isMaxFeaturesUnlimited() ? Integer.MAX_VALUE : query.getMaxFeatures();
                 searchRequest.setSize(0);
-                final ElasticDataStore dataStore = getDataStore();
-                final String docType = dataStore.getDocType(entry.getName());
+                if (getCountMode() == CountMode.CAPPED) {
+                    searchRequest.setTrackTotalHits((int) Math.min(Integer.MAX_VALUE, (long) from + size));
+                }
                 final ElasticResponse sr = dataStore.getClient().search(dataStore.getIndexName(), docType, searchRequest);
-                final int totalHits = (int) sr.getTotalNumHits();
-                final int size = getSize(query);
-                final int from = getStartIndex(query);
-                hits = Math.max(0, Math.min(totalHits - from, size));
+                final long totalHits = sr.getTotalNumHits();
+                hits = (int) Math.max(0, Math.min(totalHits - from, size));
             }
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, e.getMessage(), e);
@@ -105,6 +198,111 @@ class ElasticFeatureSource extends ContentFeatureSource {
         return hits;
     }
 
+    /**
+     * Count features matching a filter that is only partially supported by
+     * Elasticsearch. Hits are streamed and the residual filter is evaluated on
+     * features holding only the attributes referenced by the filter.
+     */
+    private int countFiltered(Query query, ElasticRequest searchRequest) throws IOException {
+        final ElasticDataStore dataStore = getDataStore();
+        final boolean scroll = !useSortOrPagination(query) && dataStore.getScrollEnabled();
+        final boolean searchAfter = useSortOrPagination(query)
+                && dataStore.getPaginationMode() == PaginationMode.SEARCH_AFTER;
+        if (scroll || searchAfter || searchRequest.getAggregations() != null) {
+            // paged readers are needed to reach all matches
+            int hits = 0;
+            try (FeatureReader<SimpleFeatureType, SimpleFeature> reader = getReaderInternal(query)) {
+                while (reader.hasNext()) {
+                    reader.next();
+                    hits++;
+                }
+            }
+            return hits;
+        }
+
+        final SimpleFeatureType featureType = getState().getFeatureType();
+        final String[] attributeNames = DataUtilities.attributeNames(query.getFilter(), featureType);
+        final SimpleFeatureType countType = SimpleFeatureTypeBuilder.retype(featureType, attributeNames);
+        final ContentState countState = getState().copy();
+        countState.setFeatureType(countType);
+
+        final Set<String> storedNames = new HashSet<>();
+        for (final ElasticAttribute attribute : dataStore.getElasticAttributes(entry.getName())) {
+            if (attribute.isStored()) {
+                storedNames.add(attribute.getName());
+            }
+        }
+        final Set<String> fieldNames = new HashSet<>();
+        searchRequest.getSourceIncludes().clear();
+        searchRequest.getFields().clear();
+        searchRequest.getDocValueFields().clear();
+        for (final AttributeDescriptor descriptor : countType.getAttributeDescriptors()) {
+            final String fieldName = (String) descriptor.getUserData().get(FULL_NAME);
+            if (fieldName != null && !fieldName.startsWith("_")) {
+                fieldNames.add(fieldName);
+                if (Boolean.TRUE.equals(descriptor.getUserData().get(DOC_VALUES))) {
+                    searchRequest.addDocValueField(fieldName, getDocValueFormat(descriptor.getType().getBinding()));
+                } else if (storedNames.contains(fieldName)) {
+                    searchRequest.addField(fieldName);
+                } else {
+                    searchRequest.addSourceInclude(fieldName);
+                }
+            }
+        }
+        searchRequest.setSourceEnabled(!searchRequest.getSourceIncludes().isEmpty());
+
+        final String docType = dataStore.getDocType(entry.getName());
+        final ElasticHitStream hitStream = dataStore.getClient().searchStream(dataStore.getIndexName(), docType,
+                searchRequest, fieldNames, getGeometryReader(countType, null));
+        int hits = 0;
+        try (FeatureReader<SimpleFeatureType, SimpleFeature> reader = new FilteringFeatureReader<>(
+                new ElasticFeatureReader(countState, hitStream), query.getFilter())) {
+            while (reader.hasNext()) {
+                reader.next();
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Compute min, max, sum, average, count, unique and group by visitors
+     * with aggregations when the filter is fully supported. Otherwise all
+     * matching features are visited.
+     */
+    @Override
+    protected boolean handleVisitor(Query query, FeatureVisitor visitor) throws IOException {
+        if (query.getStartIndex() != null || !query.isMaxFeaturesUnlimited()) {
+            return false;
+        }
+        final ElasticDataStore dataStore = getDataStore();
+        final String docType = dataStore.getDocType(entry.getName());
+        final ElasticVisitorHandler handler = new ElasticVisitorHandler(dataStore.getClient(),
+                dataStore.getIndexName(), docType, getSchema());
+        if (!handler.canHandle(visitor)) {
+            return false;
+        }
+        final ElasticRequest searchRequest = prepareSearchRequest(query, false);
+        if (!filterFullySupported || searchRequest.getAggregations() != null) {
+            return false;
+        }
+        try {
+            handler.handle(visitor, searchRequest);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Visitor aggregation failed, visiting features", e);
+            return false;
+        }
+        return true;
+    }
+
+    private CountMode getCountMode() {
+        final CountMode countMode = getDataStore().getCountMode();
+        if (countMode != null) {
+            return countMode;
+        }
+        return CountMode.valueOf((String) ElasticDataStoreFactory.COUNT_MODE.getDefaultValue());
+    }
+
     @Override
     protected FeatureReader<SimpleFeatureType, SimpleFeature> getReaderInternal(Query query) throws IOException {
         LOGGER.fine("getReaderInternal");
@@ -112,16 +310,48 @@ class ElasticFeatureSource extends ContentFeatureSource {
         try {
             final ElasticDataStore dataStore = getDataStore();
             final String docType = dataStore.getDocType(entry.getName());
-            final boolean scroll = !useSortOrPagination(query) && dataStore.getScrollEnabled();
-            final ElasticRequest searchRequest = prepareSearchRequest(query, scroll);
-            final ElasticResponse sr = dataStore.getClient().search(dataStore.getIndexName(), docType, searchRequest);
-            if (LOGGER.isLoggable(Level.FINE)) {
-                LOGGER.fine("Search response: " + sr);
+            final ElasticGeometrySimplifier querySimplifier = ElasticGeometrySimplifier.fromHints(query.getHints());
+            final boolean decimate = canDecimatePoints(query, querySimplifier);
+            final boolean scroll = !decimate && !useSortOrPagination(query) && dataStore.getScrollEnabled();
+            final boolean searchAfter = useSortOrPagination(query)
+                    && dataStore.getPaginationMode() == PaginationMode.SEARCH_AFTER;
+            final ElasticRequest searchRequest = prepareSearchRequest(query, scroll, searchAfter);
+            // the remaining filter is evaluated against the features read so
+            // geometries are only generalized when there is none
+            final ElasticGeometrySimplifier simplifier = filterFullySupported ? querySimplifier : null;
+            final int slices = scroll ? getScrollSlices() : 1;
+            final List<ElasticHit> pixelHits;
+            if (decimate && searchRequest.getAggregations() == null) {
+                pixelHits = searchPixels(query, new ElasticRequest(searchRequest), querySimplifier.getDistance());
+            } else {
+                pixelHits = null;
             }
-            if (!scroll) {
-                reader = new ElasticFeatureReader(getState(), sr);
+            if (pixelHits != null) {
+                reader = new ElasticFeatureReader(getState(), pixelHits, null, 0);
+            } else if (searchAfter && searchRequest.getAggregations() == null) {
+                reader = new ElasticFeatureReaderSearchAfter(getState(), docType, searchRequest,
+                        getStartIndex(query), getSize(query), dataStore.getScrollTime(), simplifier);
+            } else if (slices > 1 && searchRequest.getAggregations() == null) {
+                reader = new ElasticFeatureReaderSliced(getState(), docType, searchRequest, slices, getSize(query),
+                        simplifier);
+            } else if (!scroll && dataStore.isStreamingEnabled() && searchRequest.getAggregations() == null) {
+                final ElasticHitStream hitStream = dataStore.getClient().searchStream(dataStore.getIndexName(), docType,
+                        searchRequest, getFieldNames(), getGeometryReader(getState().getFeatureType(), simplifier));
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine("Streaming search response with " + hitStream.getTotalNumHits() + " total hits");
+                }
+                reader = new ElasticFeatureReader(getState(), hitStream);
             } else {
-                reader = new ElasticFeatureReaderScroll(getState(), sr, getSize(query));
+                final ElasticResponse sr = dataStore.getClient().search(dataStore.getIndexName(), docType, searchRequest);
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine("Search response: " + sr);
+                }
+                if (!scroll) {
+                    reader = new ElasticFeatureReader(getState(), sr, simplifier);
+                } else {
+                    final int prefetch = dataStore.getScrollPrefetch() != null ? dataStore.getScrollPrefetch() : 0;
+                    reader = new ElasticFeatureReaderScroll(getState(), sr, getSize(query), prefetch, simplifier);
+                }
             }
             if (!filterFullySupported) {
                 reader = new FilteringFeatureReader<>(reader, query.getFilter());
@@ -133,7 +363,120 @@ class ElasticFeatureSource extends ContentFeatureSource {
         return reader;
     }
 
+    /**
+     * Points can be decimated to one feature per pixel when enabled for the
+     * layer and the query carries a generalization distance, i.e. when the
+     * layer is rendered. Sorted and paged queries are not decimated, nor are
+     * queries with filters that are not fully supported, since the remaining
+     * filter could reject the one hit kept for a pixel.
+     */
+    private boolean canDecimatePoints(Query query, ElasticGeometrySimplifier simplifier) throws IOException {
+        final GeometryDescriptor geometryDescriptor = getSchema().getGeometryDescriptor();
+        if (simplifier == null || !isPointDecimation() || geometryDescriptor == null || useSortOrPagination(query)
+                || geometryDescriptor.getUserData().get(FULL_NAME) == null
+                || Boolean.TRUE.equals(geometryDescriptor.getUserData().get(NESTED))) {
+            return false;
+        }
+        final ElasticGeometryType geometryType = (ElasticGeometryType) geometryDescriptor.getUserData().get(GEOMETRY_TYPE);
+        if (geometryType != ElasticGeometryType.GEO_POINT || !getDataStore().getClient().isVersionAtLeast(7, 0)) {
+            return false;
+        }
+        final FilterToElastic filterToElastic = new FilterToElastic();
+        filterToElastic.setFeatureType(buildFeatureType());
+        filterToElastic.encode(query);
+        return filterToElastic.getFullySupported();
+    }
+
+    /**
+     * Search one representative hit per occupied pixel with a geotile_grid
+     * aggregation at pixel resolution and a top_hits sub-aggregation
+     * retrieving the same fields as the search request.
+     *
+     * @param pixelSize Pixel size in degrees
+     * @return Hits or null if the aggregation failed
+     */
+    private List<ElasticHit> searchPixels(Query query, ElasticRequest searchRequest, double pixelSize) throws IOException {
+        final ElasticDataStore dataStore = getDataStore();
+        final String fieldName = (String) getSchema().getGeometryDescriptor().getUserData().get(FULL_NAME);
+        final int precision = GeohashUtil.computeTilePrecision(pixelSize);
+        LOGGER.fine("Decimating points with geotile grid precision " + precision);
+
+        final Map<String,Object> grid = new HashMap<>();
+        grid.put("field", fieldName);
+        grid.put("precision", precision);
+        grid.put("size", getSize(query));
+
+        final Map<String,Object> topHits = new HashMap<>();
+        topHits.put("size", 1);
+        if (!searchRequest.isSourceEnabled()) {
+            topHits.put("_source", false);
+        } else if (!searchRequest.getSourceIncludes().isEmpty()) {
+            topHits.put("_source", searchRequest.getSourceIncludes());
+        }
+        if (!searchRequest.getFields().isEmpty()) {
+            topHits.put("stored_fields", searchRequest.getFields());
+        }
+        if (!searchRequest.getDocValueFields().isEmpty()) {
+            final List<Object> docValueFields = new ArrayList<>();
+            searchRequest.getDocValueFields().forEach((name, format) -> docValueFields.add(format != null
+                    ? ImmutableMap.of("field", name, "format", format) : ImmutableMap.of("field", name)));
+            topHits.put("docvalue_fields", docValueFields);
+        }
+
+        final Map<String,Map<String,Object>> aggregation = new HashMap<>();
+        aggregation.put("geotile_grid", grid);
+        aggregation.put("aggs", ImmutableMap.of(PIXEL_HIT, ImmutableMap.of("top_hits", topHits)));
+        searchRequest.setAggregations(ImmutableMap.of(PIXELS, aggregation));
+        searchRequest.setSize(0);
+        searchRequest.setFrom(null);
+
+        try {
+            final String docType = dataStore.getDocType(entry.getName());
+            final ElasticResponse sr = dataStore.getClient().search(dataStore.getIndexName(), docType, searchRequest);
+            final List<ElasticHit> hits = getPixelHits(sr);
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Point decimation returned " + hits.size() + " occupied pixels");
+            }
+            return hits;
+        } catch (IOException e) {
+            // e.g. more buckets than allowed by search.max_buckets
+            LOGGER.log(Level.FINE, "Point decimation failed, searching features", e);
+            return null;
+        }
+    }
+
+    /**
+     * Top hit of each geotile_grid bucket of a point decimation response
+     */
+    @SuppressWarnings("unchecked")
+    static List<ElasticHit> getPixelHits(ElasticResponse response) {
+        final List<ElasticHit> hits = new ArrayList<>();
+        final ElasticAggregation aggregation = response.getAggregations() != null ? response.getAggregations().get(PIXELS) : null;
+        if (aggregation == null || aggregation.getBuckets() == null) {
+            return hits;
+        }
+        for (final Map<String,Object> bucket : aggregation.getBuckets()) {
+            final Map<String,Object> topHits = (Map<String,Object>) bucket.get(PIXEL_HIT);
+            final Map<String,Object> results = topHits != null ? (Map<String,Object>) topHits.get("hits") : null;
+            final List<Object> bucketHits = results != null ? (List<Object>) results.get("hits") : null;
+            if (bucketHits != null && !bucketHits.isEmpty()) {
+                hits.add(MAPPER.convertValue(bucketHits.get(0), ElasticHit.class));
+            }
+        }
+        return hits;
+    }
+
+    private boolean isPointDecimation() {
+        final ElasticLayerConfiguration layerConfig;
+        layerConfig = getDataStore().getLayerConfigurations().get(entry.getTypeName());
+        return layerConfig != null && layerConfig.isPointDecimation();
+    }
+
     private ElasticRequest prepareSearchRequest(Query query, boolean scroll) throws IOException {
+        return prepareSearchRequest(query, scroll, false);
+    }
+
+    private ElasticRequest prepareSearchRequest(Query query, boolean scroll, boolean searchAfter) throws IOException {
         String naturalSortOrder = SortOrder.ASCENDING.toSQL().toLowerCase();
         final ElasticRequest searchRequest = new ElasticRequest();
         final ElasticDataStore dataStore = getDataStore();
@@ -154,8 +497,15 @@ class ElasticFeatureSource extends ContentFeatureSource {
             }
 
             // pagination
-            searchRequest.setSize(getSize(query));
-            searchRequest.setFrom(getStartIndex(query));
+            if (searchAfter) {
+                // page size, offset and tiebreaker sort are handled by the reader
+                final Number pageSize = dataStore.getScrollSize() != null ? dataStore.getScrollSize()
+                        : (Number) ElasticDataStoreFactory.SCROLL_SIZE.getDefaultValue();
+                searchRequest.setSize(pageSize.intValue());
+            } else {
+                searchRequest.setSize(getSize(query));
+                searchRequest.setFrom(getStartIndex(query));
+            }
         } else {
             if (dataStore.getScrollSize() != null) {
                 searchRequest.setSize(dataStore.getScrollSize().intValue());
@@ -167,13 +517,24 @@ class ElasticFeatureSource extends ContentFeatureSource {
 
         if (dataStore.isSourceFilteringEnabled()) {
             if (query.getProperties() != Query.ALL_PROPERTIES) {
+                final SimpleFeatureType featureType = getState().getFeatureType();
                 for (String property : query.getPropertyNames()) {
-                    searchRequest.addSourceInclude(property);
+                    final AttributeDescriptor descriptor = featureType.getDescriptor(property);
+                    if (descriptor != null && Boolean.TRUE.equals(descriptor.getUserData().get(DOC_VALUES))) {
+                        final String fieldName = (String) descriptor.getUserData().get(FULL_NAME);
+                        searchRequest.addDocValueField(fieldName, getDocValueFormat(descriptor.getType().getBinding()));
+                    } else {
+                        searchRequest.addSourceInclude(property);
+                    }
                 }
             } else {
                 // add source includes
                 setSourceIncludes(searchRequest);
             }
+            if (searchRequest.getSourceIncludes().isEmpty() && !searchRequest.getDocValueFields().isEmpty()) {
+                // all attributes are read from doc values or stored fields
+                searchRequest.setSourceEnabled(false);
+            }
         }
 
         // add query and post filter
@@ -191,7 +552,7 @@ class ElasticFeatureSource extends ContentFeatureSource {
 
         searchRequest.setQuery(queryBuilder);
 
-        if (isSort(query) && nativeQueryBuilder.equals(ElasticConstants.MATCH_ALL)) {
+        if (!searchAfter && isSort(query) && nativeQueryBuilder.equals(ElasticConstants.MATCH_ALL)) {
             final String sortKey = dataStore.getClient().getVersion() < 7 ? "_uid" : "_id";
             searchRequest.addSort(sortKey, naturalSortOrder);
         }
@@ -214,6 +575,14 @@ class ElasticFeatureSource extends ContentFeatureSource {
             final int precision = GeohashUtil.computePrecision(envelope, gridSize, gridThreshold);
             LOGGER.fine("Updating GeoHash grid aggregation precision to " + precision);
             GeohashUtil.updateGridAggregationPrecision(aggregations, precision);
+            int tilePrecision = GeohashUtil.computeTilePrecision(envelope, gridSize, gridThreshold);
+            final ElasticGeometrySimplifier simplifier = ElasticGeometrySimplifier.fromHints(query.getHints());
+            if (simplifier != null) {
+                // tiles smaller than a pixel are not rendered
+                tilePrecision = Math.min(tilePrecision, GeohashUtil.computeTilePrecision(simplifier.getDistance()));
+            }
+            LOGGER.fine("Updating geotile grid aggregation precision to " + tilePrecision);
+            GeohashUtil.updateTileAggregationPrecision(aggregations, tilePrecision);
             searchRequest.setAggregations(aggregations);
             searchRequest.setSize(0);
         }
@@ -223,9 +592,12 @@ class ElasticFeatureSource extends ContentFeatureSource {
 
     private void setSourceIncludes(final ElasticRequest searchRequest) throws IOException {
         final ElasticDataStore dataStore = getDataStore();
+        final boolean useDocValues = isUseDocValues();
         final List<ElasticAttribute> attributes = dataStore.getElasticAttributes(entry.getName());
         for (final ElasticAttribute attribute : attributes) {
-            if (attribute.isUse() && attribute.isStored()) {
+            if (attribute.isUse() && attribute.isDocValuesRetrieval(useDocValues)) {
+                searchRequest.addDocValueField(attribute.getName(), getDocValueFormat(attribute.getType()));
+            } else if (attribute.isUse() && attribute.isStored()) {
                 searchRequest.addField(attribute.getName());
             } else if (attribute.isUse()) {
                 searchRequest.addSourceInclude(attribute.getName());
@@ -233,6 +605,69 @@ class ElasticFeatureSource extends ContentFeatureSource {
         }
     }
 
+    private boolean isUseDocValues() {
+        final ElasticLayerConfiguration layerConfig;
+        layerConfig = getDataStore().getLayerConfigurations().get(entry.getTypeName());
+        return layerConfig != null && layerConfig.isUseDocValues();
+    }
+
+    /**
+     * Format requested for doc value fields. Dates are requested as epoch
+     * milliseconds so they can be read without the mapping date format.
+     */
+    static String getDocValueFormat(Class<?> binding) {
+        return binding != null && Date.class.isAssignableFrom(binding) ? "epoch_millis" : null;
+    }
+
+    /**
+     * Reader decoding the geometry attributes of a feature type directly from
+     * a streamed search response.
+     *
+     * @param simplifier Simplifier for decoded geometries or null
+     */
+    private ElasticGeometryReader getGeometryReader(SimpleFeatureType featureType, ElasticGeometrySimplifier simplifier) {
+        final CoordinateSequenceType coordinateSequenceType = getDataStore().getCoordinateSequenceType();
+        final ElasticParserUtil parserUtil;
+        if (coordinateSequenceType != null) {
+            parserUtil = new ElasticParserUtil(coordinateSequenceType.getFactory(), simplifier);
+        } else {
+            parserUtil = new ElasticParserUtil(CoordinateSequenceType.ARRAY.getFactory(), simplifier);
+        }
+        final Set<String> geometryNames = new HashSet<>();
+        for (final AttributeDescriptor descriptor : featureType.getAttributeDescriptors()) {
+            final String fieldName = (String) descriptor.getUserData().get(FULL_NAME);
+            if (fieldName != null && Geometry.class.isAssignableFrom(descriptor.getType().getBinding())) {
+                geometryNames.add(fieldName);
+            }
+        }
+        return new ElasticGeometryReader(parserUtil, geometryNames);
+    }
+
+    private Set<String> getFieldNames() {
+        final Set<String> fieldNames = new HashSet<>();
+        for (final AttributeDescriptor descriptor : getState().getFeatureType().getAttributeDescriptors()) {
+            final String fieldName = (String) descriptor.getUserData().get(FULL_NAME);
+            if (fieldName != null) {
+                fieldNames.add(fieldName);
+            }
+        }
+        return fieldNames;
+    }
+
+    private int getScrollSlices() throws IOException {
+        final ElasticDataStore dataStore = getDataStore();
+        final Integer scrollSlices = dataStore.getScrollSlices();
+        final int slices;
+        if (scrollSlices == null || dataStore.getClient().getVersion() < 5) {
+            slices = 1;
+        } else if (scrollSlices == 0) {
+            slices = Math.max(1, dataStore.getClient().getNumberOfShards(dataStore.getIndexName()));
+        } else {
+            slices = scrollSlices;
+        }
+        return slices;
+    }
+
     private boolean isSort(Query query) {
         return query.getSortBy() != null && query.getSortBy().length > 0;
     }
@@ -275,8 +710,10 @@ class ElasticFeatureSource extends ContentFeatureSource {
             attributes = null;
         }
 
+        final boolean useDocValues = layerConfig != null && layerConfig.isUseDocValues();
+
         final ElasticFeatureTypeBuilder typeBuilder;
-        typeBuilder = new ElasticFeatureTypeBuilder(attributes, entry.getName());
+        typeBuilder = new ElasticFeatureTypeBuilder(attributes, useDocValues, entry.getName());
         return typeBuilder.buildFeatureType();
     }
 
@@ -300,4 +737,13 @@ class ElasticFeatureSource extends ContentFeatureSource {
         return true;
     }
 
+    /**
+     * Geometries are generalized while decoding search hits
+     */
+    @Override
+    protected void addHints(Set<Hints.Key> hints) {
+        hints.add(Hints.GEOMETRY_DISTANCE);
+        hints.add(Hints.GEOMETRY_SIMPLIFICATION);
+    }
+
 }
@@ -10,6 +10,7 @@ import java.util.logging.Logger;
 
 import static mil.nga.giat.data.elasticsearch.ElasticConstants.ANALYZED;
 import static mil.nga.giat.data.elasticsearch.ElasticConstants.DATE_FORMAT;
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.DOC_VALUES;
 import static mil.nga.giat.data.elasticsearch.ElasticConstants.FULL_NAME;
 import static mil.nga.giat.data.elasticsearch.ElasticConstants.GEOMETRY_TYPE;
 import static mil.nga.giat.data.elasticsearch.ElasticConstants.NESTED;
@@ -34,9 +35,19 @@ class ElasticFeatureTypeBuilder extends SimpleFeatureTypeBuilder {
 
     private final List<ElasticAttribute> attributes;
 
+    private final boolean useDocValues;
+
     public ElasticFeatureTypeBuilder(List<ElasticAttribute> attributes, Name name) {
+        this(attributes, false, name);
+    }
+
+    /**
+     * @param useDocValues Layer default for reading attributes from doc values
+     */
+    public ElasticFeatureTypeBuilder(List<ElasticAttribute> attributes, boolean useDocValues, Name name) {
         setName(name);
         this.attributes = attributes;
+        this.useDocValues = useDocValues;
     }
 
     @Override
@@ -89,6 +100,7 @@ class ElasticFeatureTypeBuilder extends SimpleFeatureTypeBuilder {
                         att.getUserData().put(FULL_NAME, attribute.getName());
                         att.getUserData().put(ANALYZED, attribute.getAnalyzed());
                         att.getUserData().put(NESTED, attribute.isNested());
+                        att.getUserData().put(DOC_VALUES, attribute.isDocValuesRetrieval(useDocValues));
                         add(att);
                     }
                 }
@@ -0,0 +1,406 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.geotools.util.logging.Logging;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.CoordinateSequenceFactory;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKTReader;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.json.ReaderBasedJsonParser;
+import com.fasterxml.jackson.core.json.UTF8DataInputJsonParser;
+import com.fasterxml.jackson.core.json.UTF8StreamJsonParser;
+
+/**
+ * Reads geo_point and geo_shape values directly from a JSON parser. GeoJSON
+ * coordinates are collected into primitive coordinate buffers and WKT strings
+ * are read from the parser text buffer, so large shapes are never held as
+ * nested lists of boxed numbers.
+ */
+class ElasticGeometryReader {
+
+    private final static Logger LOGGER = Logging.getLogger(ElasticGeometryReader.class);
+
+    /**
+     * Strings up to this length are parsed as lat/lon or geohash values before
+     * being considered as WKT
+     */
+    private static final int MAX_POINT_STRING_LENGTH = 64;
+
+    private final ElasticParserUtil parserUtil;
+
+    private final GeometryFactory geometryFactory;
+
+    private final CoordinateSequenceFactory coordinateSequenceFactory;
+
+    private final WKTReader wktReader;
+
+    private final Set<String> fieldNames;
+
+    /**
+     * @param parserUtil Parser used for geometry construction
+     * @param fieldNames Full names of the fields to read as geometries
+     */
+    ElasticGeometryReader(ElasticParserUtil parserUtil, Collection<String> fieldNames) {
+        this.parserUtil = parserUtil;
+        this.geometryFactory = parserUtil.getGeometryFactory();
+        this.coordinateSequenceFactory = geometryFactory.getCoordinateSequenceFactory();
+        this.wktReader = new WKTReader(geometryFactory);
+        this.fieldNames = new HashSet<>(fieldNames);
+    }
+
+    boolean isGeometryField(String name) {
+        return fieldNames.contains(name);
+    }
+
+    /**
+     * Read the geometries of a field value. The parser must be positioned at
+     * the first token of the value. Arrays of geometries contribute one
+     * geometry per element, while a numeric array is read as a single
+     * {@code [lon, lat]} point.
+     *
+     * @param parser JSON parser
+     * @param geometries List receiving the geometries
+     */
+    void readValues(JsonParser parser, List<Object> geometries) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            add(readGeometry(parser), geometries);
+            return;
+        }
+        JsonToken token = parser.nextToken();
+        if (token != null && token.isNumeric()) {
+            final double x = readOrdinate(parser, token);
+            final double y = readOrdinate(parser, parser.nextToken());
+            skipPosition(parser);
+            add(createPoint(x, y), geometries);
+            return;
+        }
+        while (token != JsonToken.END_ARRAY && token != null) {
+            if (token == JsonToken.START_ARRAY) {
+                readValues(parser, geometries);
+            } else {
+                add(readGeometry(parser), geometries);
+            }
+            token = parser.nextToken();
+        }
+    }
+
+    /**
+     * Read a single geometry. The parser must be positioned at the first token
+     * of the value and is left at its last token.
+     *
+     * @param parser JSON parser
+     * @return Geometry or null if the value is not a supported geometry
+     */
+    Geometry readGeometry(JsonParser parser) throws IOException {
+        final JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_STRING) {
+            return readString(parser);
+        } else if (token == JsonToken.START_OBJECT) {
+            return readObject(parser);
+        } else if (token == JsonToken.START_ARRAY) {
+            final Object coordinates = readCoordinates(parser);
+            return coordinates instanceof double[] ? createPoint((double[]) coordinates) : null;
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    private Geometry readString(JsonParser parser) throws IOException {
+        if (parser.getTextLength() <= MAX_POINT_STRING_LENGTH) {
+            // lat/lon, geohash or short wkt
+            return parserUtil.createGeometry(parser.getText());
+        }
+        final CharArrayReader reader = new CharArrayReader(parser.getTextCharacters(), parser.getTextOffset(),
+                parser.getTextLength());
+        try {
+            final Geometry geometry = wktReader.read(reader);
+            return parserUtil.getSimplifier() != null ? parserUtil.getSimplifier().simplify(geometry) : geometry;
+        } catch (ParseException e) {
+            LOGGER.fine("Unable to parse WKT geometry: " + e);
+            return null;
+        }
+    }
+
+    private Geometry readObject(JsonParser parser) throws IOException {
+        String type = null;
+        Object coordinates = null;
+        List<Geometry> geometries = null;
+        String radius = null;
+        Double lat = null;
+        Double lon = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+            switch (name) {
+            case "type":
+                type = parser.getValueAsString();
+                break;
+            case "coordinates":
+                if (token == JsonToken.START_ARRAY) {
+                    coordinates = readCoordinates(parser);
+                } else {
+                    parser.skipChildren();
+                }
+                break;
+            case "geometries":
+                if (token == JsonToken.START_ARRAY) {
+                    geometries = new ArrayList<>();
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        geometries.add(readGeometry(parser));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+                break;
+            case "radius":
+                radius = parser.getValueAsString();
+                break;
+            case "lat":
+                lat = readOrdinate(parser, token);
+                break;
+            case "lon":
+                lon = readOrdinate(parser, token);
+                break;
+            default:
+                parser.skipChildren();
+                break;
+            }
+        }
+
+        try {
+            return createGeometry(type, coordinates, geometries, radius, lat, lon);
+        } catch (ClassCastException | IndexOutOfBoundsException e) {
+            LOGGER.fine("Invalid coordinates for geometry type " + type + ": " + e);
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Geometry createGeometry(String type, Object coordinates, List<Geometry> geometries, String radius,
+            Double lat, Double lon) {
+        final Geometry geometry;
+        switch (String.valueOf(type).toUpperCase()) {
+        case "POINT":
+            geometry = coordinates != null ? createPoint((double[]) coordinates) : geometryFactory.createPoint();
+            break;
+        case "LINESTRING":
+            geometry = geometryFactory.createLineString(createSequence(coordinates, 2));
+            break;
+        case "POLYGON":
+            geometry = createPolygon((List<Object>) coordinates);
+            break;
+        case "MULTIPOINT":
+            geometry = geometryFactory.createMultiPoint(createSequence(coordinates, 0));
+            break;
+        case "MULTILINESTRING": {
+            final List<Object> lines = (List<Object>) coordinates;
+            final LineString[] lineStrings = new LineString[lines.size()];
+            for (int i = 0; i < lineStrings.length; i++) {
+                lineStrings[i] = geometryFactory.createLineString(createSequence(lines.get(i), 2));
+            }
+            geometry = geometryFactory.createMultiLineString(lineStrings);
+            break;
+        }
+        case "MULTIPOLYGON": {
+            final List<Object> list = (List<Object>) coordinates;
+            final Polygon[] polygons = new Polygon[list.size()];
+            for (int i = 0; i < polygons.length; i++) {
+                polygons[i] = createPolygon((List<Object>) list.get(i));
+            }
+            geometry = geometryFactory.createMultiPolygon(polygons);
+            break;
+        }
+        case "GEOMETRYCOLLECTION": {
+            final List<Geometry> list = geometries != null ? geometries : Collections.emptyList();
+            geometry = geometryFactory.createGeometryCollection(list.toArray(new Geometry[0]));
+            break;
+        }
+        case "ENVELOPE": {
+            final CoordinateBuffer buffer = (CoordinateBuffer) coordinates;
+            final Envelope envelope = new Envelope(buffer.ordinates[0], buffer.ordinates[2],
+                    buffer.ordinates[1], buffer.ordinates[3]);
+            geometry = geometryFactory.toGeometry(envelope);
+            break;
+        }
+        case "CIRCLE": {
+            final double[] position = (double[]) coordinates;
+            geometry = position != null ? parserUtil.createCircle(new Coordinate(position[0], position[1]), radius) : null;
+            break;
+        }
+        default:
+            // check if this is a geo_point
+            geometry = lat != null && lon != null ? createPoint(lon, lat) : null;
+            break;
+        }
+        return geometry;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Polygon createPolygon(List<Object> rings) {
+        final LinearRing shell = geometryFactory.createLinearRing(createSequence(rings.get(0), 4));
+        final LinearRing[] holes = new LinearRing[rings.size() - 1];
+        for (int i = 1; i < rings.size(); i++) {
+            holes[i - 1] = geometryFactory.createLinearRing(createSequence(rings.get(i), 4));
+        }
+        return geometryFactory.createPolygon(shell, holes);
+    }
+
+    /**
+     * Read a coordinates array. The parser must be positioned at the start of
+     * the array.
+     *
+     * @return Position ordinates for a single position, a coordinate buffer
+     * for an array of positions or a list for deeper nesting levels
+     */
+    private Object readCoordinates(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.END_ARRAY) {
+            return Collections.emptyList();
+        } else if (token != JsonToken.START_ARRAY) {
+            final double x = readOrdinate(parser, token);
+            final double y = readOrdinate(parser, parser.nextToken());
+            skipPosition(parser);
+            return new double[] {x, y};
+        }
+
+        final Object first = readCoordinates(parser);
+        if (first instanceof double[]) {
+            // array of positions
+            final CoordinateBuffer buffer = new CoordinateBuffer();
+            buffer.add(((double[]) first)[0], ((double[]) first)[1]);
+            while ((token = parser.nextToken()) == JsonToken.START_ARRAY) {
+                final double x = readOrdinate(parser, parser.nextToken());
+                final double y = readOrdinate(parser, parser.nextToken());
+                skipPosition(parser);
+                buffer.add(x, y);
+            }
+            return buffer;
+        }
+
+        final List<Object> list = new ArrayList<>();
+        list.add(first);
+        while ((token = parser.nextToken()) == JsonToken.START_ARRAY) {
+            list.add(readCoordinates(parser));
+        }
+        return list;
+    }
+
+    private static double readOrdinate(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_STRING) {
+            return Double.parseDouble(parser.getText());
+        } else if (token == null || !token.isNumeric()) {
+            throw new IOException("Invalid coordinate value: " + parser.getText());
+        } else if (!isJsonParser(parser)) {
+            // binary formats decode numbers natively
+            return parser.getDoubleValue();
+        }
+        return ElasticParserUtil.parseNumber(parser.getTextCharacters(), parser.getTextOffset(),
+                parser.getTextOffset() + parser.getTextLength());
+    }
+
+    /**
+     * Whether the parser reads JSON text, in which case numeric tokens can be
+     * parsed from the parser's character buffer without conversion
+     */
+    private static boolean isJsonParser(JsonParser parser) {
+        return parser instanceof UTF8StreamJsonParser || parser instanceof ReaderBasedJsonParser
+                || parser instanceof UTF8DataInputJsonParser;
+    }
+
+    /**
+     * Skip remaining ordinates (e.g. z values) of a position
+     */
+    private static void skipPosition(JsonParser parser) throws IOException {
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            parser.skipChildren();
+        }
+    }
+
+    /**
+     * @param minSize Minimum number of coordinates when simplifying or 0 to
+     * retain all coordinates
+     */
+    private CoordinateSequence createSequence(Object coordinates, int minSize) {
+        if (coordinates instanceof CoordinateBuffer) {
+            return ((CoordinateBuffer) coordinates).toSequence(parserUtil, minSize);
+        } else if (coordinates instanceof double[]) {
+            final CoordinateBuffer buffer = new CoordinateBuffer();
+            buffer.add(((double[]) coordinates)[0], ((double[]) coordinates)[1]);
+            return buffer.toSequence(parserUtil, minSize);
+        }
+        return coordinateSequenceFactory.create(0, 2);
+    }
+
+    private Geometry createPoint(double[] position) {
+        return createPoint(position[0], position[1]);
+    }
+
+    private Geometry createPoint(double x, double y) {
+        final CoordinateSequence sequence = coordinateSequenceFactory.create(1, 2);
+        sequence.setOrdinate(0, CoordinateSequence.X, x);
+        sequence.setOrdinate(0, CoordinateSequence.Y, y);
+        return geometryFactory.createPoint(sequence);
+    }
+
+    private static void add(Geometry geometry, List<Object> geometries) {
+        if (geometry != null) {
+            geometries.add(geometry);
+        }
+    }
+
+    /**
+     * Growable buffer of two dimensional coordinates
+     */
+    private static final class CoordinateBuffer {
+
+        private double[] ordinates = new double[16];
+
+        private int size;
+
+        void add(double x, double y) {
+            ensureCapacity(size + 1);
+            ordinates[2 * size] = x;
+            ordinates[2 * size + 1] = y;
+            size++;
+        }
+
+        CoordinateSequence toSequence(ElasticParserUtil parserUtil, int minSize) {
+            // simplification may pad short rings in place
+            ensureCapacity(minSize);
+            return parserUtil.createCoordinateSequence(ordinates, size, minSize);
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (2 * capacity > ordinates.length) {
+                final double[] grown = new double[Math.max(ordinates.length * 2, 2 * capacity)];
+                System.arraycopy(ordinates, 0, grown, 0, 2 * size);
+                ordinates = grown;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,196 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import org.geotools.util.factory.Hints;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.simplify.DouglasPeuckerSimplifier;
+
+/**
+ * Generalizes decoded geometries to a rendering tolerance. Coordinates are
+ * simplified in place in a packed ordinate buffer before the coordinate
+ * sequence is created, so vertices below the tolerance are never stored in
+ * the returned geometry.
+ */
+class ElasticGeometrySimplifier {
+
+    enum Mode {
+        /** Drop vertices closer than the distance to the last retained vertex */
+        DECIMATE,
+        /** Decimate then apply Douglas-Peucker simplification */
+        SIMPLIFY
+    }
+
+    private final double distance;
+
+    private final double distanceSquared;
+
+    private final Mode mode;
+
+    ElasticGeometrySimplifier(double distance, Mode mode) {
+        this.distance = distance;
+        this.distanceSquared = distance * distance;
+        this.mode = mode;
+    }
+
+    /**
+     * Simplifier for the geometry generalization hints of a query.
+     * {@link Hints#GEOMETRY_SIMPLIFICATION} takes precedence over
+     * {@link Hints#GEOMETRY_DISTANCE}.
+     *
+     * @param hints Query hints
+     * @return Simplifier or null when no positive distance is requested
+     */
+    static ElasticGeometrySimplifier fromHints(Hints hints) {
+        if (hints == null) {
+            return null;
+        }
+        final Number simplification = (Number) hints.get(Hints.GEOMETRY_SIMPLIFICATION);
+        if (simplification != null && simplification.doubleValue() > 0) {
+            return new ElasticGeometrySimplifier(simplification.doubleValue(), Mode.SIMPLIFY);
+        }
+        final Number decimation = (Number) hints.get(Hints.GEOMETRY_DISTANCE);
+        if (decimation != null && decimation.doubleValue() > 0) {
+            return new ElasticGeometrySimplifier(decimation.doubleValue(), Mode.DECIMATE);
+        }
+        return null;
+    }
+
+    double getDistance() {
+        return distance;
+    }
+
+    Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Simplify two dimensional coordinates in place. The first and last
+     * coordinates are always retained.
+     *
+     * @param ordinates Packed x/y ordinates
+     * @param size Number of coordinates
+     * @param minSize Minimum number of coordinates to return, e.g. 4 for
+     * linear rings. The last coordinate is repeated when fewer vertices
+     * remain.
+     * @return Number of retained coordinates, which may exceed the size of
+     * the input for short rings. The ordinates array must then have room for
+     * minSize coordinates.
+     */
+    int simplify(double[] ordinates, int size, int minSize) {
+        if (size <= 2) {
+            return size;
+        }
+        int n = decimate(ordinates, size);
+        if (mode == Mode.SIMPLIFY && n > 2) {
+            n = douglasPeucker(ordinates, n);
+        }
+        while (n < minSize) {
+            ordinates[2 * n] = ordinates[2 * n - 2];
+            ordinates[2 * n + 1] = ordinates[2 * n - 1];
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Simplify a geometry that was not decoded from a coordinate buffer (e.g.
+     * WKT).
+     */
+    Geometry simplify(Geometry geometry) {
+        if (geometry == null || geometry instanceof Point || geometry.getNumPoints() <= 2) {
+            return geometry;
+        }
+        return DouglasPeuckerSimplifier.simplify(geometry, distance);
+    }
+
+    /**
+     * Radial distance pass retaining vertices further than the distance from
+     * the previously retained vertex.
+     */
+    private int decimate(double[] ordinates, int size) {
+        int n = 1;
+        double lastX = ordinates[0];
+        double lastY = ordinates[1];
+        for (int i = 1; i < size - 1; i++) {
+            final double x = ordinates[2 * i];
+            final double y = ordinates[2 * i + 1];
+            final double dx = x - lastX;
+            final double dy = y - lastY;
+            if (dx * dx + dy * dy > distanceSquared) {
+                ordinates[2 * n] = x;
+                ordinates[2 * n + 1] = y;
+                n++;
+                lastX = x;
+                lastY = y;
+            }
+        }
+        ordinates[2 * n] = ordinates[2 * size - 2];
+        ordinates[2 * n + 1] = ordinates[2 * size - 1];
+        return n + 1;
+    }
+
+    /**
+     * Iterative Douglas-Peucker pass over the first size coordinates
+     */
+    private int douglasPeucker(double[] ordinates, int size) {
+        final boolean[] retained = new boolean[size];
+        retained[0] = true;
+        retained[size - 1] = true;
+        final int[] stack = new int[2 * size];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = size - 1;
+        while (top > 0) {
+            final int last = stack[--top];
+            final int first = stack[--top];
+            double maxDistance = 0;
+            int index = -1;
+            for (int i = first + 1; i < last; i++) {
+                final double d = segmentDistanceSquared(ordinates, i, first, last);
+                if (d > maxDistance) {
+                    maxDistance = d;
+                    index = i;
+                }
+            }
+            if (index >= 0 && maxDistance > distanceSquared) {
+                retained[index] = true;
+                stack[top++] = first;
+                stack[top++] = index;
+                stack[top++] = index;
+                stack[top++] = last;
+            }
+        }
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (retained[i]) {
+                ordinates[2 * n] = ordinates[2 * i];
+                ordinates[2 * n + 1] = ordinates[2 * i + 1];
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private static double segmentDistanceSquared(double[] ordinates, int i, int first, int last) {
+        final double x = ordinates[2 * i];
+        final double y = ordinates[2 * i + 1];
+        final double x1 = ordinates[2 * first];
+        final double y1 = ordinates[2 * first + 1];
+        final double dx = ordinates[2 * last] - x1;
+        final double dy = ordinates[2 * last + 1] - y1;
+        final double lengthSquared = dx * dx + dy * dy;
+        double px = x1;
+        double py = y1;
+        if (lengthSquared > 0) {
+            final double t = Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy) / lengthSquared));
+            px += t * dx;
+            py += t * dy;
+        }
+        return (x - px) * (x - px) + (y - py) * (y - py);
+    }
+
+}
@@ -32,22 +32,41 @@ class ElasticHit {
     @JsonProperty("fields")
     private Map<String,List<Object>> fields;
 
+    @JsonProperty("sort")
+    private List<Object> sort;
+
     public String getIndex() {
         return index;
     }
 
+    public void setIndex(String index) {
+        this.index = index;
+    }
+
     public String getType() {
         return type;
     }
 
+    public void setType(String type) {
+        this.type = type;
+    }
+
     public String getId() {
         return id;
     }
 
+    public void setId(String id) {
+        this.id = id;
+    }
+
     public Float getScore() {
         return score;
     }
 
+    public void setScore(Float score) {
+        this.score = score;
+    }
+
     public Map<String, Object> getSource() {
         return source;
     }
@@ -56,6 +75,14 @@ class ElasticHit {
         return fields;
     }
 
+    public void setFields(Map<String, List<Object>> fields) {
+        this.fields = fields;
+    }
+
+    public List<Object> getSort() {
+        return sort;
+    }
+
     public List<Object> field(String name) {
         return this.fields != null ? this.fields.get(name) : null;
     }
@@ -0,0 +1,279 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Streaming reader over the hits of a search response. Hits are decoded one at
+ * a time directly from the response stream and only the requested field paths
+ * are retained, so the full {@code _source} of each hit is never materialized.
+ * Values read from {@code _source} and {@code fields} are made available
+ * through {@link ElasticHit#field(String)} keyed by full field name. Geometry
+ * fields are decoded directly from the parser when a geometry reader is
+ * provided.
+ */
+class ElasticHitStream implements Iterator<ElasticHit>, Closeable {
+
+    private final JsonParser parser;
+
+    private final Set<String> fieldNames;
+
+    private final Set<String> parentNames;
+
+    private final ElasticGeometryReader geometryReader;
+
+    private String scrollId;
+
+    private Long totalNumHits;
+
+    private Float maxScore;
+
+    private ElasticHit next;
+
+    ElasticHitStream(InputStream inputStream, ObjectMapper mapper, Collection<String> fieldNames) throws IOException {
+        this(inputStream, mapper, fieldNames, null);
+    }
+
+    /**
+     * @param inputStream Search response stream
+     * @param mapper Mapper for the response content type
+     * @param fieldNames Full names of the fields to retain
+     * @param geometryReader Reader for geometry fields or null to retain
+     * geometry values as parsed JSON
+     */
+    ElasticHitStream(InputStream inputStream, ObjectMapper mapper, Collection<String> fieldNames,
+            ElasticGeometryReader geometryReader) throws IOException {
+        this.parser = mapper.getFactory().createParser(inputStream);
+        this.fieldNames = new HashSet<>(fieldNames);
+        this.geometryReader = geometryReader;
+        this.parentNames = new HashSet<>();
+        for (final String fieldName : fieldNames) {
+            int index = fieldName.indexOf('.');
+            while (index > 0) {
+                parentNames.add(fieldName.substring(0, index));
+                index = fieldName.indexOf('.', index + 1);
+            }
+        }
+
+        try {
+            if (readHeader()) {
+                advance();
+            }
+        } catch (IOException e) {
+            parser.close();
+            throw e;
+        }
+    }
+
+    String getScrollId() {
+        return scrollId;
+    }
+
+    long getTotalNumHits() {
+        return totalNumHits != null ? totalNumHits : 0L;
+    }
+
+    float getMaxScore() {
+        return maxScore != null ? maxScore : 0f;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public ElasticHit next() {
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+        final ElasticHit hit = next;
+        try {
+            advance();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading search hit", e);
+        }
+        return hit;
+    }
+
+    @Override
+    public void close() throws IOException {
+        next = null;
+        parser.close();
+    }
+
+    /**
+     * Reads the response up to the start of the hits array.
+     *
+     * @return Whether the parser is positioned at the start of the hits array
+     */
+    private boolean readHeader() throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+            if (name.equals("_scroll_id")) {
+                scrollId = parser.getValueAsString();
+            } else if (name.equals("hits") && token == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String resultsName = parser.getCurrentName();
+                    final JsonToken resultsToken = parser.nextToken();
+                    if (resultsName.equals("total")) {
+                        if (resultsToken == JsonToken.START_OBJECT) {
+                            final JsonNode node = parser.readValueAsTree();
+                            totalNumHits = node.path("value").asLong();
+                        } else if (resultsToken != JsonToken.VALUE_NULL) {
+                            totalNumHits = parser.getLongValue();
+                        }
+                    } else if (resultsName.equals("max_score")) {
+                        maxScore = resultsToken != JsonToken.VALUE_NULL ? parser.getFloatValue() : null;
+                    } else if (resultsName.equals("hits") && resultsToken == JsonToken.START_ARRAY) {
+                        return true;
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                return false;
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return false;
+    }
+
+    private void advance() throws IOException {
+        if (parser.nextToken() == JsonToken.START_OBJECT) {
+            next = readHit();
+        } else {
+            next = null;
+        }
+    }
+
+    private ElasticHit readHit() throws IOException {
+        final ElasticHit hit = new ElasticHit();
+        final Map<String, List<Object>> values = new HashMap<>();
+        final Map<String, List<Object>> fields = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+            switch (name) {
+            case "_index":
+                hit.setIndex(parser.getValueAsString());
+                break;
+            case "_type":
+                hit.setType(parser.getValueAsString());
+                break;
+            case "_id":
+                hit.setId(parser.getValueAsString());
+                break;
+            case "_score":
+                hit.setScore(token != JsonToken.VALUE_NULL ? parser.getFloatValue() : null);
+                break;
+            case "_source":
+                if (token == JsonToken.START_OBJECT) {
+                    readSource("", values);
+                } else {
+                    parser.skipChildren();
+                }
+                break;
+            case "fields":
+                if (token == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        final String fieldName = parser.getCurrentName();
+                        parser.nextToken();
+                        if (fieldNames.contains(fieldName)) {
+                            readValue(fieldName, fields);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+                break;
+            default:
+                parser.skipChildren();
+                break;
+            }
+        }
+        // stored fields take precedence over values read from the source
+        values.putAll(fields);
+        hit.setFields(values);
+        return hit;
+    }
+
+    private void readSource(String parentName, Map<String, List<Object>> values) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String key = parser.getCurrentName();
+            final String name = parentName.isEmpty() ? key : parentName + "." + key;
+            final JsonToken token = parser.nextToken();
+            if (fieldNames.contains(name)) {
+                readValue(name, values);
+            } else if (parentNames.contains(name) && token == JsonToken.START_OBJECT) {
+                readSource(name, values);
+            } else if (parentNames.contains(name) && token == JsonToken.START_ARRAY) {
+                // arrays of inner objects contribute values from each element
+                JsonToken elementToken;
+                while ((elementToken = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    if (elementToken == JsonToken.START_OBJECT) {
+                        readSource(name, values);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void readValue(String name, Map<String, List<Object>> values) throws IOException {
+        if (geometryReader != null && geometryReader.isGeometryField(name)) {
+            final List<Object> geometries = new ArrayList<>();
+            geometryReader.readValues(parser, geometries);
+            if (!geometries.isEmpty()) {
+                values.computeIfAbsent(name, k -> new ArrayList<>()).addAll(geometries);
+            }
+            return;
+        }
+        final Object value = parser.readValueAs(Object.class);
+        final List<Object> list = new ArrayList<>();
+        flatten(value, list);
+        if (!list.isEmpty()) {
+            values.computeIfAbsent(name, k -> new ArrayList<>()).addAll(list);
+        }
+    }
+
+    private static void flatten(Object value, List<Object> values) {
+        if (value instanceof List) {
+            for (final Object item : (List<?>) value) {
+                flatten(item, values);
+            }
+        } else if (value != null) {
+            values.add(value);
+        }
+    }
+
+}
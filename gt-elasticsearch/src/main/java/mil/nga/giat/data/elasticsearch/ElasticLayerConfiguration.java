@@ -26,6 +26,10 @@ public class ElasticLayerConfiguration implements Serializable {
 
     private final List<ElasticAttribute> attributes;
 
+    private boolean useDocValues;
+
+    private boolean pointDecimation;
+
     public ElasticLayerConfiguration(String docType) {
         this.docType = docType;
         this.layerName = docType;
@@ -35,6 +39,8 @@ public class ElasticLayerConfiguration implements Serializable {
     public ElasticLayerConfiguration(ElasticLayerConfiguration other) {
         this(other.docType);
         setLayerName(other.layerName);
+        setUseDocValues(other.useDocValues);
+        setPointDecimation(other.pointDecimation);
         for (final ElasticAttribute attribute : other.attributes) {
             attributes.add(new ElasticAttribute(attribute));
         }
@@ -56,4 +62,31 @@ public class ElasticLayerConfiguration implements Serializable {
         return attributes;
     }
 
+    public boolean isUseDocValues() {
+        return useDocValues;
+    }
+
+    /**
+     * Read attributes with doc values (numeric, date, boolean, keyword and
+     * geo_point fields) from doc values by default instead of the source.
+     *
+     * @see ElasticAttribute#isDocValuesRetrieval(boolean)
+     */
+    public void setUseDocValues(boolean useDocValues) {
+        this.useDocValues = useDocValues;
+    }
+
+    public boolean isPointDecimation() {
+        return pointDecimation;
+    }
+
+    /**
+     * Return at most one feature per map pixel when rendering a geo_point
+     * layer with a generalization distance (Elasticsearch 7+). Features are
+     * selected with a geotile_grid aggregation at pixel resolution.
+     */
+    public void setPointDecimation(boolean pointDecimation) {
+        this.pointDecimation = pointDecimation;
+    }
+
 }
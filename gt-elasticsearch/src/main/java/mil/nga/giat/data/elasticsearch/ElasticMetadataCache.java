@@ -0,0 +1,120 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Size bounded cache of metadata responses (mappings, aliases and server
+ * version) keyed by request path. Entries expire after a fixed time to live.
+ * Data stores connecting to the same cluster with the same credentials share a
+ * single cache, which is discarded once every data store has released it.
+ */
+public class ElasticMetadataCache {
+
+    private final static Map<String, ElasticMetadataCache> SHARED_CACHES = new ConcurrentHashMap<>();
+
+    private final Cache<String, byte[]> cache;
+
+    /** Key in the shared caches or null if not shared */
+    private final String sharedKey;
+
+    /** Number of data stores using a shared cache, updated in SHARED_CACHES.compute */
+    private int references;
+
+    /**
+     * @param timeToLive Entry time to live in seconds
+     * @param maximumSize Maximum number of entries
+     */
+    public ElasticMetadataCache(int timeToLive, long maximumSize) {
+        this(null, timeToLive, maximumSize);
+    }
+
+    private ElasticMetadataCache(String sharedKey, int timeToLive, long maximumSize) {
+        this.sharedKey = sharedKey;
+        this.cache = CacheBuilder.newBuilder()
+                .expireAfterWrite(timeToLive, TimeUnit.SECONDS)
+                .maximumSize(maximumSize)
+                .build();
+    }
+
+    /**
+     * Get the cache shared by all data stores with the same key and settings.
+     * Each call must be matched by a call to {@link #release()}.
+     *
+     * @param key Cluster and credentials key
+     * @param timeToLive Entry time to live in seconds
+     * @param maximumSize Maximum number of entries
+     */
+    static ElasticMetadataCache getSharedCache(String key, int timeToLive, long maximumSize) {
+        final String cacheKey = key + "|" + timeToLive + "|" + maximumSize;
+        return SHARED_CACHES.compute(cacheKey, (k, cache) -> {
+            final ElasticMetadataCache shared = cache != null ? cache : new ElasticMetadataCache(k, timeToLive, maximumSize);
+            shared.references++;
+            return shared;
+        });
+    }
+
+    /**
+     * Release a shared cache. The cache is discarded when the last data store
+     * using it releases it. Has no effect on caches that are not shared.
+     */
+    void release() {
+        if (sharedKey == null) {
+            return;
+        }
+        SHARED_CACHES.computeIfPresent(sharedKey, (k, cache) -> {
+            if (cache != this || --references > 0) {
+                return cache;
+            }
+            invalidateAll();
+            return null;
+        });
+    }
+
+    /**
+     * Get the cached response for the path, loading it if missing or expired.
+     * Failed loads are not cached.
+     */
+    byte[] get(String path, Callable<byte[]> loader) throws IOException {
+        try {
+            return cache.get(path, loader);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error loading " + path, e.getCause());
+        }
+    }
+
+    /**
+     * Remove cached mappings and aliases for the index.
+     */
+    public void invalidate(String indexName) {
+        cache.asMap().keySet().removeIf(path -> path.startsWith("/" + indexName + "/")
+                || path.equals("/_alias/" + indexName));
+    }
+
+    /**
+     * Remove all cached responses, including the server version.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    long size() {
+        return cache.size();
+    }
+
+}
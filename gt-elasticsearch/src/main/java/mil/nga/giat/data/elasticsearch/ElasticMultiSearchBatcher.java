@@ -0,0 +1,149 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Micro-batching of concurrent searches. The first search submitted for a
+ * group waits up to the batch window (or until the batch is full) for other
+ * searches in the same group and then sends the whole batch on behalf of all
+ * waiting callers, so no additional threads are used.
+ *
+ * @param <T> Search type
+ * @param <R> Result type
+ */
+public class ElasticMultiSearchBatcher<T, R> {
+
+    @FunctionalInterface
+    interface BatchCall<T, R> {
+
+        /**
+         * Execute a batch, completing the result for each search. Results not
+         * completed when the call returns fail.
+         */
+        void call(List<T> searches, List<CompletableFuture<R>> results) throws IOException;
+    }
+
+    private final long batchWindow;
+
+    private final int maxBatchSize;
+
+    private final BatchCall<T, R> batchCall;
+
+    private final Map<String, Batch> openBatches = new HashMap<>();
+
+    private final AtomicLong numBatches = new AtomicLong();
+
+    private final AtomicLong numSearches = new AtomicLong();
+
+    /**
+     * @param batchWindow Maximum time in milliseconds to wait for searches to
+     * batch
+     * @param maxBatchSize Maximum number of searches per batch
+     */
+    ElasticMultiSearchBatcher(long batchWindow, int maxBatchSize, BatchCall<T, R> batchCall) {
+        this.batchWindow = batchWindow;
+        this.maxBatchSize = maxBatchSize;
+        this.batchCall = batchCall;
+    }
+
+    /**
+     * Submit a search and wait for its result.
+     *
+     * @param group Searches are only batched with searches of the same group
+     */
+    R submit(String group, T search) throws IOException {
+        final CompletableFuture<R> result = new CompletableFuture<>();
+        final Batch batch;
+        final boolean leader;
+        synchronized (openBatches) {
+            final Batch openBatch = openBatches.get(group);
+            leader = openBatch == null;
+            batch = leader ? new Batch() : openBatch;
+            if (leader) {
+                openBatches.put(group, batch);
+            }
+            batch.searches.add(search);
+            batch.results.add(result);
+            if (batch.searches.size() >= maxBatchSize) {
+                openBatches.remove(group);
+                batch.full.countDown();
+            }
+        }
+
+        if (leader) {
+            try {
+                batch.full.await(batchWindow, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // still send the batch for the other callers
+                Thread.currentThread().interrupt();
+            }
+            synchronized (openBatches) {
+                openBatches.remove(group, batch);
+            }
+            send(batch);
+        }
+
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for batched search");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw new IOException(e.getCause().getMessage(), e.getCause());
+            }
+            throw new IOException("Batched search failed", e.getCause());
+        }
+    }
+
+    private void send(Batch batch) {
+        numBatches.incrementAndGet();
+        numSearches.addAndGet(batch.searches.size());
+        try {
+            batchCall.call(batch.searches, batch.results);
+        } catch (IOException | RuntimeException e) {
+            batch.results.forEach(result -> result.completeExceptionally(e));
+        }
+        final IOException missing = new IOException("No response for batched search");
+        batch.results.forEach(result -> result.completeExceptionally(missing));
+    }
+
+    /**
+     * @return Number of requests sent
+     */
+    public long getBatchCount() {
+        return numBatches.get();
+    }
+
+    /**
+     * @return Number of searches sent in batches
+     */
+    public long getSearchCount() {
+        return numSearches.get();
+    }
+
+    private class Batch {
+
+        private final List<T> searches = new ArrayList<>();
+
+        private final List<CompletableFuture<R>> results = new ArrayList<>();
+
+        private final CountDownLatch full = new CountDownLatch(1);
+
+    }
+
+}
@@ -14,17 +14,19 @@ import java.util.regex.Pattern;
 
 import org.geotools.util.logging.Logging;
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.CoordinateSequenceFactory;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.impl.CoordinateArraySequenceFactory;
 import org.locationtech.jts.io.ParseException;
 import org.locationtech.jts.io.WKTReader;
 
-import com.github.davidmoten.geo.GeoHash;
-import com.github.davidmoten.geo.LatLong;
 import java.awt.geom.Point2D;
 import org.geotools.referencing.GeodeticCalculator;
 import org.geotools.referencing.datum.DefaultEllipsoid;
@@ -38,16 +40,22 @@ class ElasticParserUtil {
 
     private final static Logger LOGGER = Logging.getLogger(ElasticParserUtil.class);
 
-    private static final Pattern GEO_POINT_PATTERN;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
 
-    static {
-        GEO_POINT_PATTERN = Pattern.compile("\\s*([-+]?\\d*\\.?\\d*)[^-+\\d.]+([-+]?\\d*\\.?\\d*)\\s*");
-    }
-
-    private static final Pattern GEO_HASH_PATTERN;
+    /**
+     * Geohash base32 character values by character or -1
+     */
+    private static final int[] GEO_HASH_DECODE;
 
     static {
-        GEO_HASH_PATTERN = Pattern.compile("[0123456789bcdefghjkmnpqrstuvwxyz]+");
+        GEO_HASH_DECODE = new int['z' + 1];
+        Arrays.fill(GEO_HASH_DECODE, -1);
+        final String base32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+        for (int i = 0; i < base32.length(); i++) {
+            GEO_HASH_DECODE[base32.charAt(i)] = i;
+        }
     }
 
     private static final Pattern ELASTIC_DISTANCE_PATTERN;
@@ -70,12 +78,45 @@ class ElasticParserUtil {
 
     private final GeometryFactory geometryFactory;
 
+    private final CoordinateSequenceFactory coordinateSequenceFactory;
+
     private final WKTReader wktReader;
 
+    private final double[] latLon;
+
+    private final ElasticGeometrySimplifier simplifier;
+
     public ElasticParserUtil() {
-        this.geometryFactory = new GeometryFactory();
+        this(CoordinateArraySequenceFactory.instance());
+    }
+
+    /**
+     * @param coordinateSequenceFactory Factory for geometry coordinate sequences
+     */
+    public ElasticParserUtil(CoordinateSequenceFactory coordinateSequenceFactory) {
+        this(coordinateSequenceFactory, null);
+    }
+
+    /**
+     * @param coordinateSequenceFactory Factory for geometry coordinate sequences
+     * @param simplifier Simplifier applied to line and polygon coordinates or
+     * null to retain all coordinates
+     */
+    ElasticParserUtil(CoordinateSequenceFactory coordinateSequenceFactory, ElasticGeometrySimplifier simplifier) {
+        this.simplifier = simplifier;
+        this.geometryFactory = new GeometryFactory(coordinateSequenceFactory);
+        this.coordinateSequenceFactory = coordinateSequenceFactory;
         this.geodeticCalculator = new GeodeticCalculator(DefaultEllipsoid.WGS84);
-        this.wktReader = new WKTReader();
+        this.wktReader = new WKTReader(geometryFactory);
+        this.latLon = new double[2];
+    }
+
+    GeometryFactory getGeometryFactory() {
+        return geometryFactory;
+    }
+
+    ElasticGeometrySimplifier getSimplifier() {
+        return simplifier;
     }
 
     /**
@@ -90,25 +131,21 @@ class ElasticParserUtil {
     public Geometry createGeometry(Object obj) {
         final Geometry geometry;
         if (obj instanceof String) {
-            // geo_point by string
-            final Matcher listMatcher = GEO_POINT_PATTERN.matcher((String) obj);
-            if (listMatcher.matches()) {
-                // coordinate
-                final double y = Double.valueOf(listMatcher.group(1));
-                final double x = Double.valueOf(listMatcher.group(2));
-                geometry = geometryFactory.createPoint(new Coordinate(x, y));
-            } else if (GEO_HASH_PATTERN.matcher((String) obj).matches()) {
+            final String value = (String) obj;
+            if (parseLatLon(value, latLon)) {
+                // geo_point by string
+                geometry = createPoint(latLon[1], latLon[0]);
+            } else if (decodeGeoHash(value, latLon)) {
                 // geohash
-                final LatLong latLon = GeoHash.decodeHash((String) obj);
-                final Coordinate geoPoint = new Coordinate(latLon.getLon(), latLon.getLat());
-                final double lat = geoPoint.y;
-                final double lon = geoPoint.x;
-                geometry = geometryFactory.createPoint(new Coordinate(lon, lat));
-            } else if (WKT_PATTERN.matcher((String) obj).matches()) {
+                geometry = createPoint(latLon[1], latLon[0]);
+            } else if (WKT_PATTERN.matcher(value).matches()) {
                 // geoshape wkt
                 Geometry geom;
                 try {
-                    geom = wktReader.read((String) obj);
+                    geom = wktReader.read(value);
+                    if (simplifier != null) {
+                        geom = simplifier.simplify(geom);
+                    }
                 } catch (ParseException e) {
                     geom = null;
                 }
@@ -119,14 +156,8 @@ class ElasticParserUtil {
         } else if (obj instanceof List && ((List<?>) obj).size() == 2) {
             // geo_point by coordinate array
             final List<?> values = (List<?>) obj;
-            if (Number.class.isAssignableFrom(values.get(0).getClass())) {
-                final double x = ((Number) values.get(0)).doubleValue();
-                final double y = ((Number) values.get(1)).doubleValue();
-                geometry = geometryFactory.createPoint(new Coordinate(x, y));
-            } else if (values.get(0) instanceof String) {
-                final double x = Double.valueOf((String) values.get(0));
-                final double y = Double.valueOf((String) values.get(1));
-                geometry = geometryFactory.createPoint(new Coordinate(x, y));
+            if (values.get(0) instanceof Number || values.get(0) instanceof String) {
+                geometry = createPoint(toDouble(values.get(0)), toDouble(values.get(1)));
             } else {
                 geometry = null;
             }
@@ -153,15 +184,13 @@ class ElasticParserUtil {
         case "POINT": {
             final List posList;
             posList = (List) properties.get("coordinates");
-            final Coordinate coordinate = createCoordinate(posList);
-            geometry = geometryFactory.createPoint(coordinate);
+            geometry = geometryFactory.createPoint(createCoordinateSequence(Collections.singletonList(posList)));
             break;
         }
         case "LINESTRING": {
             final List<List<Object>> posList;
             posList = (List) properties.get("coordinates");
-            final Coordinate[] coordinates = createCoordinates(posList);
-            geometry = geometryFactory.createLineString(coordinates);
+            geometry = geometryFactory.createLineString(createCoordinateSequence(posList, 2));
             break;
         }
         case "POLYGON": {
@@ -173,8 +202,7 @@ class ElasticParserUtil {
         case "MULTIPOINT": {
             final List<List<Object>> posList;
             posList = (List) properties.get("coordinates");
-            final Coordinate[] coordinates = createCoordinates(posList);
-            geometry = geometryFactory.createMultiPointFromCoords(coordinates);
+            geometry = geometryFactory.createMultiPoint(createCoordinateSequence(posList));
             break;
         }
         case "MULTILINESTRING": {
@@ -182,8 +210,7 @@ class ElasticParserUtil {
             posList = (List) properties.get("coordinates");
             final LineString[] lineStrings = new LineString[posList.size()];
             for (int i = 0; i < posList.size(); i++) {
-                final Coordinate[] coordinates = createCoordinates(posList.get(i));
-                lineStrings[i] = geometryFactory.createLineString(coordinates);
+                lineStrings[i] = geometryFactory.createLineString(createCoordinateSequence(posList.get(i), 2));
             }
             geometry = geometryFactory.createMultiLineString(lineStrings);
             break;
@@ -248,7 +275,7 @@ class ElasticParserUtil {
                 }
 
                 if (lat != null && lon != null) {
-                    geometry = geometryFactory.createPoint(new Coordinate(lon, lat));
+                    geometry = createPoint(lon, lat);
                 } else {
                     geometry = null;
                 }
@@ -261,16 +288,69 @@ class ElasticParserUtil {
     }
 
     private Polygon createPolygon(final List<List<List<Object>>> posList) {
-        final Coordinate[] shellCoordinates = createCoordinates(posList.get(0));
-        final LinearRing shell = geometryFactory.createLinearRing(shellCoordinates);
+        final LinearRing shell = geometryFactory.createLinearRing(createCoordinateSequence(posList.get(0), 4));
         final LinearRing[] holes = new LinearRing[posList.size() - 1];
         for (int i = 1; i < posList.size(); i++) {
-            final Coordinate[] coordinates = createCoordinates(posList.get(i));
-            holes[i - 1] = geometryFactory.createLinearRing(coordinates);
+            holes[i - 1] = geometryFactory.createLinearRing(createCoordinateSequence(posList.get(i), 4));
         }
         return geometryFactory.createPolygon(shell, holes);
     }
 
+    /**
+     * Create a two dimensional coordinate sequence directly from coordinate
+     * lists, without intermediate coordinate objects for packed sequences.
+     */
+    private CoordinateSequence createCoordinateSequence(final List<List<Object>> posList) {
+        return createCoordinateSequence(posList, 0);
+    }
+
+    /**
+     * Create a coordinate sequence simplified with the configured simplifier.
+     *
+     * @param minSize Minimum number of coordinates when simplifying or 0 to
+     * retain all coordinates
+     */
+    private CoordinateSequence createCoordinateSequence(final List<List<Object>> posList, int minSize) {
+        if (simplifier != null && minSize > 0) {
+            final double[] ordinates = new double[2 * Math.max(posList.size(), minSize)];
+            for (int i = 0; i < posList.size(); i++) {
+                final List<Object> position = posList.get(i);
+                ordinates[2 * i] = toDouble(position.get(0));
+                ordinates[2 * i + 1] = toDouble(position.get(1));
+            }
+            return createCoordinateSequence(ordinates, posList.size(), minSize);
+        }
+        final CoordinateSequence sequence = coordinateSequenceFactory.create(posList.size(), 2);
+        for (int i = 0; i < posList.size(); i++) {
+            final List<Object> position = posList.get(i);
+            sequence.setOrdinate(i, CoordinateSequence.X, toDouble(position.get(0)));
+            sequence.setOrdinate(i, CoordinateSequence.Y, toDouble(position.get(1)));
+        }
+        return sequence;
+    }
+
+    /**
+     * Create a two dimensional coordinate sequence from packed ordinates,
+     * simplifying the ordinates in place with the configured simplifier.
+     *
+     * @param ordinates Packed x/y ordinates with room for at least minSize
+     * coordinates
+     * @param size Number of coordinates
+     * @param minSize Minimum number of coordinates when simplifying or 0 to
+     * retain all coordinates
+     */
+    CoordinateSequence createCoordinateSequence(double[] ordinates, int size, int minSize) {
+        if (simplifier != null && minSize > 0) {
+            size = simplifier.simplify(ordinates, size, minSize);
+        }
+        final CoordinateSequence sequence = coordinateSequenceFactory.create(size, 2);
+        for (int i = 0; i < size; i++) {
+            sequence.setOrdinate(i, CoordinateSequence.X, ordinates[2 * i]);
+            sequence.setOrdinate(i, CoordinateSequence.Y, ordinates[2 * i + 1]);
+        }
+        return sequence;
+    }
+
     private Coordinate[] createCoordinates(final List<List<Object>> posList) {
         final Coordinate[] coordinates = new Coordinate[posList.size()];
         for (int i = 0; i < posList.size(); i++) {
@@ -283,58 +363,254 @@ class ElasticParserUtil {
         if (posList == null) {
             return null;
         }
+        return new Coordinate(toDouble(posList.get(0)), toDouble(posList.get(1)));
+    }
 
-        final double x;
-        final double y;
-        if (Number.class.isAssignableFrom(posList.get(0).getClass())) {
-            x = ((Number) posList.get(0)).doubleValue();
-            y = ((Number) posList.get(1)).doubleValue();
-        } else {
-            x = Double.valueOf(posList.get(0).toString());
-            y = Double.valueOf(posList.get(1).toString());
+    private Point createPoint(double x, double y) {
+        final CoordinateSequence sequence = coordinateSequenceFactory.create(1, 2);
+        sequence.setOrdinate(0, CoordinateSequence.X, x);
+        sequence.setOrdinate(0, CoordinateSequence.Y, y);
+        return geometryFactory.createPoint(sequence);
+    }
+
+    private static double toDouble(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
         }
-        return new Coordinate(x, y);
+        return Double.parseDouble(value.toString());
     }
 
     /**
-     * Read field from document source.
+     * Parse a "lat,lon" geo_point string. Any characters other than signs,
+     * digits and decimal points separate the two values.
      *
-     * @param source Source
-     * @param name Field to extract.
-     * @return List of values or empty list if not found
+     * @param value String value
+     * @param latLon Array receiving latitude and longitude
+     * @return Whether the string is a lat/lon pair
      */
-    public List<Object> readField(Map<String, Object> source, String name) {
-        final List<String> keys = Arrays.asList(name.split("\\."));
-        List<Object> values = new ArrayList<>();
-        if (!keys.isEmpty()) {
+    static boolean parseLatLon(String value, double[] latLon) {
+        final int length = value.length();
+        int start = skipWhitespace(value, 0);
+        int end = scanNumber(value, start);
+        if (end == start) {
+            return false;
+        }
+        final double lat = parseNumber(value, start, end);
+
+        start = end;
+        while (start < length && !isNumberChar(value.charAt(start))) {
+            start++;
+        }
+        if (start == end) {
+            return false;
+        }
+        end = scanNumber(value, start);
+        if (end == start || skipWhitespace(value, end) != length) {
+            return false;
+        }
+        latLon[0] = lat;
+        latLon[1] = parseNumber(value, start, end);
+        return true;
+    }
+
+    private static int skipWhitespace(String value, int index) {
+        while (index < value.length() && Character.isWhitespace(value.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
 
-            final Object entry = source.get(keys.get(0));
+    private static boolean isNumberChar(char c) {
+        return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.';
+    }
 
-            if (entry == null) {
-                readField(source.get(name), new ArrayList<>(), values);
+    /**
+     * @return End index of an optionally signed decimal number with at least
+     * one digit starting at the index or the index if there is none
+     */
+    private static int scanNumber(String value, int index) {
+        int i = index;
+        if (i < value.length() && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+            i++;
+        }
+        boolean digits = false;
+        while (i < value.length() && Character.isDigit(value.charAt(i))) {
+            digits = true;
+            i++;
+        }
+        if (i < value.length() && value.charAt(i) == '.') {
+            i++;
+            while (i < value.length() && Character.isDigit(value.charAt(i))) {
+                digits = true;
+                i++;
+            }
+        }
+        return digits ? i : index;
+    }
+
+    /**
+     * Parse a decimal number scanned by {@link #scanNumber}. Numbers with up
+     * to 15 significant digits are parsed without allocation. The result is
+     * the correctly rounded value since both the digits and the power of ten
+     * are exactly representable.
+     */
+    private static double parseNumber(String value, int start, int end) {
+        int i = start;
+        final boolean negative = value.charAt(i) == '-';
+        if (negative || value.charAt(i) == '+') {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        for (; i < end; i++) {
+            final char c = value.charAt(i);
+            if (c == '.') {
+                fraction = true;
             } else {
-                readField(entry, keys.subList(1, keys.size()), values);
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa > 0) {
+                    digits++;
+                }
+                if (fraction) {
+                    scale++;
+                }
             }
+        }
+        if (digits > 15 || scale >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(value.substring(start, end));
+        }
+        final double result = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -result : result;
+    }
 
+    /**
+     * Parse a JSON number from a character buffer. Plain decimals with up to
+     * 15 significant digits are parsed without allocation as in
+     * {@link #parseNumber(String, int, int)}.
+     *
+     * @param chars Character buffer
+     * @param start Start offset
+     * @param end End offset (exclusive)
+     * @return Parsed value
+     */
+    static double parseNumber(char[] chars, int start, int end) {
+        int i = start;
+        final boolean negative = chars[i] == '-';
+        if (negative || chars[i] == '+') {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        for (; i < end; i++) {
+            final char c = chars[i];
+            if (c == '.') {
+                fraction = true;
+            } else if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa > 0) {
+                    digits++;
+                }
+                if (fraction) {
+                    scale++;
+                }
+            } else {
+                // exponent
+                digits = Integer.MAX_VALUE;
+                break;
+            }
         }
-        final List<Object> result;
-        if (!values.isEmpty()) {
-            result = values;
+        if (digits > 15 || scale >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(new String(chars, start, end - start));
+        }
+        final double result = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -result : result;
+    }
+
+    /**
+     * Decode a geohash to the center of its cell.
+     *
+     * @param value String value
+     * @param latLon Array receiving latitude and longitude
+     * @return Whether the string is a geohash
+     */
+    static boolean decodeGeoHash(String value, double[] latLon) {
+        if (value.isEmpty()) {
+            return false;
+        }
+        double minLat = -90, maxLat = 90;
+        double minLon = -180, maxLon = 180;
+        boolean even = true;
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            final int bits = c < GEO_HASH_DECODE.length ? GEO_HASH_DECODE[c] : -1;
+            if (bits < 0) {
+                return false;
+            }
+            for (int mask = 16; mask > 0; mask >>= 1) {
+                if (even) {
+                    final double mid = (minLon + maxLon) / 2;
+                    if ((bits & mask) != 0) {
+                        minLon = mid;
+                    } else {
+                        maxLon = mid;
+                    }
+                } else {
+                    final double mid = (minLat + maxLat) / 2;
+                    if ((bits & mask) != 0) {
+                        minLat = mid;
+                    } else {
+                        maxLat = mid;
+                    }
+                }
+                even = !even;
+            }
+        }
+        latLon[0] = (minLat + maxLat) / 2;
+        latLon[1] = (minLon + maxLon) / 2;
+        return true;
+    }
+
+    /**
+     * Read field from document source.
+     *
+     * @param source Source
+     * @param name Field to extract.
+     * @return List of values or empty list if not found
+     */
+    public List<Object> readField(Map<String, Object> source, String name) {
+        return readField(source, name, name.split("\\."));
+    }
+
+    /**
+     * Read field values given the field name split into path elements.
+     *
+     * @param source Document source
+     * @param name Field name
+     * @param path Field name path elements ({@code name.split("\\.")})
+     * @return Field values or null if the field is missing
+     */
+    public List<Object> readField(Map<String, Object> source, String name, String[] path) {
+        final List<Object> values = new ArrayList<>();
+        final Object entry = source.get(path[0]);
+        if (entry == null) {
+            readField(source.get(name), path, path.length, values);
         } else {
-            result = null;
+            readField(entry, path, 1, values);
         }
-        return result;
+        return !values.isEmpty() ? values : null;
     }
 
-    private void readField(Object entry, List<String> keys, List<Object> values) {
-        if (entry != null && List.class.isAssignableFrom(entry.getClass())) {
+    private void readField(Object entry, String[] path, int index, List<Object> values) {
+        if (entry instanceof List) {
             for (Object object : (List<?>) entry) {
-                readField(object, keys, values);
+                readField(object, path, index, values);
             }
-        } else if (entry != null && !keys.isEmpty() && Map.class.isAssignableFrom(entry.getClass())) {
-            final Object nextEntry = ((Map<?, ?>) entry).get(keys.get(0));
-            final List<String> newKeys = keys.subList(1, keys.size());
-            readField(nextEntry, newKeys, values);
+        } else if (entry instanceof Map && index < path.length) {
+            readField(((Map<?, ?>) entry).get(path[index]), path, index + 1, values);
         } else if (entry != null) {
             values.add(entry);
         }
@@ -369,7 +645,7 @@ class ElasticParserUtil {
      * it.
      * @return A polygon that is an interpolated form of a circle
      */
-    private Geometry createCircle(Coordinate centreCoord, String radius) {
+    Geometry createCircle(Coordinate centreCoord, String radius) {
 
         if (centreCoord == null) {
             return null;
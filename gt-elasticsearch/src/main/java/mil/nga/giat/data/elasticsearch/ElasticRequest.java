@@ -6,6 +6,7 @@ package mil.nga.giat.data.elasticsearch;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -21,16 +22,53 @@ class ElasticRequest {
 
     private Integer scroll;
 
+    private String pointInTimeId;
+
+    private Integer pointInTimeKeepAlive;
+
+    private List<Object> searchAfter;
+
+    private boolean sourceEnabled;
+
+    private Integer sliceId;
+
+    private Integer sliceMax;
+
+    private Integer trackTotalHits;
+
     private final List<Map<String,Object>> sorts;
 
     private final List<String> sourceIncludes;
 
     private final List<String> fields;
 
+    private final Map<String,String> docValueFields;
+
     public ElasticRequest() {
         this.sorts = new ArrayList<>();
         this.fields = new ArrayList<>();
+        this.docValueFields = new LinkedHashMap<>();
         this.sourceIncludes = new ArrayList<>();
+        this.sourceEnabled = true;
+    }
+
+    public ElasticRequest(ElasticRequest other) {
+        this.query = other.query;
+        this.aggregations = other.aggregations;
+        this.size = other.size;
+        this.from = other.from;
+        this.scroll = other.scroll;
+        this.pointInTimeId = other.pointInTimeId;
+        this.pointInTimeKeepAlive = other.pointInTimeKeepAlive;
+        this.searchAfter = other.searchAfter;
+        this.sourceEnabled = other.sourceEnabled;
+        this.sliceId = other.sliceId;
+        this.sliceMax = other.sliceMax;
+        this.trackTotalHits = other.trackTotalHits;
+        this.sorts = new ArrayList<>(other.sorts);
+        this.fields = new ArrayList<>(other.fields);
+        this.docValueFields = new LinkedHashMap<>(other.docValueFields);
+        this.sourceIncludes = new ArrayList<>(other.sourceIncludes);
     }
 
     public Map<String,Object> getQuery() {
@@ -73,6 +111,52 @@ class ElasticRequest {
         this.scroll = scroll;
     }
 
+    public String getPointInTimeId() {
+        return pointInTimeId;
+    }
+
+    public Integer getPointInTimeKeepAlive() {
+        return pointInTimeKeepAlive;
+    }
+
+    public void setPointInTime(String pointInTimeId, Integer keepAlive) {
+        this.pointInTimeId = pointInTimeId;
+        this.pointInTimeKeepAlive = keepAlive;
+    }
+
+    public Integer getSliceId() {
+        return sliceId;
+    }
+
+    public Integer getSliceMax() {
+        return sliceMax;
+    }
+
+    public void setSlice(Integer sliceId, Integer sliceMax) {
+        this.sliceId = sliceId;
+        this.sliceMax = sliceMax;
+    }
+
+    public Integer getTrackTotalHits() {
+        return trackTotalHits;
+    }
+
+    /**
+     * Limit up to which the total number of hits is counted accurately
+     * (Elasticsearch 7+). Totals above the limit are reported as a lower bound.
+     */
+    public void setTrackTotalHits(Integer trackTotalHits) {
+        this.trackTotalHits = trackTotalHits;
+    }
+
+    public List<Object> getSearchAfter() {
+        return searchAfter;
+    }
+
+    public void setSearchAfter(List<Object> searchAfter) {
+        this.searchAfter = searchAfter;
+    }
+
     public List<Map<String, Object>> getSorts() {
         return sorts;
     }
@@ -81,6 +165,10 @@ class ElasticRequest {
         this.sorts.add(Collections.singletonMap(key, Collections.singletonMap("order",  order)));
     }
 
+    public boolean hasSort(String key) {
+        return this.sorts.stream().anyMatch(sort -> sort.containsKey(key));
+    }
+
     public List<String> getSourceIncludes() {
         return sourceIncludes;
     }
@@ -89,6 +177,14 @@ class ElasticRequest {
         this.sourceIncludes.add(sourceInclude);
     }
 
+    public boolean isSourceEnabled() {
+        return sourceEnabled;
+    }
+
+    public void setSourceEnabled(boolean sourceEnabled) {
+        this.sourceEnabled = sourceEnabled;
+    }
+
     public List<String> getFields() {
         return fields;
     }
@@ -97,4 +193,16 @@ class ElasticRequest {
         this.fields.add(field);
     }
 
+    /**
+     * @return Doc value field names mapped to their format (or null for the
+     * default format)
+     */
+    public Map<String,String> getDocValueFields() {
+        return docValueFields;
+    }
+
+    public void addDocValueField(String field, String format) {
+        this.docValueFields.put(field, format);
+    }
+
 }
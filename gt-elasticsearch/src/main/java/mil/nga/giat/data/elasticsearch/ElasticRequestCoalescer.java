@@ -0,0 +1,80 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single flight execution of identical concurrent requests. While a request
+ * for a key is in flight, callers with the same key wait for and share its
+ * result instead of issuing their own request. Shared results must be treated
+ * as read-only.
+ */
+public class ElasticRequestCoalescer<T> {
+
+    @FunctionalInterface
+    interface RequestCall<T> {
+        T call() throws IOException;
+    }
+
+    private final Map<String, CompletableFuture<T>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong numRequests = new AtomicLong();
+
+    private final AtomicLong numCoalesced = new AtomicLong();
+
+    T execute(String key, RequestCall<T> call) throws IOException {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final CompletableFuture<T> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            numCoalesced.incrementAndGet();
+            return await(existing);
+        }
+
+        numRequests.incrementAndGet();
+        try {
+            final T result = call.call();
+            future.complete(result);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for coalesced request");
+        } catch (ExecutionException e) {
+            throw new IOException("Coalesced request failed", e.getCause());
+        }
+    }
+
+    /**
+     * @return Number of requests sent to the cluster
+     */
+    public long getRequestCount() {
+        return numRequests.get();
+    }
+
+    /**
+     * @return Number of requests that shared the result of an in-flight request
+     */
+    public long getCoalescedCount() {
+        return numCoalesced.get();
+    }
+
+}
@@ -25,6 +25,9 @@ public class ElasticResponse {
     @JsonProperty("_scroll_id")
     private String scrollId;
 
+    @JsonProperty("pit_id")
+    private String pointInTimeId;
+
     public ElasticResults getResults() {
         return results;
     }
@@ -37,6 +40,10 @@ public class ElasticResponse {
         return scrollId;
     }
 
+    public String getPointInTimeId() {
+        return pointInTimeId;
+    }
+
     @JsonIgnore
     public List<ElasticHit> getHits() {
         final List<ElasticHit> hits;
@@ -0,0 +1,174 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.util.logging.Logging;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import mil.nga.giat.data.elasticsearch.ElasticRequestCoalescer.RequestCall;
+
+/**
+ * LRU cache of search responses bounded by the estimated size of the cached
+ * responses. Entries expire after a fixed time to live and are discarded when
+ * the index changes, as detected by a refresh count check performed at most
+ * once per check interval for each index. Cached responses must be treated as
+ * read-only.
+ */
+public class ElasticResultCache {
+
+    private final static Logger LOGGER = Logging.getLogger(ElasticResultCache.class);
+
+    private final Cache<String, CachedResponse> cache;
+
+    private final Map<String, IndexVersion> indexVersions;
+
+    private final long checkInterval;
+
+    private final Ticker ticker;
+
+    private final AtomicLong numHits = new AtomicLong();
+
+    private final AtomicLong numMisses = new AtomicLong();
+
+    private final AtomicLong numStale = new AtomicLong();
+
+    /**
+     * @param maximumBytes Maximum estimated size of cached responses in bytes
+     * @param timeToLive Entry time to live in seconds
+     * @param checkInterval Minimum time between index change checks in
+     * seconds. Zero disables change checks.
+     */
+    public ElasticResultCache(long maximumBytes, int timeToLive, int checkInterval) {
+        this(maximumBytes, timeToLive, checkInterval, Ticker.systemTicker());
+    }
+
+    ElasticResultCache(long maximumBytes, int timeToLive, int checkInterval, Ticker ticker) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maximumBytes)
+                .<String, CachedResponse>weigher((key, value) -> key.length() + value.numBytes)
+                .expireAfterWrite(timeToLive, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .recordStats()
+                .build();
+        this.indexVersions = new ConcurrentHashMap<>();
+        this.checkInterval = TimeUnit.SECONDS.toNanos(checkInterval);
+        this.ticker = ticker;
+    }
+
+    /**
+     * Get the current version of the index, running the check if the last
+     * check is older than the check interval. The version changes whenever the
+     * index changes.
+     *
+     * @param check Returns the current index version
+     */
+    long getIndexVersion(String indexName, RequestCall<Long> check) {
+        if (checkInterval == 0) {
+            return 0;
+        }
+        final IndexVersion indexVersion = indexVersions.computeIfAbsent(indexName, k -> new IndexVersion());
+        synchronized (indexVersion) {
+            final long now = ticker.read();
+            if (!indexVersion.checked || now - indexVersion.checkTime >= checkInterval) {
+                try {
+                    indexVersion.version = check.call();
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Index change check failed for " + indexName, e);
+                }
+                indexVersion.checked = true;
+                indexVersion.checkTime = now;
+            }
+            return indexVersion.version;
+        }
+    }
+
+    /**
+     * @return Cached response or null if missing, expired or out of date
+     */
+    ElasticResponse get(String key, long indexVersion) {
+        final CachedResponse cached = cache.getIfPresent(key);
+        if (cached != null && cached.indexVersion != indexVersion) {
+            cache.asMap().remove(key, cached);
+            numStale.incrementAndGet();
+        } else if (cached != null) {
+            numHits.incrementAndGet();
+            return cached.response;
+        }
+        numMisses.incrementAndGet();
+        return null;
+    }
+
+    void put(String key, long indexVersion, ElasticResponse response, int numBytes) {
+        cache.put(key, new CachedResponse(response, indexVersion, numBytes));
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long getHitCount() {
+        return numHits.get();
+    }
+
+    public long getMissCount() {
+        return numMisses.get();
+    }
+
+    /**
+     * @return Number of entries discarded because the index changed
+     */
+    public long getStaleCount() {
+        return numStale.get();
+    }
+
+    /**
+     * @return Number of entries evicted by size or expiry
+     */
+    public long getEvictionCount() {
+        return cache.stats().evictionCount();
+    }
+
+    public long getSize() {
+        return cache.size();
+    }
+
+    private static class CachedResponse {
+
+        private final ElasticResponse response;
+
+        private final long indexVersion;
+
+        private final int numBytes;
+
+        CachedResponse(ElasticResponse response, long indexVersion, int numBytes) {
+            this.response = response;
+            this.indexVersion = indexVersion;
+            this.numBytes = numBytes;
+        }
+
+    }
+
+    private static class IndexVersion {
+
+        private boolean checked;
+
+        private long checkTime;
+
+        private long version;
+
+    }
+
+}
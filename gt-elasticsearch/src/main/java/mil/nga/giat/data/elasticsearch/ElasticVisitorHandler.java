@@ -0,0 +1,407 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.ANALYZED;
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.FULL_NAME;
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.NESTED;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.geotools.feature.visitor.AverageVisitor;
+import org.geotools.feature.visitor.CountVisitor;
+import org.geotools.feature.visitor.GroupByVisitor;
+import org.geotools.feature.visitor.MaxVisitor;
+import org.geotools.feature.visitor.MinVisitor;
+import org.geotools.feature.visitor.SumVisitor;
+import org.geotools.feature.visitor.UniqueVisitor;
+import org.geotools.util.Converters;
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.feature.FeatureVisitor;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.PropertyName;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Computes the result of GeoTools feature visitors with Elasticsearch
+ * aggregations, so calculations over all features matching a query are
+ * performed by the cluster instead of reading every feature. Min and max are
+ * supported on numeric and date attributes, sum and average on numeric
+ * attributes and unique values on any non-analyzed attribute. Group by
+ * visitors are computed with a paged composite aggregation grouping on
+ * non-analyzed attributes with a count or supported metric aggregate.
+ */
+class ElasticVisitorHandler {
+
+    /**
+     * Number of unique values requested per composite aggregation page.
+     */
+    static final int COMPOSITE_SIZE = 1000;
+
+    /**
+     * Maximum number of group by results held in memory, matching the
+     * default search.max_buckets limit. Larger results fail so features are
+     * visited instead.
+     */
+    static final int MAX_GROUPS = 10000;
+
+    private final ElasticClient client;
+
+    private final String indexName;
+
+    private final String docType;
+
+    private final SimpleFeatureType featureType;
+
+    private final int maxGroups;
+
+    ElasticVisitorHandler(ElasticClient client, String indexName, String docType, SimpleFeatureType featureType) {
+        this(client, indexName, docType, featureType, MAX_GROUPS);
+    }
+
+    ElasticVisitorHandler(ElasticClient client, String indexName, String docType, SimpleFeatureType featureType,
+            int maxGroups) {
+        this.client = client;
+        this.indexName = indexName;
+        this.docType = docType;
+        this.featureType = featureType;
+        this.maxGroups = maxGroups;
+    }
+
+    /**
+     * Whether the visitor result can be computed with aggregations.
+     */
+    boolean canHandle(FeatureVisitor visitor) {
+        final boolean result;
+        if (visitor instanceof CountVisitor) {
+            result = true;
+        } else if (visitor instanceof MinVisitor) {
+            result = isNumericOrDate(getDescriptor(((MinVisitor) visitor).getExpression()));
+        } else if (visitor instanceof MaxVisitor) {
+            result = isNumericOrDate(getDescriptor(((MaxVisitor) visitor).getExpression()));
+        } else if (visitor instanceof SumVisitor) {
+            result = isNumeric(getDescriptor(((SumVisitor) visitor).getExpression()));
+        } else if (visitor instanceof AverageVisitor) {
+            result = isNumeric(getDescriptor(((AverageVisitor) visitor).getExpression()));
+        } else if (visitor instanceof UniqueVisitor) {
+            final UniqueVisitor uniqueVisitor = (UniqueVisitor) visitor;
+            result = !uniqueVisitor.hasLimits() && getDescriptor(uniqueVisitor.getExpression()) != null
+                    && client.isVersionAtLeast(6, 1);
+        } else if (visitor instanceof GroupByVisitor) {
+            // missing_bucket is required to include groups with missing values
+            final GroupByVisitor groupByVisitor = (GroupByVisitor) visitor;
+            final FeatureVisitor aggregateVisitor = groupByVisitor.getAggregateVisitor();
+            result = !groupByVisitor.getGroupByAttributes().isEmpty()
+                    && groupByVisitor.getGroupByAttributes().stream().allMatch(e -> getDescriptor(e) != null)
+                    && (aggregateVisitor instanceof CountVisitor
+                            || (getMetricType(aggregateVisitor) != null && canHandle(aggregateVisitor)))
+                    && client.isVersionAtLeast(6, 4);
+        } else {
+            result = false;
+        }
+        return result;
+    }
+
+    /**
+     * Compute the visitor result over all documents matching the request
+     * query. The visitor is only updated once all aggregations succeed.
+     */
+    void handle(FeatureVisitor visitor, ElasticRequest searchRequest) throws IOException {
+        final ElasticRequest request = new ElasticRequest(searchRequest);
+        request.setSize(0);
+        request.setFrom(null);
+        request.getSorts().clear();
+
+        if (visitor instanceof CountVisitor) {
+            final long count = client.count(indexName, docType, request.getQuery());
+            ((CountVisitor) visitor).setValue((int) Math.min(Integer.MAX_VALUE, count));
+        } else if (visitor instanceof MinVisitor) {
+            final AttributeDescriptor descriptor = getDescriptor(((MinVisitor) visitor).getExpression());
+            final Object value = getMetric(request, "min", descriptor);
+            if (value != null) {
+                ((MinVisitor) visitor).setValue(convert(value, descriptor));
+            }
+        } else if (visitor instanceof MaxVisitor) {
+            final AttributeDescriptor descriptor = getDescriptor(((MaxVisitor) visitor).getExpression());
+            final Object value = getMetric(request, "max", descriptor);
+            if (value != null) {
+                ((MaxVisitor) visitor).setValue(convert(value, descriptor));
+            }
+        } else if (visitor instanceof SumVisitor) {
+            final AttributeDescriptor descriptor = getDescriptor(((SumVisitor) visitor).getExpression());
+            final Object value = getMetric(request, "sum", descriptor);
+            if (value != null) {
+                ((SumVisitor) visitor).setValue(toSum((Number) value, descriptor));
+            }
+        } else if (visitor instanceof AverageVisitor) {
+            // sum and count are set rather than the average so results can be merged
+            final AttributeDescriptor descriptor = getDescriptor(((AverageVisitor) visitor).getExpression());
+            final Map<String,Object> values = getMetrics(request, "sum", descriptor);
+            final Number count = (Number) values.get("count");
+            if (count != null && count.longValue() > 0) {
+                // the visitor count is an int, so scale the sum with a clamped count to keep the average
+                final long total = count.longValue();
+                final int clamped = (int) Math.min(Integer.MAX_VALUE, total);
+                final double sum = ((Number) values.get("sum")).doubleValue();
+                ((AverageVisitor) visitor).setValue(clamped, clamped == total ? sum : sum / total * clamped);
+            }
+        } else if (visitor instanceof UniqueVisitor) {
+            final AttributeDescriptor descriptor = getDescriptor(((UniqueVisitor) visitor).getExpression());
+            ((UniqueVisitor) visitor).setValue(getUniqueValues(request, descriptor));
+        } else if (visitor instanceof GroupByVisitor) {
+            ((GroupByVisitor) visitor).setValue(getGroups(request, (GroupByVisitor) visitor));
+        } else {
+            throw new IllegalArgumentException("Unsupported visitor " + visitor.getClass().getName());
+        }
+    }
+
+    /**
+     * Get a metric aggregation value, or null if no document has a value for
+     * the attribute.
+     */
+    private Object getMetric(ElasticRequest request, String type, AttributeDescriptor descriptor) throws IOException {
+        final Map<String,Object> values = getMetrics(request, type, descriptor);
+        final Number count = (Number) values.get("count");
+        return count != null && count.longValue() > 0 ? values.get(type) : null;
+    }
+
+    /**
+     * Run a metric aggregation together with a value count aggregation on the
+     * same field.
+     */
+    private Map<String,Object> getMetrics(ElasticRequest request, String type, AttributeDescriptor descriptor)
+            throws IOException {
+        final String fieldName = (String) descriptor.getUserData().get(FULL_NAME);
+        final Map<String,Map<String,Map<String,Object>>> aggregations = new HashMap<>();
+        aggregations.put(type, ImmutableMap.of(type, ImmutableMap.of("field", fieldName)));
+        aggregations.put("count", ImmutableMap.of("value_count", ImmutableMap.of("field", fieldName)));
+        request.setAggregations(aggregations);
+
+        final ElasticResponse response = client.search(indexName, docType, request);
+        if (response.getAggregations() == null) {
+            throw new IOException("Missing aggregations in response");
+        }
+        final Map<String,Object> values = new HashMap<>();
+        for (final String name : aggregations.keySet()) {
+            final ElasticAggregation aggregation = response.getAggregations().get(name);
+            if (aggregation == null) {
+                throw new IOException("Missing " + name + " aggregation in response");
+            }
+            values.put(name, aggregation.getValue());
+        }
+        return values;
+    }
+
+    /**
+     * Page through all unique values with a composite aggregation. Values are
+     * returned in ascending order.
+     */
+    private Set<Object> getUniqueValues(ElasticRequest request, AttributeDescriptor descriptor) throws IOException {
+        final List<Map<String,Object>> sources = ImmutableList.of(termsSource("value", descriptor, false));
+        final Iterator<Map<String,Object>> buckets = new ElasticCompositeAggregationIterator(client, indexName,
+                docType, request, sources, null, COMPOSITE_SIZE);
+        final Set<Object> values = new LinkedHashSet<>();
+        try {
+            while (buckets.hasNext()) {
+                final Object value = getKey(buckets.next()).get("value");
+                if (value != null) {
+                    values.add(convert(value, descriptor));
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return values;
+    }
+
+    /**
+     * Page through all groups with a composite aggregation with one terms
+     * source per group by attribute and the aggregate computed as a metric
+     * sub-aggregation (or the bucket document count). Each row holds the group
+     * by values followed by the aggregate value. Groups are returned in
+     * ascending order and include groups with missing values.
+     */
+    private List<Object[]> getGroups(ElasticRequest request, GroupByVisitor visitor) throws IOException {
+        final List<AttributeDescriptor> groupByDescriptors = new ArrayList<>();
+        final List<Map<String,Object>> sources = new ArrayList<>();
+        for (final Expression expression : visitor.getGroupByAttributes()) {
+            final AttributeDescriptor descriptor = getDescriptor(expression);
+            sources.add(termsSource("g" + groupByDescriptors.size(), descriptor, true));
+            groupByDescriptors.add(descriptor);
+        }
+
+        final FeatureVisitor aggregateVisitor = visitor.getAggregateVisitor();
+        final String metricType = getMetricType(aggregateVisitor);
+        final AttributeDescriptor metricDescriptor;
+        final Map<String,Object> subAggregations;
+        if (metricType != null) {
+            metricDescriptor = getDescriptor(getMetricExpression(aggregateVisitor));
+            final String fieldName = (String) metricDescriptor.getUserData().get(FULL_NAME);
+            subAggregations = ImmutableMap.of("metric", ImmutableMap.of(metricType, ImmutableMap.of("field", fieldName)));
+        } else {
+            metricDescriptor = null;
+            subAggregations = null;
+        }
+
+        final Iterator<Map<String,Object>> buckets = new ElasticCompositeAggregationIterator(client, indexName,
+                docType, request, sources, subAggregations, COMPOSITE_SIZE);
+        final int numGroupBy = groupByDescriptors.size();
+        final List<Object[]> results = new ArrayList<>();
+        try {
+            while (buckets.hasNext()) {
+                if (results.size() == maxGroups) {
+                    throw new IOException("Group by result exceeds " + maxGroups + " groups");
+                }
+                final Map<String,Object> bucket = buckets.next();
+                final Map<String,Object> key = getKey(bucket);
+                final Object[] row = new Object[numGroupBy + 1];
+                for (int i = 0; i < numGroupBy; i++) {
+                    final Object value = key.get("g" + i);
+                    row[i] = value != null ? convert(value, groupByDescriptors.get(i)) : null;
+                }
+                if (metricType == null) {
+                    row[numGroupBy] = ((Number) bucket.get("doc_count")).longValue();
+                } else {
+                    final Object metric = bucket.get("metric");
+                    final Object value = metric instanceof Map ? ((Map<?,?>) metric).get("value") : null;
+                    row[numGroupBy] = value != null ? toMetric(metricType, value, metricDescriptor) : null;
+                }
+                results.add(row);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return results;
+    }
+
+    private static Map<String,Object> termsSource(String name, AttributeDescriptor descriptor, boolean missingBucket) {
+        final String fieldName = (String) descriptor.getUserData().get(FULL_NAME);
+        final Map<String,Object> terms = missingBucket
+                ? ImmutableMap.of("field", fieldName, "missing_bucket", true)
+                : ImmutableMap.of("field", fieldName);
+        return ImmutableMap.of(name, ImmutableMap.of("terms", terms));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String,Object> getKey(Map<String,Object> bucket) {
+        final Object key = bucket.get("key");
+        return key instanceof Map ? (Map<String,Object>) key : Collections.emptyMap();
+    }
+
+    /**
+     * @return Metric aggregation type computing the visitor result or null
+     * if the visitor is not a supported metric visitor
+     */
+    private static String getMetricType(FeatureVisitor visitor) {
+        final String type;
+        if (visitor instanceof MinVisitor) {
+            type = "min";
+        } else if (visitor instanceof MaxVisitor) {
+            type = "max";
+        } else if (visitor instanceof SumVisitor) {
+            type = "sum";
+        } else if (visitor instanceof AverageVisitor) {
+            type = "avg";
+        } else {
+            type = null;
+        }
+        return type;
+    }
+
+    private static Expression getMetricExpression(FeatureVisitor visitor) {
+        final Expression expression;
+        if (visitor instanceof MinVisitor) {
+            expression = ((MinVisitor) visitor).getExpression();
+        } else if (visitor instanceof MaxVisitor) {
+            expression = ((MaxVisitor) visitor).getExpression();
+        } else if (visitor instanceof SumVisitor) {
+            expression = ((SumVisitor) visitor).getExpression();
+        } else if (visitor instanceof AverageVisitor) {
+            expression = ((AverageVisitor) visitor).getExpression();
+        } else {
+            expression = null;
+        }
+        return expression;
+    }
+
+    private static Object toMetric(String metricType, Object value, AttributeDescriptor descriptor) {
+        final Object result;
+        if (metricType.equals("sum")) {
+            result = toSum((Number) value, descriptor);
+        } else if (metricType.equals("avg")) {
+            result = ((Number) value).doubleValue();
+        } else {
+            result = convert(value, descriptor);
+        }
+        return result;
+    }
+
+    private AttributeDescriptor getDescriptor(Expression expression) {
+        if (!(expression instanceof PropertyName)) {
+            return null;
+        }
+        final AttributeDescriptor descriptor = featureType.getDescriptor(((PropertyName) expression).getPropertyName());
+        if (descriptor == null || Geometry.class.isAssignableFrom(descriptor.getType().getBinding())) {
+            return null;
+        }
+        final String fieldName = (String) descriptor.getUserData().get(FULL_NAME);
+        if (fieldName == null || fieldName.startsWith("_")
+                || Boolean.TRUE.equals(descriptor.getUserData().get(ANALYZED))
+                || Boolean.TRUE.equals(descriptor.getUserData().get(NESTED))) {
+            return null;
+        }
+        return descriptor;
+    }
+
+    private static boolean isNumeric(AttributeDescriptor descriptor) {
+        return descriptor != null && Number.class.isAssignableFrom(descriptor.getType().getBinding());
+    }
+
+    private static boolean isNumericOrDate(AttributeDescriptor descriptor) {
+        return isNumeric(descriptor) || (descriptor != null && Date.class.isAssignableFrom(descriptor.getType().getBinding()));
+    }
+
+    private static boolean isIntegral(Class<?> binding) {
+        return binding == Long.class || binding == Integer.class || binding == Short.class || binding == Byte.class;
+    }
+
+    /**
+     * Convert an aggregation value to the attribute binding. Dates are returned
+     * by Elasticsearch as epoch milliseconds.
+     */
+    static Object convert(Object value, AttributeDescriptor descriptor) {
+        final Class<?> binding = descriptor.getType().getBinding();
+        if (Date.class.isAssignableFrom(binding) && value instanceof Number) {
+            return new Date(((Number) value).longValue());
+        }
+        if (isIntegral(binding) && value instanceof Double) {
+            value = Math.round((Double) value);
+        }
+        final Object converted = Converters.convert(value, binding);
+        return converted != null ? converted : value;
+    }
+
+    private static Object toSum(Number value, AttributeDescriptor descriptor) {
+        if (isIntegral(descriptor.getType().getBinding())) {
+            return Math.round(value.doubleValue());
+        }
+        return value.doubleValue();
+    }
+
+}
@@ -12,6 +12,13 @@ import com.github.davidmoten.geo.GeoHash;
 
 class GeohashUtil {
 
+    static final int MAX_TILE_PRECISION = 29;
+
+    /**
+     * Latitude bounds of Web Mercator tiles
+     */
+    private static final double MAX_TILE_LATITUDE = 85.0511287798066;
+
     public static int computePrecision(Envelope envelope, long size, double threshold) {
         return computePrecision(envelope, size, threshold, 1);
     }
@@ -25,11 +32,62 @@ class GeohashUtil {
         return area/(GeoHash.widthDegrees(n)*GeoHash.heightDegrees(n));
     }
 
+    /**
+     * Minimum geotile_grid precision (zoom level) satisfying
+     * actual_grid_size/size>threshold, where actual_grid_size is the number of
+     * Web Mercator tiles covering the envelope.
+     */
+    public static int computeTilePrecision(Envelope envelope, long size, double threshold) {
+        final double tiles = computeTileFraction(envelope);
+        int precision = 0;
+        while (precision < MAX_TILE_PRECISION && tiles * Math.pow(4, precision) / size <= threshold) {
+            precision++;
+        }
+        return precision;
+    }
+
+    /**
+     * Fraction of the Web Mercator world covered by the envelope
+     */
+    private static double computeTileFraction(Envelope envelope) {
+        if (envelope == null || envelope.isNull()) {
+            return 1;
+        }
+        final double width = Math.min(1, envelope.getWidth() / 360);
+        final double minY = mercatorY(Math.max(-MAX_TILE_LATITUDE, envelope.getMinY()));
+        final double maxY = mercatorY(Math.min(MAX_TILE_LATITUDE, envelope.getMaxY()));
+        return width * Math.max(0, maxY - minY) / (2 * Math.PI);
+    }
+
+    private static double mercatorY(double lat) {
+        return Math.log(Math.tan(Math.PI / 4 + Math.toRadians(lat) / 2));
+    }
+
+    /**
+     * Smallest geotile_grid precision (zoom level) with tiles no wider than
+     * the given size in degrees.
+     */
+    public static int computeTilePrecision(double cellSize) {
+        if (!(cellSize > 0)) {
+            return MAX_TILE_PRECISION;
+        }
+        final int precision = (int) Math.ceil(Math.log(360 / cellSize) / Math.log(2));
+        return Math.max(0, Math.min(MAX_TILE_PRECISION, precision));
+    }
+
     public static void updateGridAggregationPrecision(Map<String,Map<String,Map<String,Object>>> aggregations, int precision) {
-        aggregations.values().stream().filter(a -> a.containsKey("geohash_grid")).forEach(a -> {
-            Map<String, Object> geohashGrid = a.get("geohash_grid");
-            if (!geohashGrid.containsKey("precision")) {
-                geohashGrid.put("precision", precision);
+        updatePrecision(aggregations, "geohash_grid", precision);
+    }
+
+    public static void updateTileAggregationPrecision(Map<String,Map<String,Map<String,Object>>> aggregations, int precision) {
+        updatePrecision(aggregations, "geotile_grid", precision);
+    }
+
+    private static void updatePrecision(Map<String,Map<String,Map<String,Object>>> aggregations, String type, int precision) {
+        aggregations.values().stream().filter(a -> a.containsKey(type)).forEach(a -> {
+            Map<String, Object> grid = a.get(type);
+            if (!grid.containsKey("precision")) {
+                grid.put("precision", precision);
             }
         });
     }
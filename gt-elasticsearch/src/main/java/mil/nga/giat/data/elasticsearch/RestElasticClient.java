@@ -4,11 +4,14 @@
  */
 package mil.nga.giat.data.elasticsearch;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -18,14 +21,19 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.ResponseFormat;
 import mil.nga.giat.data.elasticsearch.ElasticMappings.Mapping;
 
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
 import org.elasticsearch.client.Request;
@@ -38,13 +46,22 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.common.io.ByteStreams;
 
 public class RestElasticClient implements ElasticClient {
 
     final static double DEFAULT_VERSION = 7.0;
 
+    /** Minimum request body size in bytes compressed when request compression is enabled */
+    final static int REQUEST_COMPRESSION_THRESHOLD = 16 * 1024;
+
     private final static Logger LOGGER = Logging.getLogger(RestElasticClient.class);
 
     private final static DateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
@@ -57,18 +74,55 @@ public class RestElasticClient implements ElasticClient {
 
     private final ObjectMapper mapper;
 
+    private final ObjectMapper smileMapper;
+
+    private final ObjectMapper cborMapper;
+
+    private final ElasticMetadataCache metadataCache;
+
+    private ElasticRequestCoalescer<ElasticResponse> requestCoalescer;
+
+    private ElasticResultCache resultCache;
+
+    private ElasticMultiSearchBatcher<BatchedSearch, SizedResponse> searchBatcher;
+
+    private boolean responseCompressionEnabled;
+
+    private boolean requestCompressionEnabled;
+
+    private ResponseFormat responseFormat;
+
     private Double version;
 
+    private int majorVersion;
+
+    private int minorVersion;
+
     public RestElasticClient(RestClient client) {
         this(client, null, false);
     }
 
     public RestElasticClient(RestClient client, RestClient proxyClient, boolean enableRunAs) {
+        this(client, proxyClient, enableRunAs, null);
+    }
+
+    /**
+     * @param metadataCache Cache for mapping, alias and version responses or
+     * null to disable caching
+     */
+    public RestElasticClient(RestClient client, RestClient proxyClient, boolean enableRunAs,
+            ElasticMetadataCache metadataCache) {
         this.client = client;
         this.proxyClient = proxyClient;
         this.mapper = new ObjectMapper();
         this.mapper.setDateFormat(DATE_FORMAT);
+        this.smileMapper = new ObjectMapper(new SmileFactory());
+        this.smileMapper.setDateFormat(DATE_FORMAT);
+        this.cborMapper = new ObjectMapper(new CBORFactory());
+        this.cborMapper.setDateFormat(DATE_FORMAT);
+        this.responseFormat = ResponseFormat.JSON;
         this.enableRunAs = enableRunAs;
+        this.metadataCache = metadataCache;
     }
 
     @Override
@@ -77,28 +131,41 @@ public class RestElasticClient implements ElasticClient {
             return version;
         }
 
-        final Pattern pattern = Pattern.compile("(\\d+\\.\\d+)\\.\\d+");
+        final Pattern pattern = Pattern.compile("((\\d+)\\.(\\d+))\\.\\d+");
         try {
-            final Response response = performRequest("GET", "/", null, true);
-            try (final InputStream inputStream = response.getEntity().getContent()) {
+            try (final InputStream inputStream = getMetadata("/")) {
                 Map<String,Object> info = mapper.readValue(inputStream, new TypeReference<Map<String, Object>>() {});
                 @SuppressWarnings("unchecked")
                 Map<String,Object> ver = (Map<String,Object>) info.getOrDefault("version", Collections.EMPTY_MAP);
                 final Matcher m = pattern.matcher((String) ver.get("number"));
                 if (!m.find()) {
-                    version = DEFAULT_VERSION;
+                    setDefaultVersion();
                 } else {
+                    majorVersion = Integer.parseInt(m.group(2));
+                    minorVersion = Integer.parseInt(m.group(3));
                     version = Double.valueOf(m.group(1));
                 }
             }
         } catch (Exception e) {
             LOGGER.warning("Error getting server version: " + e);
-            version = DEFAULT_VERSION;
+            setDefaultVersion();
         }
 
         return version;
     }
 
+    private void setDefaultVersion() {
+        majorVersion = (int) DEFAULT_VERSION;
+        minorVersion = 0;
+        version = DEFAULT_VERSION;
+    }
+
+    @Override
+    public boolean isVersionAtLeast(int major, int minor) {
+        getVersion();
+        return majorVersion > major || (majorVersion == major && minorVersion >= minor);
+    }
+
     @Override
     public List<String> getTypes(String indexName) throws IOException {
         return new ArrayList<>(getMappings(indexName, null).keySet());
@@ -119,14 +186,34 @@ public class RestElasticClient implements ElasticClient {
         return properties;
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public int getNumberOfShards(String indexName) throws IOException {
+        final Response response = performRequest("GET", "/" + indexName + "/_settings/index.number_of_shards", null, true);
+        try (final InputStream inputStream = getContent(response)) {
+            final Map<String,Map<String,Object>> result;
+            result = this.mapper.readValue(inputStream, new TypeReference<Map<String, Map<String,Object>>>() {});
+            int numberOfShards = 0;
+            for (final Map<String,Object> indexSettings : result.values()) {
+                final Map<String,Object> settings = (Map<String,Object>) indexSettings.getOrDefault("settings", Collections.emptyMap());
+                final Map<String,Object> index = (Map<String,Object>) settings.getOrDefault("index", Collections.emptyMap());
+                final Object value = index.get("number_of_shards");
+                if (value != null) {
+                    numberOfShards = Math.max(numberOfShards, Integer.parseInt(value.toString()));
+                }
+            }
+            return numberOfShards;
+        }
+    }
+
     private Map<String, Mapping> getMappings(String indexName, String type) throws IOException {
-        final Response response;
+        final InputStream content;
         try {
             final StringBuilder path = new StringBuilder("/").append(indexName).append("/_mapping");
             if (type != null && getVersion() < 7) {
                 path.append("/").append(type);
             }
-            response = performRequest("GET", path.toString(), null, true);
+            content = getMetadata(path.toString());
         } catch (ResponseException e) {
             if (e.getResponse().getStatusLine().getStatusCode() == 404) {
                 return Collections.emptyMap();
@@ -136,7 +223,7 @@ public class RestElasticClient implements ElasticClient {
 
         final String aliasedIndex = getIndices(indexName).stream().findFirst().orElse(null);
 
-        try (final InputStream inputStream = response.getEntity().getContent()) {
+        try (final InputStream inputStream = content) {
             final Map<String,ElasticMappings> values;
             if (getVersion() < 7) {
                 values = this.mapper.readValue(inputStream, new TypeReference<Map<String, ElasticMappings>>() {
@@ -177,12 +264,196 @@ public class RestElasticClient implements ElasticClient {
 
     @Override
     public ElasticResponse search(String searchIndices, String type, ElasticRequest request) throws IOException {
+        final String path = buildSearchPath(searchIndices, type, request);
+        final Map<String,Object> requestBody = buildSearchBody(request);
+        // scroll and point in time responses hold per-reader search contexts
+        if ((requestCoalescer == null && resultCache == null && searchBatcher == null)
+                || request.getScroll() != null || request.getPointInTimeId() != null) {
+            return parseResponse(performRequest("POST", path, requestBody));
+        }
+
+        final ElasticRequestCoalescer.RequestCall<SizedResponse> searchCall;
+        if (searchBatcher != null) {
+            final String user = getRunAsUser();
+            final BatchedSearch search = new BatchedSearch(searchIndices, type, path, requestBody);
+            searchCall = () -> searchBatcher.submit(user != null ? user : "", search);
+        } else {
+            searchCall = () -> executeSearch(path, requestBody);
+        }
+        if (requestCoalescer == null && resultCache == null) {
+            return searchCall.call().response;
+        }
+
+        final String key = getRunAsUser() + " " + path + " " + this.mapper.writeValueAsString(requestBody);
+        final ElasticRequestCoalescer.RequestCall<ElasticResponse> call;
+        if (resultCache != null) {
+            final long indexVersion = resultCache.getIndexVersion(searchIndices, () -> getRefreshCount(searchIndices));
+            final ElasticResponse cached = resultCache.get(key, indexVersion);
+            if (cached != null) {
+                return cached;
+            }
+            call = () -> {
+                final SizedResponse result = searchCall.call();
+                resultCache.put(key, indexVersion, result.response, result.numBytes);
+                return result.response;
+            };
+        } else {
+            call = () -> searchCall.call().response;
+        }
+        return requestCoalescer != null ? requestCoalescer.execute(key, call) : call.call();
+    }
+
+    private SizedResponse executeSearch(String path, Map<String,Object> requestBody) throws IOException {
+        final Response response = performRequest("POST", path, requestBody);
+        final byte[] data;
+        try (final InputStream inputStream = getContent(response)) {
+            data = ByteStreams.toByteArray(inputStream);
+        }
+        return new SizedResponse(getMapper(response).readValue(data, ElasticResponse.class), data.length);
+    }
+
+    /**
+     * Send batched searches as a single _msearch request. A batch of one is sent
+     * as a regular search.
+     */
+    private void executeMultiSearch(List<BatchedSearch> searches, List<CompletableFuture<SizedResponse>> results)
+            throws IOException {
+        if (searches.size() == 1) {
+            results.get(0).complete(executeSearch(searches.get(0).path, searches.get(0).requestBody));
+            return;
+        }
+
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (final BatchedSearch search : searches) {
+            final Map<String,Object> header = new HashMap<>();
+            header.put("index", search.indices);
+            if (getVersion() < 7 && search.type != null) {
+                header.put("type", search.type);
+            }
+            body.write(this.mapper.writeValueAsBytes(header));
+            body.write('\n');
+            body.write(this.mapper.writeValueAsBytes(search.requestBody));
+            body.write('\n');
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Sending " + searches.size() + " searches with _msearch");
+        }
+        final HttpEntity entity = createEntity(body.toByteArray(), ContentType.create("application/x-ndjson"));
+        final Response response = executeRequest("POST", "/_msearch", entity, false);
+        final ObjectMapper responseMapper = getMapper(response);
+        final byte[] data;
+        try (final InputStream inputStream = getContent(response)) {
+            data = ByteStreams.toByteArray(inputStream);
+        }
+
+        try (final JsonParser parser = responseMapper.getFactory().createParser(data)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Invalid _msearch response");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                parser.nextToken();
+                if (!field.equals("responses")) {
+                    parser.skipChildren();
+                    continue;
+                }
+                int index = 0;
+                while (parser.nextToken() == JsonToken.START_OBJECT && index < results.size()) {
+                    final long start = parser.getTokenLocation().getByteOffset();
+                    final JsonNode item = parser.readValueAsTree();
+                    final int numBytes = (int) (parser.getCurrentLocation().getByteOffset() - start);
+                    if (item.has("error")) {
+                        results.get(index).completeExceptionally(new IOException("Error executing search: " + item.get("error")));
+                    } else {
+                        final ElasticResponse itemResponse = responseMapper.treeToValue(item, ElasticResponse.class);
+                        results.get(index).complete(new SizedResponse(itemResponse, numBytes));
+                    }
+                    index++;
+                }
+            }
+        }
+    }
+
+    @Override
+    public long count(String searchIndices, String type, Map<String,Object> query) throws IOException {
+        final StringBuilder pathBuilder = new StringBuilder("/" + searchIndices);
+        if (getVersion() < 7) {
+            pathBuilder.append("/" + type);
+        }
+        pathBuilder.append("/_count");
+
+        final Map<String,Object> requestBody = new HashMap<>();
+        if (query != null) {
+            requestBody.put("query", query);
+        }
+        final Response response = performRequest("POST", pathBuilder.toString(), requestBody);
+        try (final InputStream inputStream = getContent(response)) {
+            final Map<String,Object> result;
+            result = getMapper(response).readValue(inputStream, new TypeReference<Map<String, Object>>() {});
+            final Object count = result.get("count");
+            if (!(count instanceof Number)) {
+                throw new IOException("Count not found in response");
+            }
+            return ((Number) count).longValue();
+        }
+    }
+
+    /**
+     * Get the total number of refreshes of the index, which changes whenever
+     * new changes become visible to search.
+     */
+    private long getRefreshCount(String indexName) throws IOException {
+        final Response response = performRequest("GET", "/" + indexName + "/_stats/refresh", null, true);
+        try (final InputStream inputStream = getContent(response)) {
+            final Map<String,Object> result;
+            result = this.mapper.readValue(inputStream, new TypeReference<Map<String, Object>>() {});
+            final Object count = getPath(result, "_all", "total", "refresh", "total");
+            if (!(count instanceof Number)) {
+                throw new IOException("Refresh count not found for " + indexName);
+            }
+            return ((Number) count).longValue();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object getPath(Map<String,Object> map, String... keys) {
+        Object value = map;
+        for (final String key : keys) {
+            if (!(value instanceof Map)) {
+                return null;
+            }
+            value = ((Map<String,Object>) value).get(key);
+        }
+        return value;
+    }
+
+    @Override
+    public ElasticHitStream searchStream(String searchIndices, String type, ElasticRequest request, Collection<String> fieldNames,
+            ElasticGeometryReader geometryReader) throws IOException {
+        final String path = buildSearchPath(searchIndices, type, request);
+        final Response response = performRequest("POST", path, buildSearchBody(request));
+        return new ElasticHitStream(getContent(response), getMapper(response), fieldNames, geometryReader);
+    }
+
+    private String buildSearchPath(String searchIndices, String type, ElasticRequest request) {
+        if (request.getPointInTimeId() != null) {
+            // indices are defined by the point in time
+            return "/_search";
+        }
+
         final StringBuilder pathBuilder = new StringBuilder("/" + searchIndices);
         if (getVersion() < 7) {
             pathBuilder.append("/" + type);
         }
         pathBuilder.append("/_search");
 
+        if (request.getScroll() != null) {
+            pathBuilder.append("?scroll=").append(request.getScroll()).append("s");
+        }
+        return pathBuilder.toString();
+    }
+
+    private Map<String,Object> buildSearchBody(ElasticRequest request) {
         final Map<String,Object> requestBody = new HashMap<>();
 
         if (request.getSize() != null) {
@@ -193,12 +464,10 @@ public class RestElasticClient implements ElasticClient {
             requestBody.put("from", request.getFrom());
         }
 
-        if (request.getScroll() != null) {
-            pathBuilder.append("?scroll=").append(request.getScroll()).append("s");
-        }
-
         final List<String> sourceIncludes = request.getSourceIncludes();
-        if (sourceIncludes.size() == 1) {
+        if (!request.isSourceEnabled()) {
+            requestBody.put("_source", false);
+        } else if (sourceIncludes.size() == 1) {
             requestBody.put("_source", sourceIncludes.get(0));
         } else if (!sourceIncludes.isEmpty()) {
             requestBody.put("_source", sourceIncludes);
@@ -209,10 +478,38 @@ public class RestElasticClient implements ElasticClient {
             requestBody.put(key, request.getFields());
         }
 
+        if (!request.getDocValueFields().isEmpty()) {
+            requestBody.put("docvalue_fields", buildDocValueFields(request.getDocValueFields()));
+        }
+
         if (!request.getSorts().isEmpty()) {
             requestBody.put("sort", request.getSorts());
         }
 
+        if (request.getSliceId() != null && request.getSliceMax() != null) {
+            final Map<String,Object> slice = new HashMap<>();
+            slice.put("id", request.getSliceId());
+            slice.put("max", request.getSliceMax());
+            requestBody.put("slice", slice);
+        }
+
+        if (request.getTrackTotalHits() != null && getVersion() >= 7) {
+            requestBody.put("track_total_hits", request.getTrackTotalHits());
+        }
+
+        if (request.getSearchAfter() != null) {
+            requestBody.put("search_after", request.getSearchAfter());
+        }
+
+        if (request.getPointInTimeId() != null) {
+            final Map<String,Object> pointInTime = new HashMap<>();
+            pointInTime.put("id", request.getPointInTimeId());
+            if (request.getPointInTimeKeepAlive() != null) {
+                pointInTime.put("keep_alive", request.getPointInTimeKeepAlive() + "s");
+            }
+            requestBody.put("pit", pointInTime);
+        }
+
         if (request.getQuery() != null) {
             requestBody.put("query", request.getQuery());
         }
@@ -221,14 +518,35 @@ public class RestElasticClient implements ElasticClient {
             requestBody.put("aggregations", request.getAggregations());
         }
 
-        return parseResponse(performRequest("POST", pathBuilder.toString(), requestBody));
+        return requestBody;
+    }
+
+    private List<Object> buildDocValueFields(Map<String,String> fields) {
+        final List<Object> docValueFields = new ArrayList<>();
+        for (final Entry<String,String> field : fields.entrySet()) {
+            if (!isVersionAtLeast(6, 4)) {
+                // formats are not supported and dates are returned as epoch milliseconds
+                docValueFields.add(field.getKey());
+            } else {
+                final Map<String,Object> docValueField = new HashMap<>();
+                docValueField.put("field", field.getKey());
+                if (field.getValue() != null) {
+                    docValueField.put("format", field.getValue());
+                } else if (getVersion() < 7) {
+                    // avoids deprecation warnings on 6.x
+                    docValueField.put("format", "use_field_mapping");
+                }
+                docValueFields.add(docValueField);
+            }
+        }
+        return docValueFields;
     }
 
     private Response performRequest(String method, String path, Map<String, Object> requestBody, boolean isAdmin) throws IOException {
         final HttpEntity entity;
         if (requestBody != null) {
             final byte[] data = this.mapper.writeValueAsBytes(requestBody);
-            entity = new ByteArrayEntity(data, ContentType.APPLICATION_JSON);
+            entity = createEntity(data, ContentType.APPLICATION_JSON);
         } else {
             entity = null;
         }
@@ -238,12 +556,16 @@ public class RestElasticClient implements ElasticClient {
             final String requestString = this.mapper.writerWithDefaultPrettyPrinter().writeValueAsString(requestBody);
             LOGGER.fine("RequestBody: " + requestString);
         }
+        return executeRequest(method, path, entity, isAdmin);
+    }
 
+    private Response executeRequest(String method, String path, HttpEntity entity, boolean isAdmin) throws IOException {
         final RestClient client = isAdmin || this.proxyClient == null ? this.client : this.proxyClient;
 
         final Request request = new Request(method, path);
         request.setEntity(entity);
 
+        final RequestOptions.Builder optionsBuilder = RequestOptions.DEFAULT.toBuilder();
         if (!isAdmin && enableRunAs) {
             final SecurityContext ctx = SecurityContextHolder.getContext();
             final Authentication auth = ctx.getAuthentication();
@@ -253,13 +575,21 @@ public class RestElasticClient implements ElasticClient {
             if (!auth.isAuthenticated()) {
                 throw new IllegalStateException(String.format("User is not authenticated: %s", auth.getName()));
             }
-            final RequestOptions.Builder optionsBuilder = RequestOptions.DEFAULT.toBuilder();
             optionsBuilder.addHeader(RUN_AS, auth.getName());
-            request.setOptions(optionsBuilder);
             LOGGER.fine(String.format("Performing request on behalf of user %s", auth.getName()));
         } else {
             LOGGER.fine(String.format("Performing request with %s credentials", isAdmin ? "user" : "proxy"));
         }
+        if (responseCompressionEnabled) {
+            optionsBuilder.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        }
+        if (!isAdmin && responseFormat != ResponseFormat.JSON) {
+            optionsBuilder.addHeader(HttpHeaders.ACCEPT, responseFormat.getContentType());
+        }
+        final RequestOptions options = optionsBuilder.build();
+        if (!options.getHeaders().isEmpty()) {
+            request.setOptions(options);
+        }
         final Response response = client.performRequest(request);
         if (response.getStatusLine().getStatusCode() >= 400) {
             throw new IOException("Error executing request: " + response.getStatusLine().getReasonPhrase());
@@ -267,13 +597,80 @@ public class RestElasticClient implements ElasticClient {
         return response;
     }
 
+    /**
+     * Create a request entity, compressing large bodies when request
+     * compression is enabled.
+     */
+    private HttpEntity createEntity(byte[] data, ContentType contentType) throws IOException {
+        if (!requestCompressionEnabled || data.length < REQUEST_COMPRESSION_THRESHOLD) {
+            return new ByteArrayEntity(data, contentType);
+        }
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 4);
+        try (final GZIPOutputStream outputStream = new GZIPOutputStream(compressed)) {
+            outputStream.write(data);
+        }
+        final ByteArrayEntity entity = new ByteArrayEntity(compressed.toByteArray(), contentType);
+        entity.setContentEncoding("gzip");
+        return entity;
+    }
+
+    /**
+     * Get the response content, decompressing it as it is read if the response
+     * is compressed.
+     */
+    private static InputStream getContent(Response response) throws IOException {
+        final InputStream content = response.getEntity().getContent();
+        final String encoding = response.getHeader(HttpHeaders.CONTENT_ENCODING);
+        if (encoding != null && encoding.toLowerCase().contains("gzip")) {
+            return new GZIPInputStream(content, 8192);
+        }
+        return content;
+    }
+
+    /**
+     * Get the mapper matching the response content type.
+     */
+    private ObjectMapper getMapper(Response response) {
+        final String contentType = response.getHeader(HttpHeaders.CONTENT_TYPE);
+        if (contentType != null && contentType.startsWith(ResponseFormat.SMILE.getContentType())) {
+            return smileMapper;
+        } else if (contentType != null && contentType.startsWith(ResponseFormat.CBOR.getContentType())) {
+            return cborMapper;
+        }
+        return mapper;
+    }
+
+    private String getRunAsUser() {
+        if (enableRunAs) {
+            final Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+            return auth != null ? auth.getName() : null;
+        }
+        return null;
+    }
+
     Response performRequest(String method, String path, Map<String,Object> requestBody) throws IOException {
         return performRequest(method, path, requestBody, false);
     }
 
+    /**
+     * Get the content of an admin GET request, using the metadata cache when
+     * enabled.
+     */
+    private InputStream getMetadata(String path) throws IOException {
+        if (metadataCache == null) {
+            return getContent(performRequest("GET", path, null, true));
+        }
+        return new ByteArrayInputStream(metadataCache.get(path, () -> {
+            final Response response = performRequest("GET", path, null, true);
+            try (final InputStream inputStream = getContent(response)) {
+                return ByteStreams.toByteArray(inputStream);
+            }
+        }));
+    }
+
     private ElasticResponse parseResponse(final Response response) throws IOException {
-        try (final InputStream inputStream = response.getEntity().getContent()) {
-            return this.mapper.readValue(inputStream, ElasticResponse.class);
+        try (final InputStream inputStream = getContent(response)) {
+            return getMapper(response).readValue(inputStream, ElasticResponse.class);
         }
     }
 
@@ -297,6 +694,69 @@ public class RestElasticClient implements ElasticClient {
         }
     }
 
+    @Override
+    public String openPointInTime(String indexName, Integer keepAlive) throws IOException {
+        final String path = "/" + indexName + "/_pit?keep_alive=" + keepAlive + "s";
+        final Response response = performRequest("POST", path, null);
+        try (final InputStream inputStream = getContent(response)) {
+            final Map<String,Object> result;
+            result = getMapper(response).readValue(inputStream, new TypeReference<Map<String, Object>>() {});
+            return (String) result.get("id");
+        }
+    }
+
+    @Override
+    public void closePointInTime(String pointInTimeId) throws IOException {
+        final Map<String,Object> requestBody = new HashMap<>();
+        requestBody.put("id", pointInTimeId);
+        performRequest("DELETE", "/_pit", requestBody);
+    }
+
+    @Override
+    public void setRequestCoalescingEnabled(boolean enabled) {
+        this.requestCoalescer = enabled ? new ElasticRequestCoalescer<>() : null;
+    }
+
+    @Override
+    public void setCompression(boolean responseCompressionEnabled, boolean requestCompressionEnabled) {
+        this.responseCompressionEnabled = responseCompressionEnabled;
+        this.requestCompressionEnabled = requestCompressionEnabled;
+    }
+
+    @Override
+    public void setResponseFormat(ResponseFormat responseFormat) {
+        this.responseFormat = responseFormat;
+    }
+
+    @Override
+    public ElasticRequestCoalescer<ElasticResponse> getRequestCoalescer() {
+        return requestCoalescer;
+    }
+
+    @Override
+    public void setResultCache(ElasticResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    @Override
+    public ElasticResultCache getResultCache() {
+        return resultCache;
+    }
+
+    @Override
+    public void setSearchBatching(int batchWindow, int maxBatchSize) {
+        if (batchWindow > 0 && maxBatchSize > 1) {
+            this.searchBatcher = new ElasticMultiSearchBatcher<>(batchWindow, maxBatchSize, this::executeMultiSearch);
+        } else {
+            this.searchBatcher = null;
+        }
+    }
+
+    @Override
+    public ElasticMultiSearchBatcher<?, ?> getSearchBatcher() {
+        return searchBatcher;
+    }
+
     @Override
     public void close() throws IOException {
         LOGGER.fine("Closing proxyClient: " + this.client);
@@ -330,8 +790,7 @@ public class RestElasticClient implements ElasticClient {
     private Set<String> getIndices(String alias) {
         Set<String> indices;
         try {
-            final Response response = performRequest("GET", "/_alias/" + alias, null, true);
-            try (final InputStream inputStream = response.getEntity().getContent()) {
+            try (final InputStream inputStream = getMetadata("/_alias/" + alias)) {
                 final Map<String,Object> result;
                 result = this.mapper.readValue(inputStream, new TypeReference<Map<String, Object>>() {});
                 indices = result.keySet();
@@ -341,4 +800,40 @@ public class RestElasticClient implements ElasticClient {
         }
         return indices;
     }
+
+    /**
+     * Search response with the size of its JSON content in bytes
+     */
+    private static class SizedResponse {
+
+        private final ElasticResponse response;
+
+        private final int numBytes;
+
+        SizedResponse(ElasticResponse response, int numBytes) {
+            this.response = response;
+            this.numBytes = numBytes;
+        }
+
+    }
+
+    private static class BatchedSearch {
+
+        private final String indices;
+
+        private final String type;
+
+        private final String path;
+
+        private final Map<String,Object> requestBody;
+
+        BatchedSearch(String indices, String type, String path, Map<String,Object> requestBody) {
+            this.indices = indices;
+            this.type = type;
+            this.path = path;
+            this.requestBody = requestBody;
+        }
+
+    }
+
 }
@@ -0,0 +1,94 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.davidmoten.geo.GeoHash;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Compares decoding of a large geohash_grid aggregation response into bucket
+ * maps and into bucket columns. Run with <code>-prof gc</code> to compare
+ * allocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class ElasticAggregationBenchmark {
+
+    @Param({"MAPS", "COLUMNS"})
+    private String decoder;
+
+    @Param({"200000"})
+    private int numBuckets;
+
+    private ObjectMapper mapper;
+
+    private byte[] data;
+
+    @Setup
+    public void setup() throws IOException {
+        mapper = new ObjectMapper();
+        data = mapper.writeValueAsBytes(createResponse(numBuckets));
+    }
+
+    @Benchmark
+    public Object decode() throws IOException {
+        if (decoder.equals("MAPS")) {
+            return mapper.readValue(data, new TypeReference<Map<String,Object>>() {});
+        }
+        return mapper.readValue(data, ElasticResponse.class);
+    }
+
+    static Map<String,Object> createResponse(int numBuckets) {
+        final Random random = new Random(0);
+        final List<Map<String,Object>> buckets = new ArrayList<>();
+        for (int i = 0; i < numBuckets; i++) {
+            final Map<String,Object> bucket = new LinkedHashMap<>();
+            bucket.put("key", GeoHash.encodeHash(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180, 7));
+            bucket.put("doc_count", random.nextInt(1000));
+            bucket.put("metric", ImmutableMap.of("value", random.nextDouble() * 100));
+            buckets.add(bucket);
+        }
+        return ImmutableMap.of("took", 10, "timed_out", false,
+                "aggregations", ImmutableMap.of("grid", ImmutableMap.of("buckets", buckets)));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(ElasticAggregationBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+}
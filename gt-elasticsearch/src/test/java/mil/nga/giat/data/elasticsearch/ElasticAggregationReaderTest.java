@@ -1,6 +1,7 @@
 package mil.nga.giat.data.elasticsearch;
 
 import org.geotools.data.DataUtilities;
+import org.geotools.data.store.ContentEntry;
 import org.geotools.data.store.ContentState;
 import org.geotools.feature.SchemaException;
 import org.junit.Before;
@@ -14,7 +15,11 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.AggregationEncoding;
+
 import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -88,6 +93,40 @@ public class ElasticAggregationReaderTest {
         assertFalse(reader.hasNext());
     }
 
+    @Test
+    public void testBucketUserData() throws IOException {
+        ElasticAggregation aggregation = new ElasticAggregation();
+        aggregation.setBuckets(ImmutableList.of(ImmutableMap.of("key1","value1"), ImmutableMap.of("key2","value2")));
+        aggregations.put("test", aggregation);
+
+        reader = new ElasticFeatureReader(state, hits, aggregations, 0);
+        feature = reader.next();
+        assertEquals(ImmutableMap.of("key1","value1"), feature.getUserData().get(ElasticConstants.AGGREGATION));
+        assertNotNull(feature.getAttribute("_aggregation"));
+        feature = reader.next();
+        assertEquals(ImmutableMap.of("key2","value2"), feature.getUserData().get(ElasticConstants.AGGREGATION));
+    }
+
+    @Test
+    public void testObjectEncoding() throws IOException {
+        final ElasticDataStore dataStore = mock(ElasticDataStore.class);
+        when(dataStore.getAggregationEncoding()).thenReturn(AggregationEncoding.OBJECT);
+        final ContentEntry entry = mock(ContentEntry.class);
+        when(entry.getDataStore()).thenReturn(dataStore);
+        final ContentState objectState = new ContentState(entry);
+        objectState.setFeatureType(state.getFeatureType());
+
+        ElasticAggregation aggregation = new ElasticAggregation();
+        aggregation.setBuckets(ImmutableList.of(ImmutableMap.of("key1","value1")));
+        aggregations.put("test", aggregation);
+
+        reader = new ElasticFeatureReader(objectState, hits, aggregations, 0);
+        feature = reader.next();
+        assertEquals(ImmutableMap.of("key1","value1"), feature.getUserData().get(ElasticConstants.AGGREGATION));
+        assertNull(feature.getAttribute("_aggregation"));
+        assertFalse(reader.hasNext());
+    }
+
     private Map<String,Object> byteArrayToMap(Object bytes) throws IOException {
         return mapper.readValue((byte[]) bytes, new TypeReference<Map<String,Object>>() {});
     }
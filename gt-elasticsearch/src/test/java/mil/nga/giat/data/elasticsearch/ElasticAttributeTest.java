@@ -47,6 +47,8 @@ public class ElasticAttributeTest {
 
     private boolean nested;
 
+    private boolean docValues;
+
     @Before
     public void setup() {
         name = "theName";
@@ -65,6 +67,7 @@ public class ElasticAttributeTest {
         analyzed = true;
         stored = true;
         nested = true;
+        docValues = true;
     }
 
     @Test
@@ -82,6 +85,7 @@ public class ElasticAttributeTest {
         attr.setAnalyzed(analyzed);
         attr.setStored(stored);
         attr.setNested(nested);
+        attr.setDocValues(docValues);
         assertEquals(attr.getName(), name);
         assertEquals(attr.getShortName(), shortName);
         assertEquals(attr.getUseShortName(), useShortName);
@@ -96,6 +100,20 @@ public class ElasticAttributeTest {
         assertEquals(attr.getAnalyzed(), analyzed);
         assertEquals(attr.isStored(), stored);
         assertEquals(attr.isNested(), nested);
+        assertEquals(attr.isDocValues(), docValues);
+    }
+
+    @Test
+    public void testDocValuesRetrieval() {
+        assertFalse(attr.isDocValuesRetrieval(true));
+        attr.setDocValues(true);
+        assertTrue(attr.isDocValuesRetrieval(true));
+        assertFalse(attr.isDocValuesRetrieval(false));
+        attr.setUseDocValues(false);
+        assertFalse(attr.isDocValuesRetrieval(true));
+        attr.setUseDocValues(true);
+        assertTrue(attr.isDocValuesRetrieval(false));
+        assertEquals(attr, new ElasticAttribute(attr));
     }
 
     @Test
@@ -0,0 +1,112 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class ElasticCompositeAggregationIteratorTest {
+
+    private ElasticClient client;
+
+    private ObjectMapper mapper;
+
+    private List<Map<String,Object>> sources;
+
+    private List<Map<String,Object>> composites;
+
+    @Before
+    public void setup() {
+        client = mock(ElasticClient.class);
+        mapper = new ObjectMapper();
+        sources = ImmutableList.of(ImmutableMap.of("g0", ImmutableMap.of("terms", ImmutableMap.of("field", "name"))));
+        composites = new ArrayList<>();
+    }
+
+    private ElasticResponse page(String afterKey, String... keys) throws IOException {
+        final StringBuilder buckets = new StringBuilder();
+        for (final String key : keys) {
+            buckets.append(buckets.length() > 0 ? "," : "").append("{\"key\":{\"g0\":\"").append(key).append("\"},\"doc_count\":1}");
+        }
+        final String after = afterKey != null ? "\"after_key\":{\"g0\":\"" + afterKey + "\"}," : "";
+        return mapper.readValue("{\"aggregations\":{\"composite\":{" + after + "\"buckets\":[" + buckets + "]}}}",
+                ElasticResponse.class);
+    }
+
+    private void mockPages(ElasticResponse... pages) throws IOException {
+        when(client.search(eq("test_index"), eq("test"), any(ElasticRequest.class))).thenAnswer(invocation -> {
+            final ElasticRequest request = invocation.getArgument(2);
+            assertEquals(0, request.getSize().intValue());
+            composites.add(request.getAggregations().get("composite").get("composite"));
+            return pages[composites.size() - 1];
+        });
+    }
+
+    private List<Object> readKeys(ElasticCompositeAggregationIterator iterator) {
+        final List<Object> keys = new ArrayList<>();
+        while (iterator.hasNext()) {
+            keys.add(((Map<?,?>) iterator.next().get("key")).get("g0"));
+        }
+        return keys;
+    }
+
+    @Test
+    public void testPages() throws IOException {
+        mockPages(page("b", "a", "b"), page("d", "c", "d"), page("d"));
+        final ElasticCompositeAggregationIterator iterator = new ElasticCompositeAggregationIterator(client,
+                "test_index", "test", new ElasticRequest(), sources, null, 2);
+        assertEquals(ImmutableList.of("a", "b", "c", "d"), readKeys(iterator));
+        assertEquals(3, composites.size());
+        assertNull(composites.get(0).get("after"));
+        assertEquals(ImmutableMap.of("g0", "b"), composites.get(1).get("after"));
+        assertEquals(ImmutableMap.of("g0", "d"), composites.get(2).get("after"));
+        assertEquals(2, composites.get(0).get("size"));
+        assertEquals(sources, composites.get(0).get("sources"));
+    }
+
+    @Test
+    public void testPartialPage() throws IOException {
+        mockPages(page("c", "a", "b", "c"));
+        final ElasticCompositeAggregationIterator iterator = new ElasticCompositeAggregationIterator(client,
+                "test_index", "test", new ElasticRequest(), sources, null, 10);
+        assertEquals(ImmutableList.of("a", "b", "c"), readKeys(iterator));
+        assertEquals(1, composites.size());
+    }
+
+    @Test
+    public void testSubAggregations() throws IOException {
+        final Map<String,Object> subAggregations = ImmutableMap.of("metric", ImmutableMap.of("avg", ImmutableMap.of("field", "value")));
+        final List<ElasticRequest> requests = new ArrayList<>();
+        when(client.search(eq("test_index"), eq("test"), any(ElasticRequest.class))).thenAnswer(invocation -> {
+            requests.add(invocation.getArgument(2));
+            return page(null);
+        });
+        final ElasticCompositeAggregationIterator iterator = new ElasticCompositeAggregationIterator(client,
+                "test_index", "test", new ElasticRequest(), sources, subAggregations, 10);
+        assertFalse(iterator.hasNext());
+        assertEquals(subAggregations, requests.get(0).getAggregations().get("composite").get("aggregations"));
+    }
+
+    @Test(expected=UncheckedIOException.class)
+    public void testMissingAggregation() throws IOException {
+        when(client.search(eq("test_index"), eq("test"), any(ElasticRequest.class)))
+        .thenReturn(mapper.readValue("{}", ElasticResponse.class));
+        new ElasticCompositeAggregationIterator(client, "test_index", "test", new ElasticRequest(), sources, null, 10).hasNext();
+    }
+
+}
@@ -191,4 +191,16 @@ public class ElasticDataStoreIT extends ElasticTestSupport {
         assertTrue(ElasticDataStore.isAnalyzed(ImmutableMap.of("type", "text")));
     }
 
+    @Test
+    public void testHasDocValues() {
+        assertTrue(ElasticDataStore.hasDocValues("speed_is", "integer", new HashMap<>(), false));
+        assertTrue(ElasticDataStore.hasDocValues("geo", "geo_point", new HashMap<>(), false));
+        assertTrue(ElasticDataStore.hasDocValues("vendor_s", "keyword", new HashMap<>(), false));
+        assertFalse(ElasticDataStore.hasDocValues("vendor_s", "text", new HashMap<>(), false));
+        assertFalse(ElasticDataStore.hasDocValues("geo3", "geo_shape", new HashMap<>(), false));
+        assertFalse(ElasticDataStore.hasDocValues("_id", "keyword", new HashMap<>(), false));
+        assertFalse(ElasticDataStore.hasDocValues("nested.hej", "keyword", new HashMap<>(), true));
+        assertFalse(ElasticDataStore.hasDocValues("speed_is", "integer", ImmutableMap.of("doc_values", false), false));
+    }
+
 }
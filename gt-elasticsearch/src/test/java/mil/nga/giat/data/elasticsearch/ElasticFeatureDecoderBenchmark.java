@@ -0,0 +1,154 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.DATE_FORMAT;
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.FULL_NAME;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.feature.SchemaException;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.ArrayEncoding;
+import mil.nga.giat.shaded.es.common.joda.Joda;
+
+/**
+ * Compares decoding of search hits with the compiled feature decoder against
+ * per-hit descriptor lookups for a feature type with many attributes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ElasticFeatureDecoderBenchmark {
+
+    @Param({"50"})
+    private int numAttributes;
+
+    @Param({"1000"})
+    private int numHits;
+
+    private SimpleFeatureType featureType;
+
+    private List<ElasticHit> hits;
+
+    private ElasticParserUtil parserUtil;
+
+    @Setup
+    public void setup() throws IOException, SchemaException {
+        final StringBuilder spec = new StringBuilder("geo:Point:srid=4326,when:Date");
+        for (int i = 2; i < numAttributes; i++) {
+            spec.append(",attr").append(i).append(i % 2 == 0 ? ":Integer" : ":String");
+        }
+        featureType = DataUtilities.createType("test", spec.toString());
+        for (AttributeDescriptor descriptor : featureType.getAttributeDescriptors()) {
+            descriptor.getUserData().put(FULL_NAME, "properties." + descriptor.getLocalName());
+        }
+        featureType.getDescriptor("when").getUserData().put(DATE_FORMAT, "date_optional_time");
+
+        final Random random = new Random(0);
+        final ObjectMapper mapper = new ObjectMapper();
+        hits = new ArrayList<>();
+        for (int i = 0; i < numHits; i++) {
+            final Map<String,Object> properties = new HashMap<>();
+            properties.put("geo", random.nextDouble() * 90 + "," + random.nextDouble() * 180);
+            properties.put("when", "2019-01-01T00:00:00.000Z");
+            for (int j = 2; j < numAttributes; j++) {
+                properties.put("attr" + j, j % 2 == 0 ? random.nextInt() : "value" + random.nextInt(100));
+            }
+            final Map<String,Object> hit = ImmutableMap.of("_index", "test", "_id", String.valueOf(i),
+                    "_source", ImmutableMap.of("properties", properties));
+            hits.add(mapper.readValue(mapper.writeValueAsBytes(hit), ElasticHit.class));
+        }
+        parserUtil = new ElasticParserUtil();
+    }
+
+    @Benchmark
+    public void decode(Blackhole blackhole) {
+        final ElasticFeatureDecoder decoder = ElasticFeatureDecoder.getDecoder(featureType);
+        final SimpleFeatureBuilder builder = new SimpleFeatureBuilder(featureType);
+        for (final ElasticHit hit : hits) {
+            decoder.decode(hit, null, null, ArrayEncoding.JSON, parserUtil, builder);
+            blackhole.consume(builder.buildFeature(hit.getId()));
+        }
+    }
+
+    @Benchmark
+    public void lookup(Blackhole blackhole) {
+        final SimpleFeatureBuilder builder = new SimpleFeatureBuilder(featureType);
+        for (final ElasticHit hit : hits) {
+            blackhole.consume(lookup(hit, builder));
+        }
+    }
+
+    /**
+     * Decodes a hit resolving descriptor user data, value kinds and date
+     * formats for each attribute.
+     */
+    private SimpleFeature lookup(ElasticHit hit, SimpleFeatureBuilder builder) {
+        final Map<String, Object> source = hit.getSource();
+        for (final AttributeDescriptor descriptor : featureType.getAttributeDescriptors()) {
+            final String name = descriptor.getType().getName().getLocalPart();
+            final String sourceName = (String) descriptor.getUserData().get(FULL_NAME);
+            List<Object> values = hit.field(sourceName);
+            if (values == null && source != null) {
+                values = parserUtil.readField(source, sourceName);
+            }
+            if (values == null && sourceName.equals("_id")) {
+                builder.set(name, hit.getId());
+            } else if (values != null && Geometry.class.isAssignableFrom(descriptor.getType().getBinding())) {
+                builder.set(name, parserUtil.createGeometry(values.get(0)));
+            } else if (values != null && Date.class.isAssignableFrom(descriptor.getType().getBinding())) {
+                final String format = (String) descriptor.getUserData().get(DATE_FORMAT);
+                builder.set(name, Joda.forPattern(format).parser().parseDateTime((String) values.get(0)).toDate());
+            } else if (values != null) {
+                builder.set(name, values.get(0));
+            }
+        }
+        return builder.buildFeature(hit.getId());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(ElasticFeatureDecoderBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.DOC_VALUES;
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.FULL_NAME;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Date;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.feature.SchemaException;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.ArrayEncoding;
+
+public class ElasticFeatureDecoderTest {
+
+    private SimpleFeatureType featureType;
+
+    private ElasticFeatureDecoder decoder;
+
+    private ElasticParserUtil parserUtil;
+
+    private ObjectMapper mapper;
+
+    @Before
+    public void setup() throws SchemaException {
+        featureType = createType();
+        decoder = ElasticFeatureDecoder.getDecoder(featureType);
+        parserUtil = new ElasticParserUtil();
+        mapper = new ObjectMapper();
+    }
+
+    private SimpleFeatureType createType() throws SchemaException {
+        final SimpleFeatureType featureType = DataUtilities.createType("test",
+                "id:String,score:Float,name:String,value:Integer,tags:String,when:Date,geo:Point");
+        for (AttributeDescriptor descriptor : featureType.getAttributeDescriptors()) {
+            descriptor.getUserData().put(FULL_NAME, descriptor.getLocalName());
+        }
+        featureType.getDescriptor("id").getUserData().put(FULL_NAME, "_id");
+        featureType.getDescriptor("score").getUserData().put(FULL_NAME, "_score");
+        featureType.getDescriptor("value").getUserData().put(FULL_NAME, "obj.value");
+        return featureType;
+    }
+
+    @Test
+    public void testDecoderCache() {
+        assertSame(decoder, ElasticFeatureDecoder.getDecoder(featureType));
+        assertEquals(7, decoder.getAttributes().length);
+        assertEquals(ElasticFeatureDecoder.Kind.GEOMETRY, decoder.getAttributes()[6].kind);
+        assertEquals(ElasticFeatureDecoder.Kind.DATE, decoder.getAttributes()[5].kind);
+        assertArrayEquals(new String[] {"obj", "value"}, decoder.getAttributes()[3].path);
+    }
+
+    @Test
+    public void testDecodeSource() throws IOException {
+        ElasticHit hit = mapper.readValue("{\"_id\": \"1\", \"_score\": 2.0, \"_source\": {\"name\": \"a\", "
+                + "\"obj\": {\"value\": 5}, \"tags\": [\"x\", \"y\"], \"when\": 1000, \"geo\": \"10,20\"}}", ElasticHit.class);
+
+        SimpleFeature feature = decode(hit, 2f, 1f, ArrayEncoding.JSON);
+        assertEquals("1", feature.getAttribute("id"));
+        assertEquals(2f, feature.getAttribute("score"));
+        assertEquals("a", feature.getAttribute("name"));
+        assertEquals(5, feature.getAttribute("value"));
+        assertEquals(ImmutableList.of("x", "y"), feature.getAttribute("tags"));
+        assertEquals(new Date(1000), feature.getAttribute("when"));
+        assertEquals(new Coordinate(20, 10), ((Point) feature.getAttribute("geo")).getCoordinate());
+    }
+
+    @Test
+    public void testDecodeFields() throws IOException, SchemaException {
+        featureType = createType();
+        featureType.getDescriptor("when").getUserData().put(DOC_VALUES, true);
+        decoder = ElasticFeatureDecoder.getDecoder(featureType);
+
+        ElasticHit hit = mapper.readValue("{\"_id\": \"1\", \"_source\": {\"name\": \"a\"}, "
+                + "\"fields\": {\"name\": [\"b\"], \"obj.value\": [6], \"when\": [\"2000\"]}}", ElasticHit.class);
+
+        SimpleFeature feature = decode(hit, null, null, ArrayEncoding.JSON);
+        assertEquals("b", feature.getAttribute("name"));
+        assertEquals(6, feature.getAttribute("value"));
+        assertEquals(new Date(2000), feature.getAttribute("when"));
+        assertNull(feature.getAttribute("score"));
+        assertNull(feature.getAttribute("geo"));
+    }
+
+    @Test
+    public void testDecodeStreamedGeometries() {
+        final GeometryFactory geometryFactory = new GeometryFactory();
+        final ElasticHit hit = new ElasticHit();
+        hit.setFields(ImmutableMap.of("geo", ImmutableList.of(geometryFactory.createPoint(new Coordinate(1, 2)),
+                geometryFactory.createPoint(new Coordinate(3, 4)))));
+
+        SimpleFeature feature = decode(hit, null, null, ArrayEncoding.JSON);
+        assertEquals(geometryFactory.createMultiPointFromCoords(new Coordinate[] {new Coordinate(1, 2),
+                new Coordinate(3, 4)}), feature.getAttribute("geo"));
+    }
+
+    @Test
+    public void testCsvArrayEncoding() throws IOException {
+        ElasticHit hit = mapper.readValue("{\"_id\": \"1\", \"_source\": {\"tags\": [\"x\", \"y\"]}}", ElasticHit.class);
+
+        SimpleFeature feature = decode(hit, null, null, ArrayEncoding.CSV);
+        assertEquals("x", feature.getAttribute("tags"));
+    }
+
+    private SimpleFeature decode(ElasticHit hit, Float score, Float relativeScore, ArrayEncoding arrayEncoding) {
+        final SimpleFeatureBuilder builder = new SimpleFeatureBuilder(featureType);
+        decoder.decode(hit, score, relativeScore, arrayEncoding, parserUtil, builder);
+        return builder.buildFeature(hit.getId());
+    }
+
+}
@@ -26,7 +26,14 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.store.ContentEntry;
 import org.geotools.feature.NameImpl;
+import org.geotools.feature.visitor.CountVisitor;
+import org.geotools.feature.visitor.MaxVisitor;
+import org.geotools.feature.visitor.MinVisitor;
+import org.geotools.feature.visitor.SumVisitor;
+import org.geotools.feature.visitor.UniqueVisitor;
 import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.util.factory.Hints;
+import org.locationtech.jts.geom.Geometry;
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -40,6 +47,7 @@ import org.opengis.feature.type.Name;
 import org.opengis.filter.And;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory;
+import org.opengis.filter.FilterFactory2;
 import org.opengis.filter.Id;
 import org.opengis.filter.Not;
 import org.opengis.filter.Or;
@@ -57,6 +65,7 @@ import org.opengis.filter.sort.SortOrder;
 import org.opengis.filter.spatial.BBOX;
 
 import mil.nga.giat.data.elasticsearch.ElasticDataStore.ArrayEncoding;
+import mil.nga.giat.data.elasticsearch.ElasticDataStore.CountMode;
 
 public class ElasticFeatureFilterIT extends ElasticTestSupport {
 
@@ -153,6 +162,158 @@ public class ElasticFeatureFilterIT extends ElasticTestSupport {
         assertEquals(6, featureSource.getCount(query));
     }
 
+    @Test
+    public void testCountExact() throws Exception {
+        init();
+        dataStore.setCountMode(CountMode.EXACT);
+        dataStore.setDefaultMaxFeatures(5);
+        assertEquals(11, featureSource.getCount(Query.ALL));
+
+        FilterFactory ff = dataStore.getFilterFactory();
+        Query query = new Query();
+        query.setFilter(ff.equals(ff.property("vendor_s"), ff.literal("D-Link")));
+        assertEquals(4, featureSource.getCount(query));
+
+        query = new Query();
+        query.setStartIndex(5);
+        query.setMaxFeatures(3);
+        assertEquals(3, featureSource.getCount(query));
+    }
+
+    @Test
+    public void testDocValues() throws Exception {
+        init();
+        Query query = new Query();
+        query.setPropertyNames(new String[] { "speed_is", "modem_b", "installed_td", "geo" });
+        final Map<String,SimpleFeature> expected = new HashMap<>();
+        for (final SimpleFeature feature : readFeatures(featureSource.getFeatures(query).features())) {
+            expected.put(feature.getID(), feature);
+        }
+
+        config.setUseDocValues(true);
+        dataStore.setLayerConfiguration(config);
+        featureSource = (ElasticFeatureSource) dataStore.getFeatureSource(TYPE_NAME);
+        final List<SimpleFeature> features = readFeatures(featureSource.getFeatures(query).features());
+        assertEquals(expected.size(), features.size());
+        for (final SimpleFeature feature : features) {
+            final SimpleFeature other = expected.get(feature.getID());
+            if (!(other.getAttribute("speed_is") instanceof List)) {
+                assertEquals(other.getAttribute("speed_is"), feature.getAttribute("speed_is"));
+            }
+            assertEquals(other.getAttribute("modem_b"), feature.getAttribute("modem_b"));
+            assertEquals(other.getAttribute("installed_td"), feature.getAttribute("installed_td"));
+            if (other.getDefaultGeometry() != null) {
+                final Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                assertEquals(0, geometry.distance((Geometry) other.getDefaultGeometry()), 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void testPointDecimation() throws Exception {
+        init();
+        if (!client.isVersionAtLeast(7, 0)) {
+            return;
+        }
+        FilterFactory ff = dataStore.getFilterFactory();
+        Query query = new Query();
+        query.setFilter(ff.not(ff.isNull(ff.property("geo"))));
+        final Set<String> ids = new HashSet<>();
+        final Set<Geometry> points = new HashSet<>();
+        for (final SimpleFeature feature : readFeatures(featureSource.getFeatures(query).features())) {
+            ids.add(feature.getID());
+            points.add((Geometry) feature.getDefaultGeometry());
+        }
+
+        config.setPointDecimation(true);
+        dataStore.setLayerConfiguration(config);
+        featureSource = (ElasticFeatureSource) dataStore.getFeatureSource(TYPE_NAME);
+        query.setHints(new Hints(Hints.GEOMETRY_DISTANCE, 1e-9));
+        final List<SimpleFeature> features = readFeatures(featureSource.getFeatures(query).features());
+        // one feature per distinct point at the finest tile precision
+        assertEquals(points.size(), features.size());
+        for (final SimpleFeature feature : features) {
+            assertTrue(ids.contains(feature.getID()));
+            assertNotNull(feature.getDefaultGeometry());
+        }
+
+        query.setHints(new Hints(Hints.GEOMETRY_DISTANCE, 360.0));
+        assertEquals(1, readFeatures(featureSource.getFeatures(query).features()).size());
+    }
+
+    @Test
+    public void testPointDecimationResidualFilter() throws Exception {
+        init();
+        if (!client.isVersionAtLeast(7, 0)) {
+            return;
+        }
+        FilterFactory2 ff = (FilterFactory2) dataStore.getFilterFactory();
+        Query query = new Query();
+        query.setFilter(ff.not(ff.isNull(ff.property("geo"))));
+        final List<SimpleFeature> features = readFeatures(featureSource.getFeatures(query).features());
+        final Geometry point = (Geometry) features.get(features.size() - 1).getDefaultGeometry();
+
+        // spatial equals is evaluated after the search and must see every hit
+        query.setFilter(ff.equals(ff.property("geo"), ff.literal(point)));
+        final int expected = readFeatures(featureSource.getFeatures(query).features()).size();
+        assertTrue(expected > 0);
+
+        config.setPointDecimation(true);
+        dataStore.setLayerConfiguration(config);
+        featureSource = (ElasticFeatureSource) dataStore.getFeatureSource(TYPE_NAME);
+        query.setHints(new Hints(Hints.GEOMETRY_DISTANCE, 360.0));
+        assertEquals(expected, readFeatures(featureSource.getFeatures(query).features()).size());
+    }
+
+    @Test
+    public void testCountCapped() throws Exception {
+        init();
+        dataStore.setCountMode(CountMode.CAPPED);
+        dataStore.setDefaultMaxFeatures(5);
+        assertEquals(5, featureSource.getCount(Query.ALL));
+    }
+
+    @Test
+    public void testCountApproximate() throws Exception {
+        init();
+        dataStore.setCountMode(CountMode.APPROXIMATE);
+        dataStore.setDefaultMaxFeatures(5);
+        assertEquals(11, featureSource.getCount(Query.ALL));
+    }
+
+    @Test
+    public void testUniqueVisitor() throws Exception {
+        init();
+        FilterFactory ff = dataStore.getFilterFactory();
+        UniqueVisitor visitor = new UniqueVisitor(ff.property("vendor_s"));
+        featureSource.getFeatures(Query.ALL).accepts(visitor, null);
+        Set<Object> expected = new HashSet<>(Arrays.asList("Asus", "Cisco", "D-Link", "HP", "Linksys", "TP-Link"));
+        assertEquals(expected, visitor.getUnique());
+    }
+
+    @Test
+    public void testMetricVisitors() throws Exception {
+        init();
+        FilterFactory ff = dataStore.getFilterFactory();
+        MinVisitor minVisitor = new MinVisitor(ff.property("object.hejda"));
+        featureSource.getFeatures(Query.ALL).accepts(minVisitor, null);
+        assertEquals(0.4, minVisitor.getResult().toDouble(), 1e-6);
+
+        MaxVisitor maxVisitor = new MaxVisitor(ff.property("object.hejda"));
+        featureSource.getFeatures(Query.ALL).accepts(maxVisitor, null);
+        assertEquals(19.9, maxVisitor.getResult().toDouble(), 1e-6);
+
+        SumVisitor sumVisitor = new SumVisitor(ff.property("object.hejda"));
+        featureSource.getFeatures(Query.ALL).accepts(sumVisitor, null);
+        assertEquals(117.1, sumVisitor.getResult().toDouble(), 1e-6);
+
+        CountVisitor countVisitor = new CountVisitor();
+        Query query = new Query();
+        query.setFilter(ff.equals(ff.property("vendor_s"), ff.literal("D-Link")));
+        featureSource.getFeatures(query).accepts(countVisitor, null);
+        assertEquals(4, countVisitor.getResult().toInt());
+    }
+
     @Test
     public void testGetFeaturesWithAndLogicFilter() throws Exception {
         init();
@@ -0,0 +1,137 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static mil.nga.giat.data.elasticsearch.ElasticReaderTestSupport.readNames;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.data.store.ContentState;
+import org.geotools.feature.SchemaException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+public class ElasticFeatureReaderScrollTest {
+
+    private ElasticReaderTestSupport support;
+
+    private ContentState state;
+
+    private ElasticClient client;
+
+    private ExecutorService executorService;
+
+    @Before
+    public void setup() throws SchemaException {
+        support = new ElasticReaderTestSupport();
+        client = support.client;
+        state = support.state;
+        executorService = Executors.newSingleThreadExecutor();
+        when(support.dataStore.getExecutorService()).thenReturn(executorService);
+    }
+
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testScroll() throws IOException {
+        when(client.scroll("s1", 10)).thenReturn(support.page("s1", "c"), support.page("s1"));
+        final ElasticFeatureReaderScroll reader = new ElasticFeatureReaderScroll(state, support.page("s1", "a", "b"), 10);
+        assertEquals(ImmutableList.of("a", "b", "c"), readNames(reader));
+        reader.close();
+        verify(client, times(2)).scroll("s1", 10);
+        verify(client).clearScroll(any());
+    }
+
+    @Test
+    public void testScrollWithPrefetch() throws IOException {
+        when(client.scroll("s1", 10)).thenReturn(support.page("s2", "c", "d"));
+        when(client.scroll("s2", 10)).thenReturn(support.page("s2", "e"), support.page("s2"));
+        final ElasticFeatureReaderScroll reader = new ElasticFeatureReaderScroll(state, support.page("s1", "a", "b"), 10, 1);
+        assertEquals(ImmutableList.of("a", "b", "c", "d", "e"), readNames(reader));
+        reader.close();
+        verify(client).scroll("s1", 10);
+        verify(client, times(2)).scroll("s2", 10);
+        verify(client).clearScroll(any());
+    }
+
+    @Test
+    public void testPrefetchStopsAtMaxFeatures() throws IOException, InterruptedException {
+        when(client.scroll("s1", 10)).thenReturn(support.page("s1", "c", "d"), support.page("s1", "e"));
+        final ElasticFeatureReaderScroll reader = new ElasticFeatureReaderScroll(state, support.page("s1", "a", "b"), 3, 2);
+        assertEquals(ImmutableList.of("a", "b", "c"), readNames(reader));
+        reader.close();
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+        verify(client, times(1)).scroll("s1", 10);
+    }
+
+    @Test
+    public void testNoPrefetchOnLastPage() throws IOException, InterruptedException {
+        final ElasticFeatureReaderScroll reader = new ElasticFeatureReaderScroll(state, support.page("s1", "a", "b"), 2, 2);
+        assertEquals(ImmutableList.of("a", "b"), readNames(reader));
+        reader.close();
+        verify(client, never()).scroll(any(), any());
+    }
+
+    @Test(expected=IOException.class)
+    public void testPrefetchError() throws IOException {
+        when(client.scroll("s1", 10)).thenThrow(new IOException("error"));
+        final ElasticFeatureReaderScroll reader = new ElasticFeatureReaderScroll(state, support.page("s1", "a"), 10, 1);
+        try {
+            readNames(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test(timeout=10000)
+    public void testPrefetchErrorRepeated() throws IOException {
+        when(client.scroll("s1", 10)).thenThrow(new IOException("error"));
+        final ElasticFeatureReaderScroll reader = new ElasticFeatureReaderScroll(state, support.page("s1", "a"), 10, 1);
+        assertTrue(reader.hasNext());
+        reader.next();
+        for (int i = 0; i < 2; i++) {
+            try {
+                reader.hasNext();
+                fail("Expected prefetch error");
+            } catch (IOException e) {
+                assertEquals("error", e.getCause().getMessage());
+            }
+        }
+        reader.close();
+    }
+
+    @Test
+    public void testScrollIdAfterClose() throws IOException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(client.scroll("s1", 10)).thenAnswer(invocation -> {
+            started.countDown();
+            Uninterruptibles.awaitUninterruptibly(release);
+            return support.page("s2", "b");
+        });
+        final ElasticFeatureReaderScroll reader = new ElasticFeatureReaderScroll(state, support.page("s1", "a"), 10, 1);
+        Uninterruptibles.awaitUninterruptibly(started);
+        reader.close();
+        verify(client).clearScroll(Collections.singleton("s1"));
+        release.countDown();
+        verify(client, timeout(10000)).clearScroll(Collections.singleton("s2"));
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static mil.nga.giat.data.elasticsearch.ElasticReaderTestSupport.readNames;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.geotools.data.store.ContentState;
+import org.geotools.feature.SchemaException;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class ElasticFeatureReaderSearchAfterTest {
+
+    private ElasticReaderTestSupport support;
+
+    private ContentState state;
+
+    private ElasticClient client;
+
+    private List<List<Object>> searchAfters;
+
+    private List<Boolean> sourceEnabled;
+
+    private List<Integer> sizes;
+
+    @Before
+    public void setup() throws SchemaException, IOException {
+        support = new ElasticReaderTestSupport();
+        client = support.client;
+        state = support.state;
+        when(client.getVersion()).thenReturn(7.1);
+        searchAfters = new ArrayList<>();
+        sourceEnabled = new ArrayList<>();
+        sizes = new ArrayList<>();
+    }
+
+    private void mockPages(String... pages) throws IOException {
+        final List<ElasticResponse> responses = new ArrayList<>();
+        for (final String page : pages) {
+            responses.add(support.sortedPage(page.isEmpty() ? new String[0] : page.split(",")));
+        }
+        final int[] index = {0};
+        when(client.search(eq("test_index"), eq("test"), any(ElasticRequest.class))).thenAnswer(invocation -> {
+            final ElasticRequest request = invocation.getArgument(2);
+            searchAfters.add(request.getSearchAfter());
+            sourceEnabled.add(request.isSourceEnabled());
+            sizes.add(request.getSize());
+            return responses.get(index[0]++);
+        });
+    }
+
+    private ElasticRequest request(int pageSize) {
+        final ElasticRequest request = new ElasticRequest();
+        request.setSize(pageSize);
+        request.addSort("name", "asc");
+        return request;
+    }
+
+    @Test
+    public void testPages() throws IOException {
+        mockPages("a,b", "c,d", "e");
+        final ElasticRequest request = request(2);
+        final ElasticFeatureReaderSearchAfter reader;
+        reader = new ElasticFeatureReaderSearchAfter(state, "test", request, 0, 10, 60);
+        assertEquals(ImmutableList.of("a", "b", "c", "d", "e"), readNames(reader));
+        reader.close();
+
+        assertEquals(3, searchAfters.size());
+        assertNull(searchAfters.get(0));
+        assertEquals(ImmutableList.of("b"), searchAfters.get(1));
+        assertEquals(ImmutableList.of("d"), searchAfters.get(2));
+        assertEquals(ImmutableList.of(ImmutableMap.of("name", ImmutableMap.of("order", "asc")),
+                ImmutableMap.of("_id", ImmutableMap.of("order", "asc"))), request.getSorts());
+        verify(client, never()).openPointInTime(any(), any());
+        verify(client, never()).closePointInTime(any());
+    }
+
+    @Test
+    public void testMaxFeatures() throws IOException {
+        mockPages("a,b", "c");
+        final ElasticFeatureReaderSearchAfter reader;
+        reader = new ElasticFeatureReaderSearchAfter(state, "test", request(2), 0, 3, 60);
+        assertEquals(ImmutableList.of("a", "b", "c"), readNames(reader));
+        reader.close();
+        assertEquals(ImmutableList.of(2, 1), sizes);
+    }
+
+    @Test
+    public void testStartIndex() throws IOException {
+        mockPages("a,b", "c", "d,e");
+        final ElasticFeatureReaderSearchAfter reader;
+        reader = new ElasticFeatureReaderSearchAfter(state, "test", request(2), 3, 2, 60);
+        assertEquals(ImmutableList.of("d", "e"), readNames(reader));
+        reader.close();
+        assertEquals(ImmutableList.of(false, false, true), sourceEnabled);
+        assertEquals(ImmutableList.of(2, 1, 2), sizes);
+        assertEquals(ImmutableList.of("c"), searchAfters.get(2));
+    }
+
+    @Test
+    public void testStartIndexSourceDisabled() throws IOException {
+        mockPages("a,b", "c", "d,e");
+        final ElasticRequest request = request(2);
+        request.setSourceEnabled(false);
+        final ElasticFeatureReaderSearchAfter reader;
+        reader = new ElasticFeatureReaderSearchAfter(state, "test", request, 3, 2, 60);
+        readNames(reader);
+        reader.close();
+        assertEquals(ImmutableList.of(false, false, false), sourceEnabled);
+        assertFalse(request.isSourceEnabled());
+    }
+
+    @Test
+    public void testStartIndexPastEnd() throws IOException {
+        mockPages("a");
+        final ElasticFeatureReaderSearchAfter reader;
+        reader = new ElasticFeatureReaderSearchAfter(state, "test", request(2), 3, 2, 60);
+        assertFalse(reader.hasNext());
+        reader.close();
+        assertEquals(1, sizes.size());
+    }
+
+    @Test
+    public void testPointInTime() throws IOException {
+        when(client.isVersionAtLeast(7, 10)).thenReturn(true);
+        when(client.isVersionAtLeast(7, 12)).thenReturn(true);
+        when(client.openPointInTime("test_index", 60)).thenReturn("pit1");
+        mockPages("a");
+        final ElasticRequest request = request(2);
+        final ElasticFeatureReaderSearchAfter reader;
+        reader = new ElasticFeatureReaderSearchAfter(state, "test", request, 0, 10, 60);
+        assertEquals(ImmutableList.of("a"), readNames(reader));
+        assertEquals("pit1", request.getPointInTimeId());
+        assertEquals(60, request.getPointInTimeKeepAlive().intValue());
+        final Map<String, Object> tiebreaker = request.getSorts().get(1);
+        assertTrue(tiebreaker.containsKey("_shard_doc"));
+        reader.close();
+        final ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        verify(client).closePointInTime(captor.capture());
+        assertEquals("pit1", captor.getValue());
+    }
+
+    @Test
+    public void testLegacyTiebreaker() throws IOException {
+        when(client.getVersion()).thenReturn(6.8);
+        mockPages("a");
+        final ElasticRequest request = request(2);
+        new ElasticFeatureReaderSearchAfter(state, "test", request, 0, 10, 60).close();
+        assertTrue(request.getSorts().get(1).containsKey("_uid"));
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static mil.nga.giat.data.elasticsearch.ElasticReaderTestSupport.readNames;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.geotools.data.store.ContentState;
+import org.geotools.feature.SchemaException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+public class ElasticFeatureReaderSlicedTest {
+
+    private ElasticReaderTestSupport support;
+
+    private ContentState state;
+
+    private ElasticClient client;
+
+    private ExecutorService executorService;
+
+    @Before
+    public void setup() throws SchemaException {
+        support = new ElasticReaderTestSupport();
+        client = support.client;
+        state = support.state;
+        executorService = Executors.newFixedThreadPool(4);
+        when(support.dataStore.getExecutorService()).thenReturn(executorService);
+    }
+
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    private void mockSlices() throws IOException {
+        when(client.search(eq("test_index"), eq("test"), any(ElasticRequest.class))).thenAnswer(invocation -> {
+            final ElasticRequest request = invocation.getArgument(2);
+            assertEquals(2, request.getSliceMax().intValue());
+            return request.getSliceId() == 0 ? support.page("s0", "a", "b") : support.page("s1", "c");
+        });
+        when(client.scroll("s0", 10)).thenReturn(support.page("s0", "d"), support.page("s0"));
+        when(client.scroll("s1", 10)).thenReturn(support.page("s1"));
+    }
+
+    @Test
+    public void testSlices() throws IOException {
+        mockSlices();
+        final ElasticRequest request = new ElasticRequest();
+        request.setScroll(10);
+        final ElasticFeatureReaderSliced reader = new ElasticFeatureReaderSliced(state, "test", request, 2, 10);
+        final List<Object> names = readNames(reader);
+        assertEquals(4, names.size());
+        assertEquals(ImmutableSet.of("a", "b", "c", "d"), new HashSet<>(names));
+        reader.close();
+        verify(client).clearScroll(ImmutableSet.of("s0", "s1"));
+        assertNull(request.getSliceId());
+    }
+
+    @Test
+    public void testMaxFeatures() throws IOException {
+        mockSlices();
+        final ElasticRequest request = new ElasticRequest();
+        request.setScroll(10);
+        final ElasticFeatureReaderSliced reader = new ElasticFeatureReaderSliced(state, "test", request, 2, 2);
+        assertEquals(2, readNames(reader).size());
+        reader.close();
+    }
+
+    @Test(expected=IOException.class)
+    public void testSliceError() throws IOException {
+        when(client.search(eq("test_index"), eq("test"), any(ElasticRequest.class))).thenThrow(new IOException("error"));
+        final ElasticFeatureReaderSliced reader;
+        reader = new ElasticFeatureReaderSliced(state, "test", new ElasticRequest(), 2, 10);
+        try {
+            readNames(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test(timeout=10000)
+    public void testSliceErrorRepeated() throws IOException {
+        final CountDownLatch release = new CountDownLatch(1);
+        when(client.search(eq("test_index"), eq("test"), any(ElasticRequest.class))).thenAnswer(invocation -> {
+            final ElasticRequest request = invocation.getArgument(2);
+            if (request.getSliceId() == 0) {
+                throw new IOException("error");
+            }
+            // keep the other slice active so only the failed slice's marker is queued
+            Uninterruptibles.awaitUninterruptibly(release);
+            return support.page("s1");
+        });
+        final ElasticFeatureReaderSliced reader;
+        reader = new ElasticFeatureReaderSliced(state, "test", new ElasticRequest(), 2, 10);
+        try {
+            for (int i = 0; i < 2; i++) {
+                try {
+                    reader.hasNext();
+                    fail("Expected slice error");
+                } catch (IOException e) {
+                    assertEquals("error", e.getCause().getMessage());
+                }
+            }
+        } finally {
+            release.countDown();
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testClose() throws IOException {
+        when(client.search(eq("test_index"), eq("test"), any(ElasticRequest.class))).thenReturn(support.page("s0", "a"));
+        when(client.scroll("s0", 10)).thenReturn(support.page("s0", "b"));
+        final ElasticFeatureReaderSliced reader;
+        reader = new ElasticFeatureReaderSliced(state, "test", new ElasticRequest(), 2, Integer.MAX_VALUE);
+        assertTrue(reader.hasNext());
+        reader.next();
+        reader.close();
+        assertFalse(reader.hasNext());
+        verify(client).clearScroll(Collections.singleton("s0"));
+    }
+
+    @Test
+    public void testScrollIdAfterClose() throws IOException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(client.search(eq("test_index"), eq("test"), any(ElasticRequest.class))).thenAnswer(invocation -> {
+            started.countDown();
+            Uninterruptibles.awaitUninterruptibly(release);
+            return support.page("s0", "a");
+        });
+        final ElasticFeatureReaderSliced reader;
+        reader = new ElasticFeatureReaderSliced(state, "test", new ElasticRequest(), 1, 10);
+        Uninterruptibles.awaitUninterruptibly(started);
+        reader.close();
+        verify(client, never()).clearScroll(any());
+        release.countDown();
+        verify(client, timeout(10000)).clearScroll(Collections.singleton("s0"));
+    }
+
+}
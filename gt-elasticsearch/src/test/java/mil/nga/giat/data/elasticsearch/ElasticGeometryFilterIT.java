@@ -17,9 +17,11 @@
 
 package mil.nga.giat.data.elasticsearch;
 
+import org.geotools.data.Query;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.junit.Ignore;
+import org.geotools.util.factory.Hints;
 import org.junit.Test;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.LineString;
@@ -171,6 +173,30 @@ public class ElasticGeometryFilterIT extends ElasticTestSupport {
         assertEquals(fsi.next().getID(), "active.12");
     }
 
+    @Test
+    public void testGeometrySimplificationHint() throws Exception {
+        init("not-active","geo3");
+        assertTrue(featureSource.getSupportedHints().contains(Hints.GEOMETRY_DISTANCE));
+        assertTrue(featureSource.getSupportedHints().contains(Hints.GEOMETRY_SIMPLIFICATION));
+
+        Query query = new Query();
+        query.setHints(new Hints(Hints.GEOMETRY_SIMPLIFICATION, 10.0));
+        SimpleFeatureCollection features = featureSource.getFeatures(query);
+        boolean found = false;
+        try (SimpleFeatureIterator fsi = features.features()) {
+            while (fsi.hasNext()) {
+                SimpleFeature feature = fsi.next();
+                if (feature.getID().equals("active.12")) {
+                    // polygon below the tolerance collapses to a minimal ring
+                    Polygon polygon = (Polygon) feature.getAttribute("geo3");
+                    assertEquals(4, polygon.getNumPoints());
+                    found = true;
+                }
+            }
+        }
+        assertTrue(found);
+    }
+
     @Test
     public void testOverlapsFilter() throws Exception {
         init("not-active","geo3");
@@ -187,6 +213,24 @@ public class ElasticGeometryFilterIT extends ElasticTestSupport {
         assertEquals(fsi.next().getID(), "active.13");
     }
 
+    @Test
+    public void testOverlapsFilterWithSimplificationHint() throws Exception {
+        init("not-active","geo3");
+        FilterFactory2 ff = (FilterFactory2) dataStore.getFilterFactory();
+        GeometryFactory gf = new GeometryFactory();
+        PackedCoordinateSequenceFactory sf = new PackedCoordinateSequenceFactory();
+        Polygon ls = gf.createPolygon(sf.create(
+                new double[] { 5.5, 6, 7, 6, 7, 7, 5.5, 7, 5.5, 6 }, 2));
+        // overlaps is evaluated after the search so it must see full geometries
+        Query query = new Query(featureSource.getSchema().getTypeName(), ff.overlaps(ff.property("geo3"), ff.literal(ls)));
+        query.setHints(new Hints(Hints.GEOMETRY_SIMPLIFICATION, 10.0));
+        try (SimpleFeatureIterator fsi = featureSource.getFeatures(query).features()) {
+            assertTrue(fsi.hasNext());
+            assertEquals(fsi.next().getID(), "active.13");
+            assertFalse(fsi.hasNext());
+        }
+    }
+
     @Test
     public void testIntersectsFilter() throws Exception {
         init("not-active","geo3");
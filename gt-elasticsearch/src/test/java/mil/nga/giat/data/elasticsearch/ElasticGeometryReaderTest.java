@@ -0,0 +1,195 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.impl.PackedCoordinateSequence;
+import org.locationtech.jts.geom.impl.PackedCoordinateSequenceFactory;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.common.collect.ImmutableList;
+
+public class ElasticGeometryReaderTest {
+
+    private ElasticParserUtil parserUtil;
+
+    private ElasticGeometryReader reader;
+
+    private ObjectMapper mapper;
+
+    private GeometryFactory geometryFactory;
+
+    @Before
+    public void setup() {
+        parserUtil = new ElasticParserUtil();
+        reader = new ElasticGeometryReader(parserUtil, ImmutableList.of("geo"));
+        mapper = new ObjectMapper();
+        geometryFactory = new GeometryFactory();
+    }
+
+    @Test
+    public void testGeometryField() {
+        assertTrue(reader.isGeometryField("geo"));
+        assertFalse(reader.isGeometryField("name"));
+    }
+
+    @Test
+    public void testPointString() throws IOException {
+        assertEquals(geometryFactory.createPoint(new Coordinate(20, 10)), read("\"10,20\""));
+        assertEquals(parserUtil.createGeometry("drm3btev3e86"), read("\"drm3btev3e86\""));
+    }
+
+    @Test
+    public void testPointArray() throws IOException {
+        assertEquals(geometryFactory.createPoint(new Coordinate(20, 10)), read("[20, 10]"));
+        assertEquals(geometryFactory.createPoint(new Coordinate(20, 10)), read("[20, 10, 5]"));
+    }
+
+    @Test
+    public void testPointProperties() throws IOException {
+        assertEquals(geometryFactory.createPoint(new Coordinate(20, 10)), read("{\"lat\": 10, \"lon\": \"20\"}"));
+        assertNull(read("{\"lat\": 10}"));
+    }
+
+    @Test
+    public void testGeoJson() throws IOException {
+        assertSameAsParser("{\"type\": \"Point\", \"coordinates\": [1.5, 2]}");
+        assertSameAsParser("{\"type\": \"LineString\", \"coordinates\": [[1, 2], [3, 4], [5, 6]]}");
+        assertSameAsParser("{\"type\": \"Polygon\", \"coordinates\": [[[0, 0], [10, 0], [10, 10], [0, 0]], "
+                + "[[1, 1], [2, 1], [2, 2], [1, 1]]]}");
+        assertSameAsParser("{\"type\": \"MultiPoint\", \"coordinates\": [[1, 2], [3, 4]]}");
+        assertSameAsParser("{\"type\": \"MultiLineString\", \"coordinates\": [[[1, 2], [3, 4]], [[5, 6], [7, 8]]]}");
+        assertSameAsParser("{\"type\": \"MultiPolygon\", \"coordinates\": [[[[0, 0], [10, 0], [10, 10], [0, 0]]], "
+                + "[[[20, 20], [30, 20], [30, 30], [20, 20]], [[21, 21], [22, 21], [22, 22], [21, 21]]]]}");
+        assertSameAsParser("{\"type\": \"envelope\", \"coordinates\": [[-45, 45], [45, -45]]}");
+        assertSameAsParser("{\"type\": \"GeometryCollection\", \"geometries\": [{\"type\": \"Point\", "
+                + "\"coordinates\": [1, 2]}, {\"type\": \"LineString\", \"coordinates\": [[1, 2], [3, 4]]}]}");
+    }
+
+    @Test
+    public void testBinaryFormats() throws IOException {
+        final List<String> values = ImmutableList.of("[20.5, 10]", "{\"lat\": 10.25, \"lon\": 20}",
+                "{\"type\": \"LineString\", \"coordinates\": [[1.5, 2], [3, 4.125], [12345678901, -6.5]]}");
+        for (final ObjectMapper binaryMapper : ImmutableList.of(new ObjectMapper(new SmileFactory()),
+                new ObjectMapper(new CBORFactory()))) {
+            for (final String value : values) {
+                final byte[] data = binaryMapper.writeValueAsBytes(mapper.readTree(value));
+                try (JsonParser parser = binaryMapper.getFactory().createParser(data)) {
+                    parser.nextToken();
+                    assertEquals(read(value), reader.readGeometry(parser));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCoordinatesBeforeType() throws IOException {
+        final Geometry geometry = read("{\"coordinates\": [[1, 2], [3, 4]], \"bbox\": [1, 2, 3, 4], \"type\": \"linestring\"}");
+        assertTrue(geometry instanceof LineString);
+        assertEquals(2, geometry.getNumPoints());
+    }
+
+    @Test
+    public void testLargePolygon() throws IOException {
+        final StringBuilder json = new StringBuilder("{\"type\": \"Polygon\", \"coordinates\": [[");
+        final int numPoints = 10000;
+        for (int i = 0; i < numPoints; i++) {
+            final double angle = 2 * Math.PI * i / numPoints;
+            json.append("[").append(Math.cos(angle)).append(",").append(Math.sin(angle)).append("],");
+        }
+        json.append("[1.0,0.0]]]}");
+
+        parserUtil = new ElasticParserUtil(PackedCoordinateSequenceFactory.DOUBLE_FACTORY);
+        reader = new ElasticGeometryReader(parserUtil, ImmutableList.of("geo"));
+        final Geometry geometry = read(json.toString());
+        assertTrue(geometry instanceof Polygon);
+        assertEquals(numPoints + 1, geometry.getNumPoints());
+        assertTrue(((Polygon) geometry).getExteriorRing().getCoordinateSequence() instanceof PackedCoordinateSequence.Double);
+        assertEquals(parse(json.toString()), geometry);
+    }
+
+    @Test
+    public void testWkt() throws IOException {
+        final StringBuilder wkt = new StringBuilder("LINESTRING (");
+        for (int i = 0; i < 100; i++) {
+            wkt.append(i).append(" ").append(i + 0.5).append(", ");
+        }
+        wkt.append("100 100.5)");
+
+        final Geometry geometry = read("\"" + wkt + "\"");
+        assertTrue(geometry instanceof LineString);
+        assertEquals(101, geometry.getNumPoints());
+        assertEquals(parserUtil.createGeometry(wkt.toString()), geometry);
+        assertEquals(geometryFactory.createPoint(new Coordinate(1, 2)), read("\"POINT (1 2)\""));
+        assertNull(read("\"" + wkt.substring(0, wkt.length() - 1) + "\""));
+    }
+
+    @Test
+    public void testReadValues() throws IOException {
+        final List<Object> geometries = readValues("[[20, 10], \"30,40\", null, {\"lat\": 1, \"lon\": 2}]");
+        assertEquals(ImmutableList.of(geometryFactory.createPoint(new Coordinate(20, 10)),
+                geometryFactory.createPoint(new Coordinate(40, 30)),
+                geometryFactory.createPoint(new Coordinate(2, 1))), geometries);
+        assertEquals(ImmutableList.of(geometryFactory.createPoint(new Coordinate(20, 10))), readValues("[20, 10]"));
+        assertTrue(readValues("[]").isEmpty());
+    }
+
+    @Test
+    public void testCoordinateSequenceFactory() throws IOException {
+        parserUtil = new ElasticParserUtil(PackedCoordinateSequenceFactory.FLOAT_FACTORY);
+        reader = new ElasticGeometryReader(parserUtil, ImmutableList.of("geo"));
+        final Point point = (Point) read("{\"type\": \"Point\", \"coordinates\": [1.5, 2]}");
+        assertTrue(point.getCoordinateSequence() instanceof PackedCoordinateSequence.Float);
+    }
+
+    private void assertSameAsParser(String json) throws IOException {
+        final Geometry geometry = read(json);
+        assertNotNull(geometry);
+        assertTrue(geometry.equalsExact(parse(json)));
+    }
+
+    private Geometry parse(String json) throws IOException {
+        final Map<String, Object> properties = mapper.readValue(json, new TypeReference<Map<String, Object>>() {});
+        return parserUtil.createGeometry(properties);
+    }
+
+    private Geometry read(String json) throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(json)) {
+            parser.nextToken();
+            final Geometry geometry = reader.readGeometry(parser);
+            assertNull(parser.nextToken());
+            return geometry;
+        }
+    }
+
+    private List<Object> readValues(String json) throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(json)) {
+            parser.nextToken();
+            final List<Object> geometries = new ArrayList<>();
+            reader.readValues(parser, geometries);
+            assertNull(parser.nextToken());
+            return geometries;
+        }
+    }
+
+}
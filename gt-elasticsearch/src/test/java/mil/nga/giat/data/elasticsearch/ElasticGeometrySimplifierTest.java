@@ -0,0 +1,146 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.geotools.util.factory.Hints;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.impl.PackedCoordinateSequenceFactory;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import mil.nga.giat.data.elasticsearch.ElasticGeometrySimplifier.Mode;
+
+public class ElasticGeometrySimplifierTest {
+
+    @Test
+    public void testFromHints() {
+        assertNull(ElasticGeometrySimplifier.fromHints(null));
+        assertNull(ElasticGeometrySimplifier.fromHints(new Hints()));
+        assertNull(ElasticGeometrySimplifier.fromHints(new Hints(Hints.GEOMETRY_DISTANCE, 0.0)));
+
+        ElasticGeometrySimplifier simplifier = ElasticGeometrySimplifier.fromHints(new Hints(Hints.GEOMETRY_DISTANCE, 0.5));
+        assertEquals(0.5, simplifier.getDistance(), 0);
+        assertEquals(Mode.DECIMATE, simplifier.getMode());
+
+        final Hints hints = new Hints(Hints.GEOMETRY_DISTANCE, 0.5);
+        hints.put(Hints.GEOMETRY_SIMPLIFICATION, 2.0);
+        simplifier = ElasticGeometrySimplifier.fromHints(hints);
+        assertEquals(2.0, simplifier.getDistance(), 0);
+        assertEquals(Mode.SIMPLIFY, simplifier.getMode());
+    }
+
+    @Test
+    public void testDecimate() {
+        final ElasticGeometrySimplifier simplifier = new ElasticGeometrySimplifier(1.0, Mode.DECIMATE);
+        final double[] ordinates = {0, 0, 0.5, 0, 1.5, 0, 1.6, 0.1, 3, 0, 3.1, 0};
+        final int size = simplifier.simplify(ordinates, 6, 2);
+        assertEquals(4, size);
+        assertArrayEquals(new double[] {0, 0, 1.5, 0, 3, 0, 3.1, 0}, Arrays.copyOf(ordinates, 2 * size), 0);
+    }
+
+    @Test
+    public void testSimplify() {
+        final ElasticGeometrySimplifier simplifier = new ElasticGeometrySimplifier(0.5, Mode.SIMPLIFY);
+        final double[] ordinates = {0, 0, 3, 2.6, 6, 5, 8, 2.4, 10, 0};
+        final int size = simplifier.simplify(ordinates, 5, 2);
+        assertEquals(3, size);
+        assertArrayEquals(new double[] {0, 0, 6, 5, 10, 0}, Arrays.copyOf(ordinates, 2 * size), 0);
+    }
+
+    @Test
+    public void testSimplifyTolerance() {
+        final double distance = 0.05;
+        final ElasticGeometrySimplifier simplifier = new ElasticGeometrySimplifier(distance, Mode.SIMPLIFY);
+        final Random random = new Random(0);
+        final int numPoints = 1000;
+        final double[] ordinates = new double[2 * numPoints];
+        final Coordinate[] coordinates = new Coordinate[numPoints];
+        double x = 0;
+        double y = 0;
+        for (int i = 0; i < numPoints; i++) {
+            x += random.nextDouble() * 0.02;
+            y += random.nextGaussian() * 0.02;
+            ordinates[2 * i] = x;
+            ordinates[2 * i + 1] = y;
+            coordinates[i] = new Coordinate(x, y);
+        }
+
+        final int size = simplifier.simplify(ordinates, numPoints, 2);
+        assertTrue(size < numPoints / 4);
+        final GeometryFactory geometryFactory = new GeometryFactory();
+        final Coordinate[] simplified = new Coordinate[size];
+        for (int i = 0; i < size; i++) {
+            simplified[i] = new Coordinate(ordinates[2 * i], ordinates[2 * i + 1]);
+        }
+        final LineString line = geometryFactory.createLineString(simplified);
+        assertEquals(coordinates[0], simplified[0]);
+        assertEquals(coordinates[numPoints - 1], simplified[size - 1]);
+        for (final Coordinate coordinate : coordinates) {
+            // decimation and Douglas-Peucker each displace the line by at most the distance
+            assertTrue(line.distance(geometryFactory.createPoint(coordinate)) <= 2 * distance);
+        }
+    }
+
+    @Test
+    public void testMinimumRingSize() {
+        final ElasticGeometrySimplifier simplifier = new ElasticGeometrySimplifier(10, Mode.SIMPLIFY);
+        final double[] ordinates = {1, 1, 5, 1, 5, 5, 1, 5, 1, 1};
+        final int size = simplifier.simplify(ordinates, 5, 4);
+        assertEquals(4, size);
+        assertArrayEquals(new double[] {1, 1, 1, 1, 1, 1, 1, 1}, Arrays.copyOf(ordinates, 2 * size), 0);
+    }
+
+    @Test
+    public void testParserUtil() {
+        final ElasticParserUtil parserUtil = new ElasticParserUtil(PackedCoordinateSequenceFactory.DOUBLE_FACTORY,
+                new ElasticGeometrySimplifier(1.0, Mode.DECIMATE));
+        final Geometry line = parserUtil.createGeometry(ImmutableMap.of("type", "LineString",
+                "coordinates", ImmutableList.of(ImmutableList.of(0, 0), ImmutableList.of(0.5, 0), ImmutableList.of(2, 0))));
+        assertEquals(2, line.getNumPoints());
+
+        final Geometry polygon = parserUtil.createGeometry(ImmutableMap.of("type", "Polygon",
+                "coordinates", ImmutableList.of(ImmutableList.of(ImmutableList.of(0, 0), ImmutableList.of(0.1, 0),
+                        ImmutableList.of(0.1, 0.1), ImmutableList.of(0, 0)))));
+        assertTrue(polygon instanceof Polygon);
+        assertEquals(4, polygon.getNumPoints());
+
+        final Geometry multiPoint = parserUtil.createGeometry(ImmutableMap.of("type", "MultiPoint",
+                "coordinates", ImmutableList.of(ImmutableList.of(0, 0), ImmutableList.of(0.5, 0), ImmutableList.of(2, 0))));
+        assertEquals(3, multiPoint.getNumPoints());
+
+        final Geometry wkt = parserUtil.createGeometry("LINESTRING (0 0, 0.5 0.01, 2 0)");
+        assertEquals(2, wkt.getNumPoints());
+    }
+
+    @Test
+    public void testGeometryReader() throws IOException {
+        final ElasticParserUtil parserUtil = new ElasticParserUtil(PackedCoordinateSequenceFactory.DOUBLE_FACTORY,
+                new ElasticGeometrySimplifier(1.0, Mode.SIMPLIFY));
+        final ElasticGeometryReader reader = new ElasticGeometryReader(parserUtil, ImmutableList.of("geo"));
+        final String json = "{\"type\": \"Polygon\", \"coordinates\": [[[0, 0], [10, 0], [10, 0.5], [10, 10], "
+                + "[0.5, 10], [0, 10], [0, 0]], [[1, 1], [1.1, 1], [1.1, 1.1], [1, 1]]]}";
+        try (JsonParser parser = new ObjectMapper().getFactory().createParser(json)) {
+            parser.nextToken();
+            final Polygon polygon = (Polygon) reader.readGeometry(parser);
+            assertEquals(5, polygon.getExteriorRing().getNumPoints());
+            assertEquals(4, polygon.getInteriorRingN(0).getNumPoints());
+        }
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class ElasticHitStreamTest {
+
+    private ObjectMapper mapper;
+
+    @Before
+    public void setup() {
+        mapper = new ObjectMapper();
+    }
+
+    private ElasticHitStream stream(String json, String... fieldNames) throws IOException {
+        final ByteArrayInputStream inputStream = new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+        return new ElasticHitStream(inputStream, mapper, Arrays.asList(fieldNames));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        try (ElasticHitStream hits = stream("{}")) {
+            assertFalse(hits.hasNext());
+            assertEquals(0, hits.getTotalNumHits());
+            assertEquals(0, hits.getMaxScore(), 1e-9);
+        }
+    }
+
+    @Test
+    public void testHeader() throws IOException {
+        try (ElasticHitStream hits = stream("{\"_scroll_id\":\"12345\",\"took\":1,\"_shards\":{\"total\":1},"
+                + "\"hits\":{\"total\":{\"value\":10,\"relation\":\"eq\"},\"max_score\":0.8,\"hits\":[]}}")) {
+            assertFalse(hits.hasNext());
+            assertEquals("12345", hits.getScrollId());
+            assertEquals(10, hits.getTotalNumHits());
+            assertEquals(0.8, hits.getMaxScore(), 1e-6);
+        }
+    }
+
+    @Test
+    public void testLegacyTotalHits() throws IOException {
+        try (ElasticHitStream hits = stream("{\"hits\":{\"total\":10,\"max_score\":null,\"hits\":[]}}")) {
+            assertEquals(10, hits.getTotalNumHits());
+            assertEquals(0, hits.getMaxScore(), 1e-9);
+        }
+    }
+
+    @Test
+    public void testHitMetadata() throws IOException {
+        try (ElasticHitStream hits = stream("{\"hits\":{\"hits\":[{\"_index\":\"test\",\"_type\":\"active\","
+                + "\"_id\":\"5\",\"_score\":0.4,\"_source\":{}}]}}")) {
+            assertTrue(hits.hasNext());
+            final ElasticHit hit = hits.next();
+            assertEquals("test", hit.getIndex());
+            assertEquals("active", hit.getType());
+            assertEquals("5", hit.getId());
+            assertEquals(0.4, hit.getScore(), 1e-6);
+            assertNull(hit.getSource());
+            assertFalse(hits.hasNext());
+        }
+    }
+
+    @Test
+    public void testSourceFieldsFiltered() throws IOException {
+        try (ElasticHitStream hits = stream("{\"hits\":{\"hits\":[{\"_source\":{\"name\":\"a\",\"skip\":{\"x\":[1,2]},"
+                + "\"nested\":{\"hej\":\"b\",\"other\":1}}},{\"_source\":{\"name\":\"c\"}}]}}", "name", "nested.hej")) {
+            ElasticHit hit = hits.next();
+            assertEquals(ImmutableList.of("a"), hit.field("name"));
+            assertEquals(ImmutableList.of("b"), hit.field("nested.hej"));
+            assertNull(hit.field("skip.x"));
+            assertEquals(2, hit.getFields().size());
+            hit = hits.next();
+            assertEquals(ImmutableList.of("c"), hit.field("name"));
+            assertNull(hit.field("nested.hej"));
+            assertFalse(hits.hasNext());
+        }
+    }
+
+    @Test
+    public void testSourceArrays() throws IOException {
+        try (ElasticHitStream hits = stream("{\"hits\":{\"hits\":[{\"_source\":{\"tags\":[\"a\",[\"b\"],null],"
+                + "\"parts\":[{\"name\":\"c\"},{\"name\":\"d\"}]}}]}}", "tags", "parts.name")) {
+            final ElasticHit hit = hits.next();
+            assertEquals(ImmutableList.of("a", "b"), hit.field("tags"));
+            assertEquals(ImmutableList.of("c", "d"), hit.field("parts.name"));
+        }
+    }
+
+    @Test
+    public void testDottedSourceName() throws IOException {
+        try (ElasticHitStream hits = stream("{\"hits\":{\"hits\":[{\"_source\":{\"parent.child\":1}}]}}", "parent.child")) {
+            assertEquals(ImmutableList.of(1), hits.next().field("parent.child"));
+        }
+    }
+
+    @Test
+    public void testGeometrySource() throws IOException {
+        try (ElasticHitStream hits = stream("{\"hits\":{\"hits\":[{\"_source\":{\"geo\":{\"type\":\"Point\","
+                + "\"coordinates\":[1.0,2.0]}}}]}}", "geo")) {
+            final List<Object> values = hits.next().field("geo");
+            assertEquals(1, values.size());
+            assertEquals(ImmutableMap.of("type", "Point", "coordinates", ImmutableList.of(1.0, 2.0)), values.get(0));
+        }
+    }
+
+    @Test
+    public void testGeometryReader() throws IOException {
+        final ElasticGeometryReader geometryReader = new ElasticGeometryReader(new ElasticParserUtil(),
+                ImmutableList.of("geo", "points"));
+        final ByteArrayInputStream inputStream = new ByteArrayInputStream(("{\"hits\":{\"hits\":[{\"_source\":{"
+                + "\"geo\":{\"type\":\"LineString\",\"coordinates\":[[1.0,2.0],[3.0,4.0]]},\"points\":[[1,2],[3,4]],"
+                + "\"name\":\"a\"}}]}}").getBytes(StandardCharsets.UTF_8));
+        try (ElasticHitStream hits = new ElasticHitStream(inputStream, mapper, Arrays.asList("geo", "points", "name"),
+                geometryReader)) {
+            final ElasticHit hit = hits.next();
+            final GeometryFactory geometryFactory = new GeometryFactory();
+            assertEquals(ImmutableList.of(geometryFactory.createLineString(new Coordinate[] {
+                    new Coordinate(1, 2), new Coordinate(3, 4)})), hit.field("geo"));
+            assertEquals(ImmutableList.of(geometryFactory.createPoint(new Coordinate(1, 2)),
+                    geometryFactory.createPoint(new Coordinate(3, 4))), hit.field("points"));
+            assertEquals(ImmutableList.of("a"), hit.field("name"));
+            assertFalse(hits.hasNext());
+        }
+    }
+
+    @Test
+    public void testStoredFieldsTakePrecedence() throws IOException {
+        try (ElasticHitStream hits = stream("{\"hits\":{\"hits\":[{\"_source\":{\"name\":\"a\"},"
+                + "\"fields\":{\"name\":[\"b\"],\"other\":[1]}}]}}", "name")) {
+            final ElasticHit hit = hits.next();
+            assertEquals(ImmutableList.of("b"), hit.field("name"));
+            assertNull(hit.field("other"));
+        }
+    }
+
+    @Test
+    public void testIgnoresTrailingAggregations() throws IOException {
+        try (ElasticHitStream hits = stream("{\"hits\":{\"hits\":[{\"_id\":\"1\"}]},\"aggregations\":{\"a\":{}}}")) {
+            assertEquals("1", hits.next().getId());
+            assertFalse(hits.hasNext());
+        }
+    }
+
+    @Test
+    public void testUnusedFields() throws IOException {
+        try (ElasticHitStream hits = stream("{\"hits\":{\"hits\":[{\"_source\":{\"name\":\"a\"}}]}}")) {
+            final Map<String, List<Object>> fields = hits.next().getFields();
+            assertEquals(Collections.emptyMap(), fields);
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ElasticMultiSearchBatcherTest {
+
+    private ExecutorService executorService;
+
+    private List<List<String>> batches;
+
+    @Before
+    public void setup() {
+        executorService = Executors.newFixedThreadPool(4);
+        batches = Collections.synchronizedList(new ArrayList<>());
+    }
+
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    private ElasticMultiSearchBatcher<String, String> batcher(long batchWindow, int maxBatchSize) {
+        return new ElasticMultiSearchBatcher<>(batchWindow, maxBatchSize, (searches, results) -> {
+            batches.add(new ArrayList<>(searches));
+            for (int i = 0; i < searches.size(); i++) {
+                if (searches.get(i).equals("error")) {
+                    results.get(i).completeExceptionally(new IOException("error"));
+                } else if (!searches.get(i).equals("missing")) {
+                    results.get(i).complete(searches.get(i).toUpperCase());
+                }
+            }
+        });
+    }
+
+    private List<Future<String>> submitAll(ElasticMultiSearchBatcher<String, String> batcher, String group,
+            String... searches) {
+        final List<Future<String>> results = new ArrayList<>();
+        for (final String search : searches) {
+            results.add(executorService.submit(() -> batcher.submit(group, search)));
+        }
+        return results;
+    }
+
+    @Test
+    public void testFullBatch() throws Exception {
+        final ElasticMultiSearchBatcher<String, String> batcher = batcher(10000, 2);
+        final List<Future<String>> results = submitAll(batcher, "user", "a", "b");
+        assertEquals("A", results.get(0).get());
+        assertEquals("B", results.get(1).get());
+        assertEquals(1, batches.size());
+        assertEquals(2, batches.get(0).size());
+        assertEquals(1, batcher.getBatchCount());
+        assertEquals(2, batcher.getSearchCount());
+    }
+
+    @Test
+    public void testBatchWindow() throws Exception {
+        final ElasticMultiSearchBatcher<String, String> batcher = batcher(10, 10);
+        assertEquals("A", batcher.submit("user", "a"));
+        assertEquals("B", batcher.submit("user", "b"));
+        assertEquals(2, batches.size());
+    }
+
+    @Test
+    public void testGroups() throws Exception {
+        final ElasticMultiSearchBatcher<String, String> batcher = batcher(10000, 2);
+        final List<Future<String>> results = new ArrayList<>();
+        results.addAll(submitAll(batcher, "user1", "a"));
+        results.addAll(submitAll(batcher, "user2", "b", "c"));
+        results.addAll(submitAll(batcher, "user1", "d"));
+        for (final Future<String> result : results) {
+            result.get();
+        }
+        assertEquals(2, batches.size());
+        for (final List<String> batch : batches) {
+            assertTrue(batch.contains("a") == batch.contains("d"));
+        }
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        final ElasticMultiSearchBatcher<String, String> batcher = batcher(10000, 3);
+        final List<Future<String>> results = submitAll(batcher, "user", "a", "error", "missing");
+        int numErrors = 0;
+        for (final Future<String> result : results) {
+            try {
+                assertEquals("A", result.get());
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+                numErrors++;
+            }
+        }
+        assertEquals(2, numErrors);
+        assertEquals(1, batches.size());
+    }
+
+}
@@ -29,8 +29,12 @@ import org.locationtech.jts.geom.MultiPoint;
 import org.locationtech.jts.geom.MultiPolygon;
 import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.impl.CoordinateArraySequence;
+import org.locationtech.jts.geom.impl.PackedCoordinateSequence;
+import org.locationtech.jts.geom.impl.PackedCoordinateSequenceFactory;
 
 import com.github.davidmoten.geo.GeoHash;
+import com.github.davidmoten.geo.LatLong;
 
 @SuppressWarnings({"rawtypes", "unchecked"})
 public class ElasticParserUtilTest {
@@ -164,6 +168,62 @@ public class ElasticParserUtilTest {
         assertEquals(0, expected.distance(actual), 1e-5);
     }
 
+    @Test
+    public void testGeoHashDecode() {
+        final double[] latLon = new double[2];
+        for (int i = 0; i < 100; i++) {
+            final String geohash = GeoHash.encodeHash(rand.nextDouble() * 180 - 90, rand.nextDouble() * 360 - 180,
+                    1 + rand.nextInt(12));
+            final LatLong expected = GeoHash.decodeHash(geohash);
+            assertTrue(ElasticParserUtil.decodeGeoHash(geohash, latLon));
+            assertEquals(expected.getLat(), latLon[0], 0);
+            assertEquals(expected.getLon(), latLon[1], 0);
+        }
+        assertFalse(ElasticParserUtil.decodeGeoHash("", latLon));
+        assertFalse(ElasticParserUtil.decodeGeoHash("drm3a", latLon));
+    }
+
+    @Test
+    public void testParseLatLon() {
+        final double[] latLon = new double[2];
+        for (int i = 0; i < 100; i++) {
+            final double lat = rand.nextDouble() * 180 - 90;
+            final double lon = rand.nextDouble() * 360 - 180;
+            assertTrue(ElasticParserUtil.parseLatLon(lat + ", " + lon, latLon));
+            assertEquals(lat, latLon[0], 0);
+            assertEquals(lon, latLon[1], 0);
+        }
+        assertTrue(ElasticParserUtil.parseLatLon(" +1.5;-.5 ", latLon));
+        assertEquals(1.5, latLon[0], 0);
+        assertEquals(-0.5, latLon[1], 0);
+        assertFalse(ElasticParserUtil.parseLatLon("bcd", latLon));
+        assertFalse(ElasticParserUtil.parseLatLon("1,", latLon));
+        assertFalse(ElasticParserUtil.parseLatLon(".,.", latLon));
+    }
+
+    @Test
+    public void testCoordinateSequenceFactory() {
+        final Map<String,Object> properties = new HashMap<>();
+        properties.put("type", "LineString");
+        properties.put("coordinates", Arrays.asList(Arrays.asList(1.0, 2.0), Arrays.asList(3.0, 4.0)));
+        final LineString expected = geometryFactory.createLineString(new Coordinate[] {
+                new Coordinate(1, 2), new Coordinate(3, 4)});
+
+        LineString geometry = (LineString) parserUtil.createGeometry(properties);
+        assertTrue(geometry.getCoordinateSequence() instanceof CoordinateArraySequence);
+        assertTrue(geometry.equalsExact(expected));
+
+        parserUtil = new ElasticParserUtil(PackedCoordinateSequenceFactory.DOUBLE_FACTORY);
+        geometry = (LineString) parserUtil.createGeometry(properties);
+        assertTrue(geometry.getCoordinateSequence() instanceof PackedCoordinateSequence.Double);
+        assertTrue(geometry.equalsExact(expected));
+
+        parserUtil = new ElasticParserUtil(PackedCoordinateSequenceFactory.FLOAT_FACTORY);
+        final Point point = (Point) parserUtil.createGeometry("45.5,90.5");
+        assertTrue(point.getCoordinateSequence() instanceof PackedCoordinateSequence.Float);
+        assertEquals(new Coordinate(90.5, 45.5), point.getCoordinate());
+    }
+
     @Test
     public void testInvalidStringGeometry() {
         final double lat = rand.nextDouble() * 90 - 90;
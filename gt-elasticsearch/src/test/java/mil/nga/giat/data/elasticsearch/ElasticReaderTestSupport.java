@@ -0,0 +1,102 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.FULL_NAME;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.FeatureReader;
+import org.geotools.data.store.ContentEntry;
+import org.geotools.data.store.ContentState;
+import org.geotools.feature.SchemaException;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Mocked client and datastore for paging feature reader tests. Features have
+ * a single name attribute that is also used as the document id.
+ */
+class ElasticReaderTestSupport {
+
+    static final String INDEX_NAME = "test_index";
+
+    static final String TYPE_NAME = "test";
+
+    static final int SCROLL_TIME = 10;
+
+    final ElasticClient client;
+
+    final ElasticDataStore dataStore;
+
+    final ContentState state;
+
+    private final ObjectMapper mapper;
+
+    ElasticReaderTestSupport() throws SchemaException {
+        final SimpleFeatureType featureType = DataUtilities.createType(TYPE_NAME, "name:String");
+        featureType.getDescriptor("name").getUserData().put(FULL_NAME, "name");
+
+        client = mock(ElasticClient.class);
+        dataStore = mock(ElasticDataStore.class);
+        when(dataStore.getClient()).thenReturn(client);
+        when(dataStore.getIndexName()).thenReturn(INDEX_NAME);
+        when(dataStore.getScrollTime()).thenReturn(SCROLL_TIME);
+
+        final ContentEntry entry = mock(ContentEntry.class);
+        when(entry.getDataStore()).thenReturn(dataStore);
+        when(entry.getTypeName()).thenReturn(TYPE_NAME);
+        state = new ContentState(entry);
+        state.setFeatureType(featureType);
+
+        mapper = new ObjectMapper();
+    }
+
+    /**
+     * @param scrollId Scroll id of the page or null
+     */
+    ElasticResponse page(String scrollId, String... names) throws IOException {
+        return response(scrollId, false, names);
+    }
+
+    /**
+     * Page without a scroll id whose hits have the name as sort value
+     */
+    ElasticResponse sortedPage(String... names) throws IOException {
+        return response(null, true, names);
+    }
+
+    private ElasticResponse response(String scrollId, boolean sorted, String... names) throws IOException {
+        final StringBuilder hits = new StringBuilder();
+        for (final String name : names) {
+            if (hits.length() > 0) {
+                hits.append(",");
+            }
+            hits.append("{\"_id\":\"").append(name).append("\",\"_source\":{\"name\":\"").append(name).append("\"}");
+            if (sorted) {
+                hits.append(",\"sort\":[\"").append(name).append("\"]");
+            }
+            hits.append("}");
+        }
+        final String scroll = scrollId != null ? "\"_scroll_id\":\"" + scrollId + "\"," : "";
+        final String content = "{" + scroll + "\"hits\":{\"hits\":[" + hits + "]}}";
+        return mapper.readValue(content, ElasticResponse.class);
+    }
+
+    static List<Object> readNames(FeatureReader<SimpleFeatureType, SimpleFeature> reader) throws IOException {
+        final List<Object> names = new ArrayList<>();
+        while (reader.hasNext()) {
+            names.add(reader.next().getAttribute("name"));
+        }
+        return names;
+    }
+
+}
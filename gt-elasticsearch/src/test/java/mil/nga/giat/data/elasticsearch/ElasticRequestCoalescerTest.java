@@ -0,0 +1,119 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ElasticRequestCoalescerTest {
+
+    private ElasticRequestCoalescer<String> coalescer;
+
+    private ExecutorService executorService;
+
+    private CountDownLatch started;
+
+    private CountDownLatch release;
+
+    private AtomicInteger numCalls;
+
+    @Before
+    public void setup() {
+        coalescer = new ElasticRequestCoalescer<>();
+        executorService = Executors.newFixedThreadPool(2);
+        started = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+        numCalls = new AtomicInteger();
+    }
+
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    private String blockingCall(String result) throws IOException {
+        numCalls.incrementAndGet();
+        started.countDown();
+        try {
+            release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+        if (result == null) {
+            throw new IOException("error");
+        }
+        return result;
+    }
+
+    private Future<String> submit(String key, String result) {
+        return executorService.submit(() -> coalescer.execute(key, () -> blockingCall(result)));
+    }
+
+    private void awaitWaiting(int numWaiting) throws InterruptedException {
+        for (int i = 0; i < 100 && coalescer.getCoalescedCount() < numWaiting; i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testCoalesce() throws Exception {
+        final Future<String> first = submit("key", "a");
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        final Future<String> second = submit("key", "b");
+        awaitWaiting(1);
+        release.countDown();
+        assertEquals("a", first.get());
+        assertEquals("a", second.get());
+        assertEquals(1, numCalls.get());
+        assertEquals(1, coalescer.getRequestCount());
+        assertEquals(1, coalescer.getCoalescedCount());
+    }
+
+    @Test
+    public void testDifferentKeys() throws Exception {
+        release.countDown();
+        assertEquals("a", coalescer.execute("a", () -> blockingCall("a")));
+        assertEquals("b", coalescer.execute("b", () -> blockingCall("b")));
+        assertEquals("a", coalescer.execute("a", () -> blockingCall("a")));
+        assertEquals(3, numCalls.get());
+        assertEquals(3, coalescer.getRequestCount());
+        assertEquals(0, coalescer.getCoalescedCount());
+    }
+
+    @Test
+    public void testError() throws Exception {
+        final Future<String> first = submit("key", null);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        final Future<String> second = submit("key", "b");
+        awaitWaiting(1);
+        release.countDown();
+        try {
+            first.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        try {
+            second.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals(1, numCalls.get());
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Compares decoding of search responses with polygon sources encoded as JSON,
+ * Smile and CBOR.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ElasticResponseFormatBenchmark {
+
+    @Param({"JSON", "SMILE", "CBOR"})
+    private String format;
+
+    @Param({"1000"})
+    private int numHits;
+
+    @Param({"200"})
+    private int numPoints;
+
+    private ObjectMapper mapper;
+
+    private byte[] data;
+
+    @Setup
+    public void setup() throws IOException {
+        switch (format) {
+        case "SMILE":
+            mapper = new ObjectMapper(new SmileFactory());
+            break;
+        case "CBOR":
+            mapper = new ObjectMapper(new CBORFactory());
+            break;
+        default:
+            mapper = new ObjectMapper();
+        }
+        data = mapper.writeValueAsBytes(createResponse(numHits, numPoints));
+    }
+
+    @Benchmark
+    public ElasticResponse decode() throws IOException {
+        return mapper.readValue(data, ElasticResponse.class);
+    }
+
+    static Map<String,Object> createResponse(int numHits, int numPoints) {
+        final Random random = new Random(0);
+        final List<Map<String,Object>> hits = new ArrayList<>();
+        for (int i = 0; i < numHits; i++) {
+            final List<List<Double>> ring = new ArrayList<>();
+            for (int j = 0; j < numPoints; j++) {
+                final double angle = 2 * Math.PI * j / numPoints;
+                ring.add(ImmutableList.of(Math.cos(angle) + random.nextDouble() * 1e-3, Math.sin(angle) + random.nextDouble() * 1e-3));
+            }
+            ring.add(ring.get(0));
+            final Map<String,Object> geometry = new HashMap<>();
+            geometry.put("type", "Polygon");
+            geometry.put("coordinates", ImmutableList.of(ring));
+            final Map<String,Object> source = new HashMap<>();
+            source.put("name", "feature" + i);
+            source.put("value", random.nextInt(1000));
+            source.put("geometry", geometry);
+            final Map<String,Object> hit = new HashMap<>();
+            hit.put("_index", "test");
+            hit.put("_id", String.valueOf(i));
+            hit.put("_score", 1.0);
+            hit.put("_source", source);
+            hits.add(hit);
+        }
+        final Map<String,Object> results = new HashMap<>();
+        results.put("total", ImmutableMap.of("value", numHits, "relation", "eq"));
+        results.put("max_score", 1.0);
+        results.put("hits", hits);
+        return ImmutableMap.of("took", 10, "timed_out", false, "hits", results);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(ElasticResponseFormatBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+}
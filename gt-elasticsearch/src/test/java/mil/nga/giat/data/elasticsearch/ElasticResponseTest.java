@@ -7,10 +7,13 @@ package mil.nga.giat.data.elasticsearch;
 import static org.junit.Assert.*;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -124,6 +127,75 @@ public class ElasticResponseTest {
         assertEquals(ImmutableMap.of("key","0","doc_count",10), aggregations.getBuckets().get(0));
     }
 
+    @Test
+    public void testMetricAggregationColumns() throws IOException {
+        String content = "{\"aggregations\":{\"first\":{\"buckets\": ["
+                + "{\"key\":\"dr5r\",\"doc_count\":10,\"metric\":{\"value\":2.5},\"count\":{\"value\":4}},"
+                + "{\"key\":\"dr5x\",\"doc_count\":3000000000,\"metric\":{\"value\":null},\"count\":{\"value\":1}},"
+                + "{\"key\":\"dr72\",\"doc_count\":1,\"metric\":{\"value\":7,\"value_as_string\":\"7\"}}]}}}";
+        ElasticResponse response = mapper.readValue(content, ElasticResponse.class);
+        List<Map<String,Object>> buckets = response.getAggregations().get("first").getBuckets();
+        assertTrue(buckets instanceof ElasticBuckets);
+        assertEquals(parseBuckets(content), buckets);
+
+        ElasticBuckets columns = (ElasticBuckets) buckets;
+        assertEquals("dr5x", columns.getKey(1));
+        assertEquals(3000000000L, columns.getDocCount(1));
+        assertEquals(2.5, columns.getMetricValue(0, "metric"), 0);
+        assertTrue(Double.isNaN(columns.getMetricValue(1, "metric")));
+        assertTrue(Double.isNaN(columns.getMetricValue(2, "count")));
+        assertTrue(Double.isNaN(columns.getMetricValue(0, "missing")));
+    }
+
+    @Test
+    public void testNestedAggregationColumns() throws IOException {
+        String content = "{\"aggregations\":{\"first\":{\"buckets\": ["
+                + "{\"key\":\"dr5r\",\"doc_count\":10,\"nested\":{\"doc_count_error_upper_bound\":0,\"buckets\":["
+                + "{\"key\":\"a\",\"doc_count\":6},{\"key\":\"b\",\"doc_count\":4,\"metric\":{\"value\":1.5}}]}},"
+                + "{\"key\":{\"x\":1},\"doc_count\":2,\"tags\":[\"red\"],\"score\":0.5}]}}}";
+        ElasticResponse response = mapper.readValue(content, ElasticResponse.class);
+        List<Map<String,Object>> buckets = response.getAggregations().get("first").getBuckets();
+        assertEquals(parseBuckets(content), buckets);
+        Object nested = ((Map<?,?>) buckets.get(0).get("nested")).get("buckets");
+        assertTrue(nested instanceof ElasticBuckets);
+        assertEquals(1.5, ((ElasticBuckets) nested).getMetricValue(1, "metric"), 0);
+    }
+
+    @Test
+    public void testEmptyBuckets() throws IOException {
+        String content = "{\"aggregations\":{\"first\":{\"buckets\": []}}}";
+        ElasticResponse response = mapper.readValue(content, ElasticResponse.class);
+        assertTrue(response.getAggregations().get("first").getBuckets().isEmpty());
+    }
+
+    @Test
+    public void testBoundsAggregation() throws IOException {
+        String content = "{\"aggregations\":{\"bounds\":{\"bounds\":{\"top_left\":{\"lat\":44.0,\"lon\":0.0},\"bottom_right\":{\"lat\":0.0,\"lon\":24.0}}}}}";
+        ElasticResponse response = mapper.readValue(content, ElasticResponse.class);
+        ElasticAggregation aggregation = response.getAggregations().get("bounds");
+        assertNotNull(aggregation);
+        assertEquals(ImmutableMap.of("lat",44.0,"lon",0.0), aggregation.getBounds().get("top_left"));
+        assertEquals(ImmutableMap.of("lat",0.0,"lon",24.0), aggregation.getBounds().get("bottom_right"));
+    }
+
+    @Test
+    public void testPixelHitsAggregation() throws IOException {
+        String content = "{\"aggregations\":{\"pixels\":{\"buckets\":["
+                + "{\"key\":\"9/10/20\",\"doc_count\":3,\"hit\":{\"hits\":{\"total\":{\"value\":3},\"hits\":["
+                + "{\"_index\":\"active\",\"_id\":\"1\",\"_source\":{\"name\":\"a\"},\"fields\":{\"speed\":[5]}}]}}},"
+                + "{\"key\":\"9/10/21\",\"doc_count\":1,\"hit\":{\"hits\":{\"total\":{\"value\":1},\"hits\":["
+                + "{\"_index\":\"active\",\"_id\":\"2\",\"_source\":{\"name\":\"b\"}}]}}}]}}}";
+        ElasticResponse response = mapper.readValue(content, ElasticResponse.class);
+        List<ElasticHit> hits = ElasticFeatureSource.getPixelHits(response);
+        assertEquals(2, hits.size());
+        assertEquals("1", hits.get(0).getId());
+        assertEquals(ImmutableMap.of("name", "a"), hits.get(0).getSource());
+        assertEquals(ImmutableList.of(5), hits.get(0).field("speed"));
+        assertEquals("2", hits.get(1).getId());
+
+        assertTrue(ElasticFeatureSource.getPixelHits(new ElasticResponse()).isEmpty());
+    }
+
     @Test
     public void testMissingAggregation() throws IOException {
         ElasticResponse response = mapper.readValue("{}", ElasticResponse.class);
@@ -140,4 +212,10 @@ public class ElasticResponseTest {
         assertTrue(responseStr.contains("numBuckets=1"));
     }
 
+    private List<Map<String,Object>> parseBuckets(String content) throws IOException {
+        Map<String,Map<String,Map<String,List<Map<String,Object>>>>> values = mapper.readValue(content,
+                new TypeReference<Map<String,Map<String,Map<String,List<Map<String,Object>>>>>>() {});
+        return values.get("aggregations").get("first").get("buckets");
+    }
+
 }
@@ -0,0 +1,111 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Ticker;
+
+public class ElasticResultCacheTest {
+
+    private AtomicLong time;
+
+    private Ticker ticker;
+
+    private AtomicInteger numChecks;
+
+    @Before
+    public void setup() {
+        time = new AtomicLong();
+        ticker = new Ticker() {
+            @Override
+            public long read() {
+                return time.get();
+            }
+        };
+        numChecks = new AtomicInteger();
+    }
+
+    private void advance(int seconds) {
+        time.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+    }
+
+    private long check(ElasticResultCache cache, long version) {
+        return cache.getIndexVersion("test", () -> {
+            numChecks.incrementAndGet();
+            return version;
+        });
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        final ElasticResultCache cache = new ElasticResultCache(1000, 60, 0, ticker);
+        final ElasticResponse response = new ElasticResponse();
+        assertNull(cache.get("key", 0));
+        cache.put("key", 0, response, 10);
+        assertSame(response, cache.get("key", 0));
+        assertNull(cache.get("other", 0));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testTimeToLive() {
+        final ElasticResultCache cache = new ElasticResultCache(1000, 60, 0, ticker);
+        cache.put("key", 0, new ElasticResponse(), 10);
+        advance(61);
+        assertNull(cache.get("key", 0));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testMaximumBytes() {
+        final ElasticResultCache cache = new ElasticResultCache(1000, 60, 0, ticker);
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i, 0, new ElasticResponse(), 50);
+        }
+        assertTrue(cache.getSize() <= 20);
+        assertEquals(100 - cache.getSize(), cache.getEvictionCount());
+    }
+
+    @Test
+    public void testIndexChange() {
+        final ElasticResultCache cache = new ElasticResultCache(1000, 60, 5, ticker);
+        final long version = check(cache, 1);
+        cache.put("key", version, new ElasticResponse(), 10);
+
+        // checks are not repeated within the interval
+        advance(2);
+        assertEquals(1, check(cache, 2));
+        assertNotNull(cache.get("key", 1));
+        assertEquals(1, numChecks.get());
+
+        advance(5);
+        assertEquals(2, check(cache, 2));
+        assertNull(cache.get("key", 2));
+        assertEquals(2, numChecks.get());
+        assertEquals(1, cache.getStaleCount());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testIndexCheckError() {
+        final ElasticResultCache cache = new ElasticResultCache(1000, 60, 5, ticker);
+        assertEquals(1, check(cache, 1));
+        advance(5);
+        assertEquals(1, cache.getIndexVersion("test", () -> {
+            throw new IOException("error");
+        }));
+    }
+
+}
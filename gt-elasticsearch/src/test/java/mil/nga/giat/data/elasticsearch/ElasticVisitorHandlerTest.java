@@ -0,0 +1,312 @@
+/*
+ * This file is hereby placed into the Public Domain. This means anyone is
+ * free to do whatever they wish with this file.
+ */
+package mil.nga.giat.data.elasticsearch;
+
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.ANALYZED;
+import static mil.nga.giat.data.elasticsearch.ElasticConstants.FULL_NAME;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.feature.SchemaException;
+import org.geotools.feature.visitor.AverageVisitor;
+import org.geotools.feature.visitor.CountVisitor;
+import org.geotools.feature.visitor.GroupByVisitor;
+import org.geotools.feature.visitor.MaxVisitor;
+import org.geotools.feature.visitor.MinVisitor;
+import org.geotools.feature.visitor.SumVisitor;
+import org.geotools.feature.visitor.UniqueVisitor;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.opengis.feature.FeatureVisitor;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.PropertyName;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class ElasticVisitorHandlerTest {
+
+    private ElasticClient client;
+
+    private ElasticVisitorHandler handler;
+
+    private ObjectMapper mapper;
+
+    private ElasticRequest request;
+
+    private SimpleFeatureType featureType;
+
+    @Before
+    public void setup() throws SchemaException {
+        featureType = DataUtilities.createType("test",
+                "value:Double,count:Integer,name:String,text:String,when:Date");
+        for (AttributeDescriptor descriptor : featureType.getAttributeDescriptors()) {
+            descriptor.getUserData().put(FULL_NAME, "obj." + descriptor.getLocalName());
+        }
+        featureType.getDescriptor("text").getUserData().put(ANALYZED, true);
+
+        client = mock(ElasticClient.class);
+        when(client.isVersionAtLeast(anyInt(), anyInt())).thenReturn(true);
+        handler = new ElasticVisitorHandler(client, "test_index", "test", featureType);
+        mapper = new ObjectMapper();
+
+        request = new ElasticRequest();
+        request.setQuery(ImmutableMap.of("match_all", ImmutableMap.of()));
+        request.setSize(100);
+        request.setFrom(0);
+        request.addSort("name", "asc");
+    }
+
+    private PropertyName property(String name) {
+        final PropertyName property = mock(PropertyName.class);
+        when(property.getPropertyName()).thenReturn(name);
+        return property;
+    }
+
+    private void mockResponse(String content) throws IOException {
+        when(client.search(eq("test_index"), eq("test"), any(ElasticRequest.class)))
+        .thenReturn(mapper.readValue(content, ElasticResponse.class));
+    }
+
+    private ElasticRequest captureRequest() throws IOException {
+        final ArgumentCaptor<ElasticRequest> captor = ArgumentCaptor.forClass(ElasticRequest.class);
+        verify(client).search(eq("test_index"), eq("test"), captor.capture());
+        return captor.getValue();
+    }
+
+    @Test
+    public void testCanHandle() {
+        assertTrue(handler.canHandle(new CountVisitor()));
+        assertTrue(handler.canHandle(new MinVisitor(property("value"))));
+        assertTrue(handler.canHandle(new MaxVisitor(property("when"))));
+        assertTrue(handler.canHandle(new SumVisitor(property("count"))));
+        assertTrue(handler.canHandle(new AverageVisitor(property("value"))));
+        assertTrue(handler.canHandle(new UniqueVisitor(property("name"))));
+        assertFalse(handler.canHandle(new MinVisitor(property("name"))));
+        assertFalse(handler.canHandle(new SumVisitor(property("when"))));
+        assertFalse(handler.canHandle(new UniqueVisitor(property("text"))));
+        assertFalse(handler.canHandle(new UniqueVisitor(property("missing"))));
+    }
+
+    @Test
+    public void testCanHandleUniqueLegacy() {
+        when(client.isVersionAtLeast(6, 1)).thenReturn(false);
+        assertFalse(handler.canHandle(new UniqueVisitor(property("name"))));
+    }
+
+    @Test
+    public void testMin() throws IOException {
+        mockResponse("{\"aggregations\":{\"min\":{\"value\":1.5},\"count\":{\"value\":3}}}");
+        final MinVisitor visitor = spy(new MinVisitor(property("value")));
+        handler.handle(visitor, request);
+        verify(visitor).setValue(1.5);
+
+        final ElasticRequest searchRequest = captureRequest();
+        assertEquals(0, searchRequest.getSize().intValue());
+        assertTrue(searchRequest.getSorts().isEmpty());
+        assertEquals(request.getQuery(), searchRequest.getQuery());
+        assertEquals(ImmutableMap.of("min", ImmutableMap.of("field", "obj.value")),
+                searchRequest.getAggregations().get("min"));
+        assertEquals(ImmutableMap.of("value_count", ImmutableMap.of("field", "obj.value")),
+                searchRequest.getAggregations().get("count"));
+        assertEquals(100, request.getSize().intValue());
+    }
+
+    @Test
+    public void testMinWithoutValues() throws IOException {
+        mockResponse("{\"aggregations\":{\"min\":{\"value\":null},\"count\":{\"value\":0}}}");
+        final MinVisitor visitor = spy(new MinVisitor(property("value")));
+        handler.handle(visitor, request);
+        verify(visitor, never()).setValue(any());
+    }
+
+    @Test
+    public void testMaxDate() throws IOException {
+        mockResponse("{\"aggregations\":{\"max\":{\"value\":1305912798000.0},\"count\":{\"value\":3}}}");
+        final MaxVisitor visitor = spy(new MaxVisitor(property("when")));
+        handler.handle(visitor, request);
+        verify(visitor).setValue(new Date(1305912798000L));
+    }
+
+    @Test
+    public void testSum() throws IOException {
+        mockResponse("{\"aggregations\":{\"sum\":{\"value\":6.0},\"count\":{\"value\":3}}}");
+        final SumVisitor visitor = spy(new SumVisitor(property("count")));
+        handler.handle(visitor, request);
+        verify(visitor).setValue(6L);
+    }
+
+    @Test
+    public void testAverage() throws IOException {
+        mockResponse("{\"aggregations\":{\"sum\":{\"value\":6.0},\"count\":{\"value\":4}}}");
+        final AverageVisitor visitor = spy(new AverageVisitor(property("value")));
+        handler.handle(visitor, request);
+        verify(visitor).setValue(4, 6.0);
+    }
+
+    @Test
+    public void testAverageLargeCount() throws IOException {
+        mockResponse("{\"aggregations\":{\"sum\":{\"value\":1.2884901888E10},\"count\":{\"value\":4294967296}}}");
+        final AverageVisitor visitor = spy(new AverageVisitor(property("value")));
+        handler.handle(visitor, request);
+        verify(visitor).setValue(Integer.MAX_VALUE, 3.0 * Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void testCount() throws IOException {
+        when(client.count("test_index", "test", request.getQuery())).thenReturn(42L);
+        final CountVisitor visitor = spy(new CountVisitor());
+        handler.handle(visitor, request);
+        verify(visitor).setValue(42);
+        verify(client, never()).search(any(), any(), any());
+    }
+
+    @Test(expected=IOException.class)
+    public void testMissingAggregation() throws IOException {
+        mockResponse("{\"aggregations\":{\"min\":{\"value\":1.5}}}");
+        handler.handle(new MinVisitor(property("value")), request);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testUnique() throws IOException {
+        final StringBuilder buckets = new StringBuilder();
+        for (int i = 0; i < ElasticVisitorHandler.COMPOSITE_SIZE; i++) {
+            buckets.append(i > 0 ? "," : "").append("{\"key\":{\"value\":\"v").append(i).append("\"},\"doc_count\":1}");
+        }
+        final String lastKey = "{\"value\":\"v" + (ElasticVisitorHandler.COMPOSITE_SIZE - 1) + "\"}";
+        final ElasticResponse page1 = mapper.readValue("{\"aggregations\":{\"composite\":{\"after_key\":" + lastKey
+                + ",\"buckets\":[" + buckets + "]}}}", ElasticResponse.class);
+        final ElasticResponse page2 = mapper.readValue("{\"aggregations\":{\"composite\":{\"after_key\":{\"value\":\"w\"},"
+                + "\"buckets\":[{\"key\":{\"value\":\"w\"},\"doc_count\":2}]}}}", ElasticResponse.class);
+        final List<Map<String,Object>> composites = new ArrayList<>();
+        when(client.search(eq("test_index"), eq("test"), any(ElasticRequest.class))).thenAnswer(invocation -> {
+            final ElasticRequest searchRequest = invocation.getArgument(2);
+            composites.add(searchRequest.getAggregations().get("composite").get("composite"));
+            return composites.size() == 1 ? page1 : page2;
+        });
+
+        final UniqueVisitor visitor = spy(new UniqueVisitor(property("name")));
+        handler.handle(visitor, request);
+
+        final ArgumentCaptor<Object> valueCaptor = ArgumentCaptor.forClass(Object.class);
+        verify(visitor).setValue(valueCaptor.capture());
+        final Set<Object> values = (Set<Object>) valueCaptor.getValue();
+        assertEquals(ElasticVisitorHandler.COMPOSITE_SIZE + 1, values.size());
+        assertEquals("v0", values.iterator().next());
+        assertTrue(values.contains("w"));
+
+        assertEquals(2, composites.size());
+        assertNull(composites.get(0).get("after"));
+        assertEquals(ImmutableMap.of("value", "v" + (ElasticVisitorHandler.COMPOSITE_SIZE - 1)),
+                composites.get(1).get("after"));
+    }
+
+    private GroupByVisitor groupBy(FeatureVisitor aggregateVisitor, String... names) {
+        final List<Expression> groupByAttributes = new ArrayList<>();
+        for (String name : names) {
+            groupByAttributes.add(property(name));
+        }
+        final GroupByVisitor visitor = mock(GroupByVisitor.class);
+        when(visitor.getAggregateVisitor()).thenReturn(aggregateVisitor);
+        when(visitor.getGroupByAttributes()).thenReturn(groupByAttributes);
+        return visitor;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object[]> captureGroups(GroupByVisitor visitor) {
+        final ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        verify(visitor).setValue(captor.capture());
+        return captor.getValue();
+    }
+
+    @Test
+    public void testCanHandleGroupBy() {
+        assertTrue(handler.canHandle(groupBy(new CountVisitor(), "name", "count")));
+        assertTrue(handler.canHandle(groupBy(new AverageVisitor(property("value")), "name")));
+        assertFalse(handler.canHandle(groupBy(new CountVisitor())));
+        assertFalse(handler.canHandle(groupBy(new CountVisitor(), "text")));
+        assertFalse(handler.canHandle(groupBy(new MaxVisitor(property("name")), "count")));
+        assertFalse(handler.canHandle(groupBy(new UniqueVisitor(property("name")), "count")));
+        when(client.isVersionAtLeast(6, 4)).thenReturn(false);
+        assertFalse(handler.canHandle(groupBy(new CountVisitor(), "name")));
+    }
+
+    @Test
+    public void testGroupByCount() throws IOException {
+        mockResponse("{\"aggregations\":{\"composite\":{\"after_key\":{\"g0\":\"b\",\"g1\":null},\"buckets\":["
+                + "{\"key\":{\"g0\":\"a\",\"g1\":1},\"doc_count\":3},"
+                + "{\"key\":{\"g0\":\"b\",\"g1\":null},\"doc_count\":2}]}}}");
+        final GroupByVisitor visitor = groupBy(new CountVisitor(), "name", "count");
+        handler.handle(visitor, request);
+
+        final List<Object[]> groups = captureGroups(visitor);
+        assertEquals(2, groups.size());
+        assertArrayEquals(new Object[] {"a", 1, 3L}, groups.get(0));
+        assertArrayEquals(new Object[] {"b", null, 2L}, groups.get(1));
+
+        final Map<String,Map<String,Object>> aggregation = captureRequest().getAggregations().get("composite");
+        assertNull(aggregation.get("aggregations"));
+        assertEquals(ImmutableList.of(
+                ImmutableMap.of("g0", ImmutableMap.of("terms", ImmutableMap.of("field", "obj.name", "missing_bucket", true))),
+                ImmutableMap.of("g1", ImmutableMap.of("terms", ImmutableMap.of("field", "obj.count", "missing_bucket", true)))),
+                aggregation.get("composite").get("sources"));
+    }
+
+    @Test
+    public void testGroupByMetric() throws IOException {
+        mockResponse("{\"aggregations\":{\"composite\":{\"buckets\":["
+                + "{\"key\":{\"g0\":\"a\"},\"doc_count\":3,\"metric\":{\"value\":1305912798000.0}},"
+                + "{\"key\":{\"g0\":\"b\"},\"doc_count\":2,\"metric\":{\"value\":null}}]}}}");
+        final GroupByVisitor visitor = groupBy(new MaxVisitor(property("when")), "name");
+        handler.handle(visitor, request);
+
+        final List<Object[]> groups = captureGroups(visitor);
+        assertEquals(2, groups.size());
+        assertArrayEquals(new Object[] {"a", new Date(1305912798000L)}, groups.get(0));
+        assertArrayEquals(new Object[] {"b", null}, groups.get(1));
+
+        final Map<String,Map<String,Object>> aggregation = captureRequest().getAggregations().get("composite");
+        assertEquals(ImmutableMap.of("metric", ImmutableMap.of("max", ImmutableMap.of("field", "obj.when"))),
+                aggregation.get("aggregations"));
+    }
+
+    @Test
+    public void testGroupByLimit() throws IOException {
+        mockResponse("{\"aggregations\":{\"composite\":{\"buckets\":["
+                + "{\"key\":{\"g0\":\"a\"},\"doc_count\":3},"
+                + "{\"key\":{\"g0\":\"b\"},\"doc_count\":2}]}}}");
+        final GroupByVisitor visitor = groupBy(new CountVisitor(), "name");
+        new ElasticVisitorHandler(client, "test_index", "test", featureType, 2).handle(visitor, request);
+        assertEquals(2, captureGroups(visitor).size());
+
+        final GroupByVisitor limited = groupBy(new CountVisitor(), "name");
+        try {
+            new ElasticVisitorHandler(client, "test_index", "test", featureType, 1).handle(limited, request);
+            fail("Expected group limit error");
+        } catch (IOException e) {
+            verify(limited, never()).setValue(any());
+        }
+    }
+
+    @Test
+    public void testConvert() throws SchemaException {
+        SimpleFeatureType featureType = DataUtilities.createType("test", "count:Integer,when:Date");
+        assertEquals(new Date(10L), ElasticVisitorHandler.convert(10L, featureType.getDescriptor("when")));
+    }
+
+}
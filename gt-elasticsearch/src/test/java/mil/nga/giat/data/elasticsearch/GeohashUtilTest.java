@@ -3,6 +3,7 @@ package mil.nga.giat.data.elasticsearch;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import static org.geotools.geometry.jts.ReferencedEnvelope.EVERYTHING;
 import org.junit.Test;
+import org.locationtech.jts.geom.Envelope;
 
 import com.google.common.collect.ImmutableMap;
 
@@ -30,6 +31,42 @@ public class GeohashUtilTest {
         assertEquals(1, GeohashUtil.computePrecision(new ReferencedEnvelope(-180,180,-90,90,null), 1, -1e9));
     }
 
+    @Test
+    public void testComputeTilePrecision() {
+        assertEquals(0, GeohashUtil.computeTilePrecision(360));
+        assertEquals(0, GeohashUtil.computeTilePrecision(1000));
+        assertEquals(1, GeohashUtil.computeTilePrecision(180));
+        assertEquals(2, GeohashUtil.computeTilePrecision(100));
+        assertEquals(9, GeohashUtil.computeTilePrecision(360 / 512.));
+        assertEquals(10, GeohashUtil.computeTilePrecision(0.5));
+        assertEquals(GeohashUtil.MAX_TILE_PRECISION, GeohashUtil.computeTilePrecision(1e-12));
+        assertEquals(GeohashUtil.MAX_TILE_PRECISION, GeohashUtil.computeTilePrecision(0));
+    }
+
+    @Test
+    public void testComputeTilePrecisionFromEnvelope() {
+        assertEquals(5, GeohashUtil.computeTilePrecision(new ReferencedEnvelope(-180,180,-90,90,null), 10000, 0.05));
+        assertEquals(7, GeohashUtil.computeTilePrecision(new ReferencedEnvelope(-180,180,-90,90,null), 10000, 0.9));
+        assertEquals(13, GeohashUtil.computeTilePrecision(new ReferencedEnvelope(0,1,0,1,null), 10000, 0.05));
+        assertEquals(5, GeohashUtil.computeTilePrecision(new ReferencedEnvelope(EVERYTHING.getMinX(),EVERYTHING.getMaxX(),EVERYTHING.getMinY(),EVERYTHING.getMaxY(),null), 10000, 0.05));
+        assertEquals(5, GeohashUtil.computeTilePrecision(new Envelope(), 10000, 0.05));
+        assertEquals(GeohashUtil.MAX_TILE_PRECISION, GeohashUtil.computeTilePrecision(new Envelope(1,1,1,1), 10000, 0.05));
+    }
+
+    @Test
+    public void updateTilePrecisionIfNotDefined() {
+        final Map<String,Map<String,Map<String,Object>>> aggregations = ImmutableMap.of(
+                "first", ImmutableMap.of("geotile_grid", new HashMap<>(ImmutableMap.of("field", "name"))),
+                "second", ImmutableMap.of("geotile_grid", new HashMap<>(ImmutableMap.of("field", "name", "precision", 3))),
+                "third", ImmutableMap.of("geohash_grid", new HashMap<>(ImmutableMap.of("field", "name"))));
+        final Map<String,Object> expected = ImmutableMap.of(
+                "first", ImmutableMap.of("geotile_grid", ImmutableMap.of("field", "name", "precision", 8)),
+                "second", ImmutableMap.of("geotile_grid", ImmutableMap.of("field", "name", "precision", 3)),
+                "third", ImmutableMap.of("geohash_grid", ImmutableMap.of("field", "name")));
+        GeohashUtil.updateTileAggregationPrecision(aggregations, 8);
+        assertEquals(expected, aggregations);
+    }
+
     @Test
     public void doNotUpdatePrecisionIfAlreadyDefined() {
         final Map<String, Object> geohashGridAgg = new HashMap<>(ImmutableMap.of("field", "name", "precision", 3));
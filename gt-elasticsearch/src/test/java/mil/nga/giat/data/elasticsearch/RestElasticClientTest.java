@@ -15,6 +15,8 @@ import org.mockito.ArgumentMatcher;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -22,16 +24,26 @@ import com.google.common.collect.ImmutableSet;
 import static org.mockito.Mockito.*;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.StatusLine;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.message.BasicHeader;
+import org.apache.http.util.EntityUtils;
 import org.elasticsearch.client.Response;
 import org.elasticsearch.client.RestClient;
 
@@ -117,6 +129,23 @@ public class RestElasticClientTest {
         assertEquals(RestElasticClient.DEFAULT_VERSION, version, 1e-9);
     }
 
+    @Test
+    public void testVersionAtLeast() throws IOException {
+        mockVersion("7.10.2");
+        assertTrue(client.isVersionAtLeast(7, 10));
+        assertTrue(client.isVersionAtLeast(7, 9));
+        assertTrue(client.isVersionAtLeast(6, 11));
+        assertFalse(client.isVersionAtLeast(7, 11));
+        assertFalse(client.isVersionAtLeast(8, 0));
+    }
+
+    @Test
+    public void testVersionAtLeastWithInvalidFormat() throws IOException {
+        mockVersion("6");
+        assertTrue(client.isVersionAtLeast(7, 0));
+        assertFalse(client.isVersionAtLeast(7, 1));
+    }
+
     @Test
     public void testGetTypes() throws IOException {
         String content = "{\"status_s\": {\"mappings\": " +
@@ -428,6 +457,30 @@ public class RestElasticClientTest {
         assertEquals(0.8f, response.getResults().getMaxScore(), 1e-9);
     }
 
+    @Test
+    public void testSearchStream() throws IOException {
+        String content = "{\"hits\": {\"total\": 10, \"max_score\": 0.8, \"hits\": [{\"_index\": \"index_name\", "
+                + "\"_source\": {\"name\": \"value\", \"other\": 1}}, {}]}}";
+        final RequestMatcher matcher = new RequestMatcher("/status_s/_search", "{\"size\":10}");
+        InputStream inputStream = new ByteArrayInputStream(content.getBytes());
+        when(mockEntity.getContent()).thenReturn(inputStream);
+        when(mockRestClient.performRequest(argThat(matcher))).thenReturn(mockResponse);
+
+        ElasticRequest request = new ElasticRequest();
+        request.setSize(10);
+        try (final ElasticHitStream hits = client.searchStream("status_s", "active", request, ImmutableSet.of("name"), null)) {
+            assertEquals(10, hits.getTotalNumHits());
+            assertEquals(0.8f, hits.getMaxScore(), 1e-9);
+            final ElasticHit hit = hits.next();
+            assertEquals("index_name", hit.getIndex());
+            assertEquals(ImmutableList.of("value"), hit.field("name"));
+            assertNull(hit.field("other"));
+            assertTrue(hits.hasNext());
+            hits.next();
+            assertFalse(hits.hasNext());
+        }
+    }
+
     @Test
     public void testSearchResponseWithProxyClient() throws IOException {
         String content = "{\"hits\": {\"total\": 10, \"max_score\": 0.8, \"hits\": [{\"_index\": \"index_name\"}, {}]}}";
@@ -575,6 +628,188 @@ public class RestElasticClientTest {
         proxyClient.clearScroll(ImmutableSet.of("id1"));
     }
 
+    @Test
+    public void testOpenPointInTime() throws IOException {
+        String content = "{\"id\": \"pit1\"}";
+        final RequestMatcher matcher = new RequestMatcher("POST", "/status_s/_pit?keep_alive=10s", null, null);
+        InputStream inputStream = new ByteArrayInputStream(content.getBytes());
+        when(mockEntity.getContent()).thenReturn(inputStream);
+        when(mockRestClient.performRequest(argThat(matcher))).thenReturn(mockResponse);
+
+        assertEquals("pit1", client.openPointInTime("status_s", 10));
+    }
+
+    @Test
+    public void testOpenPointInTimeWithProxyClient() throws IOException {
+        String content = "{\"id\": \"pit1\"}";
+        final RequestMatcher matcher = new RequestMatcher("POST", "/status_s/_pit?keep_alive=10s", null, "runAsTest");
+        InputStream inputStream = new ByteArrayInputStream(content.getBytes());
+        when(mockEntity.getContent()).thenReturn(inputStream);
+        when(mockProxyRestClient.performRequest(argThat(matcher))).thenReturn(mockResponse);
+
+        assertEquals("pit1", proxyClient.openPointInTime("status_s", 10));
+    }
+
+    @Test
+    public void testClosePointInTime() throws IOException {
+        final RequestMatcher matcher = new RequestMatcher("DELETE", "/_pit", "{\"id\":\"pit1\"}", null);
+        when(mockRestClient.performRequest(argThat(matcher))).thenReturn(mockResponse);
+
+        client.closePointInTime("pit1");
+        verify(mockRestClient).performRequest(argThat(matcher));
+    }
+
+    @Test
+    public void testSearchAfterWithPointInTime() throws IOException {
+        final RequestMatcher matcher = new RequestMatcher("/_search",
+                "{\"size\":10,\"sort\":[{\"_shard_doc\":{\"order\":\"asc\"}}],\"search_after\":[5],"
+                + "\"pit\":{\"id\":\"pit1\",\"keep_alive\":\"10s\"}}");
+        String content = "{\"pit_id\": \"pit2\", \"hits\": {\"hits\": [{\"_id\": \"6\", \"sort\": [6]}]}}";
+        InputStream inputStream = new ByteArrayInputStream(content.getBytes());
+        when(mockEntity.getContent()).thenReturn(inputStream);
+        when(mockRestClient.performRequest(argThat(matcher))).thenReturn(mockResponse);
+
+        ElasticRequest request = new ElasticRequest();
+        request.setSize(10);
+        request.addSort("_shard_doc", "asc");
+        request.setSearchAfter(ImmutableList.of(5));
+        request.setPointInTime("pit1", 10);
+        final ElasticResponse response = client.search("status_s", "active", request);
+        assertEquals("pit2", response.getPointInTimeId());
+        assertEquals(ImmutableList.of(6), response.getHits().get(0).getSort());
+    }
+
+    @Test
+    public void testSearchSlice() throws IOException {
+        final RequestMatcher matcher = new RequestMatcher("/status_s/_search?scroll=10s", "{\"slice\":{\"id\":1,\"max\":4}}");
+        when(mockRestClient.performRequest(argThat(matcher))).thenReturn(mockResponse);
+
+        ElasticRequest request = new ElasticRequest();
+        request.setScroll(10);
+        request.setSlice(1, 4);
+        client.search("status_s", "active", request);
+        verify(mockRestClient).performRequest(argThat(matcher));
+    }
+
+    @Test
+    public void testGetNumberOfShards() throws IOException {
+        String content = "{\"status_1\": {\"settings\": {\"index\": {\"number_of_shards\": \"3\"}}}, "
+                + "\"status_2\": {\"settings\": {\"index\": {\"number_of_shards\": \"5\"}}}}";
+        final RequestMatcher matcher = new RequestMatcher("GET", "/status_s/_settings/index.number_of_shards", null, null);
+        InputStream inputStream = new ByteArrayInputStream(content.getBytes());
+        when(mockEntity.getContent()).thenReturn(inputStream);
+        when(mockRestClient.performRequest(argThat(matcher))).thenReturn(mockResponse);
+
+        assertEquals(5, client.getNumberOfShards("status_s"));
+    }
+
+    @Test
+    public void testCount() throws IOException {
+        final Map<String,Object> query = ImmutableMap.of("term", ImmutableMap.of("obj1", "value1"));
+        final String data = new ObjectMapper().writeValueAsString(ImmutableMap.of("query", query));
+        final RequestMatcher matcher = new RequestMatcher("/status_s/_count", data);
+        InputStream inputStream = new ByteArrayInputStream("{\"count\":12345,\"_shards\":{}}".getBytes());
+        when(mockEntity.getContent()).thenReturn(inputStream);
+        when(mockRestClient.performRequest(argThat(matcher))).thenReturn(mockResponse);
+
+        assertEquals(12345L, client.count("status_s", "active", query));
+    }
+
+    @Test
+    public void testLegacyCount() throws IOException {
+        final RequestMatcher matcher = new RequestMatcher("/status_s/active/_count", "{}");
+        mockVersion("6.0.0");
+        InputStream inputStream = new ByteArrayInputStream("{\"count\":5}".getBytes());
+        when(mockEntity.getContent()).thenReturn(inputStream);
+        when(mockRestClient.performRequest(argThat(matcher))).thenReturn(mockResponse);
+
+        assertEquals(5L, client.count("status_s", "active", null));
+    }
+
+    @Test(expected=IOException.class)
+    public void testCountMissing() throws IOException {
+        final RequestMatcher matcher = new RequestMatcher("/status_s/_count", "{}");
+        when(mockRestClient.performRequest(argThat(matcher))).thenReturn(mockResponse);
+
+        client.count("status_s", "active", null);
+    }
+
+    @Test
+    public void testTrackTotalHits() throws IOException {
+        final RequestMatcher matcher = new RequestMatcher("/status_s/_search", "{\"size\":0,\"track_total_hits\":100}");
+        when(mockRestClient.performRequest(argThat(matcher))).thenReturn(mockResponse);
+
+        ElasticRequest request = new ElasticRequest();
+        request.setSize(0);
+        request.setTrackTotalHits(100);
+        client.search("status_s", "active", request);
+        verify(mockRestClient).performRequest(argThat(matcher));
+    }
+
+    @Test
+    public void testLegacyTrackTotalHits() throws IOException {
+        final RequestMatcher matcher = new RequestMatcher("/status_s/active/_search", "{\"size\":0}");
+        mockVersion("6.0.0");
+        when(mockRestClient.performRequest(argThat(matcher))).thenReturn(mockResponse);
+
+        ElasticRequest request = new ElasticRequest();
+        request.setSize(0);
+        request.setTrackTotalHits(100);
+        client.search("status_s", "active", request);
+        verify(mockRestClient).performRequest(argThat(matcher));
+    }
+
+    @Test
+    public void testDocValueFields() throws IOException {
+        final RequestMatcher matcher = new RequestMatcher("/status_s/_search",
+                "{\"docvalue_fields\":[{\"field\":\"obj1\",\"format\":\"epoch_millis\"},{\"field\":\"obj2\"}]}");
+        when(mockRestClient.performRequest(argThat(matcher))).thenReturn(mockResponse);
+
+        ElasticRequest request = new ElasticRequest();
+        request.addDocValueField("obj1", "epoch_millis");
+        request.addDocValueField("obj2", null);
+        client.search("status_s", "active", request);
+        verify(mockRestClient).performRequest(argThat(matcher));
+    }
+
+    @Test
+    public void testDocValueFieldsDefaultFormat() throws IOException {
+        final RequestMatcher matcher = new RequestMatcher("/status_s/active/_search",
+                "{\"docvalue_fields\":[{\"field\":\"obj1\",\"format\":\"use_field_mapping\"}]}");
+        mockVersion("6.4.0");
+        when(mockRestClient.performRequest(argThat(matcher))).thenReturn(mockResponse);
+
+        ElasticRequest request = new ElasticRequest();
+        request.addDocValueField("obj1", null);
+        client.search("status_s", "active", request);
+        verify(mockRestClient).performRequest(argThat(matcher));
+    }
+
+    @Test
+    public void testLegacyDocValueFields() throws IOException {
+        final RequestMatcher matcher = new RequestMatcher("/status_s/active/_search",
+                "{\"docvalue_fields\":[\"obj1\",\"obj2\"]}");
+        mockVersion("6.0.0");
+        when(mockRestClient.performRequest(argThat(matcher))).thenReturn(mockResponse);
+
+        ElasticRequest request = new ElasticRequest();
+        request.addDocValueField("obj1", "epoch_millis");
+        request.addDocValueField("obj2", null);
+        client.search("status_s", "active", request);
+        verify(mockRestClient).performRequest(argThat(matcher));
+    }
+
+    @Test
+    public void testSearchSourceDisabled() throws IOException {
+        final RequestMatcher matcher = new RequestMatcher("/status_s/_search", "{\"_source\":false}");
+        when(mockRestClient.performRequest(argThat(matcher))).thenReturn(mockResponse);
+
+        ElasticRequest request = new ElasticRequest();
+        request.addSourceInclude("obj1");
+        request.setSourceEnabled(false);
+        client.search("status_s", "active", request);
+    }
+
     @Test
     public void testClose() throws IOException {
         client.close();
@@ -629,6 +864,271 @@ public class RestElasticClientTest {
         proxyClient.search("status_s", "active", new ElasticRequest());
     }
 
+    @Test
+    public void testMetadataCache() throws IOException {
+        final ElasticMetadataCache cache = new ElasticMetadataCache(60, 100);
+        final RestElasticClient client = new RestElasticClient(mockRestClient, null, false, cache);
+        mockVersion("7.0.0");
+        final Response mappingResponse = mockReusableResponse("{\"status_1\": {\"mappings\":"
+                + "{\"properties\": {\"status_s\": {\"type\": \"keyword\"}}}}}");
+        final Response aliasResponse = mockReusableResponse("{\"status_1\": {\"aliases\": {\"status_s\": {}}}}");
+        final RequestMatcher mappingMatcher = new RequestMatcher("GET", "/status_s/_mapping", null, null);
+        final RequestMatcher aliasMatcher = new RequestMatcher("GET", "/_alias/status_s", null, null);
+        final RequestMatcher versionMatcher = new RequestMatcher("GET", "/", null, null);
+        when(mockRestClient.performRequest(argThat(mappingMatcher))).thenReturn(mappingResponse);
+        when(mockRestClient.performRequest(argThat(aliasMatcher))).thenReturn(aliasResponse);
+
+        Map<String, Map<String, String>> expected = ImmutableMap.of("status_s", ImmutableMap.of("type","keyword"));
+        assertEquals(expected, client.getMapping("status_s", "active"));
+        assertEquals(expected, client.getMapping("status_s", "active"));
+        assertEquals(ImmutableList.of("status_1"), client.getTypes("status_s"));
+        verify(mockRestClient, times(1)).performRequest(argThat(mappingMatcher));
+        verify(mockRestClient, times(1)).performRequest(argThat(aliasMatcher));
+        verify(mockRestClient, times(1)).performRequest(argThat(versionMatcher));
+
+        cache.invalidate("status_s");
+        assertEquals(1, cache.size());
+        assertEquals(expected, client.getMapping("status_s", "active"));
+        verify(mockRestClient, times(2)).performRequest(argThat(mappingMatcher));
+        verify(mockRestClient, times(2)).performRequest(argThat(aliasMatcher));
+
+        final RestElasticClient otherClient = new RestElasticClient(mockRestClient, null, false, cache);
+        assertEquals(7.0, otherClient.getVersion(), 1e-9);
+        verify(mockRestClient, times(1)).performRequest(argThat(versionMatcher));
+    }
+
+    @Test
+    public void testMetadataCacheMissingIndex() throws IOException {
+        final ElasticMetadataCache cache = new ElasticMetadataCache(60, 100);
+        final RestElasticClient client = new RestElasticClient(mockRestClient, null, false, cache);
+        mockVersion("7.0.0");
+        final ResponseException mockException = mock(ResponseException.class);
+        final Response notFoundResponse = mock(Response.class);
+        final StatusLine notFoundStatusLine = mock(StatusLine.class);
+        when(mockException.getResponse()).thenReturn(notFoundResponse);
+        when(notFoundResponse.getStatusLine()).thenReturn(notFoundStatusLine);
+        when(notFoundStatusLine.getStatusCode()).thenReturn(404);
+        final RequestMatcher mappingMatcher = new RequestMatcher("GET", "/status_s/_mapping", null, null);
+        when(mockRestClient.performRequest(argThat(mappingMatcher))).thenThrow(mockException);
+
+        assertTrue(client.getTypes("status_s").isEmpty());
+        assertTrue(client.getTypes("status_s").isEmpty());
+        verify(mockRestClient, times(2)).performRequest(argThat(mappingMatcher));
+    }
+
+    @Test
+    public void testSharedMetadataCacheRelease() {
+        final ElasticMetadataCache cache = ElasticMetadataCache.getSharedCache("release", 60, 100);
+        assertSame(cache, ElasticMetadataCache.getSharedCache("release", 60, 100));
+        assertNotSame(cache, ElasticMetadataCache.getSharedCache("release", 30, 100));
+        ElasticMetadataCache.getSharedCache("release", 30, 100).release();
+        ElasticMetadataCache.getSharedCache("release", 30, 100).release();
+
+        cache.release();
+        assertSame(cache, ElasticMetadataCache.getSharedCache("release", 60, 100));
+        cache.release();
+        cache.release();
+        assertNotSame(cache, ElasticMetadataCache.getSharedCache("release", 60, 100));
+    }
+
+    @Test
+    public void testResultCache() throws IOException {
+        client.setResultCache(new ElasticResultCache(1000000, 60, 0));
+        final Response searchResponse = mockReusableResponse("{\"hits\":{\"hits\":[{\"_id\":\"1\"}]}}");
+        final RequestMatcher matcher = new RequestMatcher("/status_s/_search", "{\"size\":1}");
+        when(mockRestClient.performRequest(argThat(matcher))).thenReturn(searchResponse);
+
+        final ElasticRequest request = new ElasticRequest();
+        request.setSize(1);
+        final ElasticResponse response = client.search("status_s", "active", request);
+        assertEquals(1, response.getNumHits());
+        assertSame(response, client.search("status_s", "active", request));
+        verify(mockRestClient, times(1)).performRequest(argThat(matcher));
+        assertEquals(1, client.getResultCache().getHitCount());
+
+        final RequestMatcher scrollMatcher = new RequestMatcher("/status_s/_search?scroll=10s", "{\"size\":1}");
+        when(mockRestClient.performRequest(argThat(scrollMatcher))).thenReturn(searchResponse);
+        request.setScroll(10);
+        client.search("status_s", "active", request);
+        client.search("status_s", "active", request);
+        verify(mockRestClient, times(2)).performRequest(argThat(scrollMatcher));
+    }
+
+    @Test
+    public void testResultCacheIndexChange() throws IOException {
+        client.setResultCache(new ElasticResultCache(1000000, 60, 1));
+        final Response searchResponse = mockReusableResponse("{\"hits\":{\"hits\":[{\"_id\":\"1\"}]}}");
+        final RequestMatcher matcher = new RequestMatcher("/status_s/_search", "{\"size\":1}");
+        when(mockRestClient.performRequest(argThat(matcher))).thenReturn(searchResponse);
+        final Response statsResponse = mockReusableResponse("{\"_all\":{\"total\":{\"refresh\":{\"total\":5}}}}");
+        final RequestMatcher statsMatcher = new RequestMatcher("GET", "/status_s/_stats/refresh", null, null);
+        when(mockRestClient.performRequest(argThat(statsMatcher))).thenReturn(statsResponse);
+
+        final ElasticRequest request = new ElasticRequest();
+        request.setSize(1);
+        client.search("status_s", "active", request);
+        client.search("status_s", "active", request);
+        verify(mockRestClient, times(1)).performRequest(argThat(matcher));
+        verify(mockRestClient, times(1)).performRequest(argThat(statsMatcher));
+    }
+
+    @Test
+    public void testMultiSearch() throws Exception {
+        client.setSearchBatching(10000, 2);
+        final List<String> lines = new ArrayList<>();
+        when(mockRestClient.performRequest(argThat(request -> request != null && request.getEndpoint().equals("/_msearch"))))
+                .thenAnswer(invocation -> {
+            final Request request = invocation.getArgument(0);
+            lines.addAll(Arrays.asList(EntityUtils.toString(request.getEntity()).split("\n")));
+            final List<String> items = new ArrayList<>();
+            for (int i = 1; i < lines.size(); i += 2) {
+                items.add(lines.get(i).contains("\"size\":1") ? "{\"hits\":{\"hits\":[{\"_id\":\"1\"}]},\"status\":200}"
+                        : "{\"error\":{\"type\":\"index_not_found_exception\"},\"status\":404}");
+            }
+            return mockReusableResponse("{\"took\":1,\"responses\":[" + String.join(",", items) + "]}");
+        });
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            final Future<ElasticResponse> first = executorService.submit(() -> {
+                final ElasticRequest request = new ElasticRequest();
+                request.setSize(1);
+                return client.search("status_s", "active", request);
+            });
+            final Future<ElasticResponse> second = executorService.submit(() -> {
+                final ElasticRequest request = new ElasticRequest();
+                request.setSize(2);
+                return client.search("missing", "active", request);
+            });
+            assertEquals("1", first.get().getHits().get(0).getId());
+            try {
+                second.get();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        assertEquals(4, lines.size());
+        assertTrue(lines.contains("{\"index\":\"status_s\"}"));
+        assertTrue(lines.contains("{\"index\":\"missing\"}"));
+        assertEquals(1, client.getSearchBatcher().getBatchCount());
+    }
+
+    @Test
+    public void testResponseCompression() throws IOException {
+        client.setCompression(true, false);
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (final GZIPOutputStream outputStream = new GZIPOutputStream(compressed)) {
+            outputStream.write("{\"hits\":{\"hits\":[{\"_id\":\"1\"}]}}".getBytes());
+        }
+        when(mockEntity.getContent()).thenReturn(new ByteArrayInputStream(compressed.toByteArray()));
+        when(mockResponse.getHeader("Content-Encoding")).thenReturn("gzip");
+        final List<Request> requests = new ArrayList<>();
+        when(mockRestClient.performRequest(argThat(request -> request != null && request.getEndpoint().equals("/status_s/_search"))))
+                .thenAnswer(invocation -> {
+            requests.add(invocation.getArgument(0));
+            return mockResponse;
+        });
+
+        final ElasticResponse response = client.search("status_s", "active", new ElasticRequest());
+        assertEquals("1", response.getHits().get(0).getId());
+        final List<Header> headers = requests.get(0).getOptions().getHeaders();
+        assertEquals(1, headers.size());
+        assertEquals("Accept-Encoding", headers.get(0).getName());
+        assertEquals("gzip", headers.get(0).getValue());
+        assertNull(requests.get(0).getEntity().getContentEncoding());
+    }
+
+    @Test
+    public void testRequestCompression() throws IOException {
+        client.setCompression(true, true);
+        final List<Request> requests = new ArrayList<>();
+        when(mockRestClient.performRequest(argThat(request -> request != null && request.getEndpoint().equals("/status_s/_search"))))
+                .thenAnswer(invocation -> {
+            requests.add(invocation.getArgument(0));
+            return mockResponse;
+        });
+
+        final StringBuilder coordinates = new StringBuilder();
+        for (int i = 0; i < RestElasticClient.REQUEST_COMPRESSION_THRESHOLD; i++) {
+            coordinates.append(i % 10);
+        }
+        final ElasticRequest request = new ElasticRequest();
+        request.setQuery(ImmutableMap.of("term", ImmutableMap.of("geometry", coordinates.toString())));
+        client.search("status_s", "active", request);
+        final HttpEntity entity = requests.get(0).getEntity();
+        assertEquals("gzip", entity.getContentEncoding().getValue());
+        final Map<String,Object> body;
+        try (final InputStream inputStream = new GZIPInputStream(entity.getContent())) {
+            body = new ObjectMapper().readValue(inputStream, new TypeReference<Map<String, Object>>() {});
+        }
+        assertEquals(request.getQuery(), body.get("query"));
+    }
+
+    @Test
+    public void testSmileResponse() throws IOException {
+        client.setResponseFormat(ElasticDataStore.ResponseFormat.SMILE);
+        final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+        final Map<String,Object> source = ImmutableMap.of("geometry", ImmutableMap.of("type", "Point",
+                "coordinates", ImmutableList.of(1.5, 2.5)));
+        final byte[] content = smileMapper.writeValueAsBytes(ImmutableMap.of("_scroll_id", "scroll1", "hits",
+                ImmutableMap.of("hits", ImmutableList.of(ImmutableMap.of("_id", "1", "_source", source)))));
+        when(mockEntity.getContent()).thenReturn(new ByteArrayInputStream(content));
+        when(mockResponse.getHeader("Content-Type")).thenReturn("application/smile");
+        final List<Request> requests = new ArrayList<>();
+        when(mockRestClient.performRequest(argThat(request -> request != null && request.getEndpoint().equals("/_search/scroll"))))
+                .thenAnswer(invocation -> {
+            requests.add(invocation.getArgument(0));
+            return mockResponse;
+        });
+
+        final ElasticResponse response = client.scroll("scroll0", 10);
+        assertEquals("scroll1", response.getScrollId());
+        assertEquals(source, response.getHits().get(0).getSource());
+        final List<Header> headers = requests.get(0).getOptions().getHeaders();
+        assertEquals(1, headers.size());
+        assertEquals("Accept", headers.get(0).getName());
+        assertEquals("application/smile", headers.get(0).getValue());
+    }
+
+    @Test
+    public void testCborMultiSearch() throws Exception {
+        client.setResponseFormat(ElasticDataStore.ResponseFormat.CBOR);
+        client.setSearchBatching(10000, 2);
+        final ObjectMapper cborMapper = new ObjectMapper(new CBORFactory());
+        final Map<String,Object> hits = ImmutableMap.of("hits", ImmutableList.of(ImmutableMap.of("_id", "1")));
+        final byte[] content = cborMapper.writeValueAsBytes(ImmutableMap.of("responses",
+                ImmutableList.of(ImmutableMap.of("hits", hits), ImmutableMap.of("hits", hits))));
+        when(mockEntity.getContent()).thenReturn(new ByteArrayInputStream(content));
+        when(mockResponse.getHeader("Content-Type")).thenReturn("application/cbor");
+        when(mockRestClient.performRequest(argThat(request -> request != null && request.getEndpoint().equals("/_msearch"))))
+                .thenReturn(mockResponse);
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            final Future<ElasticResponse> first = executorService.submit(() -> client.search("status_1", "active", new ElasticRequest()));
+            final Future<ElasticResponse> second = executorService.submit(() -> client.search("status_2", "active", new ElasticRequest()));
+            assertEquals("1", first.get().getHits().get(0).getId());
+            assertEquals("1", second.get().getHits().get(0).getId());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private Response mockReusableResponse(String content) throws IOException {
+        final Response mockResponse = mock(Response.class);
+        final HttpEntity mockEntity = mock(HttpEntity.class);
+        final StatusLine mockStatusLine = mock(StatusLine.class);
+        when(mockResponse.getEntity()).thenReturn(mockEntity);
+        when(mockResponse.getStatusLine()).thenReturn(mockStatusLine);
+        when(mockStatusLine.getStatusCode()).thenReturn(200);
+        when(mockEntity.getContent()).thenAnswer(invocation -> new ByteArrayInputStream(content.getBytes()));
+        return mockResponse;
+    }
+
     private void mockVersion(String version) throws IOException {
         final Response mockResponse = mock(Response.class);
         final HttpEntity mockEntity = mock(HttpEntity.class);